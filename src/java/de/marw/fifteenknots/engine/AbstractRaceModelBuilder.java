@@ -3,9 +3,12 @@
 
 package de.marw.fifteenknots.engine;
 
+import de.marw.fifteenknots.model.HeapTrackStorage;
+import de.marw.fifteenknots.model.TrackStorage;
+
 /**
  * Abstract base implementation of a {@code RaceModelBuilder} that holds the
- * model factory.
+ * model factory and the track storage.
  *
  * @author Martin Weber
  */
@@ -14,6 +17,12 @@ public abstract class AbstractRaceModelBuilder implements RaceModelBuilder {
   /** the factory for objects of the race model. */
   private RaceModelFactory modelFactory;
 
+  /** creates the tracks of the race model. */
+  private TrackStorage trackStorage= new HeapTrackStorage();
+
+  /** the cache of parsed tracks or {@code null} */
+  private TrackCache trackCache;
+
   /**
    * Gets the factory for objects of the race model.
    *
@@ -30,4 +39,41 @@ public abstract class AbstractRaceModelBuilder implements RaceModelBuilder {
     this.modelFactory= modelFactory;
   }
 
+  /**
+   * Gets the storage that creates the tracks of the race model.
+   */
+  public final TrackStorage getTrackStorage() {
+    return this.trackStorage;
+  }
+
+  /**
+   * Sets the storage that creates the tracks of the race model. By default,
+   * track points are stored on the java heap.
+   */
+  public final void setTrackStorage( TrackStorage trackStorage) {
+    if (trackStorage == null) {
+      throw new NullPointerException( "trackStorage");
+    }
+    this.trackStorage= trackStorage;
+  }
+
+  /**
+   * Gets the cache of parsed tracks.
+   *
+   * @return the cache or {@code null}, if input files are always parsed.
+   */
+  public final TrackCache getTrackCache() {
+    return this.trackCache;
+  }
+
+  /**
+   * Sets the cache of parsed tracks.
+   *
+   * @param trackCache
+   *        the cache or {@code null} to parse all input files.
+   */
+  public final void setTrackCache( TrackCache trackCache) {
+    this.trackCache= trackCache;
+  }
+
 }
@@ -6,16 +6,16 @@ package de.marw.fifteenknots.engine;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collection;
-import java.util.List;
 import java.util.concurrent.Callable;
 
 import de.marw.fifteenknots.model.Boat;
 import de.marw.fifteenknots.model.Cruise;
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.model.TrackStorage;
 
 
 /**
- * Reads all files for a {@code Boat}, extracts the the {@link TrackEvent track
+ * Reads all files for a {@code Boat}, extracts the the {@link Track track
  * points} and returns the {@link Cruise} object from the {@link #call()}
  * method.
  *
@@ -65,6 +65,24 @@ public class CruiseGenerator implements Callable<Cruise> {
     this.modelFactory= modelFactory;
   }
 
+  /**
+   * Sets the storage that creates the tracks the track points are stored in.
+   * By default, track points are stored on the java heap.
+   */
+  public void setTrackStorage( TrackStorage trackStorage) {
+    trackGenerator.setTrackStorage( trackStorage);
+  }
+
+  /**
+   * Sets the cache of parsed tracks.
+   *
+   * @param trackCache
+   *        the cache or {@code null} to parse all input files.
+   */
+  public void setTrackCache( TrackCache trackCache) {
+    trackGenerator.setTrackCache( trackCache);
+  }
+
   /**
    * Adds all specified input file names to be read.
    *
@@ -98,7 +116,7 @@ public class CruiseGenerator implements Callable<Cruise> {
   public Cruise call() throws FileNotFoundException, IOException {
     if (modelFactory == null)
       throw new IllegalStateException( "model factory not set");
-    final List<TrackEvent> track= trackGenerator.generate();
+    final Track track= trackGenerator.generate();
     return modelFactory.createCruise( boat, track);
   }
 }
\ No newline at end of file
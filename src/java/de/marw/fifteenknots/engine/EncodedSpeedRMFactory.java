@@ -3,14 +3,12 @@
 
 package de.marw.fifteenknots.engine;
 
-import java.util.List;
-
 import de.marw.fifteenknots.model.Boat;
 import de.marw.fifteenknots.model.Cruise;
 import de.marw.fifteenknots.model.EncodedSpeedRaceModel;
 import de.marw.fifteenknots.model.RaceModel;
 import de.marw.fifteenknots.model.SpeedCruise;
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.model.Track;
 
 
 /**
@@ -35,7 +33,7 @@ public class EncodedSpeedRMFactory implements RaceModelFactory {
    *
    * @return a {@link SpeedCruise} object.
    */
-  public Cruise createCruise( Boat boat, List<TrackEvent> track) {
+  public Cruise createCruise( Boat boat, Track track) {
     return new SpeedCruise( boat, track);
   }
 
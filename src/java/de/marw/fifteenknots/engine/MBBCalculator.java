@@ -8,7 +8,7 @@ import java.util.Arrays;
 import java.util.List;
 import static java.lang.Math.*;
 
-import de.marw.fifteenknots.nmeareader.Position2D;
+import de.marw.fifteenknots.nmeareader.Position;
 
 /**
  * Minimum Bounding Box
@@ -44,7 +44,7 @@ public class MBBCalculator {
    *                vector1
    * </pre>
    */
-  private static MinRectDescriptor rotating_calipers(List<Position2D> hull) {
+  private static MinRectDescriptor rotating_calipers(List<Position> hull) {
     /* we will use usual cartesian coordinates */
     final int numPoints = hull.size();
     // hull vectors
@@ -67,7 +67,7 @@ public class MBBCalculator {
       double left_x, right_x, top_y, bottom_y;
 
       // find extremal points...
-      Position2D pt0 = hull.get(0);
+      Position pt0 = hull.get(0);
       left_x = right_x = pt0.getLongitude();
       top_y = bottom_y = pt0.getLatitude();
       for (int i = 0; i < numPoints; i++) {
@@ -90,7 +90,7 @@ public class MBBCalculator {
 	  bottom_y = pt0.getLatitude();
 	  bottom = i;
 	}
-	final Position2D pt = hull.get(i + 1 < numPoints ? i + 1 : 0);
+	final Position pt = hull.get(i + 1 < numPoints ? i + 1 : 0);
 
 	dx = pt.getLongitude() - pt0.getLongitude();
 	dy = pt.getLatitude() - pt0.getLatitude();
@@ -253,13 +253,13 @@ public class MBBCalculator {
    * @return an array containing the rectangle's coners or null, if hull
    *         contains less than two points.
    */
-  public static Position2D[] mbb(final List<Position2D> hull) {
+  public static Position[] mbb(final List<Position> hull) {
 
     final int numPoints = hull.size();
     if (numPoints < 2) {
       return null;
     } else if (numPoints == 2) {
-      Position2D[] out = new Position2D[] { hull.get(0), hull.get(1),
+      Position[] out = new Position[] { hull.get(0), hull.get(1),
 	  hull.get(1), hull.get(0) };
       return out;
     } else { // numPoints > 2
@@ -272,10 +272,10 @@ public class MBBCalculator {
       final Point c3 = new Point(-minRect.base_a, -minRect.base_b);
       final Point c4 = new Point(minRect.base_b, -minRect.base_a);
 
-      final Position2D leftist = hull.get(minRect.leftist_point_idx);
-      final Position2D bottom = hull.get(minRect.bottom_point_idx);
-      final Position2D rightist = hull.get(minRect.rightist_point_idx);
-      final Position2D topist = hull.get(minRect.topist_point_idx);
+      final Position leftist = hull.get(minRect.leftist_point_idx);
+      final Position bottom = hull.get(minRect.bottom_point_idx);
+      final Position rightist = hull.get(minRect.rightist_point_idx);
+      final Position topist = hull.get(minRect.topist_point_idx);
       final double C1 = c1.x * leftist.getLongitude() + c1.y
 	  * leftist.getLatitude();
       final double C2 = c2.x * bottom.getLongitude() + c2.y
@@ -290,35 +290,35 @@ public class MBBCalculator {
       final double px = (C1 * c2.y - C2 * c1.y) * idet;
       final double py = (c1.x * C2 - c2.x * C1) * idet;
 
-      Position2D[] out = new Position2D[] {
+      Position[] out = new Position[] {
 // new Position2D( px, py), // corner
 // new Position2D( px, py),// startkennung
 // new Position2D( px - 0.001, py - 0.001), // startkennung
 // new Position2D( px + 0.001, py - 0.001), // startkennung
-	  new Position2D(px, py), // corner
-	  new Position2D((C2 * c3.y - C3 * c2.y) * idet,
-	      (c2.x * C3 - c3.x * C2) * idet),
-	  new Position2D((C3 * c4.y - C4 * c3.y) * idet,
-	      (c3.x * C4 - c4.x * C3) * idet),
-	  new Position2D((C4 * c1.y - C1 * c4.y) * idet,
-	      (c4.x * C1 - c1.x * C4) * idet) };
+	  new Position(py, px), // corner
+	  new Position((c2.x * C3 - c3.x * C2) * idet,
+	      (C2 * c3.y - C3 * c2.y) * idet),
+	  new Position((c3.x * C4 - c4.x * C3) * idet,
+	      (C3 * c4.y - C4 * c3.y) * idet),
+	  new Position((c4.x * C1 - c1.x * C4) * idet,
+	      (C4 * c1.y - C1 * c4.y) * idet) };
 
       return out;
     }
   }
 
-  public static Position2D[] mbbSpherical(final List<Position2D> hull) {
+  public static Position[] mbbSpherical(final List<Position> hull) {
     final int numPoints = hull.size();
     if (numPoints < 2) {
       return null;
     } else if (numPoints == 2) {
-      Position2D[] out = new Position2D[] { hull.get(0), hull.get(1),
+      Position[] out = new Position[] { hull.get(0), hull.get(1),
 	  hull.get(1), hull.get(0) };
       return out;
     } else { // numPoints > 2
 
       // hull after projection
-      List<Position2D> points = new ArrayList<Position2D>(numPoints);
+      List<Position> points = new ArrayList<Position>(numPoints);
 
       final double r = 6371000.8; // earth radius in meter
       // central axis of stereographic projection
@@ -329,7 +329,7 @@ public class MBBCalculator {
 	double left_x, right_x, top_y, bottom_y;
 
 	// find extremal points...
-	Position2D pt0 = hull.get(0);
+	Position pt0 = hull.get(0);
 	left_x = right_x = pt0.getLongitude();
 	top_y = bottom_y = pt0.getLatitude();
 	for (int i = 0; i < numPoints; i++) {
@@ -346,7 +346,7 @@ public class MBBCalculator {
 	  if (pt0.getLatitude() < bottom_y) {
 	    bottom_y = pt0.getLatitude();
 	  }
-	  final Position2D pt = hull.get(i + 1 < numPoints ? i + 1 : 0);
+	  final Position pt = hull.get(i + 1 < numPoints ? i + 1 : 0);
 
 	  pt0 = pt;
 	}
@@ -354,7 +354,7 @@ public class MBBCalculator {
 	avg_lat_rad = toRadians(bottom_y + (top_y - bottom_y) / 2);
 	avg_lon_rad = toRadians(left_x + (right_x - left_x) / 2);
 	for (int i = 0; i < numPoints; i++) {
-	  final Position2D pt = hull.get(i);
+	  final Position pt = hull.get(i);
 	  // Stereographische Projektion, winkeltreu...
 	  final double k = 2
 	      * r
@@ -371,7 +371,7 @@ public class MBBCalculator {
 // System.out.println( "in  "+pt);
 // System.out.println("out "+invSphericalProjection( x, y, r, avg_lon_rad,
 	  // avg_lat_rad));
-	  points.add(new Position2D(x, y));
+	  points.add(new Position(y, x));
 	}
       }
 
@@ -383,10 +383,10 @@ public class MBBCalculator {
       final Point c2 = new Point(-minRect.base_b, minRect.base_a);
       final Point c3 = new Point(-minRect.base_a, -minRect.base_b);
       final Point c4 = new Point(minRect.base_b, -minRect.base_a);
-      final Position2D leftist = points.get(minRect.leftist_point_idx);
-      final Position2D bottom = points.get(minRect.bottom_point_idx);
-      final Position2D rightist = points.get(minRect.rightist_point_idx);
-      final Position2D topist = points.get(minRect.topist_point_idx);
+      final Position leftist = points.get(minRect.leftist_point_idx);
+      final Position bottom = points.get(minRect.bottom_point_idx);
+      final Position rightist = points.get(minRect.rightist_point_idx);
+      final Position topist = points.get(minRect.topist_point_idx);
       final double C1 = c1.x * leftist.getLongitude() + c1.y
 	  * leftist.getLatitude();
       final double C2 = c2.x * bottom.getLongitude() + c2.y
@@ -405,7 +405,7 @@ public class MBBCalculator {
       final double centralLon = avg_lon_rad;
       final double centralLat = avg_lat_rad;
 
-      Position2D[] out = new Position2D[] {
+      Position[] out = new Position[] {
 	  // corner
 	  invSphericalProjection(px, py, r, centralLon, centralLat),
 	  invSphericalProjection((C2 * c3.y - C3 * c2.y) * idet,
@@ -434,7 +434,7 @@ public class MBBCalculator {
    *        latitude of projection axis
    * @return
    */
-  private static Position2D invSphericalProjection(final double x,
+  private static Position invSphericalProjection(final double x,
       final double y, final double radius, final double centralLongitude,
       final double centralLatitude) {
 // System.out.println( "x,y= " + x + ", " + y);
@@ -445,8 +445,8 @@ public class MBBCalculator {
     double lon = centralLongitude
 	+ atan2(x * sin(c), p * cos(centralLatitude) * cos(c) - y
 	    * sin(centralLatitude) * sin(c));
-    Position2D position2D = new Position2D(toDegrees(lon), toDegrees(lat));
-    return position2D;
+    Position position = new Position(toDegrees(lat), toDegrees(lon));
+    return position;
   }
 
   // //////////////////////////////////////////////////////////////////
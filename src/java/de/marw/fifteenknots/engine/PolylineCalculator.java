@@ -3,12 +3,12 @@
 
 package de.marw.fifteenknots.engine;
 
-import java.util.Iterator;
 import java.util.concurrent.Callable;
 
 import de.marw.fifteenknots.model.PolyLine;
 import de.marw.fifteenknots.model.SpeedCruise;
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.model.TrackCursor;
 
 
 /**
@@ -43,37 +43,38 @@ public class PolylineCalculator implements Callable<Object> {
 
   /**
    * Calulates the {@link PolyLine}s from the cruise's
-   * {@linkplain SpeedCruise#getTrackpoints() track points} and stores these
+   * {@linkplain SpeedCruise#getTrack() track points} and stores these
    * values in the cruise object.
    *
    * @return always {@code null}
    */
   public Object call() {
+    final Track track= cruise.getTrack();
     int lastColorIdx= -1;
     PolylineImpl polyline= null;
-    TrackEvent trackPoint= null;
-    for (Iterator<TrackEvent> iterator= cruise.getTrackpoints().iterator(); iterator
-      .hasNext();) {
-      trackPoint= iterator.next();
-      if (trackPoint.getSpeed() == null)
-	continue; // TODO berechnen!
-      int colorIdx= colorEncoder.getEncodedColorIndex( trackPoint.getSpeed());
+    int trackPoint= -1;
+    for (TrackCursor c= track.cursor(); c.next();) {
+      trackPoint= c.getIndex();
+      final float speed= c.getSpeed();
+      if (Float.isNaN( speed))
+	continue; // not derivable, see SpeedBearingCalculator
+      int colorIdx= colorEncoder.getEncodedColorIndex( speed);
       if (colorIdx != lastColorIdx) {
 	// close last polyline...
 	if (polyline != null) {
-	  polyline.getSegments().add( trackPoint);
+	  polyline.addSegment( trackPoint);
 	}
 	// start new polyline...
-	polyline= new PolylineImpl( colorIdx);
+	polyline= new PolylineImpl( colorIdx, track);
 	cruise.getPolyLines().add( polyline);
 	lastColorIdx= colorIdx;
       }
-      polyline.getSegments().add( trackPoint);
+      polyline.addSegment( trackPoint);
     }
     // close last polyline...
     if (polyline != null) {
-      if (trackPoint != null) {
-	polyline.getSegments().add( trackPoint);
+      if (trackPoint != -1) {
+	polyline.addSegment( trackPoint);
       }
       cruise.getPolyLines().add( polyline);
     }
@@ -1,33 +1,116 @@
 package de.marw.fifteenknots.engine;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 import de.marw.fifteenknots.model.PolyLine;
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.model.FixList;
+import de.marw.fifteenknots.nmeareader.Fix;
 
 /**
+ * A polyline that references the end points of its segments by their index in
+ * the track.
+ *
  * @author Martin Weber
  */
 final class PolylineImpl implements PolyLine {
 
-  private final List<TrackEvent> segments= new ArrayList<TrackEvent>();
+  /** the track points of the cruise */
+  private final List<Fix> trackpoints;
+
+  /** indices of the end points into the track */
+  private int[] indices= new int[16];
+
+  private int size;
 
   private final int color;
 
   /**
    * @param colorIdx
    *        the color index for display of this polyline.
+   * @param track
+   *        the track the end points of the segments are taken from.
    */
-  public PolylineImpl( int colorIdx) {
+  public PolylineImpl( int colorIdx, Track track) {
     this.color= colorIdx;
+    this.trackpoints= new FixList( track);
   }
 
   public int getColorIndex() {
     return color;
   }
 
-  public List<TrackEvent> getSegments() {
-    return segments;
+  /**
+   * Appends the specified track point as the end point of a segment.
+   *
+   * @param index
+   *        the index of the track point in the track.
+   */
+  void addSegment( int index) {
+    if (size == indices.length) {
+      indices= Arrays.copyOf( indices, Math.max( 16, size + (size >> 1)));
+    }
+    indices[size++]= index;
+  }
+
+  public List<Fix> getSegments() {
+    return new Segments();
   }
-}
\ No newline at end of file
+
+  /**
+   * Gets the number of end points of segments.
+   */
+  int getSegmentCount() {
+    return size;
+  }
+
+  /**
+   * Gets the index of the specified end point in the track.
+   */
+  int getTrackIndex( int segment) {
+    return indices[segment];
+  }
+
+  /**
+   * Removes the end points of segments that are not flagged to be kept.
+   *
+   * @param keep
+   *        a flag for each end point.
+   */
+  void retainSegments( boolean[] keep) {
+    int n= 0;
+    for (int i= 0; i < size; i++) {
+      if (keep[i]) {
+	indices[n++]= indices[i];
+      }
+    }
+    size= n;
+    indices= Arrays.copyOf( indices, n);
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * The end points of the segments, read from the track.
+   */
+  private class Segments extends AbstractList<Fix> implements
+    RandomAccess {
+
+    @Override
+    public Fix get( int index) {
+      if (index >= size)
+	throw new IndexOutOfBoundsException( "Index: " + index + ", Size: "
+	  + size);
+      return trackpoints.get( indices[index]);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  } // Segments
+}
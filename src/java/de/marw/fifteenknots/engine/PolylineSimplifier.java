@@ -0,0 +1,209 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.engine;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import de.marw.fifteenknots.model.FixList;
+import de.marw.fifteenknots.model.PolyLine;
+import de.marw.fifteenknots.model.SpeedCruise;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.nmeareader.Position;
+
+
+/**
+ * Reduces the number of points of the {@link PolyLine}s of a
+ * {@code SpeedCruise} with the Douglas-Peucker algorithm: a point is dropped,
+ * if the line without it deviates less than a tolerance from the line with
+ * it. The first and last point of each polyline are always kept, so the
+ * boundaries between the speed colors stay where they are. Afterwards, only
+ * the remaining points are {@linkplain SpeedCruise#setMarkedFixes(java.util.List)
+ * marked} in the output.
+ * <p>
+ * Distances are measured in a local equirectangular projection around the
+ * first point of each polyline.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class PolylineSimplifier implements Callable<Object> {
+
+  /** metres per 10^-7 degrees of latitude */
+  private static final double METRES_PER_E7= 1852.0 * 60
+    / Position.E7_PER_DEGREE;
+
+  private final SpeedCruise cruise;
+
+  private final double tolerance;
+
+  /**
+   * @param cruise
+   *        the cruise whose polylines should be simplified.
+   * @param tolerance
+   *        the maximum deviation of the simplified lines in metres.
+   * @throws IllegalArgumentException
+   *         if tolerance is negative.
+   */
+  public PolylineSimplifier( SpeedCruise cruise, double tolerance) {
+    if (cruise == null) {
+      throw new NullPointerException( "cruise");
+    }
+    if ( !(tolerance >= 0)) {
+      throw new IllegalArgumentException( "tolerance");
+    }
+    this.cruise= cruise;
+    this.tolerance= tolerance;
+  }
+
+  /**
+   * Simplifies the cruise's {@linkplain SpeedCruise#getPolyLines() polylines}
+   * in place.
+   *
+   * @return always {@code null}
+   */
+  public Object call() {
+    final Track track= cruise.getTrack();
+    final boolean[] marked= new boolean[track.size()];
+    // a polyline may be listed more than once
+    final Map<PolyLine, Boolean> done=
+      new IdentityHashMap<PolyLine, Boolean>();
+    for (PolyLine line : cruise.getPolyLines()) {
+      if ( !(line instanceof PolylineImpl)
+	|| done.put( line, Boolean.TRUE) != null)
+	continue;
+      final PolylineImpl polyline= (PolylineImpl) line;
+      simplify( polyline, track);
+      for (int i= 0; i < polyline.getSegmentCount(); i++) {
+	marked[polyline.getTrackIndex( i)]= true;
+      }
+    }
+
+    if (done.isEmpty())
+      return null; // nothing drawn, keep marking all track points
+    int count= 0;
+    for (boolean m : marked) {
+      if (m) {
+	count++;
+      }
+    }
+    final int[] indices= new int[count];
+    for (int i= 0, n= 0; n < count; i++) {
+      if (marked[i]) {
+	indices[n++]= i;
+      }
+    }
+    cruise.setMarkedFixes( new FixList( track, indices));
+    return null;
+  }
+
+  /**
+   * Simplifies the specified polyline.
+   */
+  private void simplify( PolylineImpl polyline, Track track) {
+    final int n= polyline.getSegmentCount();
+    if (n < 3)
+      return;
+    final int[] lats= new int[n];
+    final int[] lons= new int[n];
+    for (int i= 0; i < n; i++) {
+      final int idx= polyline.getTrackIndex( i);
+      lats[i]= track.getLatitudeE7( idx);
+      lons[i]= track.getLongitudeE7( idx);
+    }
+    polyline.retainSegments( simplify( lats, lons, n, tolerance));
+  }
+
+  /**
+   * Determines the points of a line that remain after simplification with the
+   * Douglas-Peucker algorithm. The first and the last point are always kept.
+   *
+   * @param lats
+   *        the latitudes of the points in 10<sup>-7</sup> degrees
+   * @param lons
+   *        the longitudes of the points in 10<sup>-7</sup> degrees
+   * @param count
+   *        the number of points of the line
+   * @param tolerance
+   *        the maximum deviation of the simplified line in metres.
+   * @return an array of {@code count} elements, each telling whether the
+   *         point with the same index is kept.
+   */
+  public static boolean[] simplify( int[] lats, int[] lons, int count,
+    double tolerance) {
+    final boolean[] keep= new boolean[count];
+    if (count < 3) {
+      Arrays.fill( keep, true);
+      return keep;
+    }
+    // project the points into a plane, in metres...
+    final double[] x= new double[count];
+    final double[] y= new double[count];
+    final double cosLat=
+      Math.cos( Math.toRadians( Position.toDegrees( lats[0])));
+    for (int i= 0; i < count; i++) {
+      x[i]= lons[i] * METRES_PER_E7 * cosLat;
+      y[i]= lats[i] * METRES_PER_E7;
+    }
+
+    keep[0]= true;
+    keep[count - 1]= true;
+    final double tolerance2= tolerance * tolerance;
+    // ranges still to examine, instead of recursion
+    int[] stack= new int[64];
+    int sp= 0;
+    stack[sp++]= 0;
+    stack[sp++]= count - 1;
+    while (sp > 0) {
+      final int last= stack[--sp];
+      final int first= stack[--sp];
+      double maxDist2= -1;
+      int farthest= -1;
+      for (int i= first + 1; i < last; i++) {
+	final double d2=
+	  distance2( x[i], y[i], x[first], y[first], x[last], y[last]);
+	if (d2 > maxDist2) {
+	  maxDist2= d2;
+	  farthest= i;
+	}
+      }
+      if (farthest >= 0 && maxDist2 > tolerance2) {
+	keep[farthest]= true;
+	if (sp + 4 > stack.length) {
+	  stack= Arrays.copyOf( stack, stack.length * 2);
+	}
+	stack[sp++]= first;
+	stack[sp++]= farthest;
+	stack[sp++]= farthest;
+	stack[sp++]= last;
+      }
+    }
+    return keep;
+  }
+
+  /**
+   * Gets the square of the distance of point P from the line segment AB.
+   */
+  private static double distance2( double px, double py, double ax,
+    double ay, double bx, double by) {
+    final double dx= bx - ax;
+    final double dy= by - ay;
+    final double len2= dx * dx + dy * dy;
+    double t= 0;
+    if (len2 > 0) {
+      t= ((px - ax) * dx + (py - ay) * dy) / len2;
+      if (t < 0) {
+	t= 0;
+      }
+      else if (t > 1) {
+	t= 1;
+      }
+    }
+    final double ex= ax + t * dx - px;
+    final double ey= ay + t * dy - py;
+    return ex * ex + ey * ey;
+  }
+}
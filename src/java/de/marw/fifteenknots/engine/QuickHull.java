@@ -6,8 +6,9 @@ package de.marw.fifteenknots.engine;
 import java.util.ArrayList;
 import java.util.List;
 
-import de.marw.fifteenknots.nmeareader.Position2D;
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.model.TrackCursor;
+import de.marw.fifteenknots.nmeareader.Position;
 
 
 /**
@@ -24,10 +25,18 @@ public class QuickHull {
    * Calculates the convex hull of a set of points using the QuickHull
    * algorithm. Convenience method.
    */
-  public static List<Position2D> quickHullOfTrack( final List<TrackEvent> track) {
-    final List<Position2D> pts= new ArrayList<Position2D>( track.size());
-    for (TrackEvent trackEvent : track) {
-      pts.add( trackEvent.getPosition());
+  public static List<Position> quickHullOfTrack( final Track track) {
+    final List<Position> pts= new ArrayList<Position>( track.size());
+    int lastLat= 0, lastLon= 0;
+    for (TrackCursor c= track.cursor(); c.next();) {
+      final int lat= c.getLatitudeE7();
+      final int lon= c.getLongitudeE7();
+      // skip repeated positions, e.g. while at anchor
+      if (pts.isEmpty() || lat != lastLat || lon != lastLon) {
+	pts.add( Position.fromE7( lat, lon));
+	lastLat= lat;
+	lastLon= lon;
+      }
     }
     return quickHull( pts);
   }
@@ -40,18 +49,18 @@ public class QuickHull {
    *        the set of points. Note that the passed in List will be modified by
    *        the algorithm.
    */
-  public static List<Position2D> quickHull( final List<Position2D> points) {
-    final List<Position2D> convexHull= new ArrayList<Position2D>();
+  public static List<Position> quickHull( final List<Position> points) {
+    final List<Position> convexHull= new ArrayList<Position>();
     int numPoints= points.size();
     if (numPoints < 3) {
-      return new ArrayList<Position2D>( points);
+      return new ArrayList<Position>( points);
     }
     // find extremals
     int minPointIdx= -1, maxPointIdx= -1;
     double minX= Double.MAX_VALUE;
     double maxX= Double.MIN_VALUE;
     for (int i= 0; i < numPoints; i++) {
-      final Position2D point= points.get( i);
+      final Position point= points.get( i);
       if (point.getLongitude() < minX) {
 	minX= point.getLongitude();
 	minPointIdx= i;
@@ -61,18 +70,18 @@ public class QuickHull {
 	maxPointIdx= i;
       }
     }
-    final Position2D A= points.get( minPointIdx);
-    final Position2D B= points.get( maxPointIdx);
+    final Position A= points.get( minPointIdx);
+    final Position B= points.get( maxPointIdx);
     convexHull.add( A);
     convexHull.add( B);
     points.remove( A);
     points.remove( B);
     // Determine who's to the left or right of AB...
-    final List<Position2D> leftSet= new ArrayList<Position2D>();
-    final List<Position2D> rightSet= new ArrayList<Position2D>();
+    final List<Position> leftSet= new ArrayList<Position>();
+    final List<Position> rightSet= new ArrayList<Position>();
     numPoints= points.size();
     for (int i= 0; i < numPoints; i++) {
-      final Position2D p= points.get( i);
+      final Position p= points.get( i);
       if (pointLocation( A, B, p) == -1)
 	leftSet.add( p);
       else rightSet.add( p);
@@ -94,8 +103,8 @@ public class QuickHull {
    *        the point to test
    * @return -1, 1
    */
-  private static int pointLocation( final Position2D segmentStart,
-    final Position2D segmentEnd, final Position2D point) {
+  private static int pointLocation( final Position segmentStart,
+    final Position segmentEnd, final Position point) {
     // NOTE: This code implies a flat, rectangular world
     // compute cross product
     final double cp1=
@@ -118,8 +127,8 @@ public class QuickHull {
    *        the point to test
    * @return the pseudo distance (no square root is taken)
    */
-  private static double distance( final Position2D segmentStart,
-    final Position2D segmentEnd, final Position2D point) {
+  private static double distance( final Position segmentStart,
+    final Position segmentEnd, final Position point) {
     // NOTE: This code implies a flat, rectangular world
     final double ABx= segmentEnd.getLatitude() - segmentStart.getLatitude();
     final double ABy= segmentEnd.getLongitude() - segmentStart.getLongitude();
@@ -131,16 +140,16 @@ public class QuickHull {
     return num;
   }
 
-  private static void hullSet( final List<Position2D> hull,
-    final Position2D segmentStart, final Position2D segmentEnd,
-    final List<Position2D> set) {
+  private static void hullSet( final List<Position> hull,
+    final Position segmentStart, final Position segmentEnd,
+    final List<Position> set) {
 
     final int insertPosition= hull.indexOf( segmentEnd);
     int numPoints= set.size();
     if (numPoints == 0)
       return;
     if (numPoints == 1) {
-      final Position2D p= set.get( 0);
+      final Position p= set.get( 0);
       set.remove( p);
       hull.add( insertPosition, p);
       return;
@@ -148,30 +157,30 @@ public class QuickHull {
     double dist= Double.MIN_VALUE;
     int furthestPointIdx= -1;
     for (int i= 0; i < numPoints; i++) {
-      final Position2D p= set.get( i);
+      final Position p= set.get( i);
       final double distance= distance( segmentStart, segmentEnd, p);
       if (distance > dist) {
 	dist= distance;
 	furthestPointIdx= i;
       }
     }
-    final Position2D P= set.get( furthestPointIdx);
+    final Position P= set.get( furthestPointIdx);
     set.remove( furthestPointIdx);
     hull.add( insertPosition, P);
     // Determine who's to the left of AP
-    final ArrayList<Position2D> leftSetAP= new ArrayList<Position2D>();
+    final ArrayList<Position> leftSetAP= new ArrayList<Position>();
     numPoints= set.size();
     for (int i= 0; i < numPoints; i++) {
-      final Position2D M= set.get( i);
+      final Position M= set.get( i);
       if (pointLocation( segmentStart, P, M) == 1) {
 	// set.remove(M);
 	leftSetAP.add( M);
       }
     }
     // Determine who's to the left of PB
-    final ArrayList<Position2D> leftSetPB= new ArrayList<Position2D>();
+    final ArrayList<Position> leftSetPB= new ArrayList<Position>();
     for (int i= 0; i < numPoints; i++) {
-      final Position2D M= set.get( i);
+      final Position M= set.get( i);
       if (pointLocation( P, segmentEnd, M) == 1) {
 	// set.remove(M);
 	leftSetPB.add( M);
@@ -6,8 +6,8 @@ package de.marw.fifteenknots.engine;
 import java.util.List;
 import java.util.concurrent.Callable;
 
-import de.marw.fifteenknots.nmeareader.Position2D;
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.nmeareader.Position;
 
 
 /**
@@ -15,9 +15,9 @@ import de.marw.fifteenknots.nmeareader.TrackEvent;
  *
  * @author Martin Weber
  */
-public class QuickHullCalculator implements Callable<List<Position2D>> {
+public class QuickHullCalculator implements Callable<List<Position>> {
 
-  private List<TrackEvent> track;
+  private Track track;
 
   /**
    * Constructs a new object that calculates the convex hull the specified track
@@ -26,7 +26,7 @@ public class QuickHullCalculator implements Callable<List<Position2D>> {
    * @param track
    *        the track points
    */
-  public QuickHullCalculator( List<TrackEvent> track) {
+  public QuickHullCalculator( Track track) {
     if (track == null) {
       throw new NullPointerException( "track");
     }
@@ -38,7 +38,7 @@ public class QuickHullCalculator implements Callable<List<Position2D>> {
    *
    * @see Callable#call()
    */
-  public List<Position2D> call() throws Exception {
+  public List<Position> call() throws Exception {
     return QuickHull.quickHullOfTrack( track);
   }
 }
@@ -3,12 +3,10 @@
 
 package de.marw.fifteenknots.engine;
 
-import java.util.List;
-
 import de.marw.fifteenknots.model.Boat;
 import de.marw.fifteenknots.model.Cruise;
 import de.marw.fifteenknots.model.RaceModel;
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.model.Track;
 
 
 /**
@@ -32,6 +30,6 @@ public interface RaceModelFactory {
    * @param track
    *        the track point of the boat.
    */
-  public Cruise createCruise( Boat boat, List<TrackEvent> track);
+  public Cruise createCruise( Boat boat, Track track);
 
 }
@@ -0,0 +1,137 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.engine;
+
+import java.util.concurrent.Callable;
+
+import de.marw.fifteenknots.model.Cruise;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.model.TrackCursor;
+import de.marw.fifteenknots.nmeareader.Position;
+
+
+/**
+ * Derives the speed over ground and the course of those track points of a
+ * cruise that have no speed or bearing, e.g. because the GPS logger wrote GGA
+ * sentences only. Values present in the track are never changed.
+ * <p>
+ * Speed and course are computed from the positions and dates of the
+ * neighbouring track points (central difference, one-sided at the ends of the
+ * track). Distances are measured in a local equirectangular projection, that
+ * is one minute of latitude is one nautical mile, which is accurate enough
+ * for the short distances between consecutive track points.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class SpeedBearingCalculator implements Callable<Object> {
+
+  /** milliseconds per hour */
+  private static final double MILLIS_PER_HOUR= 60 * 60 * 1000;
+
+  /** nautical miles per 10^-7 degrees of latitude */
+  private static final double NM_PER_E7= 60.0 / Position.E7_PER_DEGREE;
+
+  /** radians per 10^-7 degrees */
+  private static final double RAD_PER_E7=
+    Math.PI / 180 / Position.E7_PER_DEGREE;
+
+  /** 10^-7 degrees of a full circle of longitude */
+  private static final long FULL_CIRCLE_E7= 360L * Position.E7_PER_DEGREE;
+
+  private final Cruise cruise;
+
+  /**
+   * @param cruise
+   *        the cruise whose track points should be completed.
+   */
+  public SpeedBearingCalculator( Cruise cruise) {
+    if (cruise == null) {
+      throw new NullPointerException( "cruise");
+    }
+    this.cruise= cruise;
+  }
+
+  /**
+   * Computes the missing speed and bearing values of the cruise's
+   * {@linkplain Cruise#getTrack() track points} and stores these values in
+   * the track.
+   *
+   * @return always {@code null}
+   */
+  public Object call() {
+    final Track track= cruise.getTrack();
+    final int size= track.size();
+    if (size < 2)
+      return null;
+
+    // copy the track into arrays, if any value is missing...
+    final long[] dates= new long[size];
+    final int[] lats= new int[size];
+    final int[] lons= new int[size];
+    final boolean[] missing= new boolean[size];
+    boolean anyMissing= false;
+    for (TrackCursor c= track.cursor(); c.next();) {
+      final int i= c.getIndex();
+      dates[i]= c.getDate();
+      lats[i]= c.getLatitudeE7();
+      lons[i]= c.getLongitudeE7();
+      missing[i]= Float.isNaN( c.getSpeed()) || Float.isNaN( c.getBearing());
+      anyMissing|= missing[i];
+    }
+    if ( !anyMissing)
+      return null;
+
+    // components of each leg i -> i+1 in nautical miles and hours...
+    final int legs= size - 1;
+    final double[] north= new double[legs];
+    final double[] east= new double[legs];
+    final double[] hours= new double[legs];
+    for (int i= 0; i < legs; i++) {
+      long dLon= (long) lons[i + 1] - lons[i];
+      // take the short way across the antimeridian
+      if (dLon > FULL_CIRCLE_E7 / 2) {
+	dLon-= FULL_CIRCLE_E7;
+      }
+      else if (dLon < -FULL_CIRCLE_E7 / 2) {
+	dLon+= FULL_CIRCLE_E7;
+      }
+      final double midLat= ((long) lats[i] + lats[i + 1]) * 0.5 * RAD_PER_E7;
+      north[i]= ((long) lats[i + 1] - lats[i]) * NM_PER_E7;
+      east[i]= dLon * NM_PER_E7 * Math.cos( midLat);
+      hours[i]= (dates[i + 1] - dates[i]) / MILLIS_PER_HOUR;
+    }
+
+    // fill the gaps from the legs adjacent to each track point...
+    for (int i= 0; i < size; i++) {
+      if ( !missing[i])
+	continue;
+      double n= 0, e= 0, h= 0;
+      if (i > 0) {
+	n+= north[i - 1];
+	e+= east[i - 1];
+	h+= hours[i - 1];
+      }
+      if (i < legs) {
+	n+= north[i];
+	e+= east[i];
+	h+= hours[i];
+      }
+      if ( !(h > 0))
+	continue; // no time passed, speed is undefined
+      if (Float.isNaN( track.getSpeed( i))) {
+	track.setSpeed( i, (float) (Math.hypot( n, e) / h));
+      }
+      if (Float.isNaN( track.getBearing( i)) && (n != 0 || e != 0)) {
+	double bearing= Math.toDegrees( Math.atan2( e, n));
+	if (bearing < 0) {
+	  bearing+= 360;
+	}
+	track.setBearing( i, (float) bearing);
+      }
+    }
+    return null;
+  }
+
+}
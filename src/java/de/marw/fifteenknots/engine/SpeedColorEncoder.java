@@ -86,7 +86,7 @@ public class SpeedColorEncoder {
    *         value will be greater or equal than zero and less than the number
    *         of colors provided in the constructor.
    */
-  public int getEncodedColorIndex( Float speed) {
+  public int getEncodedColorIndex( float speed) {
     int idx= Arrays.binarySearch( speeds, speed);
     if (idx >= 0) {
       if (idx >= speeds.length) {
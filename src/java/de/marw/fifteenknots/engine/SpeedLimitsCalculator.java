@@ -6,7 +6,7 @@ package de.marw.fifteenknots.engine;
 import java.util.concurrent.Callable;
 
 import de.marw.fifteenknots.model.SpeedCruise;
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.model.TrackCursor;
 
 
 /**
@@ -32,7 +32,7 @@ public class SpeedLimitsCalculator implements Callable<Object> {
 
   /**
    * Calulates the maximum and minimum speed that a boat reached on its cruise
-   * from the cruise's {@linkplain SpeedCruise#getTrackpoints() track points}
+   * from the cruise's {@linkplain SpeedCruise#getTrack() track points}
    * and stores these values in the cruise object..
    *
    * @return always {@code null}
@@ -40,10 +40,9 @@ public class SpeedLimitsCalculator implements Callable<Object> {
   public Object call() {
     float speedMin= Float.MAX_VALUE;
     float speedMax= Float.MIN_VALUE;
-    for (TrackEvent evt : cruise.getTrackpoints()) {
-      final Float speed= evt.getSpeed();
-      if (speed != null) {
-	float speedF= speed.floatValue();
+    for (TrackCursor c= cruise.getTrack().cursor(); c.next();) {
+      final float speedF= c.getSpeed();
+      if ( !Float.isNaN( speedF)) {
 	if (speedF < speedMin) {
 	  speedMin= speedF;
 	}
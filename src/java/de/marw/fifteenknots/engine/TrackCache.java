@@ -0,0 +1,276 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import de.marw.fifteenknots.model.MutableTrack;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.model.TrackSerializer;
+
+
+/**
+ * A cache of parsed tracks on disk, so that input files that have been read
+ * before need not be parsed again. Each input file has a cache file of its own
+ * in the cache directory. A cache file is used only if the path, size,
+ * modification time and a hash of the head and tail of the input file are the
+ * same as when the cache file was written. Since only the head and tail are
+ * read, checking whether a cache file is fresh is cheap even for huge input
+ * files. The track points are stored in the format of {@link TrackSerializer}.
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class TrackCache
+{
+  /** identifies a cache file */
+  private static final int MAGIC= 0x31354b54; // "15KT"
+
+  private static final int VERSION= 4;
+
+  /** number of bytes at the head and the tail of an input file to hash */
+  private static final int HASHED_BYTES= 64 * 1024;
+
+  private final File directory;
+
+  /**
+   * @param directory
+   *        the directory to store the cache files in. Will be created when
+   *        the first cache file is written.
+   */
+  public TrackCache( File directory)
+  {
+    if (directory == null) {
+      throw new NullPointerException( "directory");
+    }
+    this.directory= directory;
+  }
+
+  /**
+   * Gets the directory the cache files are stored in.
+   */
+  public File getDirectory()
+  {
+    return this.directory;
+  }
+
+  /**
+   * Reads the properties of the specified input file that decide whether a
+   * cache file is fresh. This reads at most the first and the last 64 KiB of
+   * the input file to compute the hash.
+   *
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public Fingerprint fingerprint( File file) throws IOException
+  {
+    final File canonical= file.getCanonicalFile();
+    final long lastModified= canonical.lastModified();
+    final CRC32 crc= new CRC32();
+    final RandomAccessFile in= new RandomAccessFile( canonical, "r");
+    final long size;
+    try {
+      size= in.length();
+      final byte[] buf= new byte[(int) Math.min( size, 2 * HASHED_BYTES)];
+      if (size <= buf.length) {
+        in.readFully( buf);
+      }
+      else {
+        in.readFully( buf, 0, HASHED_BYTES);
+        in.seek( size - HASHED_BYTES);
+        in.readFully( buf, HASHED_BYTES, HASHED_BYTES);
+      }
+      crc.update( buf);
+    }
+    finally {
+      in.close();
+    }
+    return new Fingerprint( canonical.getPath(), size, lastModified, (int) crc
+      .getValue());
+  }
+
+  /**
+   * Appends the cached track points of an input file to the specified track.
+   * The track points are read directly into the track, once the header of
+   * the cache file matched the fingerprint.
+   *
+   * @param fingerprint
+   *        the fingerprint of the input file.
+   * @param track
+   *        the track to append the track points to.
+   * @return {@code true} if a fresh cache file was found and its track points
+   *         were appended, otherwise {@code false}. If the cache file turned
+   *         out to be truncated or corrupt after its header, the track may
+   *         hold some of its track points and must be discarded; otherwise
+   *         the track is unchanged.
+   * @throws IOException
+   *         If an I/O error occurs while reading a fresh cache file
+   */
+  public boolean load( Fingerprint fingerprint, MutableTrack track)
+    throws IOException
+  {
+    final File cacheFile= getCacheFile( fingerprint);
+    if ( !cacheFile.isFile())
+      return false;
+    final DataInputStream in=
+      new DataInputStream( new BufferedInputStream( new FileInputStream(
+        cacheFile), 64 * 1024));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        return false;
+      final long size= in.readLong();
+      final long lastModified= in.readLong();
+      final int hash= in.readInt();
+      if (size != fingerprint.size || lastModified != fingerprint.lastModified
+        || hash != fingerprint.hash || !in.readUTF().equals( fingerprint.path))
+        return false;
+      TrackSerializer.read( in, track);
+    }
+    catch (EOFException ex) {
+      // a truncated cache file is stale
+      return false;
+    }
+    catch (StreamCorruptedException ex) {
+      return false;
+    }
+    finally {
+      in.close();
+    }
+    return true;
+  }
+
+  /**
+   * Writes the track points of an input file to its cache file. The cache
+   * file is replaced atomically, so concurrent readers never see a partial
+   * file. Nothing is written if the input file changed since the fingerprint
+   * was taken, since the track points might then stem from either version.
+   * Errors are ignored, since the cache is an optimization only.
+   *
+   * @param fingerprint
+   *        the fingerprint of the input file, taken before it was parsed.
+   * @param track
+   *        the track points read from the input file.
+   */
+  public void store( Fingerprint fingerprint, Track track)
+  {
+    File tmp= null;
+    try {
+      if ( !fingerprint.equals( fingerprint( new File( fingerprint.path))))
+        return; // modified while parsed
+      directory.mkdirs();
+      tmp= File.createTempFile( "track", ".tmp", directory);
+      final DataOutputStream out=
+        new DataOutputStream( new BufferedOutputStream( new FileOutputStream(
+          tmp), 64 * 1024));
+      try {
+        out.writeInt( MAGIC);
+        out.writeInt( VERSION);
+        out.writeLong( fingerprint.size);
+        out.writeLong( fingerprint.lastModified);
+        out.writeInt( fingerprint.hash);
+        out.writeUTF( fingerprint.path);
+        TrackSerializer.write( track, out);
+      }
+      finally {
+        out.close();
+      }
+      Files.move( tmp.toPath(), getCacheFile( fingerprint).toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      tmp= null;
+    }
+    catch (IOException ignore) {
+      // the input file will be parsed again next time
+    }
+    finally {
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  /**
+   * Gets the cache file of the specified input file. The name of the cache
+   * file is derived from the path of the input file.
+   */
+  private File getCacheFile( Fingerprint fingerprint)
+  {
+    // 64-bit FNV-1a hash of the path
+    long h= 0xcbf29ce484222325L;
+    final String path= fingerprint.path;
+    for (int i= 0; i < path.length(); i++) {
+      h^= path.charAt( i);
+      h*= 0x100000001b3L;
+    }
+    return new File( directory, Long.toHexString( h) + ".trk");
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * The properties of an input file that decide whether a cache file is
+   * fresh.
+   *
+   * @author Martin Weber
+   */
+  public static class Fingerprint
+  {
+    /** the canonical path of the input file */
+    final String path;
+
+    final long size;
+
+    final long lastModified;
+
+    /** CRC-32 of the head and the tail of the file content */
+    final int hash;
+
+    Fingerprint( String path, long size, long lastModified, int hash)
+    {
+      this.path= path;
+      this.size= size;
+      this.lastModified= lastModified;
+      this.hash= hash;
+    }
+
+    /*-
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals( Object obj)
+    {
+      if (this == obj)
+        return true;
+      if ( !(obj instanceof Fingerprint))
+        return false;
+      final Fingerprint other= (Fingerprint) obj;
+      return size == other.size && lastModified == other.lastModified
+        && hash == other.hash && path.equals( other.path);
+    }
+
+    /*-
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode()
+    {
+      return path.hashCode() ^ hash;
+    }
+  } // Fingerprint
+}
@@ -3,17 +3,17 @@
 
 package de.marw.fifteenknots.engine;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.Vector;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -22,30 +22,78 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import de.marw.fifteenknots.nmeareader.ITrackListener;
+import de.marw.fifteenknots.model.HeapTrackStorage;
+import de.marw.fifteenknots.model.MutableTrack;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.model.TrackStorage;
+import de.marw.fifteenknots.nmeareader.ITrackBlockListener;
 import de.marw.fifteenknots.nmeareader.NmeaParser;
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.nmeareader.ParallelNmeaParser;
+import de.marw.fifteenknots.nmeareader.TrackBlock;
 
 
 /**
- * Reads all input files for a {@code Boat}, extracts the the {@link TrackEvent
- * track points} and returns the {@link TrackEvent track points} from the
- * {@link #generate()} method.
+ * Reads all input files for a {@code Boat}, extracts the the track points and
+ * returns the {@link Track track} from the {@link #generate()} method.
  *
  * @author Martin Weber
  */
 public class TrackGenerator
 {
+  /** the names of the files to read, in the order they were added */
   private Set<String> fileNames;
 
+  /** creates the tracks the track points are stored in */
+  private TrackStorage trackStorage;
+
+  /** the cache of parsed tracks or {@code null} */
+  private TrackCache trackCache;
+
   /**
-   * Constructs a new object with zero files to read in.
+   * Constructs a new object with zero files to read in that stores the track
+   * points on the java heap.
    *
    * @see #addFileName(String)
    */
   public TrackGenerator()
   {
-    fileNames= new HashSet<String>( 2);
+    this( new HeapTrackStorage());
+  }
+
+  /**
+   * Constructs a new object with zero files to read in.
+   *
+   * @param trackStorage
+   *        creates the tracks the track points are stored in.
+   * @see #addFileName(String)
+   */
+  public TrackGenerator( TrackStorage trackStorage)
+  {
+    fileNames= new LinkedHashSet<String>( 2);
+    setTrackStorage( trackStorage);
+  }
+
+  /**
+   * Sets the storage that creates the tracks the track points are stored in.
+   */
+  public void setTrackStorage( TrackStorage trackStorage)
+  {
+    if (trackStorage == null) {
+      throw new NullPointerException( "trackStorage");
+    }
+    this.trackStorage= trackStorage;
+  }
+
+  /**
+   * Sets the cache of parsed tracks. If set, input files that have been read
+   * before are not parsed again.
+   *
+   * @param trackCache
+   *        the cache or {@code null} to parse all input files.
+   */
+  public void setTrackCache( TrackCache trackCache)
+  {
+    this.trackCache= trackCache;
   }
 
   /**
@@ -79,26 +127,33 @@ public class TrackGenerator
   // }
 
   /**
-   * Reads all input files and gathers track events.
+   * Reads all input files and gathers track points. Each file is read into a
+   * buffer of its own. If more than one file was read, the buffers are
+   * concatenated if their time ranges do not overlap or merged otherwise.
+   * Track points with equal time stamps are taken in the order their files
+   * were added, so the result does not depend on the order the files are
+   * read in.
    *
    * @throws FileNotFoundException
    *         if the specified file cannot be found
    * @throws IOException
    *         If an I/O error occurs
-   * @return all track events, sorted by time stamp.
+   * @return all track points, sorted by time stamp.
    * @see #addFileNames(Collection)
    */
-  public List<TrackEvent> generate() throws FileNotFoundException, IOException
+  public Track generate() throws FileNotFoundException, IOException
   {
-    Vector<TrackEvent> trackBuffer= new Vector<TrackEvent>( 60 * 60, 5 * 60);
-    TrackBufferAppender bufferAppender= new TrackBufferAppender( trackBuffer);
-
     final int fileCnt= fileNames.size();
     ArrayList<Callable<Object>> workers=
       new ArrayList<Callable<Object>>( fileCnt);
+    final List<TrackBufferAppender> buffers=
+      new ArrayList<TrackBufferAppender>( fileCnt);
     // create workers..
     for (String fileName : fileNames) {
-      workers.add( new InputFileWorker( fileName, bufferAppender));
+      final TrackBufferAppender bufferAppender=
+        new TrackBufferAppender( trackStorage);
+      buffers.add( bufferAppender);
+      workers.add( new InputFileWorker( fileName, bufferAppender, trackCache));
     }
 
     // start workers and wait for all to finish
@@ -133,75 +188,220 @@ public class TrackGenerator
       // ignore and finish
     }
 
-    if (fileCnt > 1) {
-      Collections.sort( trackBuffer, new ByDateComparator());
+    if (fileCnt == 1) {
+      final MutableTrack track= buffers.get( 0).getBuffer();
+      track.trimToSize();
+      return track;
+    }
+    final List<MutableTrack> tracks= new ArrayList<MutableTrack>( fileCnt);
+    for (TrackBufferAppender bufferAppender : buffers) {
+      final MutableTrack track= bufferAppender.getBuffer();
+      if (track.size() > 0) {
+        if ( !isSorted( track)) {
+          track.sortByDate();
+        }
+        tracks.add( track);
+      }
+      else {
+        track.dispose();
+      }
+    }
+    final MutableTrack result= merge( tracks);
+    for (MutableTrack track : tracks) {
+      track.dispose();
+    }
+    result.trimToSize();
+    return result;
+  }
+
+  /**
+   * Gets whether the specified track points are in ascending order of their
+   * time stamps.
+   */
+  private static boolean isSorted( Track track)
+  {
+    long last= Long.MIN_VALUE;
+    final int size= track.size();
+    for (int i= 0; i < size; i++) {
+      final long date= track.getDate( i);
+      if (date < last)
+        return false;
+      last= date;
     }
-    return trackBuffer;
+    return true;
+  }
+
+  /**
+   * Combines sorted tracks to a single sorted track. The tracks are
+   * concatenated if their time ranges do not overlap, otherwise they are
+   * merged with a k-way merge. Track points with equal time stamps are taken
+   * in the order of the tracks.
+   *
+   * @param tracks
+   *        non-empty tracks, each sorted by time stamp.
+   */
+  private MutableTrack merge( List<MutableTrack> tracks)
+  {
+    int size= 0;
+    for (Track track : tracks) {
+      size+= track.size();
+    }
+    final MutableTrack result= trackStorage.createTrack( size);
+
+    // order by first time stamp, check for overlapping time ranges...
+    final List<MutableTrack> byStart= new ArrayList<MutableTrack>( tracks);
+    Collections.sort( byStart, new Comparator<Track>() {
+
+      public int compare( Track o1, Track o2)
+      {
+        return compareDates( o1.getDate( 0), o2.getDate( 0));
+      }
+    });
+    boolean overlap= false;
+    for (int i= 1; i < byStart.size(); i++) {
+      final Track previous= byStart.get( i - 1);
+      final long last= previous.getDate( previous.size() - 1);
+      if (compareDates( last, byStart.get( i).getDate( 0)) >= 0) {
+        overlap= true;
+        break;
+      }
+    }
+    if ( !overlap) {
+      for (Track track : byStart) {
+        final int trackSize= track.size();
+        for (int i= 0; i < trackSize; i++) {
+          result.add( track, i);
+        }
+      }
+      return result;
+    }
+
+    // k-way merge...
+    final PriorityQueue<MergeCursor> heap=
+      new PriorityQueue<MergeCursor>( tracks.size());
+    for (int i= 0; i < tracks.size(); i++) {
+      heap.add( new MergeCursor( tracks.get( i), i));
+    }
+    while ( !heap.isEmpty()) {
+      final MergeCursor cursor= heap.poll();
+      result.add( cursor.track, cursor.index);
+      if (cursor.next()) {
+        heap.add( cursor);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Compares the specified time stamps.
+   */
+  private static int compareDates( long d1, long d2)
+  {
+    return d1 < d2
+      ? -1 : (d1 == d2
+        ? 0 : 1);
   }
 
   // //////////////////////////////////////////////////////////////////
   // inner classes
   // //////////////////////////////////////////////////////////////////
   /**
-   * Appends {@link TrackEvent}s to a buffer.
+   * Appends the track points of a single file to a buffer, a block at a time.
    *
    * @author Martin Weber
    */
-  private static class TrackBufferAppender implements ITrackListener
+  private static class TrackBufferAppender implements ITrackBlockListener
   {
+    /** the initial capacity of a buffer, an hour of track points */
+    private static final int INITIAL_CAPACITY= 60 * 60;
 
-    /** shared track buffer */
-    private Vector<TrackEvent> buffer;
+    private final TrackStorage trackStorage;
+
+    /** track buffer of a single file */
+    private MutableTrack buffer;
 
     /**
-     * @param buffer
-     *        the shared buffer to fill with track events.
+     * @param trackStorage
+     *        where to store the track points.
      */
-    public TrackBufferAppender( Vector<TrackEvent> buffer)
+    public TrackBufferAppender( TrackStorage trackStorage)
     {
-      if (buffer == null) {
-        throw new NullPointerException( "buffer");
-      }
-      this.buffer= buffer;
+      this.trackStorage= trackStorage;
+      this.buffer= trackStorage.createTrack( INITIAL_CAPACITY);
+    }
+
+    /**
+     * Gets the buffer filled with track points.
+     */
+    public MutableTrack getBuffer()
+    {
+      return this.buffer;
+    }
+
+    /**
+     * Frees the buffer and replaces it by an empty one.
+     */
+    public void discardBuffer()
+    {
+      buffer.dispose();
+      buffer= trackStorage.createTrack( INITIAL_CAPACITY);
     }
 
     /*-
-     * @see de.marw.fifteenknots.nmeareader.ITrackListener#trackPoint(de.marw.fifteenknots.nmeareader.TrackEvent)
+     * @see de.marw.fifteenknots.nmeareader.ITrackBlockListener#trackPoints(de.marw.fifteenknots.nmeareader.TrackBlock)
      */
-    public void trackPoint( TrackEvent evt)
+    public void trackPoints( TrackBlock block)
     {
-      buffer.add( evt);
+      final int size= block.size();
+      for (int i= 0; i < size; i++) {
+        buffer.addE7( block.getDate( i), block.getLatitudeE7( i), block
+          .getLongitudeE7( i), block.getSpeed( i), block.getBearing( i));
+      }
     }
 
   }// TrackBufferAppender
 
   private static class InputFileWorker implements Callable<Object>
   {
-    private NmeaParser parser;
+    private final File file;
+
+    private final String fileName;
+
+    private final TrackBufferAppender bufferAppender;
+
+    /** the cache of parsed tracks or {@code null} */
+    private final TrackCache trackCache;
 
     /**
      * @param fileName
-     * @param trackListener
+     * @param bufferAppender
+     * @param trackCache
+     *        the cache of parsed tracks or {@code null}
      * @throws FileNotFoundException
      *         if the specified file cannot be found
      */
-    public InputFileWorker( String fileName, ITrackListener trackListener)
+    public InputFileWorker( String fileName,
+      TrackBufferAppender bufferAppender, TrackCache trackCache)
       throws FileNotFoundException
     {
       if (fileName == null) {
         throw new NullPointerException( "fileName");
       }
-      if (trackListener == null) {
-        throw new NullPointerException( "trackListener");
+      if (bufferAppender == null) {
+        throw new NullPointerException( "bufferAppender");
+      }
+      this.bufferAppender= bufferAppender;
+      this.trackCache= trackCache;
+      this.fileName= fileName;
+      this.file= new File( fileName);
+      if ( !file.isFile()) {
+        throw new FileNotFoundException( fileName);
       }
-
-      FileInputStream stream= new FileInputStream( fileName);
-      parser= new NmeaParser( stream, fileName);
-      parser.addTrackListener( trackListener);
     }
 
     /**
-     * Parses the input file and appends events to the buffer.
+     * Parses the input file and appends events to the buffer. If the track of
+     * the file is cached, the cached track points are appended instead.
      *
      * @return always {@code null}
      * @throws IOException
@@ -209,22 +409,92 @@ public class TrackGenerator
      */
     public Object call() throws IOException
     {
-      parser.parse();
+      TrackCache.Fingerprint fingerprint= null;
+      if (trackCache != null) {
+        fingerprint= trackCache.fingerprint( file);
+        if (trackCache.load( fingerprint, bufferAppender.getBuffer())) {
+          return null;
+        }
+        if (bufferAppender.getBuffer().size() > 0) {
+          // the cache file was stale in the middle, start over
+          bufferAppender.discardBuffer();
+        }
+      }
+      if (ParallelNmeaParser.isWorthwhile( file)) {
+        // split large file into chunks
+        final ParallelNmeaParser parallelParser=
+          new ParallelNmeaParser( file, fileName,
+            ThreadPoolExecutorService.getService());
+        parallelParser.addTrackBlockListener( bufferAppender);
+        parallelParser.parse();
+      }
+      else {
+        final NmeaParser parser= new NmeaParser( file, fileName);
+        parser.addTrackBlockListener( bufferAppender);
+        parser.parse();
+      }
+      if (trackCache != null) {
+        trackCache.store( fingerprint, bufferAppender.getBuffer());
+      }
       return null;
     }
 
   }// InputFileWorker
 
-  private static class ByDateComparator implements Comparator<TrackEvent>
+  /**
+   * Points to a track point of a sorted track. Cursors are ordered by the time
+   * stamp of their current track point, then by the order of their tracks.
+   *
+   * @author Martin Weber
+   */
+  private static class MergeCursor implements Comparable<MergeCursor>
   {
+    final Track track;
 
-    /*-
-     * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+    /** the order of the track, used to break ties */
+    private final int order;
+
+    /** the index of the current track point */
+    int index;
+
+    /** the time stamp of the current track point */
+    private long current;
+
+    /**
+     * @param track
+     *        the non-empty track.
+     * @param order
+     *        the order of the track.
+     */
+    public MergeCursor( Track track, int order)
+    {
+      this.track= track;
+      this.order= order;
+      this.current= track.getDate( 0);
+    }
+
+    /**
+     * Advances to the next track point.
+     *
+     * @return {@code false} if the end of the track was reached.
      */
-    public int compare( TrackEvent o1, TrackEvent o2)
+    public boolean next()
     {
-      return (int) (o1.getDate() - o2.getDate());
+      if (++index < track.size()) {
+        current= track.getDate( index);
+        return true;
+      }
+      return false;
     }
 
-  } // ByDateComparator
+    /*-
+     * @see java.lang.Comparable#compareTo(java.lang.Object)
+     */
+    public int compareTo( MergeCursor o)
+    {
+      final int cmp= compareDates( current, o.current);
+      return cmp != 0
+        ? cmp : order - o.order;
+    }
+  } // MergeCursor
 }
\ No newline at end of file
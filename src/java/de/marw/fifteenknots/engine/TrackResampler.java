@@ -0,0 +1,244 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.engine;
+
+import java.util.concurrent.Callable;
+
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.model.TrackCursor;
+import de.marw.fifteenknots.nmeareader.Position;
+
+
+/**
+ * Resamples a track at equidistant points in time, e.g. at the frames of an
+ * animation. The position at each point in time is interpolated linearly
+ * between the track points before and after it, which are found by binary
+ * search. Before the first track point, the boat stays at the first position,
+ * after the last track point at the last position.
+ * <p>
+ * The course at each point in time is interpolated from the bearings of the
+ * track points along the shorter arc. If the bearing of a track point is
+ * missing, the direction of the leg to the next track point is used instead.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class TrackResampler implements Callable<Object> {
+
+  /** 10^-7 degrees of a full circle of longitude */
+  private static final long FULL_CIRCLE_E7= 360L * Position.E7_PER_DEGREE;
+
+  private final Track track;
+
+  private final long startDate;
+
+  private final double interval;
+
+  private final int sampleCount;
+
+  private int[] latitudes;
+
+  private int[] longitudes;
+
+  private float[] bearings;
+
+  /**
+   * @param track
+   *        the track to resample.
+   * @param startDate
+   *        the time of the first sample in milliseconds since the epoch.
+   * @param interval
+   *        the time between two samples in milliseconds.
+   * @param sampleCount
+   *        the number of samples.
+   * @throws IllegalArgumentException
+   *         if interval or sampleCount is negative.
+   */
+  public TrackResampler( Track track, long startDate, double interval,
+    int sampleCount) {
+    if (track == null) {
+      throw new NullPointerException( "track");
+    }
+    if ( !(interval >= 0)) {
+      throw new IllegalArgumentException( "interval");
+    }
+    if (sampleCount < 0) {
+      throw new IllegalArgumentException( "sampleCount");
+    }
+    this.track= track;
+    this.startDate= startDate;
+    this.interval= interval;
+    this.sampleCount= sampleCount;
+  }
+
+  /**
+   * Resamples the track. Afterwards, the samples are available from
+   * {@link #getLatitudesE7()}, {@link #getLongitudesE7()} and
+   * {@link #getBearings()}.
+   *
+   * @return always {@code null}
+   */
+  public Object call() {
+    final int size= track.size();
+    if (size == 0)
+      return null; // nothing to sample
+
+    // copy the track into arrays, since the search jumps around...
+    final long[] dates= new long[size];
+    final int[] lats= new int[size];
+    final int[] lons= new int[size];
+    final float[] courses= new float[size];
+    for (TrackCursor c= track.cursor(); c.next();) {
+      final int i= c.getIndex();
+      dates[i]= c.getDate();
+      lats[i]= c.getLatitudeE7();
+      lons[i]= c.getLongitudeE7();
+      courses[i]= c.getBearing();
+    }
+    // fill missing bearings from the direction of the legs...
+    for (int i= 0; i < size; i++) {
+      if (Float.isNaN( courses[i])) {
+	courses[i]= i + 1 < size
+	  ? direction( lats, lons, i, i + 1) : i > 0
+	    ? direction( lats, lons, i - 1, i) : Float.NaN;
+      }
+    }
+
+    latitudes= new int[sampleCount];
+    longitudes= new int[sampleCount];
+    bearings= new float[sampleCount];
+    int low= 0;
+    for (int s= 0; s < sampleCount; s++) {
+      final long date= startDate + Math.round( s * interval);
+      // find the last track point not after the sample, the samples ascend
+      int high= size - 1;
+      if (date < dates[low]) {
+	high= low - 1;
+      }
+      else {
+	while (low < high) {
+	  final int mid= (low + high + 1) >>> 1;
+	  if (dates[mid] <= date) {
+	    low= mid;
+	  }
+	  else {
+	    high= mid - 1;
+	  }
+	}
+      }
+      final int i= low;
+      if (high < i || i + 1 == size) {
+	// before the first or after the last track point
+	latitudes[s]= lats[i];
+	longitudes[s]= lons[i];
+	bearings[s]= courses[i];
+	continue;
+      }
+      final double f=
+	(date - dates[i]) / (double) (dates[i + 1] - dates[i]);
+      latitudes[s]=
+	lats[i] + (int) Math.round( f * ((long) lats[i + 1] - lats[i]));
+      long lon= lons[i] + Math.round( f * shortWay( lons[i], lons[i + 1]));
+      if (lon > FULL_CIRCLE_E7 / 2) {
+	lon-= FULL_CIRCLE_E7;
+      }
+      else if (lon < -FULL_CIRCLE_E7 / 2) {
+	lon+= FULL_CIRCLE_E7;
+      }
+      longitudes[s]= (int) lon;
+      bearings[s]= interpolateBearing( courses[i], courses[i + 1], f);
+    }
+    return null;
+  }
+
+  /**
+   * Gets the latitudes of the samples.
+   *
+   * @return the latitudes in 10<sup>-7</sup> degrees or {@code null}, if the
+   *         track is empty.
+   */
+  public int[] getLatitudesE7() {
+    return latitudes;
+  }
+
+  /**
+   * Gets the longitudes of the samples.
+   *
+   * @return the longitudes in 10<sup>-7</sup> degrees or {@code null}, if the
+   *         track is empty.
+   */
+  public int[] getLongitudesE7() {
+    return longitudes;
+  }
+
+  /**
+   * Gets the courses of the samples.
+   *
+   * @return the courses in degrees clockwise from north, {@code Float.NaN}
+   *         where unknown, or {@code null}, if the track is empty.
+   */
+  public float[] getBearings() {
+    return bearings;
+  }
+
+  /**
+   * Gets the difference of two longitudes, taking the short way across the
+   * antimeridian.
+   */
+  private static long shortWay( int fromLon, int toLon) {
+    long dLon= (long) toLon - fromLon;
+    if (dLon > FULL_CIRCLE_E7 / 2) {
+      dLon-= FULL_CIRCLE_E7;
+    }
+    else if (dLon < -FULL_CIRCLE_E7 / 2) {
+      dLon+= FULL_CIRCLE_E7;
+    }
+    return dLon;
+  }
+
+  /**
+   * Gets the direction of the leg between two track points.
+   *
+   * @return the direction in degrees clockwise from north or
+   *         {@code Float.NaN}, if the points are at the same position.
+   */
+  private static float direction( int[] lats, int[] lons, int from, int to) {
+    final double north= (long) lats[to] - lats[from];
+    final int midLatE7= (int) (((long) lats[from] + lats[to]) / 2);
+    final double midLat= Math.toRadians( Position.toDegrees( midLatE7));
+    final double east= shortWay( lons[from], lons[to]) * Math.cos( midLat);
+    if (north == 0 && east == 0)
+      return Float.NaN;
+    double bearing= Math.toDegrees( Math.atan2( east, north));
+    if (bearing < 0) {
+      bearing+= 360;
+    }
+    return (float) bearing;
+  }
+
+  /**
+   * Interpolates between two bearings along the shorter arc.
+   */
+  private static float interpolateBearing( float from, float to, double f) {
+    if (Float.isNaN( from))
+      return to;
+    if (Float.isNaN( to))
+      return from;
+    double delta= to - from;
+    if (delta > 180) {
+      delta-= 360;
+    }
+    else if (delta < -180) {
+      delta+= 360;
+    }
+    double bearing= from + f * delta;
+    if (bearing < 0) {
+      bearing+= 360;
+    }
+    else if (bearing >= 360) {
+      bearing-= 360;
+    }
+    return (float) bearing;
+  }
+}
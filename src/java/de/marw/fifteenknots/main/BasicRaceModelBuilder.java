@@ -20,10 +20,13 @@ import de.marw.fifteenknots.engine.BasicRMFactory;
 import de.marw.fifteenknots.engine.CruiseGenerator;
 import de.marw.fifteenknots.engine.RaceModelFactory;
 import de.marw.fifteenknots.engine.ThreadPoolExecutorService;
+import de.marw.fifteenknots.engine.TrackCache;
 import de.marw.fifteenknots.model.BasicCruise;
 import de.marw.fifteenknots.model.BasicRaceModel;
 import de.marw.fifteenknots.model.Boat;
+import de.marw.fifteenknots.model.CompressedTrackStorage;
 import de.marw.fifteenknots.model.Cruise;
+import de.marw.fifteenknots.model.DirectTrackStorage;
 import de.marw.fifteenknots.model.RaceModel;
 
 
@@ -46,6 +49,15 @@ class BasicRaceModelBuilder extends AbstractRaceModelBuilder {
     }
     this.options= options;
     setModelFactory( new BasicRMFactory());
+    if (options.getTrackMemory() > 0) {
+      setTrackStorage( new DirectTrackStorage( options.getTrackMemory()));
+    }
+    else if (options.isCompressTracks()) {
+      setTrackStorage( new CompressedTrackStorage());
+    }
+    if (options.getCacheDirectory() != null) {
+      setTrackCache( new TrackCache( options.getCacheDirectory()));
+    }
   }
 
   /**
@@ -92,6 +104,8 @@ class BasicRaceModelBuilder extends AbstractRaceModelBuilder {
       Boat boat= new Boat( boatOptions.getNumber());
       boat.setName( boatOptions.getName());
       final CruiseGenerator cg= new CruiseGenerator( boat, getModelFactory());
+      cg.setTrackStorage( getTrackStorage());
+      cg.setTrackCache( getTrackCache());
       cg.addFileNames( boatOptions.getFileNames());
       workers.add( cg);
     }
@@ -17,12 +17,13 @@ import java.util.concurrent.TimeoutException;
 
 import de.marw.fifteenknots.engine.EncodedSpeedRMFactory;
 import de.marw.fifteenknots.engine.PolylineCalculator;
+import de.marw.fifteenknots.engine.PolylineSimplifier;
 import de.marw.fifteenknots.engine.RaceModelFactory;
+import de.marw.fifteenknots.engine.SpeedBearingCalculator;
 import de.marw.fifteenknots.engine.SpeedColorEncoder;
 import de.marw.fifteenknots.engine.SpeedLimitsCalculator;
 import de.marw.fifteenknots.engine.ThreadPoolExecutorService;
 import de.marw.fifteenknots.model.EncodedSpeedRaceModel;
-import de.marw.fifteenknots.model.RaceModel;
 import de.marw.fifteenknots.model.SpeedCruise;
 
 
@@ -36,6 +37,9 @@ class EncodedSpeedRaceModelBuilder extends BasicRaceModelBuilder {
 
   private final int colorCount;
 
+  /** maximum deviation of simplified polylines in metres, 0 to disable */
+  private double simplifyTolerance;
+
   /**
    * @param options
    *        parsed global commandline options
@@ -49,23 +53,39 @@ class EncodedSpeedRaceModelBuilder extends BasicRaceModelBuilder {
     setModelFactory( new EncodedSpeedRMFactory());
   }
 
+  /**
+   * Sets the maximum deviation of the simplified polylines in metres.
+   *
+   * @param simplifyTolerance
+   *        the tolerance or {@code 0}, if the polylines should not be
+   *        simplified.
+   * @see PolylineSimplifier
+   */
+  public void setSimplifyTolerance( double simplifyTolerance) {
+    this.simplifyTolerance= simplifyTolerance;
+  }
+
   /**
    * @throws IllegalStateException
    *         if no {@link #setModelFactory(RaceModelFactory) model factory} has
    *         been set.
    */
-  public RaceModel buildModel() throws FileNotFoundException, IOException {
+  public EncodedSpeedRaceModel buildModel() throws FileNotFoundException,
+    IOException {
     EncodedSpeedRaceModel model= (EncodedSpeedRaceModel) super.buildModel();
     @SuppressWarnings("unchecked")
     List<SpeedCruise> cruises= (List<SpeedCruise>) model.getCruises();
     // compute speed values in tracks, if not present...
-    // TODO
+    calcMissingSpeeds( cruises);
 
     calcSpeedLimits( cruises);
     SpeedColorEncoder sce= createColorEncoder( cruises);
 
     // calculate Polylines of speed levels for all boats...
     calcPolyLines( cruises, sce);
+    if (simplifyTolerance > 0) {
+      simplifyPolyLines( cruises);
+    }
 
     model.setSpeedEncoding( sce.getSpeedEncoding());
     return model;
@@ -115,6 +135,50 @@ class EncodedSpeedRaceModelBuilder extends BasicRaceModelBuilder {
 
   }
 
+  /**
+   * Reduces the number of points of the polylines of all cruises.
+   *
+   * @param cruises
+   */
+  private void simplifyPolyLines( List<SpeedCruise> cruises) {
+    List<Callable<Object>> workers=
+      new ArrayList<Callable<Object>>( cruises.size());
+
+    // create workers..
+    for (SpeedCruise cruise : cruises) {
+      workers.add( new PolylineSimplifier( cruise, simplifyTolerance));
+    }
+
+    // start workers and wait for all to finish
+    ExecutorService e= ThreadPoolExecutorService.getService();
+    try {
+      List<Future<Object>> workerResults= e.invokeAll( workers);
+      for (Future<Object> result : workerResults) {
+	try {
+	  // throws the exception if one occurred during the invocation
+	  result.get( 0, TimeUnit.MILLISECONDS);
+	}
+	catch (ExecutionException ex) {
+	  // raise exception that occured in worker
+	  final Throwable cause= ex.getCause();
+	  if (cause instanceof RuntimeException) {
+	    throw (RuntimeException) cause;
+	  }
+	  else if (cause instanceof Error) {
+	    throw (Error) cause;
+	  }
+	}
+	catch (CancellationException ignore) {
+	}
+	catch (TimeoutException ignore) {
+	}
+      }
+    }
+    catch (InterruptedException ignore) {
+      // ignore and finish
+    }
+  }
+
   /**
    * @param cruises
    */
@@ -126,7 +190,7 @@ class EncodedSpeedRaceModelBuilder extends BasicRaceModelBuilder {
     for (SpeedCruise cruise : cruises) {
       speedMin= Math.min( speedMin, cruise.getSpeedMin());
       speedMax= Math.max( speedMax, cruise.getSpeedMax());
-      colors= Math.max( colors, cruise.getTrackpoints().size());
+      colors= Math.max( colors, cruise.getTrack().size());
     }
     // limit num of colors to a sensible value, to avoid OutOfMemoryError if
     // millions of colors were requested...
@@ -134,6 +198,53 @@ class EncodedSpeedRaceModelBuilder extends BasicRaceModelBuilder {
       speedMax);
   }
 
+  /**
+   * Derives speed and bearing of the track points of each cruise that have
+   * none from the positions.
+   *
+   * @param cruises
+   * @throws RuntimeException
+   */
+  private void calcMissingSpeeds( List<SpeedCruise> cruises)
+    throws RuntimeException {
+    List<Callable<Object>> workers=
+      new ArrayList<Callable<Object>>( cruises.size());
+
+    // create workers..
+    for (SpeedCruise cruise : cruises) {
+      workers.add( new SpeedBearingCalculator( cruise));
+    }
+
+    // start workers and wait for all to finish
+    ExecutorService e= ThreadPoolExecutorService.getService();
+    try {
+      List<Future<Object>> workerResults= e.invokeAll( workers);
+      for (Future<Object> result : workerResults) {
+	try {
+	  // throws the exception if one occurred during the invocation
+	  result.get( 0, TimeUnit.MILLISECONDS);
+	}
+	catch (ExecutionException ex) {
+	  // raise exception that occured in worker
+	  final Throwable cause= ex.getCause();
+	  if (cause instanceof RuntimeException) {
+	    throw (RuntimeException) cause;
+	  }
+	  else if (cause instanceof Error) {
+	    throw (Error) cause;
+	  }
+	}
+	catch (CancellationException ignore) {
+	}
+	catch (TimeoutException ignore) {
+	}
+      }
+    }
+    catch (InterruptedException ignore) {
+      // ignore and finish
+    }
+  }
+
   /**
    * Enriches each of the cruises with information about min and max speed.
    *
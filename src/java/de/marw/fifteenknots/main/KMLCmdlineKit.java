@@ -19,10 +19,32 @@ class KMLCmdlineKit implements CmdlineKit {
 
   private int colorCount= 120;
 
+  /** maximum deviation of simplified polylines in metres, 0 to disable */
+  private double simplifyTolerance;
+
+  /** whether to write the KML directly instead of rendering the template */
+  private boolean direct;
+
+  /** whether to write the track points as a gx:Track */
+  private boolean gxTrack;
+
+  /** whether to write a zip archive holding the KML */
+  private final boolean kmz;
+
   /**
    *
    */
-  public KMLCmdlineKit() {}
+  public KMLCmdlineKit() {
+    this( false);
+  }
+
+  /**
+   * @param kmz
+   *        whether to write a KMZ file, that is a zip archive holding the KML
+   */
+  public KMLCmdlineKit( boolean kmz) {
+    this.kmz= kmz;
+  }
 
   /*-
    * @see de.marw.fifteenknots.main.CmdlineKit#parseOptions(java.lang.String[], int)
@@ -30,7 +52,7 @@ class KMLCmdlineKit implements CmdlineKit {
   public int parseOptions( String[] args, int firstArgIdx)
     throws OptionValidationException {
     int consumed= 0;
-    for (int i= firstArgIdx; i < args.length; i+= consumed) {
+    for (int i= firstArgIdx; i < args.length; i= firstArgIdx + consumed) {
       final String arg= args[i];
       if (arg.equals( "-o") || arg.equals( "-output")) {
 	setOutputFileName( Main.getRequiredArg( args, i));
@@ -56,6 +78,54 @@ class KMLCmdlineKit implements CmdlineKit {
 	    colors_s));
 	}
       }
+      else if (arg.equals( "-s") || arg.equals( "-simplify")) {
+	final String tolerance_s= Main.getRequiredArg( args, i);
+	try {
+	  double tolerance= Double.parseDouble( tolerance_s);
+	  if ( !(tolerance >= 0) || Double.isInfinite( tolerance)) {
+	    String format= "Invalid tolerance -- {0} ";
+	    throw new OptionValidationException( MessageFormat.format( format,
+	      tolerance_s));
+	  }
+	  simplifyTolerance= tolerance;
+	  consumed+= 2;
+	}
+	catch (NumberFormatException ex) {
+	  String format= "Invalid number -- {0} ";
+	  throw new OptionValidationException( MessageFormat.format( format,
+	    tolerance_s));
+	}
+      }
+      else if (arg.equals( "-r") || arg.equals( "-renderer")) {
+	final String renderer= Main.getRequiredArg( args, i);
+	if (renderer.equals( "template")) {
+	  direct= false;
+	}
+	else if (renderer.equals( "direct")) {
+	  direct= true;
+	}
+	else {
+	  String format= "Invalid renderer -- {0} ";
+	  throw new OptionValidationException( MessageFormat.format( format,
+	    renderer));
+	}
+	consumed+= 2;
+      }
+      else if (arg.equals( "-p") || arg.equals( "-trackpoints")) {
+	final String style= Main.getRequiredArg( args, i);
+	if (style.equals( "placemarks")) {
+	  gxTrack= false;
+	}
+	else if (style.equals( "track")) {
+	  gxTrack= true;
+	}
+	else {
+	  String format= "Invalid track point style -- {0} ";
+	  throw new OptionValidationException( MessageFormat.format( format,
+	    style));
+	}
+	consumed+= 2;
+      }
 
       else {
 	// unknown option
@@ -99,11 +169,38 @@ class KMLCmdlineKit implements CmdlineKit {
     this.colorCount= colorCount;
   }
 
+  /**
+   * Gets the maximum deviation of simplified polylines.
+   *
+   * @return the tolerance in metres or {@code 0}, if the polylines should not
+   *         be simplified.
+   */
+  public double getSimplifyTolerance() {
+    return simplifyTolerance;
+  }
+
+  /**
+   * Gets whether the KML is written directly instead of rendering the
+   * template.
+   */
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * Gets whether the track points of each cruise are written as a single
+   * {@code gx:Track} instead of a placemark for each point.
+   */
+  public boolean isGxTrack() {
+    return gxTrack;
+  }
+
   /*-
    * @see de.marw.fifteenknots.main.CmdlineKit#createProcessor(de.marw.fifteenknots.main.Options)
    */
   public IProcessor createProcessor( Options globalOptions) {
-    return new KMLProcessor( globalOptions, outputFileName, colorCount);
+    return new KMLProcessor( globalOptions, outputFileName, colorCount,
+      simplifyTolerance, direct, kmz, gxTrack);
   }
 
 }
@@ -4,21 +4,35 @@
 package de.marw.fifteenknots.main;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import de.marw.fifteenknots.engine.IProcessor;
-import de.marw.fifteenknots.model.RaceModel;
-import de.marw.fifteenknots.nmeareader.Position2D;
+import de.marw.fifteenknots.engine.ThreadPoolExecutorService;
+import de.marw.fifteenknots.model.Cruise;
+import de.marw.fifteenknots.model.EncodedSpeedRaceModel;
+import de.marw.fifteenknots.model.SpeedCruise;
+import de.marw.fifteenknots.nmeareader.Position;
 import de.marw.fifteenknots.render.kml.ARGBToABRGMethod;
+import de.marw.fifteenknots.render.kml.E7ToDecimalMethod;
+import de.marw.fifteenknots.render.kml.KMZOutputStream;
 import de.marw.fifteenknots.render.kml.MillisToDateMethod;
+import de.marw.fifteenknots.render.kml.SpeedColoredKMLWriter;
 import de.marw.fifteenknots.render.kml.TemplateRenderer;
 import freemarker.template.TemplateException;
 
@@ -36,6 +50,14 @@ class KMLProcessor implements IProcessor {
 
   private int colorCount;
 
+  private double simplifyTolerance;
+
+  private boolean direct;
+
+  private boolean kmz;
+
+  private boolean gxTrack;
+
   /**
    * @param globalOptions
    *        parsed global commandline options
@@ -44,15 +66,31 @@ class KMLProcessor implements IProcessor {
    *        stdout.
    * @param colorCount
    *        the number of colors to use for visual boat speed coding.
+   * @param simplifyTolerance
+   *        the maximum deviation of simplified polylines in metres or
+   *        {@code 0}, if the polylines should not be simplified.
+   * @param direct
+   *        whether to write the KML directly instead of rendering the
+   *        template.
+   * @param kmz
+   *        whether to write a KMZ file, that is a zip archive holding the KML.
+   * @param gxTrack
+   *        whether to write the track points of each cruise as a single
+   *        {@code gx:Track} instead of a placemark for each point.
    */
   public KMLProcessor( Options globalOptions, String outputFileName,
-    int colorCount) {
+    int colorCount, double simplifyTolerance, boolean direct, boolean kmz,
+    boolean gxTrack) {
     if (globalOptions == null) {
       throw new NullPointerException( "options");
     }
     this.options= globalOptions;
     this.outputFileName= outputFileName;
     this.colorCount= colorCount;
+    this.simplifyTolerance= simplifyTolerance;
+    this.direct= direct;
+    this.kmz= kmz;
+    this.gxTrack= gxTrack;
   }
 
   /**
@@ -65,38 +103,56 @@ class KMLProcessor implements IProcessor {
   public void process() throws FileNotFoundException, IOException {
     EncodedSpeedRaceModelBuilder builder=
       new EncodedSpeedRaceModelBuilder( options, colorCount);
+    builder.setSimplifyTolerance( simplifyTolerance);
 
-    RaceModel raceModel= builder.buildModel();
-    // render the output...
-    Map<String, Object> model= new HashMap<String, Object>();
-    model.put( "race", raceModel);
-    if (true) { // testweise MBB anzeigen
-      Position2D[] box= SWFProcessor.getMinimumBoundingBox( raceModel);
-      model.put( "outline", box);
+    EncodedSpeedRaceModel raceModel= builder.buildModel();
+    // testweise MBB anzeigen
+    Position[] box= SWFProcessor.getMinimumBoundingBox( raceModel);
+
+    OutputStream out;
+    if (outputFileName != null) {
+      File file= new File( outputFileName);
+      file.createNewFile();
+      out= new FileOutputStream( file);
+    }
+    else {
+      out= System.out;
     }
-    // add conversion method to be invoked by Freemarker
-    model.put( "millisToDate", new MillisToDateMethod());
-    model.put( "toABGRhex", new ARGBToABRGMethod());
 
-    // create output writer for template engine...
-    Writer writer;
-    {
-      OutputStream out;
-      if (outputFileName != null) {
-	File file= new File( outputFileName);
-	file.createNewFile();
-	out= new BufferedOutputStream( new FileOutputStream( file));
+    try {
+      if (kmz) {
+	KMZOutputStream zip=
+	  new KMZOutputStream( out, ThreadPoolExecutorService.getService());
+	render( raceModel, box, zip);
+	zip.finish();
       }
       else {
-	out= System.out;
+	render( raceModel, box, out);
+      }
+    }
+    finally {
+      // leave stdout open for others
+      if (out != System.out) {
+	out.close();
       }
-      writer= new OutputStreamWriter( out, "UTF-8");
     }
+  }
 
-    TemplateRenderer renderer=
-      new TemplateRenderer( writer, "speed-colored.kml.ftl");
+  /**
+   * Renders the KML to the specified stream.
+   *
+   * @throws IOException
+   *         if an I/O error occurs
+   */
+  private void render( EncodedSpeedRaceModel raceModel, Position[] box,
+    OutputStream out) throws IOException {
     try {
-      renderer.process( model);
+      if (direct) {
+	writeDirect( raceModel, box, out, gxTrack);
+      }
+      else {
+	renderTemplate( raceModel, box, out, gxTrack);
+      }
     }
     catch (TemplateException ex) {
       // TODO Auto-generated catch block
@@ -104,4 +160,236 @@ class KMLProcessor implements IProcessor {
     }
   }
 
-}
\ No newline at end of file
+  /**
+   * Renders the KML from the template. Like
+   * {@link #writeDirect(EncodedSpeedRaceModel, Position[], OutputStream, boolean)
+   * writeDirect}, the folders of the cruises are rendered concurrently as
+   * fragments of the template, each into a buffer of its own.
+   *
+   * @throws IOException
+   *         if an I/O error occurs
+   * @throws TemplateException
+   *         if the template cannot be rendered
+   */
+  private static void renderTemplate( EncodedSpeedRaceModel raceModel,
+    Position[] outline, OutputStream out, boolean gxTrack) throws IOException,
+    TemplateException {
+    // create output writer for template engine...
+    Writer writer=
+      new OutputStreamWriter( new BufferedOutputStream( out), "UTF-8");
+
+    TemplateRenderer renderer=
+      new TemplateRenderer( writer, "speed-colored.kml.ftl");
+    List<? extends Cruise> cruises= raceModel.getCruises();
+    if (!isConcurrent( cruises)) {
+      renderer.process( createDataModel( raceModel, outline, gxTrack, null,
+	null));
+      return;
+    }
+
+    renderer.process( createDataModel( raceModel, outline, gxTrack, "header",
+      null));
+    List<TemplateFolderWorker> workers=
+      new ArrayList<TemplateFolderWorker>( cruises.size());
+    for (Cruise cruise : cruises) {
+      workers.add( new TemplateFolderWorker( renderer, createDataModel(
+	raceModel, outline, gxTrack, "cruise", cruise)));
+    }
+    writeFolders( workers, out);
+    renderer.process( createDataModel( raceModel, outline, gxTrack, "footer",
+      null));
+  }
+
+  /**
+   * Creates the data model to render the template or one of its fragments.
+   *
+   * @param fragment
+   *        the fragment of the template to render or {@code null} to render
+   *        the whole document
+   * @param cruise
+   *        the cruise of a {@code cruise} fragment
+   */
+  private static Map<String, Object> createDataModel(
+    EncodedSpeedRaceModel raceModel, Position[] outline, boolean gxTrack,
+    String fragment, Cruise cruise) {
+    Map<String, Object> model= new HashMap<String, Object>();
+    model.put( "race", raceModel);
+    model.put( "outline", outline);
+    model.put( "gxTrack", Boolean.valueOf( gxTrack));
+    if (fragment != null) {
+      model.put( "fragment", fragment);
+    }
+    if (cruise != null) {
+      model.put( "cruise", cruise);
+    }
+    // add conversion method to be invoked by Freemarker
+    model.put( "millisToDate", new MillisToDateMethod());
+    model.put( "toABGRhex", new ARGBToABRGMethod());
+    model.put( "e7ToDecimal", new E7ToDecimalMethod());
+    return model;
+  }
+
+  /**
+   * Writes the KML without the template engine. The folders of the cruises
+   * are written concurrently, each into a buffer of its own, and copied to the
+   * output in the order of the cruises. So the output is the same as if the
+   * document was written sequentially.
+   *
+   * @throws IOException
+   *         if an I/O error occurs
+   * @throws TemplateException
+   *         never, the folders are written without the template engine
+   */
+  private static void writeDirect( EncodedSpeedRaceModel raceModel,
+    Position[] outline, OutputStream out, boolean gxTrack) throws IOException,
+    TemplateException {
+    SpeedColoredKMLWriter writer= new SpeedColoredKMLWriter( out, gxTrack);
+    List<? extends Cruise> cruises= raceModel.getCruises();
+    if (!isConcurrent( cruises)) {
+      // nothing to gain from buffering
+      writer.write( raceModel, outline);
+      return;
+    }
+
+    writer.writeHeader( raceModel);
+    writer.flush();
+    List<DirectFolderWorker> workers=
+      new ArrayList<DirectFolderWorker>( cruises.size());
+    for (Cruise cruise : cruises) {
+      workers.add( new DirectFolderWorker( (SpeedCruise) cruise, gxTrack));
+    }
+    writeFolders( workers, out);
+    writer.writeFooter( raceModel, outline);
+    writer.flush();
+  }
+
+  /**
+   * Gets whether it pays to write the folders of the specified cruises
+   * concurrently.
+   */
+  private static boolean isConcurrent( List<? extends Cruise> cruises) {
+    return cruises.size() >= 2
+      && Runtime.getRuntime().availableProcessors() >= 2;
+  }
+
+  /**
+   * Runs the specified workers concurrently and copies the folders they
+   * buffered to the output in the order of the workers.
+   *
+   * @throws IOException
+   *         if an I/O error occurs
+   * @throws TemplateException
+   *         if a worker failed to render the template
+   */
+  private static void writeFolders(
+    List<? extends Callable<ByteArrayOutputStream>> workers, OutputStream out)
+    throws IOException, TemplateException {
+    // limit the number of folders buffered at a time
+    final int window= Runtime.getRuntime().availableProcessors();
+    List<Future<ByteArrayOutputStream>> folders=
+      new ArrayList<Future<ByteArrayOutputStream>>( workers.size());
+    ExecutorService e= ThreadPoolExecutorService.getService();
+    try {
+      for (int i= 0; i < workers.size(); i++) {
+	// start workers for the next folders...
+	while (folders.size() < workers.size()
+	  && folders.size() < i + window) {
+	  folders.add( e.submit( workers.get( folders.size())));
+	}
+	// wait for the next folder in order
+	folders.get( i).get().writeTo( out);
+	folders.set( i, null);
+      }
+    }
+    catch (ExecutionException ex) {
+      // raise exception that occured in worker
+      final Throwable cause= ex.getCause();
+      if (cause instanceof IOException) {
+	throw (IOException) cause;
+      }
+      else if (cause instanceof TemplateException) {
+	throw (TemplateException) cause;
+      }
+      else if (cause instanceof RuntimeException) {
+	throw (RuntimeException) cause;
+      }
+      throw (Error) cause;
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    finally {
+      // stop the workers of folders no longer needed, if any
+      for (Future<ByteArrayOutputStream> folder : folders) {
+	if (folder != null) {
+	  folder.cancel( true);
+	}
+      }
+    }
+    out.flush();
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * Writes the folder of a cruise into a buffer.
+   *
+   * @author Martin Weber
+   */
+  private static class DirectFolderWorker implements
+    Callable<ByteArrayOutputStream> {
+
+    private final SpeedCruise cruise;
+
+    private final boolean gxTrack;
+
+    DirectFolderWorker( SpeedCruise cruise, boolean gxTrack) {
+      this.cruise= cruise;
+      this.gxTrack= gxTrack;
+    }
+
+    /*-
+     * @see java.util.concurrent.Callable#call()
+     */
+    public ByteArrayOutputStream call() throws IOException {
+      ByteArrayOutputStream buffer= new ByteArrayOutputStream( 64 * 1024);
+      SpeedColoredKMLWriter writer=
+	new SpeedColoredKMLWriter( buffer, gxTrack);
+      writer.writeCruise( cruise);
+      writer.flush();
+      return buffer;
+    }
+  } // DirectFolderWorker
+
+  /**
+   * Renders the folder of a cruise from the template into a buffer.
+   *
+   * @author Martin Weber
+   */
+  private static class TemplateFolderWorker implements
+    Callable<ByteArrayOutputStream> {
+
+    private final TemplateRenderer renderer;
+
+    private final Map<String, Object> dataModel;
+
+    TemplateFolderWorker( TemplateRenderer renderer,
+      Map<String, Object> dataModel) {
+      this.renderer= renderer;
+      this.dataModel= dataModel;
+    }
+
+    /*-
+     * @see java.util.concurrent.Callable#call()
+     */
+    public ByteArrayOutputStream call() throws IOException,
+      TemplateException {
+      ByteArrayOutputStream buffer= new ByteArrayOutputStream( 64 * 1024);
+      renderer.process( dataModel, new OutputStreamWriter( buffer, "UTF-8"));
+      return buffer;
+    }
+  } // TemplateFolderWorker
+
+}
@@ -0,0 +1,94 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.main;
+
+import java.text.MessageFormat;
+
+import de.marw.fifteenknots.engine.IProcessor;
+
+
+/**
+ * A commandline kit implementation for the tiled KML output format (Google
+ * Earth).
+ *
+ * @author Martin Weber
+ */
+class KMLTilesCmdlineKit implements CmdlineKit {
+
+  private String outputDirName;
+
+  private int colorCount= 120;
+
+  /** number of levels of the quadtree */
+  private int levels= 5;
+
+  /*-
+   * @see de.marw.fifteenknots.main.CmdlineKit#parseOptions(java.lang.String[], int)
+   */
+  public int parseOptions( String[] args, int firstArgIdx)
+    throws OptionValidationException {
+    int consumed= 0;
+    for (int i= firstArgIdx; i < args.length; i= firstArgIdx + consumed) {
+      final String arg= args[i];
+      if (arg.equals( "-o") || arg.equals( "-output")) {
+	outputDirName= Main.getRequiredArg( args, i);
+	consumed+= 2;
+      }
+      else if (arg.equals( "-c") || arg.equals( "-colors")) {
+	colorCount= parseNumber( Main.getRequiredArg( args, i), 0);
+	consumed+= 2;
+      }
+      else if (arg.equals( "-l") || arg.equals( "-levels")) {
+	levels= parseNumber( Main.getRequiredArg( args, i), 1);
+	if (levels > 16) {
+	  String format= "Too many levels -- {0} ";
+	  throw new OptionValidationException( MessageFormat.format( format,
+	    Integer.valueOf( levels)));
+	}
+	consumed+= 2;
+      }
+      else {
+	// unknown option
+	break;
+      }
+    }
+    if (outputDirName == null) {
+      throw new OptionValidationException( "no output directory specified");
+    }
+    return consumed;
+  }
+
+  /**
+   * Converts the argument of an option to an int.
+   *
+   * @param min
+   *        the minimum value allowed
+   */
+  private static int parseNumber( String number_s, int min)
+    throws OptionValidationException {
+    try {
+      int number= Integer.decode( number_s).intValue();
+      if (number < min) {
+	String format= "Number too small -- {0} ";
+	throw new OptionValidationException( MessageFormat.format( format,
+	  number_s));
+      }
+      return number;
+    }
+    catch (NumberFormatException ex) {
+      String format= "Invalid number -- {0} ";
+      throw new OptionValidationException( MessageFormat.format( format,
+	number_s));
+    }
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.main.CmdlineKit#createProcessor(de.marw.fifteenknots.main.Options)
+   */
+  public IProcessor createProcessor( Options globalOptions) {
+    return new KMLTilesProcessor( globalOptions, outputDirName, colorCount,
+      levels);
+  }
+
+}
@@ -0,0 +1,78 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.main;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import de.marw.fifteenknots.engine.IProcessor;
+import de.marw.fifteenknots.engine.ThreadPoolExecutorService;
+import de.marw.fifteenknots.model.EncodedSpeedRaceModel;
+import de.marw.fifteenknots.nmeareader.Position;
+import de.marw.fifteenknots.render.kml.TiledKMLWriter;
+
+
+/**
+ * A Processor that produces output in the KML-format (Google Earth), split
+ * into tiles that are loaded depending on the view.
+ *
+ * @author Martin Weber
+ */
+class KMLTilesProcessor implements IProcessor {
+
+  private final Options options;
+
+  private final String outputDirName;
+
+  private final int colorCount;
+
+  private final int levels;
+
+  /**
+   * @param globalOptions
+   *        parsed global commandline options
+   * @param outputDirName
+   *        the name of the output directory.
+   * @param colorCount
+   *        the number of colors to use for visual boat speed coding.
+   * @param levels
+   *        the number of levels of the quadtree of tiles.
+   */
+  public KMLTilesProcessor( Options globalOptions, String outputDirName,
+    int colorCount, int levels) {
+    if (globalOptions == null) {
+      throw new NullPointerException( "options");
+    }
+    if (outputDirName == null) {
+      throw new NullPointerException( "outputDirName");
+    }
+    this.options= globalOptions;
+    this.outputDirName= outputDirName;
+    this.colorCount= colorCount;
+    this.levels= levels;
+  }
+
+  /**
+   * @throws FileNotFoundException
+   *         if one of the specified files cannot be found
+   * @throws IOException
+   *         if an I/O error occurs
+   * @see de.marw.fifteenknots.engine.IProcessor#process()
+   */
+  public void process() throws FileNotFoundException, IOException {
+    EncodedSpeedRaceModelBuilder builder=
+      new EncodedSpeedRaceModelBuilder( options, colorCount);
+
+    EncodedSpeedRaceModel raceModel= builder.buildModel();
+    // the quadtree covers the area of the race
+    Position[] box= SWFProcessor.getMinimumBoundingBox( raceModel);
+
+    TiledKMLWriter writer=
+      new TiledKMLWriter( new File( outputDirName), levels,
+	ThreadPoolExecutorService.getService());
+    writer.write( raceModel, box);
+  }
+
+}
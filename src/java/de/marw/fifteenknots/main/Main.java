@@ -5,6 +5,7 @@
 
 package de.marw.fifteenknots.main;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.MessageFormat;
@@ -145,6 +146,31 @@ public class Main {
 	}
 
       }
+      else if (arg.equals( "-m") || arg.equals( "-memory")) {
+	final String memArg= getRequiredArg( args, firstArgIdx);
+	long megabytes;
+	try {
+	  megabytes= Long.parseLong( memArg);
+	}
+	catch (NumberFormatException ex) {
+	  megabytes= -1;
+	}
+	if (megabytes < 1 || megabytes > Long.MAX_VALUE >> 20) {
+	  String format= "invalid memory size -- {0}";
+	  throw new OptionValidationException( MessageFormat.format( format,
+	    memArg));
+	}
+	options.setTrackMemory( megabytes << 20);
+	consumed= 2;
+      }
+      else if (arg.equals( "-z") || arg.equals( "-compress")) {
+	options.setCompressTracks( true);
+	consumed= 1;
+      }
+      else if (arg.equals( "-cache")) {
+	options.setCacheDirectory( new File( getRequiredArg( args, firstArgIdx)));
+	consumed= 2;
+      }
       else if (arg.equals( "-boat")) {
 	BoatOptions boatOption= new BoatOptions();
 	consumed=
@@ -204,10 +230,15 @@ public class Main {
   private static void usage() {
     String format=
       "Usage:"
-	+ "\n  {0} [-h] -t <type> [<type options>] <file> [<file>...]"
-	+ "\n  {0} [-h] -t <type> [<type options>] -boat <boat options> <file> [<file>...] [-boat ...]"
+	+ "\n  {0} [-h] [-m <megabytes>|-z] [-cache <dir>] -t <type> [<type options>] <file> [<file>...]"
+	+ "\n  {0} [-h] [-m <megabytes>|-z] [-cache <dir>] -t <type> [<type options>] -boat <boat options> <file> [<file>...] [-boat ...]"
 	+ "\nOptions:" + "\n  -h -help:        print help and exit"
 	+ "\n  -t -type <type>: set output file type"
+	+ "\n  -m -memory <megabytes>:"
+	+ "\n                   store track points outside of the java heap, using at"
+	+ "\n                   most <megabytes> of memory"
+	+ "\n  -z -compress:    keep track points compressed in memory"
+	+ "\n  -cache <dir>:    cache parsed input files in directory <dir>"
 	+ "\n  -boat:           all following arguments refer to a new boat"
 	+ "\nBoat options: [-name <text>]"
 	+ "\n  -name <text>:    sets boat name";
@@ -1,6 +1,7 @@
 
 package de.marw.fifteenknots.main;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,6 +16,15 @@ class Options
 
   private List<BoatOptions> boats= new ArrayList<BoatOptions>();
 
+  /** number of bytes to store track points outside of the heap, or zero */
+  private long trackMemory;
+
+  /** whether to keep track points compressed in memory */
+  private boolean compressTracks;
+
+  /** directory to cache parsed tracks in, or null */
+  private File cacheDirectory;
+
   public void addBoat( BoatOptions boat)
   {
     boats.add( boat);
@@ -31,8 +41,71 @@ class Options
     return this.boats;
   }
 
+  /**
+   * Gets the number of bytes of memory outside of the java heap that the track
+   * points may occupy.
+   *
+   * @return the memory budget or zero, if track points are stored on the heap.
+   */
+  public long getTrackMemory()
+  {
+    return this.trackMemory;
+  }
+
+  /**
+   * Sets the trackMemory property.
+   *
+   * @see Options#trackMemory
+   */
+  void setTrackMemory( long trackMemory)
+  {
+    this.trackMemory= trackMemory;
+  }
+
+  /**
+   * Gets whether track points are kept compressed in memory.
+   */
+  public boolean isCompressTracks()
+  {
+    return this.compressTracks;
+  }
+
+  /**
+   * Sets the compressTracks property.
+   *
+   * @see Options#compressTracks
+   */
+  void setCompressTracks( boolean compressTracks)
+  {
+    this.compressTracks= compressTracks;
+  }
+
+  /**
+   * Gets the directory to cache parsed tracks in.
+   *
+   * @return the directory or {@code null}, if tracks are not cached.
+   */
+  public File getCacheDirectory()
+  {
+    return this.cacheDirectory;
+  }
+
+  /**
+   * Sets the cacheDirectory property.
+   *
+   * @see Options#cacheDirectory
+   */
+  void setCacheDirectory( File cacheDirectory)
+  {
+    this.cacheDirectory= cacheDirectory;
+  }
+
   public void validate() throws OptionValidationException
   {
+    if (compressTracks && trackMemory > 0) {
+      throw new OptionValidationException(
+        "options memory and compress are mutually exclusive");
+    }
     for (ValidatableOption boat : boats) {
       boat.validate();
     }
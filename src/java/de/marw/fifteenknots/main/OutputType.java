@@ -31,11 +31,79 @@ enum OutputType implements ParsableTypeOption
 
     public String getUsage()
     {
-      return "kml [-c <num>] [-o <file>]" + "\n  Type options:"
+      return "kml [-c <num>] [-s <metres>] [-r <renderer>] [-p <style>]"
+        + " [-o <file>]"
+        + "\n  Type options:"
         + "\n\t-c -colors <num>:\tnumber of colors to encode speed (default 120)"
+        + "\n\t-s -simplify <metres>:\tsimplify the lines to that tolerance"
+        + " (default 0, keep all points)"
+        + "\n\t-r -renderer <renderer>:\t'template' (default) or 'direct',"
+        + " which writes the same KML much faster"
+        + "\n\t-p -trackpoints <style>:\t'placemarks' (default) or 'track',"
+        + " a single gx:Track per boat, which is much smaller"
         + "\n\t-o -output <file>:\toutput file name (default stdout)";
     }
   },
+  /**
+   * Produce a zip archive holding the file in KML format, compressed in
+   * parallel.
+   */
+  KMZ {
+
+    public boolean matchesOption( String arg)
+    {
+      return "kmz".equals( arg);
+    }
+
+    @Override
+    public CmdlineKit createCmdlineKit()
+    {
+      return new KMLCmdlineKit( true);
+    }
+
+    public String getDescription()
+    {
+      return "kmz:\tcompressed KML format (zip archive)";
+    }
+
+    public String getUsage()
+    {
+      return "kmz [-c <num>] [-s <metres>] [-r <renderer>] [-p <style>]"
+        + " [-o <file>]"
+        + "\n  Type options: same as for kml";
+    }
+  },
+  /**
+   * Produce a directory of KML files with the tracks split into tiles, which
+   * are loaded depending on the view.
+   */
+  KMLTILES {
+
+    public boolean matchesOption( String arg)
+    {
+      return "kmltiles".equals( arg);
+    }
+
+    @Override
+    public CmdlineKit createCmdlineKit()
+    {
+      return new KMLTilesCmdlineKit();
+    }
+
+    public String getDescription()
+    {
+      return "kmltiles:\tKML format split into tiles, for huge races";
+    }
+
+    public String getUsage()
+    {
+      return "kmltiles [-c <num>] [-l <num>] -o <dir>"
+        + "\n  Type options:"
+        + "\n\t-c -colors <num>:\tnumber of colors to encode speed (default 120)"
+        + "\n\t-l -levels <num>:\tnumber of levels of tiles, 1 to 16 (default 5)"
+        + "\n\t-o -output <dir>:\toutput directory name";
+    }
+  },
   /**
    * Produce a file in the flash format with boat animation.
    */
@@ -59,8 +127,10 @@ enum OutputType implements ParsableTypeOption
 
     public String getUsage()
     {
-      return "flash -o <dir>" + "\n  Type options:"
-        + "\n\t-o -output <dir>:\toutput directory name";
+      return "flash [-d <seconds>] -o <file>" + "\n  Type options:"
+        + "\n\t-d -duration <seconds>:\tplaying time of the animation"
+        + " (default 60)"
+        + "\n\t-o -output <file>:\toutput file name";
     }
   };
 
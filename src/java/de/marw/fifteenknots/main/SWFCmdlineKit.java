@@ -3,6 +3,8 @@
 
 package de.marw.fifteenknots.main;
 
+import java.text.MessageFormat;
+
 import de.marw.fifteenknots.engine.IProcessor;
 
 
@@ -15,18 +17,39 @@ class SWFCmdlineKit implements CmdlineKit {
 
   private String outputFileName;
 
+  /** playing time of the movie in seconds */
+  private float duration= 60;
+
   /*-
    * @see de.marw.fifteenknots.main.CmdlineKit#parseOptions(java.lang.String[], int)
    */
   public int parseOptions( String[] args, int firstArgIdx)
     throws OptionValidationException {
     int consumed= 0;
-    for (int i= firstArgIdx; i < args.length; i+= consumed) {
+    for (int i= firstArgIdx; i < args.length; i= firstArgIdx + consumed) {
       final String arg= args[i];
       if (arg.equals( "-o") || arg.equals( "-output")) {
 	setOutputFileName( Main.getRequiredArg( args, i));
 	consumed+= 2;
       }
+      else if (arg.equals( "-d") || arg.equals( "-duration")) {
+	final String duration_s= Main.getRequiredArg( args, i);
+	try {
+	  float seconds= Float.parseFloat( duration_s);
+	  if ( !(seconds > 0) || seconds > 3600) {
+	    String format= "Invalid duration -- {0} ";
+	    throw new OptionValidationException( MessageFormat.format( format,
+	      duration_s));
+	  }
+	  duration= seconds;
+	  consumed+= 2;
+	}
+	catch (NumberFormatException ex) {
+	  String format= "Invalid number -- {0} ";
+	  throw new OptionValidationException( MessageFormat.format( format,
+	    duration_s));
+	}
+      }
       else {
 	// unknown option
 	break;
@@ -55,7 +78,7 @@ class SWFCmdlineKit implements CmdlineKit {
    * @see de.marw.fifteenknots.main.CmdlineKit#createProcessor(de.marw.fifteenknots.main.Options)
    */
   public IProcessor createProcessor( Options globalOptions) {
-    return new SWFProcessor( globalOptions, outputFileName);
+    return new SWFProcessor( globalOptions, outputFileName, duration);
   }
 
 }
@@ -6,6 +6,7 @@ package de.marw.fifteenknots.main;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -32,7 +33,6 @@ import com.flagstone.transform.fillstyle.SolidFill;
 import com.flagstone.transform.linestyle.LineStyle1;
 import com.flagstone.transform.shape.DefineShape2;
 import com.flagstone.transform.shape.ShapeTag;
-import com.flagstone.transform.util.movie.Layer;
 import com.flagstone.transform.util.shape.Canvas;
 
 import de.marw.fifteenknots.engine.IProcessor;
@@ -42,9 +42,11 @@ import de.marw.fifteenknots.engine.QuickHullCalculator;
 import de.marw.fifteenknots.engine.RaceModelBuilder;
 import de.marw.fifteenknots.engine.SpeedColorEncoder;
 import de.marw.fifteenknots.engine.ThreadPoolExecutorService;
+import de.marw.fifteenknots.engine.TrackResampler;
 import de.marw.fifteenknots.model.Cruise;
 import de.marw.fifteenknots.model.RaceModel;
-import de.marw.fifteenknots.nmeareader.Position2D;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.nmeareader.Position;
 
 /**
  * A Processor that produces output in the SWF-format (Adobe shockwave)
@@ -53,23 +55,36 @@ import de.marw.fifteenknots.nmeareader.Position2D;
  */
 class SWFProcessor implements IProcessor {
 
+  /** frames per second */
+  private static final float FRAME_RATE = 25.0f;
+
+  /** the length of the boat shapes in twips */
+  private static final int BOAT_LENGTH = 505;
+
   private final Options options;
 
   private String outputFileName;
 
+  /** the playing time of the movie in seconds */
+  private float duration;
+
   /**
    * @param globalOptions
    *        parsed global commandline options
    * @param outputFileName
    *        the name of the output file or {@code null}, if output should go to
    *        stdout.
+   * @param duration
+   *        the playing time of the movie in seconds.
    */
-  public SWFProcessor(Options globalOptions, String outputFileName) {
+  public SWFProcessor(Options globalOptions, String outputFileName,
+      float duration) {
     if (globalOptions == null) {
       throw new NullPointerException("options");
     }
     this.options = globalOptions;
     this.outputFileName = outputFileName;
+    this.duration = duration;
   }
 
   /**
@@ -83,11 +98,10 @@ class SWFProcessor implements IProcessor {
     RaceModelBuilder builder = new BasicRaceModelBuilder(options);
 
     RaceModel raceModel = builder.buildModel();
-    getMinimumBoundingBox(raceModel);
+    Position[] box = getMinimumBoundingBox(raceModel);
 
     // render the output...
-// renderer.process( model);
-    Movie movie = createMovie(raceModel);
+    Movie movie = createMovie(raceModel, box);
     try {
       movie.encodeToFile(new File(outputFileName));
     } catch (DataFormatException ex) {
@@ -104,13 +118,13 @@ class SWFProcessor implements IProcessor {
    * @return an array containing the corner positions of the minimum bounding
    *         box
    */
-  public static Position2D[] getMinimumBoundingBox(RaceModel raceModel) {
+  public static Position[] getMinimumBoundingBox(RaceModel raceModel) {
     final List<? extends Cruise> cruises = raceModel.getCruises();
-    List<List<Position2D>> hulls = getConvexHulls(cruises);
+    List<List<Position>> hulls = getConvexHulls(cruises);
     // merge convex hulls..
-    List<Position2D> points = new ArrayList<Position2D>(10 * cruises.size());
-    for (List<Position2D> hull : hulls) {
-      for (Position2D point : hull) {
+    List<Position> points = new ArrayList<Position>(10 * cruises.size());
+    for (List<Position> hull : hulls) {
+      for (Position point : hull) {
 	points.add(point);
       }
     }
@@ -122,34 +136,34 @@ class SWFProcessor implements IProcessor {
    *
    * @return A list of convex hulls, one for each cruise.
    */
-  private static List<List<Position2D>> getConvexHulls(
+  private static List<List<Position>> getConvexHulls(
       List<? extends Cruise> cruises) {
     final int size = cruises.size();
-    final List<List<Position2D>> hulls = new ArrayList<List<Position2D>>(
+    final List<List<Position>> hulls = new ArrayList<List<Position>>(
 	cruises.size());
     if (size == 1) {
       // optimization for a single boat
-      hulls.add(QuickHull.quickHullOfTrack(cruises.get(0).getTrackpoints()));
+      hulls.add(QuickHull.quickHullOfTrack(cruises.get(0).getTrack()));
       return hulls;
     } else if (size == 0) {
       return hulls;
     }
 
     // create workers and returned list..
-    ArrayList<Callable<List<Position2D>>> workers = new ArrayList<Callable<List<Position2D>>>(
+    ArrayList<Callable<List<Position>>> workers = new ArrayList<Callable<List<Position>>>(
 	size);
     for (Cruise boatOptions : cruises) {
-      workers.add(new QuickHullCalculator(boatOptions.getTrackpoints()));
+      workers.add(new QuickHullCalculator(boatOptions.getTrack()));
     }
 
     // start workers and wait for all to finish
     ExecutorService e = ThreadPoolExecutorService.getService();
     try {
-      List<Future<List<Position2D>>> workerResults = e.invokeAll(workers);
-      for (Future<List<Position2D>> result : workerResults) {
+      List<Future<List<Position>>> workerResults = e.invokeAll(workers);
+      for (Future<List<Position>> result : workerResults) {
 	try {
 	  // throws the exception if one occurred during the invocation
-	  List<Position2D> hull = result.get(0, TimeUnit.MILLISECONDS);
+	  List<Position> hull = result.get(0, TimeUnit.MILLISECONDS);
 	  hulls.add(hull);
 	} catch (ExecutionException ex) {
 	  // raise exception that occured in worker
@@ -170,79 +184,168 @@ class SWFProcessor implements IProcessor {
 
   }
 
-  private Movie createMovie(RaceModel raceModel) {
+  /**
+   * Creates the animation of the race. The tracks of all boats are resampled
+   * at the frames of the movie, over the time span common to all tracks. If
+   * the tracks do not overlap in time, the time from the first start of a
+   * boat to the last finish is animated. Each boat is moved in each frame, if
+   * its position or course changed.
+   *
+   * @param box
+   *        the minimum bounding box of the race, its longer side is laid out
+   *        horizontally. May be {@code null}.
+   * @throws IOException
+   *         if resampling is interrupted
+   */
+  private Movie createMovie(RaceModel raceModel, Position[] box)
+      throws IOException {
     int height = 10000;
     int width = height * 16 / 9;
-    int fontSize = 240;
 
     int uid = 1;
 
     Movie movie = new Movie();
     final MovieHeader header = new MovieHeader();
     header.setFrameSize(new Bounds(0, 0, width, height));
-    header.setFrameRate(25.0f);
+    header.setFrameRate(FRAME_RATE);
     movie.add(header);
     movie.add(new EnableDebugger2("15kts"));
 
     movie.add(new Background(WebPalette.DARK_BLUE.color()));
 
-    ArrayList<Layer> layers = new ArrayList<Layer>();
+    final List<? extends Cruise> cruises = raceModel.getCruises();
+    // the time span of the race...
+    long firstStart = Long.MAX_VALUE, lastStart = Long.MIN_VALUE;
+    long firstEnd = Long.MAX_VALUE, lastEnd = Long.MIN_VALUE;
+    for (Cruise cruise : cruises) {
+      final Track track = cruise.getTrack();
+      if (track.size() > 0) {
+	final long first = track.getDate(0);
+	final long last = track.getDate(track.size() - 1);
+	firstStart = Math.min(firstStart, first);
+	lastStart = Math.max(lastStart, first);
+	firstEnd = Math.min(firstEnd, last);
+	lastEnd = Math.max(lastEnd, last);
+      }
+    }
+    if (firstStart > lastEnd) {
+      // no track points, nothing to animate
+      movie.add(ShowFrame.getInstance());
+      return movie;
+    }
+    long start = lastStart;
+    long end = firstEnd;
+    if (start > end) {
+      // no common time span
+      start = firstStart;
+      end = lastEnd;
+    }
+    int frames = Math.round(duration * FRAME_RATE);
+    if (frames < 2 || start == end) {
+      frames = 1;
+    }
+    final double interval = frames > 1 ? (end - start) / (double) (frames - 1)
+	: 0;
+    final List<TrackResampler> samples = resample(cruises, start, interval,
+	frames);
+    final FrameTransform transform = new FrameTransform(box, samples, width,
+	height, BOAT_LENGTH);
+
     // one layer per boat...
-    final int BOATS = 22;
+    final int boats = cruises.size();
     ArrayList<ShapeTag> boatShapes = new ArrayList<ShapeTag>();
-
-    SpeedColorEncoder colorEncoder = new SpeedColorEncoder(BOATS, 0.0f, BOATS);
-    for (int boat = 0; boat < BOATS; boat++) {
-      Layer layer = new Layer(boat);
-      layers.add(layer);
-      ShapeTag boatShape = createBoatShape(uid++,
-	  colorEncoder.encodeSpeed(Float.valueOf(boat)));
+    SpeedColorEncoder colorEncoder = new SpeedColorEncoder(boats, 0.0f, boats);
+    for (int boat = 0; boat < boats; boat++) {
+      ShapeTag boatShape = createBoatShape(uid++, colorEncoder
+	  .encodeSpeed(Float.valueOf(boat)));
       movie.add(boatShape);
       boatShapes.add(boatShape);
     }
-    // place boats...
-    for (int boat = 0; boat < BOATS; boat++) {
-      final ShapeTag bs = boatShapes.get(boat);
-      CoordTransform position = CoordTransform.translate(600 + 90 * boat, 600);
-      movie.add(new Place2().setType(PlaceType.NEW).setLayer(boat + 1)
-	  .setIdentifier(bs.getIdentifier()).setTransform(position));
-    }
     // move boats...
-    for (int f = 0; f < 25 * 10; f++) {
-      for (int boat = 0; boat < BOATS; boat++) {
-	CoordTransform position = CoordTransform.translate(f * 20 + (boat + 1)
-	    * 160, (boat + 1) * 180);
-	CoordTransform orientation = CoordTransform.rotate(45 + f * 5
-	    * (boat % 2 == 0 ? 1 : -1));
-	CoordTransform transform = new CoordTransform(CoordTransform.product(
+    final int[] lastX = new int[boats];
+    final int[] lastY = new int[boats];
+    final int[] lastRotation = new int[boats];
+    for (int f = 0; f < frames; f++) {
+      for (int boat = 0; boat < boats; boat++) {
+	final TrackResampler sample = samples.get(boat);
+	if (sample.getLatitudesE7() == null) {
+	  continue; // empty track
+	}
+	final int lat = sample.getLatitudesE7()[f];
+	final int lon = sample.getLongitudesE7()[f];
+	final int x = transform.getX(lat, lon);
+	final int y = transform.getY(lat, lon);
+	final float bearing = sample.getBearings()[f];
+	// keep the heading if the course is unknown
+	final int rotation = Float.isNaN(bearing) ? lastRotation[boat]
+	    : transform.getRotation(bearing);
+	if (f > 0 && x == lastX[boat] && y == lastY[boat]
+	    && rotation == lastRotation[boat]) {
+	  continue; // not moved
+	}
+	lastX[boat] = x;
+	lastY[boat] = y;
+	lastRotation[boat] = rotation;
+
+	CoordTransform position = CoordTransform.translate(x, y);
+	CoordTransform orientation = CoordTransform.rotate(rotation);
+	CoordTransform matrix = new CoordTransform(CoordTransform.product(
 	    position.getMatrix(), orientation.getMatrix()));
 	final ShapeTag bs = boatShapes.get(boat);
-
-	movie.add(new Place2().setType(PlaceType.MODIFY).setLayer(boat + 1)
-	    .setIdentifier(bs.getIdentifier()).setTransform(transform));
+	movie.add(new Place2().setType(f == 0 ? PlaceType.NEW
+	    : PlaceType.MODIFY).setLayer(boat + 1).setIdentifier(
+	    bs.getIdentifier()).setTransform(matrix));
       }
       movie.add(ShowFrame.getInstance());
     }
 
-//    {
-//      // Add STOP action
-//      ArrayList<Action> actions = new ArrayList<Action>();
-//      actions.add(Action.Stop());
-//      movie.add(new DoAction(actions));
-//    }
-//    // frame where actions will be executed
-//    movie.add(ShowFrame.getInstance());
-
     return movie;
   }
 
+  /**
+   * Resamples the tracks of all cruises at the frames of the movie. The
+   * tracks are resampled concurrently.
+   *
+   * @return the resampled tracks in the order of the cruises.
+   * @throws IOException
+   *         if resampling is interrupted
+   */
+  private static List<TrackResampler> resample(List<? extends Cruise> cruises,
+      long start, double interval, int frames) throws IOException {
+    final List<TrackResampler> workers = new ArrayList<TrackResampler>(
+	cruises.size());
+    for (Cruise cruise : cruises) {
+      workers.add(new TrackResampler(cruise.getTrack(), start, interval,
+	  frames));
+    }
+
+    // start workers and wait for all to finish
+    ExecutorService e = ThreadPoolExecutorService.getService();
+    try {
+      for (Future<Object> result : e.invokeAll(workers)) {
+	result.get();
+      }
+    } catch (ExecutionException ex) {
+      // raise exception that occured in worker
+      final Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+	throw (RuntimeException) cause;
+      }
+      throw (Error) cause;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    return workers;
+  }
+
   private ShapeTag createBoatShape(int identifier, java.awt.Color color) {
 
     /*
      * Define the outline...
      */
     int width = 194;
-    int length = 505;
+    int length = BOAT_LENGTH;
     int mast = 303; // pos of mast from aft
 
     // start_*: first line to draw starts here
@@ -262,4 +365,167 @@ class SWFProcessor implements IProcessor {
     DefineShape2 shape = path.defineShape(identifier);
     return shape;
   }
-}
\ No newline at end of file
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * Maps positions into the frame of the movie. The positions are projected
+   * into a plane and rotated, so that the longer side of the minimum bounding
+   * box of the race is horizontal, then scaled to fit into the frame.
+   *
+   * @author Martin Weber
+   */
+  private static class FrameTransform {
+
+    /** the scale of the longitudes in the projection */
+    private final double cosLat;
+
+    private final double cos;
+
+    private final double sin;
+
+    /** the rotation of the race area in degrees, counter-clockwise */
+    private final double rotation;
+
+    private final double minX;
+
+    private final double minY;
+
+    private final double scale;
+
+    private final double offsetX;
+
+    private final double offsetY;
+
+    private final int height;
+
+    /**
+     * @param box
+     *        the minimum bounding box of the race or {@code null}
+     * @param samples
+     *        the positions that have to fit into the frame
+     * @param margin
+     *        the space to leave at the borders of the frame
+     */
+    FrameTransform(Position[] box, List<TrackResampler> samples, int width,
+	int height, int margin) {
+      this.height = height;
+
+      // project around the middle latitude of the race...
+      int south = Integer.MAX_VALUE;
+      int north = Integer.MIN_VALUE;
+      for (TrackResampler sample : samples) {
+	if (sample.getLatitudesE7() != null) {
+	  for (int lat : sample.getLatitudesE7()) {
+	    south = Math.min(south, lat);
+	    north = Math.max(north, lat);
+	  }
+	}
+      }
+      cosLat = south > north ? 1 : Math.cos(Math.toRadians(Position
+	  .toDegrees((int) (((long) south + north) / 2))));
+
+      // lay out the longer side of the box horizontally...
+      double angle = 0;
+      if (box != null && box.length >= 4) {
+	double ux = (box[1].getLongitude() - box[0].getLongitude()) * cosLat;
+	double uy = box[1].getLatitude() - box[0].getLatitude();
+	final double vx = (box[3].getLongitude() - box[0].getLongitude())
+	    * cosLat;
+	final double vy = box[3].getLatitude() - box[0].getLatitude();
+	if (Math.hypot(vx, vy) > Math.hypot(ux, uy)) {
+	  ux = vx;
+	  uy = vy;
+	}
+	if (ux != 0 || uy != 0) {
+	  angle = Math.atan2(uy, ux);
+	  // do not turn the race upside down
+	  if (angle > Math.PI / 2) {
+	    angle -= Math.PI;
+	  } else if (angle <= -Math.PI / 2) {
+	    angle += Math.PI;
+	  }
+	}
+      }
+      cos = Math.cos(angle);
+      sin = Math.sin(angle);
+      rotation = Math.toDegrees(angle);
+
+      // fit the positions into the frame...
+      double x0 = Double.POSITIVE_INFINITY, x1 = Double.NEGATIVE_INFINITY;
+      double y0 = Double.POSITIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+      for (TrackResampler sample : samples) {
+	final int[] lats = sample.getLatitudesE7();
+	final int[] lons = sample.getLongitudesE7();
+	if (lats == null) {
+	  continue;
+	}
+	for (int i = 0; i < lats.length; i++) {
+	  final double x = rotatedX(lats[i], lons[i]);
+	  final double y = rotatedY(lats[i], lons[i]);
+	  x0 = Math.min(x0, x);
+	  x1 = Math.max(x1, x);
+	  y0 = Math.min(y0, y);
+	  y1 = Math.max(y1, y);
+	}
+      }
+      if (x0 > x1) {
+	x0 = x1 = y0 = y1 = 0;
+      }
+      final double innerWidth = width - 2 * margin;
+      final double innerHeight = height - 2 * margin;
+      double s = Math.min(x1 > x0 ? innerWidth / (x1 - x0)
+	  : Double.POSITIVE_INFINITY, y1 > y0 ? innerHeight / (y1 - y0)
+	  : Double.POSITIVE_INFINITY);
+      if (Double.isInfinite(s)) {
+	s = 1; // a single position
+      }
+      minX = x0;
+      minY = y0;
+      scale = s;
+      // center the race in the frame
+      offsetX = margin + (innerWidth - (x1 - x0) * s) / 2;
+      offsetY = margin + (innerHeight - (y1 - y0) * s) / 2;
+    }
+
+    private double rotatedX(int lat, int lon) {
+      return Position.toDegrees(lon) * cosLat * cos + Position.toDegrees(lat)
+	  * sin;
+    }
+
+    private double rotatedY(int lat, int lon) {
+      return -Position.toDegrees(lon) * cosLat * sin
+	  + Position.toDegrees(lat) * cos;
+    }
+
+    /**
+     * Gets the horizontal frame coordinate of a position in twips.
+     */
+    int getX(int lat, int lon) {
+      return (int) Math.round(offsetX + (rotatedX(lat, lon) - minX) * scale);
+    }
+
+    /**
+     * Gets the vertical frame coordinate of a position in twips, which grows
+     * downwards.
+     */
+    int getY(int lat, int lon) {
+      return (int) Math.round(height - offsetY - (rotatedY(lat, lon) - minY)
+	  * scale);
+    }
+
+    /**
+     * Gets the rotation of a boat heading to the specified bearing.
+     *
+     * @return the angle in degrees clockwise from the top of the frame.
+     */
+    int getRotation(float bearing) {
+      int angle = (int) Math.round(bearing + rotation) % 360;
+      if (angle < 0) {
+	angle += 360;
+      }
+      return angle;
+    }
+  } // FrameTransform
+}
@@ -0,0 +1,298 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.marw.fifteenknots.nmeareader.Fix;
+import de.marw.fifteenknots.nmeareader.Position;
+
+
+/**
+ * A track that stores its track points column by column in arrays of
+ * primitive values, growing the arrays as track points are added.
+ * <p>
+ * Note that this class is not thread-safe.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class ArrayTrack implements MutableTrack
+{
+  private long[] dates;
+
+  /** latitudes in 10^-7 degrees */
+  private int[] latitudes;
+
+  /** longitudes in 10^-7 degrees */
+  private int[] longitudes;
+
+  private float[] speeds;
+
+  private float[] bearings;
+
+  /** number of track points */
+  private int size;
+
+  /**
+   * Constructs an empty track with an initial capacity of one hour of track
+   * points recorded each second.
+   */
+  public ArrayTrack()
+  {
+    this( 60 * 60);
+  }
+
+  /**
+   * Constructs an empty track with the specified initial capacity.
+   */
+  public ArrayTrack( int initialCapacity)
+  {
+    if (initialCapacity < 0)
+      throw new IllegalArgumentException( "initialCapacity");
+    dates= new long[initialCapacity];
+    latitudes= new int[initialCapacity];
+    longitudes= new int[initialCapacity];
+    speeds= new float[initialCapacity];
+    bearings= new float[initialCapacity];
+  }
+
+  /**
+   * Constructs a track that contains the values of the specified track events.
+   *
+   * @deprecated Construct an empty track and {@link #add(Fix) add} the track
+   *             points.
+   */
+  @Deprecated
+  public ArrayTrack(
+    List<de.marw.fifteenknots.nmeareader.TrackEvent> events)
+  {
+    this( events.size());
+    for (de.marw.fifteenknots.nmeareader.TrackEvent evt : events) {
+      add( evt);
+    }
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#add(long, double, double, float, float)
+   */
+  public void add( long date, double latitude, double longitude, float speed,
+    float bearing)
+  {
+    addE7( date, Position.toE7( latitude), Position.toE7( longitude), speed,
+      bearing);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#addE7(long, int, int, float, float)
+   */
+  public void addE7( long date, int latitude, int longitude, float speed,
+    float bearing)
+  {
+    if (size == dates.length) {
+      grow();
+    }
+    final int i= size++;
+    dates[i]= date;
+    latitudes[i]= latitude;
+    longitudes[i]= longitude;
+    speeds[i]= speed;
+    bearings[i]= bearing;
+  }
+
+  /**
+   * Appends the values of the specified track point.
+   */
+  public void add( Fix fix)
+  {
+    final Position position= fix.getPosition();
+    addE7( fix.getDate(), position.getLatitudeE7(), position.getLongitudeE7(),
+      fix.getSpeedValue(), fix.getBearingValue());
+  }
+
+  /**
+   * Appends the values of the specified track event.
+   *
+   * @deprecated Use {@link #add(Fix)}.
+   */
+  @Deprecated
+  public void add( de.marw.fifteenknots.nmeareader.TrackEvent evt)
+  {
+    add( evt.getDate(), evt.getPosition().getLatitude(), evt.getPosition()
+      .getLongitude(), evt.getSpeedValue(), evt.getBearingValue());
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#add(de.marw.fifteenknots.model.Track, int)
+   */
+  public void add( Track track, int index)
+  {
+    addE7( track.getDate( index), track.getLatitudeE7( index), track
+      .getLongitudeE7( index), track.getSpeed( index), track.getBearing( index));
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#sortByDate()
+   */
+  public void sortByDate()
+  {
+    final int[] order= DateOrder.sort( dates, size);
+    final long[] sDates= new long[dates.length];
+    final int[] sLatitudes= new int[dates.length];
+    final int[] sLongitudes= new int[dates.length];
+    final float[] sSpeeds= new float[dates.length];
+    final float[] sBearings= new float[dates.length];
+    for (int i= 0; i < size; i++) {
+      final int j= order[i];
+      sDates[i]= dates[j];
+      sLatitudes[i]= latitudes[j];
+      sLongitudes[i]= longitudes[j];
+      sSpeeds[i]= speeds[j];
+      sBearings[i]= bearings[j];
+    }
+    dates= sDates;
+    latitudes= sLatitudes;
+    longitudes= sLongitudes;
+    speeds= sSpeeds;
+    bearings= sBearings;
+  }
+
+  /**
+   * Trims the capacity of this track to its current size.
+   *
+   * @see de.marw.fifteenknots.model.MutableTrack#trimToSize()
+   */
+  public void trimToSize()
+  {
+    if (size < dates.length) {
+      setCapacity( size);
+    }
+  }
+
+  /**
+   * Does nothing, the memory is freed by the garbage collector.
+   *
+   * @see de.marw.fifteenknots.model.MutableTrack#dispose()
+   */
+  public void dispose()
+  {
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#size()
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getDate(int)
+   */
+  public long getDate( int index)
+  {
+    rangeCheck( index);
+    return dates[index];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLatitude(int)
+   */
+  public double getLatitude( int index)
+  {
+    return Position.toDegrees( getLatitudeE7( index));
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLongitude(int)
+   */
+  public double getLongitude( int index)
+  {
+    return Position.toDegrees( getLongitudeE7( index));
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLatitudeE7(int)
+   */
+  public int getLatitudeE7( int index)
+  {
+    rangeCheck( index);
+    return latitudes[index];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLongitudeE7(int)
+   */
+  public int getLongitudeE7( int index)
+  {
+    rangeCheck( index);
+    return longitudes[index];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getSpeed(int)
+   */
+  public float getSpeed( int index)
+  {
+    rangeCheck( index);
+    return speeds[index];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#setSpeed(int, float)
+   */
+  public void setSpeed( int index, float speed)
+  {
+    rangeCheck( index);
+    speeds[index]= speed;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getBearing(int)
+   */
+  public float getBearing( int index)
+  {
+    rangeCheck( index);
+    return bearings[index];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#setBearing(int, float)
+   */
+  public void setBearing( int index, float bearing)
+  {
+    rangeCheck( index);
+    bearings[index]= bearing;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#cursor()
+   */
+  public TrackCursor cursor()
+  {
+    return new IndexedTrackCursor( this);
+  }
+
+  private void grow()
+  {
+    setCapacity( Math.max( 16, dates.length + (dates.length >> 1)));
+  }
+
+  private void setCapacity( int capacity)
+  {
+    dates= Arrays.copyOf( dates, capacity);
+    latitudes= Arrays.copyOf( latitudes, capacity);
+    longitudes= Arrays.copyOf( longitudes, capacity);
+    speeds= Arrays.copyOf( speeds, capacity);
+    bearings= Arrays.copyOf( bearings, capacity);
+  }
+
+  private void rangeCheck( int index)
+  {
+    if (index >= size)
+      throw new IndexOutOfBoundsException( "Index: " + index + ", Size: "
+        + size);
+  }
+}
@@ -5,39 +5,56 @@ package de.marw.fifteenknots.model;
 
 import java.util.List;
 
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.nmeareader.Fix;
 
 
 /**
  * A cruise of a boat. Contains boat metadata and the list of track points. None
  * of the track points in the list is guaranteed to hold information about
- * {@link TrackEvent#getSpeed() speed} or {@link TrackEvent#getBearing()
- * bearing}, only {@link TrackEvent#getDate() date} and
- * {@link TrackEvent#getPosition() position} is provided.
+ * {@link Fix#getSpeed() speed} or {@link Fix#getBearing() bearing}, only
+ * {@link Fix#getDate() date} and {@link Fix#getPosition() position} is
+ * provided.
  *
  * @author Martin Weber
  */
 public class BasicCruise implements Cruise
 {
-  private final List<TrackEvent> track;
+  private final Track track;
+
+  /** the track viewed as a list of fixes */
+  private final List<Fix> fixes;
 
   private final Boat boat;
 
   /**
    * Constructs a cruise object with the specified boat and track points.
    */
-  public BasicCruise( Boat boat, List<TrackEvent> track)
+  public BasicCruise( Boat boat, Track track)
   {
     if (track == null) {
       throw new NullPointerException( "track");
     }
     this.track= track;
+    this.fixes= new FixList( track);
     if (boat == null) {
       throw new NullPointerException( "boat");
     }
     this.boat= boat;
   }
 
+  /**
+   * Constructs a cruise object with the specified boat and track points. The
+   * values of the track events are copied to a new {@link ArrayTrack}.
+   *
+   * @deprecated Use {@link #BasicCruise(Boat, Track)}.
+   */
+  @Deprecated
+  public BasicCruise( Boat boat,
+    List<de.marw.fifteenknots.nmeareader.TrackEvent> track)
+  {
+    this( boat, new ArrayTrack( track));
+  }
+
   /**
    * Gets the metadata about the boat.
    */
@@ -51,9 +68,32 @@ public class BasicCruise implements Cruise
    *
    * @return all track points ordered ascending by time.
    */
-  public List<TrackEvent> getTrackpoints()
+  public Track getTrack()
   {
     return track;
   }
 
+  /**
+   * Gets all track points recorded for this cruise as objects.
+   *
+   * @return all track points ordered ascending by time.
+   */
+  public List<Fix> getFixes()
+  {
+    return fixes;
+  }
+
+  /**
+   * Gets all track points recorded for this cruise as track events.
+   *
+   * @return all track points ordered ascending by time.
+   * @deprecated Use {@link #getFixes()}, whose elements are immutable.
+   */
+  @Deprecated
+  public List<de.marw.fifteenknots.nmeareader.TrackEvent>
+    getTrackpoints()
+  {
+    return new TrackEventList( track);
+  }
+
 }
@@ -0,0 +1,835 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import java.util.Arrays;
+
+import de.marw.fifteenknots.nmeareader.Position;
+
+
+/**
+ * A track that keeps its track points compressed in memory, using the
+ * encodings of the Gorilla time series database: Dates are stored as
+ * delta-of-delta in a few bits, the fixed-point coordinates, speed and bearing
+ * as the XOR of their bits with the bits of the previous value. The encoding
+ * is lossless.
+ * <p>
+ * Track points are compressed in blocks of up to {@value #BLOCK_SIZE} track
+ * points. The track points of the last block stay uncompressed until the
+ * block is full or {@link #trimToSize()} is invoked.
+ * </p>
+ * <p>
+ * Iterate the track points with a {@link #cursor() cursor}, which decodes
+ * them sequentially. Access by index decompresses a whole block and keeps it
+ * until a track point of another block is accessed, so it is cheap for
+ * track points that are close together only.
+ * </p>
+ * <p>
+ * Note that this class is not thread-safe for modifications, but concurrent
+ * reads are permitted.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class CompressedTrack implements MutableTrack
+{
+  /** maximum number of track points in a block */
+  public static final int BLOCK_SIZE= 1024;
+
+  /** the minimum capacity of the block arrays */
+  private static final int MIN_BLOCKS= 16;
+
+  /** the compressed blocks */
+  private long[][] blockBits= new long[MIN_BLOCKS][];
+
+  /** index of the first track point of each block */
+  private int[] blockStart= new int[MIN_BLOCKS];
+
+  /** number of compressed blocks */
+  private int blockCount;
+
+  /** number of track points in compressed blocks */
+  private int compressedSize;
+
+  /** the uncompressed track points of the last block */
+  private final Block tail= new Block();
+
+  /** the last decompressed block, used for access by index */
+  private final Block cache= new Block();
+
+  /** the index of the block in the cache or -1 */
+  private int cachedBlock= -1;
+
+  /** whether the cache was modified and must be compressed again */
+  private boolean cacheDirty;
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#add(long, double, double, float, float)
+   */
+  public void add( long date, double latitude, double longitude, float speed,
+    float bearing)
+  {
+    addE7( date, Position.toE7( latitude), Position.toE7( longitude), speed,
+      bearing);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#addE7(long, int, int, float, float)
+   */
+  public synchronized void addE7( long date, int latitude, int longitude,
+    float speed, float bearing)
+  {
+    tail.add( date, latitude, longitude, speed, bearing);
+    if (tail.size == BLOCK_SIZE) {
+      compressTail();
+    }
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#add(de.marw.fifteenknots.model.Track, int)
+   */
+  public void add( Track track, int index)
+  {
+    addE7( track.getDate( index), track.getLatitudeE7( index), track
+      .getLongitudeE7( index), track.getSpeed( index), track.getBearing( index));
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#sortByDate()
+   */
+  public synchronized void sortByDate()
+  {
+    final ArrayTrack sorted= new ArrayTrack( size());
+    for (TrackCursor c= cursor(); c.next();) {
+      sorted.addE7( c.getDate(), c.getLatitudeE7(), c.getLongitudeE7(), c
+        .getSpeed(), c.getBearing());
+    }
+    sorted.sortByDate();
+    dispose();
+    for (int i= 0; i < sorted.size(); i++) {
+      add( sorted, i);
+    }
+  }
+
+  /**
+   * Compresses the last block, even if it is not full.
+   *
+   * @see de.marw.fifteenknots.model.MutableTrack#trimToSize()
+   */
+  public synchronized void trimToSize()
+  {
+    flushCache();
+    if (tail.size > 0) {
+      compressTail();
+    }
+    blockBits= Arrays.copyOf( blockBits, blockCount);
+    blockStart= Arrays.copyOf( blockStart, blockCount);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#dispose()
+   */
+  public synchronized void dispose()
+  {
+    Arrays.fill( blockBits, null);
+    blockCount= 0;
+    compressedSize= 0;
+    tail.size= 0;
+    tail.start= 0;
+    cachedBlock= -1;
+    cacheDirty= false;
+  }
+
+  /**
+   * Gets the number of bytes used by the compressed blocks.
+   */
+  public synchronized long getCompressedBytes()
+  {
+    long bytes= 0;
+    for (int i= 0; i < blockCount; i++) {
+      bytes+= blockBits[i].length * 8L;
+    }
+    return bytes;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#size()
+   */
+  public synchronized int size()
+  {
+    return compressedSize + tail.size;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getDate(int)
+   */
+  public synchronized long getDate( int index)
+  {
+    final Block block= blockOf( index);
+    return block.dates[index - block.start];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLatitude(int)
+   */
+  public double getLatitude( int index)
+  {
+    return Position.toDegrees( getLatitudeE7( index));
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLongitude(int)
+   */
+  public double getLongitude( int index)
+  {
+    return Position.toDegrees( getLongitudeE7( index));
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLatitudeE7(int)
+   */
+  public synchronized int getLatitudeE7( int index)
+  {
+    final Block block= blockOf( index);
+    return block.latitudes[index - block.start];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLongitudeE7(int)
+   */
+  public synchronized int getLongitudeE7( int index)
+  {
+    final Block block= blockOf( index);
+    return block.longitudes[index - block.start];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getSpeed(int)
+   */
+  public synchronized float getSpeed( int index)
+  {
+    final Block block= blockOf( index);
+    return block.speeds[index - block.start];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#setSpeed(int, float)
+   */
+  public synchronized void setSpeed( int index, float speed)
+  {
+    final Block block= blockOf( index);
+    block.speeds[index - block.start]= speed;
+    if (block == cache) {
+      cacheDirty= true;
+    }
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getBearing(int)
+   */
+  public synchronized float getBearing( int index)
+  {
+    final Block block= blockOf( index);
+    return block.bearings[index - block.start];
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#setBearing(int, float)
+   */
+  public synchronized void setBearing( int index, float bearing)
+  {
+    final Block block= blockOf( index);
+    block.bearings[index - block.start]= bearing;
+    if (block == cache) {
+      cacheDirty= true;
+    }
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#cursor()
+   */
+  public TrackCursor cursor()
+  {
+    return new BlockCursor();
+  }
+
+  /**
+   * Gets the uncompressed block that holds the specified track point.
+   */
+  private Block blockOf( int index)
+  {
+    if (index < 0 || index >= size())
+      throw new IndexOutOfBoundsException( "Index: " + index + ", Size: "
+        + size());
+    if (index >= compressedSize)
+      return tail;
+    int b= Arrays.binarySearch( blockStart, 0, blockCount, index);
+    if (b < 0) {
+      b= -b - 2;
+    }
+    if (b != cachedBlock) {
+      flushCache();
+      decompress( b, cache);
+      cachedBlock= b;
+    }
+    return cache;
+  }
+
+  /**
+   * Compresses the cached block again, if it was modified.
+   */
+  private void flushCache()
+  {
+    if (cacheDirty) {
+      blockBits[cachedBlock]= compress( cache);
+      cacheDirty= false;
+    }
+  }
+
+  private void decompress( int b, Block block)
+  {
+    final int start= blockStart[b];
+    final int end= b + 1 < blockCount
+      ? blockStart[b + 1] : compressedSize;
+    final BlockDecoder decoder= new BlockDecoder( blockBits[b]);
+    block.size= 0;
+    block.start= start;
+    for (int i= start; i < end; i++) {
+      decoder.next();
+      block.add( decoder.date, decoder.latitude, decoder.longitude,
+        decoder.speed, decoder.bearing);
+    }
+  }
+
+  private void compressTail()
+  {
+    final int b= blockCount;
+    if (b == blockBits.length) {
+      // the arrays may have been trimmed to zero length
+      final int capacity= Math.max( MIN_BLOCKS, b * 2);
+      blockBits= Arrays.copyOf( blockBits, capacity);
+      blockStart= Arrays.copyOf( blockStart, capacity);
+    }
+    blockBits[b]= compress( tail);
+    blockStart[b]= compressedSize;
+    blockCount++;
+    compressedSize+= tail.size;
+    tail.size= 0;
+    tail.start= compressedSize;
+  }
+
+  /**
+   * Compresses the track points of the specified block.
+   */
+  private static long[] compress( Block block)
+  {
+    final BitWriter out= new BitWriter();
+    long lastDate= 0, lastDelta= 0;
+    final XorEncoder lat= new XorEncoder( 32);
+    final XorEncoder lon= new XorEncoder( 32);
+    final XorEncoder speed= new XorEncoder( 32);
+    final XorEncoder bearing= new XorEncoder( 32);
+    for (int i= 0; i < block.size; i++) {
+      final long date= block.dates[i];
+      if (i == 0) {
+        out.write( date, 64);
+      }
+      else {
+        final long delta= date - lastDate;
+        writeDeltaOfDelta( out, delta - lastDelta);
+        lastDelta= delta;
+      }
+      lastDate= date;
+      lat.write( out, block.latitudes[i] & 0xFFFFFFFFL);
+      lon.write( out, block.longitudes[i] & 0xFFFFFFFFL);
+      speed.write( out, Float.floatToRawIntBits( block.speeds[i])
+        & 0xFFFFFFFFL);
+      bearing.write( out, Float.floatToRawIntBits( block.bearings[i])
+        & 0xFFFFFFFFL);
+    }
+    return out.toArray();
+  }
+
+  /**
+   * Writes a delta-of-delta with a prefix code that selects the number of
+   * bits.
+   */
+  private static void writeDeltaOfDelta( BitWriter out, long dod)
+  {
+    final long zz= (dod << 1) ^ (dod >> 63);
+    if (zz == 0) {
+      out.write( 0, 1);
+    }
+    else if (zz < (1L << 7)) {
+      out.write( 0x2, 2);
+      out.write( zz, 7);
+    }
+    else if (zz < (1L << 12)) {
+      out.write( 0x6, 3);
+      out.write( zz, 12);
+    }
+    else if (zz < (1L << 20)) {
+      out.write( 0xE, 4);
+      out.write( zz, 20);
+    }
+    else {
+      out.write( 0xF, 4);
+      out.write( zz, 64);
+    }
+  }
+
+  private static long readDeltaOfDelta( BitReader in)
+  {
+    final long zz;
+    if (in.read( 1) == 0) {
+      return 0;
+    }
+    else if (in.read( 1) == 0) {
+      zz= in.read( 7);
+    }
+    else if (in.read( 1) == 0) {
+      zz= in.read( 12);
+    }
+    else if (in.read( 1) == 0) {
+      zz= in.read( 20);
+    }
+    else {
+      zz= in.read( 64);
+    }
+    return (zz >>> 1) ^ -(zz & 1);
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * Uncompressed track points of a block.
+   */
+  private static class Block
+  {
+    /** index of the first track point in the track */
+    int start;
+
+    int size;
+
+    final long[] dates= new long[BLOCK_SIZE];
+
+    /** latitudes in 10^-7 degrees */
+    final int[] latitudes= new int[BLOCK_SIZE];
+
+    /** longitudes in 10^-7 degrees */
+    final int[] longitudes= new int[BLOCK_SIZE];
+
+    final float[] speeds= new float[BLOCK_SIZE];
+
+    final float[] bearings= new float[BLOCK_SIZE];
+
+    void add( long date, int latitude, int longitude, float speed,
+      float bearing)
+    {
+      final int i= size++;
+      dates[i]= date;
+      latitudes[i]= latitude;
+      longitudes[i]= longitude;
+      speeds[i]= speed;
+      bearings[i]= bearing;
+    }
+  } // Block
+
+  /**
+   * Appends bits to an array of longs, most significant bit first.
+   */
+  private static class BitWriter
+  {
+    private long[] words= new long[64];
+
+    /** number of bits written */
+    private int pos;
+
+    /**
+     * Writes the lower bits of the specified value.
+     *
+     * @param bits
+     *        the number of bits to write, 1 to 64.
+     */
+    void write( long value, int bits)
+    {
+      if (bits < 64) {
+        value&= (1L << bits) - 1;
+      }
+      final int idx= pos >>> 6;
+      if (idx + 1 >= words.length) {
+        words= Arrays.copyOf( words, words.length * 2);
+      }
+      final int free= 64 - (pos & 63);
+      if (bits <= free) {
+        words[idx]|= value << (free - bits);
+      }
+      else {
+        final int rest= bits - free;
+        words[idx]|= value >>> rest;
+        words[idx + 1]= value << (64 - rest);
+      }
+      pos+= bits;
+    }
+
+    long[] toArray()
+    {
+      return Arrays.copyOf( words, (pos + 63) >>> 6);
+    }
+  } // BitWriter
+
+  /**
+   * Reads bits from an array of longs, most significant bit first.
+   */
+  private static class BitReader
+  {
+    private final long[] words;
+
+    private int pos;
+
+    BitReader( long[] words)
+    {
+      this.words= words;
+    }
+
+    /**
+     * Reads the specified number of bits, 1 to 64.
+     */
+    long read( int bits)
+    {
+      final int idx= pos >>> 6;
+      final int off= pos & 63;
+      final int free= 64 - off;
+      pos+= bits;
+      if (bits <= free) {
+        return (words[idx] << off) >>> (64 - bits);
+      }
+      final int rest= bits - free;
+      return ((words[idx] << off) >>> (64 - bits))
+        | (words[idx + 1] >>> (64 - rest));
+    }
+  } // BitReader
+
+  /**
+   * Encodes a sequence of values as the XOR with their previous value. An
+   * unchanged value takes one bit; otherwise only the bits between the
+   * leading and trailing zeros of the XOR are written.
+   */
+  private static class XorEncoder
+  {
+    /** the number of bits of a value, 32 or 64 */
+    private final int width;
+
+    /** the number of bits used to store a number of leading zeros */
+    private final int countBits;
+
+    private long last;
+
+    private int lastLeading= -1;
+
+    private int lastTrailing;
+
+    XorEncoder( int width)
+    {
+      this.width= width;
+      this.countBits= width == 64
+        ? 6 : 5;
+    }
+
+    void write( BitWriter out, long value)
+    {
+      if (lastLeading < 0) {
+        // first value
+        out.write( value, width);
+        last= value;
+        lastLeading= width;
+        return;
+      }
+      final long xor= value ^ last;
+      last= value;
+      if (xor == 0) {
+        out.write( 0, 1);
+        return;
+      }
+      final int leading= Long.numberOfLeadingZeros( xor) - (64 - width);
+      final int trailing= Long.numberOfTrailingZeros( xor);
+      if (leading >= lastLeading && trailing >= lastTrailing) {
+        // meaningful bits fit into the previous window
+        out.write( 0x2, 2);
+        out.write( xor >>> lastTrailing, width - lastLeading - lastTrailing);
+      }
+      else {
+        final int length= width - leading - trailing;
+        out.write( 0x3, 2);
+        out.write( leading, countBits);
+        out.write( length - 1, countBits);
+        out.write( xor >>> trailing, length);
+        lastLeading= leading;
+        lastTrailing= trailing;
+      }
+    }
+  } // XorEncoder
+
+  /**
+   * Decodes values written by a {@link XorEncoder}.
+   */
+  private static class XorDecoder
+  {
+    private final int width;
+
+    private final int countBits;
+
+    private long last;
+
+    private boolean first= true;
+
+    private int lastLeading;
+
+    private int lastTrailing;
+
+    XorDecoder( int width)
+    {
+      this.width= width;
+      this.countBits= width == 64
+        ? 6 : 5;
+    }
+
+    long read( BitReader in)
+    {
+      if (first) {
+        first= false;
+        last= in.read( width);
+        lastLeading= width;
+        return last;
+      }
+      if (in.read( 1) == 0)
+        return last;
+      if (in.read( 1) == 0) {
+        last^= in.read( width - lastLeading - lastTrailing) << lastTrailing;
+      }
+      else {
+        final int leading= (int) in.read( countBits);
+        final int length= (int) in.read( countBits) + 1;
+        final int trailing= width - leading - length;
+        last^= in.read( length) << trailing;
+        lastLeading= leading;
+        lastTrailing= trailing;
+      }
+      return last;
+    }
+  } // XorDecoder
+
+  /**
+   * Decodes the track points of a compressed block one after the other.
+   */
+  private static class BlockDecoder
+  {
+    private final BitReader in;
+
+    private final XorDecoder lat= new XorDecoder( 32);
+
+    private final XorDecoder lon= new XorDecoder( 32);
+
+    private final XorDecoder spd= new XorDecoder( 32);
+
+    private final XorDecoder brg= new XorDecoder( 32);
+
+    private boolean first= true;
+
+    private long delta;
+
+    long date;
+
+    int latitude;
+
+    int longitude;
+
+    float speed;
+
+    float bearing;
+
+    BlockDecoder( long[] bits)
+    {
+      in= new BitReader( bits);
+    }
+
+    /**
+     * Decodes the next track point.
+     */
+    void next()
+    {
+      if (first) {
+        first= false;
+        date= in.read( 64);
+      }
+      else {
+        delta+= readDeltaOfDelta( in);
+        date+= delta;
+      }
+      latitude= (int) lat.read( in);
+      longitude= (int) lon.read( in);
+      speed= Float.intBitsToFloat( (int) spd.read( in));
+      bearing= Float.intBitsToFloat( (int) brg.read( in));
+    }
+  } // BlockDecoder
+
+  /**
+   * Decodes the track points of the blocks one after the other.
+   */
+  private class BlockCursor implements TrackCursor
+  {
+    /** the compressed blocks at the time of creation */
+    private final long[][] bits;
+
+    private final int[] starts;
+
+    private final int blocks;
+
+    private final int compressed;
+
+    private final Block tailCopy;
+
+    /** index of the current block, the tail has index blocks */
+    private int block= -1;
+
+    /** the index of the current track point */
+    private int index;
+
+    /** the index after the last track point of the current block */
+    private int end;
+
+    private BlockDecoder decoder;
+
+    private long date;
+
+    private int latitude, longitude;
+
+    private float speed, bearing;
+
+    BlockCursor()
+    {
+      synchronized (CompressedTrack.this) {
+        flushCache();
+        bits= Arrays.copyOf( blockBits, blockCount);
+        starts= Arrays.copyOf( blockStart, blockCount);
+        blocks= blockCount;
+        compressed= compressedSize;
+        tailCopy= new Block();
+        for (int i= 0; i < tail.size; i++) {
+          tailCopy.add( tail.dates[i], tail.latitudes[i], tail.longitudes[i],
+            tail.speeds[i], tail.bearings[i]);
+        }
+        tailCopy.start= compressedSize;
+      }
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.model.TrackCursor#next()
+     */
+    public boolean next()
+    {
+      for (;;) {
+        if (index + 1 < end) {
+          index++;
+          if (block < blocks) {
+            decoder.next();
+            date= decoder.date;
+            latitude= decoder.latitude;
+            longitude= decoder.longitude;
+            speed= decoder.speed;
+            bearing= decoder.bearing;
+          }
+          else {
+            final int i= index - tailCopy.start;
+            date= tailCopy.dates[i];
+            latitude= tailCopy.latitudes[i];
+            longitude= tailCopy.longitudes[i];
+            speed= tailCopy.speeds[i];
+            bearing= tailCopy.bearings[i];
+          }
+          return true;
+        }
+        // advance to the next block...
+        block++;
+        if (block > blocks)
+          return false;
+        if (block < blocks) {
+          decoder= new BlockDecoder( bits[block]);
+          index= starts[block] - 1;
+          end= block + 1 < blocks
+            ? starts[block + 1] : compressed;
+        }
+        else {
+          index= compressed - 1;
+          end= compressed + tailCopy.size;
+        }
+      }
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.model.TrackCursor#getIndex()
+     */
+    public int getIndex()
+    {
+      return index;
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.model.TrackCursor#getDate()
+     */
+    public long getDate()
+    {
+      return date;
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.model.TrackCursor#getLatitude()
+     */
+    public double getLatitude()
+    {
+      return Position.toDegrees( latitude);
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.model.TrackCursor#getLongitude()
+     */
+    public double getLongitude()
+    {
+      return Position.toDegrees( longitude);
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.model.TrackCursor#getLatitudeE7()
+     */
+    public int getLatitudeE7()
+    {
+      return latitude;
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.model.TrackCursor#getLongitudeE7()
+     */
+    public int getLongitudeE7()
+    {
+      return longitude;
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.model.TrackCursor#getSpeed()
+     */
+    public float getSpeed()
+    {
+      return speed;
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.model.TrackCursor#getBearing()
+     */
+    public float getBearing()
+    {
+      return bearing;
+    }
+  } // BlockCursor
+}
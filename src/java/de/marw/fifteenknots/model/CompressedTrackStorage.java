@@ -0,0 +1,25 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+/**
+ * Stores track points compressed on the java heap.
+ *
+ * @author Martin Weber
+ * @see CompressedTrack
+ */
+public class CompressedTrackStorage implements TrackStorage
+{
+
+  /**
+   * {@inheritDoc}
+   *
+   * @return a {@link CompressedTrack} object.
+   */
+  public MutableTrack createTrack( int initialCapacity)
+  {
+    return new CompressedTrack();
+  }
+
+}
@@ -7,7 +7,7 @@ package de.marw.fifteenknots.model;
 
 import java.util.List;
 
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.nmeareader.Fix;
 
 
 /**
@@ -27,5 +27,24 @@ public interface Cruise {
    *
    * @return all track points ordered ascending by time.
    */
-  public List<TrackEvent> getTrackpoints();
+  public Track getTrack();
+
+  /**
+   * Gets all track points recorded for this cruise as objects. Convenience
+   * method for code that cannot handle a {@link Track}, e.g. templates.
+   *
+   * @return all track points ordered ascending by time.
+   * @see #getTrack()
+   */
+  public List<Fix> getFixes();
+
+  /**
+   * Gets all track points recorded for this cruise as track events.
+   *
+   * @return all track points ordered ascending by time.
+   * @deprecated Use {@link #getFixes()}, whose elements are immutable.
+   */
+  @Deprecated
+  public List<de.marw.fifteenknots.nmeareader.TrackEvent>
+    getTrackpoints();
 }
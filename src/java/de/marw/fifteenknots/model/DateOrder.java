@@ -0,0 +1,96 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import java.util.Arrays;
+
+
+/**
+ * Computes the order of track points sorted by date, without boxing the
+ * indices. The date of each track point relative to the earliest date is
+ * packed together with its index into a single {@code long}, so that sorting
+ * the packed values with {@link Arrays#sort(long[])} yields the indices
+ * ordered by date, with equal dates kept in the order of their indices. If
+ * the range of dates is too large to be packed, a stable merge sort of the
+ * indices is used instead.
+ *
+ * @author Martin Weber
+ */
+final class DateOrder
+{
+  private DateOrder()
+  {
+  }
+
+  /**
+   * Gets the indices of the specified dates, sorted stable by date.
+   *
+   * @param dates
+   *        the dates of the track points.
+   * @param size
+   *        the number of dates to sort, starting at index 0.
+   * @return the index of the track point that moves to each position.
+   */
+  static int[] sort( long[] dates, int size)
+  {
+    final int[] order= new int[size];
+    if (size == 0)
+      return order;
+    long min= Long.MAX_VALUE, max= Long.MIN_VALUE;
+    for (int i= 0; i < size; i++) {
+      final long date= dates[i];
+      if (date < min)
+        min= date;
+      if (date > max)
+        max= date;
+    }
+    final int indexBits= 32 - Integer.numberOfLeadingZeros( size - 1);
+    final long range= max - min;
+    if (range >= 0 && range >>> (63 - indexBits) == 0) {
+      // relative date in the upper, index in the lower bits
+      final long[] keys= new long[size];
+      for (int i= 0; i < size; i++) {
+        keys[i]= (dates[i] - min) << indexBits | i;
+      }
+      Arrays.sort( keys);
+      final long indexMask= (1L << indexBits) - 1;
+      for (int i= 0; i < size; i++) {
+        order[i]= (int) (keys[i] & indexMask);
+      }
+    }
+    else {
+      // range of dates overflows
+      for (int i= 0; i < size; i++) {
+        order[i]= i;
+      }
+      mergeSort( order, new int[size], 0, size, dates);
+    }
+    return order;
+  }
+
+  /**
+   * Sorts the indices in the specified range stable by their dates.
+   */
+  private static void mergeSort( int[] order, int[] tmp, int from, int to,
+    long[] dates)
+  {
+    if (to - from < 2)
+      return;
+    final int mid= (from + to) >>> 1;
+    mergeSort( order, tmp, from, mid, dates);
+    mergeSort( order, tmp, mid, to, dates);
+    if (dates[order[mid - 1]] <= dates[order[mid]])
+      return; // already in order
+    System.arraycopy( order, from, tmp, from, to - from);
+    int i= from, j= mid;
+    for (int k= from; k < to; k++) {
+      if (j >= to || (i < mid && dates[tmp[i]] <= dates[tmp[j]])) {
+        order[k]= tmp[i++];
+      }
+      else {
+        order[k]= tmp[j++];
+      }
+    }
+  }
+}
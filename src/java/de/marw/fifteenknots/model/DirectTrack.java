@@ -0,0 +1,369 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import de.marw.fifteenknots.nmeareader.Position;
+
+
+/**
+ * A track that stores its track points in direct byte buffers outside of the
+ * java heap. The track points are stored as fixed size records in chunks of
+ * equal size, so appending a track point never copies existing track points.
+ * A record takes 24 bytes: the date as {@code long}, latitude and longitude
+ * as {@code int} in 10<sup>-7</sup> degrees, speed and bearing as
+ * {@code float}.
+ * <p>
+ * The memory is taken from the budget of the {@link DirectTrackStorage} that
+ * created the track and is given back by {@link #dispose()}.
+ * </p>
+ * <p>
+ * Note that this class is not thread-safe for modifications, but concurrent
+ * reads are permitted.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class DirectTrack implements MutableTrack
+{
+  /** offsets of the values in a record */
+  private static final int DATE= 0, LATITUDE= 8, LONGITUDE= 12, SPEED= 16,
+    BEARING= 20;
+
+  /** number of bytes of a record, a multiple of 8 */
+  private static final int RECORD_BYTES= 24;
+
+  /** log2 of the number of records in a chunk */
+  private static final int CHUNK_SHIFT= 14;
+
+  private static final int CHUNK_RECORDS= 1 << CHUNK_SHIFT;
+
+  /** number of bytes of a full chunk */
+  static final int CHUNK_BYTES= CHUNK_RECORDS * RECORD_BYTES;
+
+  private final DirectTrackStorage storage;
+
+  private ByteBuffer[] chunks= new ByteBuffer[4];
+
+  /** number of chunks in use */
+  private int chunkCount;
+
+  /** number of bytes reserved from the storage budget */
+  private long reserved;
+
+  /** number of track points */
+  private int size;
+
+  /**
+   * Constructs an empty track.
+   *
+   * @param storage
+   *        the storage whose memory budget is used.
+   */
+  DirectTrack( DirectTrackStorage storage)
+  {
+    if (storage == null) {
+      throw new NullPointerException( "storage");
+    }
+    this.storage= storage;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#add(long, double, double, float, float)
+   */
+  public void add( long date, double latitude, double longitude, float speed,
+    float bearing)
+  {
+    addE7( date, Position.toE7( latitude), Position.toE7( longitude), speed,
+      bearing);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#addE7(long, int, int, float, float)
+   */
+  public void addE7( long date, int latitude, int longitude, float speed,
+    float bearing)
+  {
+    final int i= size;
+    final int c= i >>> CHUNK_SHIFT;
+    final int offset= offset( i);
+    if (c == chunkCount) {
+      addChunk();
+    }
+    else if (offset == chunks[c].capacity()) {
+      // chunk was trimmed
+      expandChunk( c);
+    }
+    final ByteBuffer chunk= chunks[c];
+    chunk.putLong( offset + DATE, date);
+    chunk.putInt( offset + LATITUDE, latitude);
+    chunk.putInt( offset + LONGITUDE, longitude);
+    chunk.putFloat( offset + SPEED, speed);
+    chunk.putFloat( offset + BEARING, bearing);
+    size= i + 1;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.MutableTrack#add(de.marw.fifteenknots.model.Track, int)
+   */
+  public void add( Track track, int index)
+  {
+    addE7( track.getDate( index), track.getLatitudeE7( index), track
+      .getLongitudeE7( index), track.getSpeed( index), track.getBearing( index));
+  }
+
+  /**
+   * Sorts the track points ascending by date. Track points with equal dates
+   * keep their order. The records are moved in place, so no additional
+   * memory outside of the heap is needed.
+   *
+   * @see de.marw.fifteenknots.model.MutableTrack#sortByDate()
+   */
+  public void sortByDate()
+  {
+    final long[] dates= new long[size];
+    for (int i= 0; i < size; i++) {
+      dates[i]= getDate( i);
+    }
+    final int[] order= DateOrder.sort( dates, size);
+
+    // move the records along the cycles of the permutation...
+    final long[] tmp= new long[RECORD_BYTES / 8];
+    for (int i= 0; i < size; i++) {
+      if (order[i] == i)
+        continue;
+      readRecord( i, tmp);
+      int j= i;
+      for (;;) {
+        final int k= order[j];
+        order[j]= j;
+        if (k == i) {
+          writeRecord( j, tmp);
+          break;
+        }
+        copyRecord( k, j);
+        j= k;
+      }
+    }
+  }
+
+  /**
+   * Shrinks the last chunk to the number of track points it holds.
+   *
+   * @see de.marw.fifteenknots.model.MutableTrack#trimToSize()
+   */
+  public void trimToSize()
+  {
+    if (chunkCount == 0)
+      return;
+    final int used= size - ((chunkCount - 1) << CHUNK_SHIFT);
+    final ByteBuffer last= chunks[chunkCount - 1];
+    final int bytes= used * RECORD_BYTES;
+    if (bytes < last.capacity()) {
+      if (used == 0) {
+        chunks[--chunkCount]= null;
+      }
+      else {
+        final ByteBuffer chunk= allocate( bytes);
+        final ByteBuffer src= last.duplicate();
+        src.limit( bytes);
+        chunk.put( src);
+        chunk.clear();
+        chunks[chunkCount - 1]= chunk;
+      }
+      storage.release( last.capacity());
+      reserved-= last.capacity();
+    }
+    chunks= Arrays.copyOf( chunks, chunkCount);
+  }
+
+  /**
+   * Gives the memory back to the budget of the storage. The memory itself is
+   * freed when the garbage collector finds the buffers unreachable.
+   *
+   * @see de.marw.fifteenknots.model.MutableTrack#dispose()
+   */
+  public void dispose()
+  {
+    Arrays.fill( chunks, null);
+    chunkCount= 0;
+    size= 0;
+    storage.release( reserved);
+    reserved= 0;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#size()
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getDate(int)
+   */
+  public long getDate( int index)
+  {
+    rangeCheck( index);
+    return chunks[index >>> CHUNK_SHIFT].getLong( offset( index) + DATE);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLatitude(int)
+   */
+  public double getLatitude( int index)
+  {
+    return Position.toDegrees( getLatitudeE7( index));
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLongitude(int)
+   */
+  public double getLongitude( int index)
+  {
+    return Position.toDegrees( getLongitudeE7( index));
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLatitudeE7(int)
+   */
+  public int getLatitudeE7( int index)
+  {
+    rangeCheck( index);
+    return chunks[index >>> CHUNK_SHIFT].getInt( offset( index) + LATITUDE);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getLongitudeE7(int)
+   */
+  public int getLongitudeE7( int index)
+  {
+    rangeCheck( index);
+    return chunks[index >>> CHUNK_SHIFT].getInt( offset( index) + LONGITUDE);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getSpeed(int)
+   */
+  public float getSpeed( int index)
+  {
+    rangeCheck( index);
+    return chunks[index >>> CHUNK_SHIFT].getFloat( offset( index) + SPEED);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#setSpeed(int, float)
+   */
+  public void setSpeed( int index, float speed)
+  {
+    rangeCheck( index);
+    chunks[index >>> CHUNK_SHIFT].putFloat( offset( index) + SPEED, speed);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#getBearing(int)
+   */
+  public float getBearing( int index)
+  {
+    rangeCheck( index);
+    return chunks[index >>> CHUNK_SHIFT].getFloat( offset( index) + BEARING);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#setBearing(int, float)
+   */
+  public void setBearing( int index, float bearing)
+  {
+    rangeCheck( index);
+    chunks[index >>> CHUNK_SHIFT]
+      .putFloat( offset( index) + BEARING, bearing);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.Track#cursor()
+   */
+  public TrackCursor cursor()
+  {
+    return new IndexedTrackCursor( this);
+  }
+
+  private void addChunk()
+  {
+    if (chunkCount == chunks.length) {
+      chunks= Arrays.copyOf( chunks, Math.max( 4, chunkCount * 2));
+    }
+    chunks[chunkCount++]= allocate( CHUNK_BYTES);
+  }
+
+  /**
+   * Replaces a trimmed chunk by a full one.
+   */
+  private void expandChunk( int c)
+  {
+    final ByteBuffer old= chunks[c];
+    final ByteBuffer chunk= allocate( CHUNK_BYTES);
+    final ByteBuffer src= old.duplicate();
+    src.clear();
+    chunk.put( src);
+    chunk.clear();
+    chunks[c]= chunk;
+    storage.release( old.capacity());
+    reserved-= old.capacity();
+  }
+
+  /**
+   * Allocates a buffer and reserves its memory from the budget.
+   */
+  private ByteBuffer allocate( int bytes)
+  {
+    storage.reserve( bytes);
+    reserved+= bytes;
+    return ByteBuffer.allocateDirect( bytes).order( ByteOrder.nativeOrder());
+  }
+
+  private static int offset( int index)
+  {
+    return (index & (CHUNK_RECORDS - 1)) * RECORD_BYTES;
+  }
+
+  private void readRecord( int index, long[] record)
+  {
+    final ByteBuffer chunk= chunks[index >>> CHUNK_SHIFT];
+    final int offset= offset( index);
+    for (int i= 0; i < record.length; i++) {
+      record[i]= chunk.getLong( offset + i * 8);
+    }
+  }
+
+  private void writeRecord( int index, long[] record)
+  {
+    final ByteBuffer chunk= chunks[index >>> CHUNK_SHIFT];
+    final int offset= offset( index);
+    for (int i= 0; i < record.length; i++) {
+      chunk.putLong( offset + i * 8, record[i]);
+    }
+  }
+
+  private void copyRecord( int from, int to)
+  {
+    final ByteBuffer src= chunks[from >>> CHUNK_SHIFT];
+    final ByteBuffer dst= chunks[to >>> CHUNK_SHIFT];
+    final int srcOffset= offset( from);
+    final int dstOffset= offset( to);
+    for (int i= 0; i < RECORD_BYTES; i+= 8) {
+      dst.putLong( dstOffset + i, src.getLong( srcOffset + i));
+    }
+  }
+
+  private void rangeCheck( int index)
+  {
+    if (index >= size)
+      throw new IndexOutOfBoundsException( "Index: " + index + ", Size: "
+        + size);
+  }
+}
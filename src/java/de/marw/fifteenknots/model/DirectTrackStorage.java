@@ -0,0 +1,91 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Stores track points outside of the java heap, so that the heap size does not
+ * grow with the number of boats and the duration of a race. All tracks created
+ * by a storage share a memory budget.
+ *
+ * @author Martin Weber
+ * @see DirectTrack
+ */
+public class DirectTrackStorage implements TrackStorage
+{
+  /** the maximum number of bytes the tracks may allocate */
+  private final long budget;
+
+  /** the number of bytes currently allocated by the tracks */
+  private final AtomicLong allocated= new AtomicLong();
+
+  /**
+   * @param budget
+   *        the maximum number of bytes all tracks created by this storage may
+   *        allocate.
+   * @throws IllegalArgumentException
+   *         if budget is less than the memory needed by a single track.
+   */
+  public DirectTrackStorage( long budget)
+  {
+    if (budget < DirectTrack.CHUNK_BYTES)
+      throw new IllegalArgumentException( "budget");
+    this.budget= budget;
+  }
+
+  /**
+   * Gets the maximum number of bytes all tracks may allocate.
+   */
+  public long getBudget()
+  {
+    return this.budget;
+  }
+
+  /**
+   * Gets the number of bytes currently allocated by all tracks.
+   */
+  public long getAllocated()
+  {
+    return allocated.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @return a {@link DirectTrack} object.
+   */
+  public MutableTrack createTrack( int initialCapacity)
+  {
+    return new DirectTrack( this);
+  }
+
+  /**
+   * Reserves the specified number of bytes from the budget.
+   *
+   * @throws OutOfMemoryError
+   *         if the budget would be exceeded.
+   */
+  void reserve( long bytes)
+  {
+    for (;;) {
+      final long current= allocated.get();
+      if (current + bytes > budget)
+        throw new OutOfMemoryError( "track memory budget of " + budget
+          + " bytes exceeded");
+      if (allocated.compareAndSet( current, current + bytes))
+        return;
+    }
+  }
+
+  /**
+   * Gives the specified number of bytes back to the budget.
+   */
+  void release( long bytes)
+  {
+    allocated.addAndGet( -bytes);
+  }
+
+}
@@ -0,0 +1,99 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import de.marw.fifteenknots.nmeareader.Fix;
+
+
+/**
+ * An unmodifiable view of a {@link Track} as a list of {@link Fix}es. Used by
+ * code that navigates track points as objects, e.g. the templates of the
+ * renderers.
+ * <p>
+ * Each invocation of {@link #get(int)} creates a new immutable fix that holds
+ * the values of the track point at the time of the invocation. The fixes may
+ * be passed to other threads freely.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class FixList extends AbstractList<Fix> implements RandomAccess
+{
+  private final Track track;
+
+  /** the indices of the viewed track points or {@code null} for all */
+  private final int[] indices;
+
+  /**
+   * @param track
+   *        the track to view.
+   */
+  public FixList( Track track)
+  {
+    this( track, null);
+  }
+
+  /**
+   * Constructs a view of selected track points.
+   *
+   * @param track
+   *        the track to view.
+   * @param indices
+   *        the indices of the track points to view, in the order to view them,
+   *        or {@code null} to view all track points. The array is not copied.
+   */
+  public FixList( Track track, int[] indices)
+  {
+    if (track == null) {
+      throw new NullPointerException( "track");
+    }
+    this.track= track;
+    this.indices= indices;
+  }
+
+  /**
+   * Gets the track this list is a view of.
+   */
+  public Track getTrack()
+  {
+    return this.track;
+  }
+
+  /**
+   * Gets the index in the track of the track point at the specified position
+   * in this list.
+   */
+  public int getTrackIndex( int index)
+  {
+    return indices == null
+      ? index : indices[index];
+  }
+
+  /*-
+   * @see java.util.AbstractList#get(int)
+   */
+  @Override
+  public Fix get( int index)
+  {
+    if (indices != null) {
+      index= indices[index];
+    }
+    return new Fix( track.getDate( index), track.getLatitude( index), track
+      .getLongitude( index), track.getSpeed( index), track.getBearing( index));
+  }
+
+  /*-
+   * @see java.util.AbstractCollection#size()
+   */
+  @Override
+  public int size()
+  {
+    return indices == null
+      ? track.size() : indices.length;
+  }
+
+}
@@ -0,0 +1,25 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+/**
+ * Stores track points on the java heap.
+ *
+ * @author Martin Weber
+ * @see ArrayTrack
+ */
+public class HeapTrackStorage implements TrackStorage
+{
+
+  /**
+   * {@inheritDoc}
+   *
+   * @return an {@link ArrayTrack} object.
+   */
+  public MutableTrack createTrack( int initialCapacity)
+  {
+    return new ArrayTrack( initialCapacity);
+  }
+
+}
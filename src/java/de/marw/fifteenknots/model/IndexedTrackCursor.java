@@ -0,0 +1,109 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+/**
+ * A cursor that reads the track points of a track by their index. Suitable for
+ * tracks with cheap random access.
+ *
+ * @author Martin Weber
+ */
+public class IndexedTrackCursor implements TrackCursor
+{
+  private final Track track;
+
+  private final int size;
+
+  private int index= -1;
+
+  /**
+   * @param track
+   *        the track to iterate over.
+   */
+  public IndexedTrackCursor( Track track)
+  {
+    if (track == null) {
+      throw new NullPointerException( "track");
+    }
+    this.track= track;
+    this.size= track.size();
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.TrackCursor#next()
+   */
+  public boolean next()
+  {
+    if (index + 1 < size) {
+      index++;
+      return true;
+    }
+    return false;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.TrackCursor#getIndex()
+   */
+  public int getIndex()
+  {
+    return index;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.TrackCursor#getDate()
+   */
+  public long getDate()
+  {
+    return track.getDate( index);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.TrackCursor#getLatitude()
+   */
+  public double getLatitude()
+  {
+    return track.getLatitude( index);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.TrackCursor#getLongitude()
+   */
+  public double getLongitude()
+  {
+    return track.getLongitude( index);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.TrackCursor#getLatitudeE7()
+   */
+  public int getLatitudeE7()
+  {
+    return track.getLatitudeE7( index);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.TrackCursor#getLongitudeE7()
+   */
+  public int getLongitudeE7()
+  {
+    return track.getLongitudeE7( index);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.TrackCursor#getSpeed()
+   */
+  public float getSpeed()
+  {
+    return track.getSpeed( index);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.model.TrackCursor#getBearing()
+   */
+  public float getBearing()
+  {
+    return track.getBearing( index);
+  }
+
+}
@@ -0,0 +1,69 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+/**
+ * A track that track points can be appended to.
+ *
+ * @author Martin Weber
+ * @see TrackStorage
+ */
+public interface MutableTrack extends Track
+{
+  /**
+   * Appends a track point. Latitude and longitude are rounded to 10<sup>-7</sup>
+   * degrees.
+   *
+   * @param date
+   *        the date in milliseconds since the epoch
+   * @param latitude
+   *        the latitude in degrees
+   * @param longitude
+   *        the longitude in degrees
+   * @param speed
+   *        the speed in knots or {@code Float.NaN}
+   * @param bearing
+   *        the bearing in degrees or {@code Float.NaN}
+   */
+  public void add( long date, double latitude, double longitude, float speed,
+    float bearing);
+
+  /**
+   * Appends a track point with fixed-point coordinates.
+   *
+   * @param date
+   *        the date in milliseconds since the epoch
+   * @param latitude
+   *        the latitude in 10<sup>-7</sup> degrees
+   * @param longitude
+   *        the longitude in 10<sup>-7</sup> degrees
+   * @param speed
+   *        the speed in knots or {@code Float.NaN}
+   * @param bearing
+   *        the bearing in degrees or {@code Float.NaN}
+   */
+  public void addE7( long date, int latitude, int longitude, float speed,
+    float bearing);
+
+  /**
+   * Appends the specified track point of another track.
+   */
+  public void add( Track track, int index);
+
+  /**
+   * Sorts the track points ascending by date. Track points with equal dates
+   * keep their order.
+   */
+  public void sortByDate();
+
+  /**
+   * Frees any memory that is not needed to hold the current track points.
+   */
+  public void trimToSize();
+
+  /**
+   * Frees the memory of this track. The track must not be used afterwards.
+   */
+  public void dispose();
+}
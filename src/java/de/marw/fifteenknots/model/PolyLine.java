@@ -5,7 +5,7 @@ package de.marw.fifteenknots.model;
 
 import java.util.List;
 
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.nmeareader.Fix;
 
 
 /**
@@ -23,5 +23,5 @@ public interface PolyLine
   /**
    * Gets the end points of each segment.
    */
-  public List<TrackEvent> getSegments();
+  public List<Fix> getSegments();
 }
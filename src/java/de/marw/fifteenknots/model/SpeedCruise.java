@@ -6,16 +6,16 @@ package de.marw.fifteenknots.model;
 import java.util.ArrayList;
 import java.util.List;
 
-import de.marw.fifteenknots.nmeareader.TrackEvent;
+import de.marw.fifteenknots.nmeareader.Fix;
 
 
 /**
  * A cruise of a boat with statistic data about the boat's speed and track
  * points {@link #getPolyLines() condensed by speed}. Each of the track points
  * in the list is guaranteed to hold information about
- * {@link TrackEvent#getSpeed() speed}, additionally to the basic
- * {@link TrackEvent#getDate() date} and {@link TrackEvent#getPosition()
- * position} information.
+ * {@link Fix#getSpeed() speed}, additionally to the basic
+ * {@link Fix#getDate() date} and {@link Fix#getPosition() position}
+ * information.
  *
  * @author Martin Weber
  */
@@ -24,6 +24,9 @@ public class SpeedCruise extends BasicCruise
 
   private final List<PolyLine> polylines= new ArrayList<PolyLine>();
 
+  /** the track points to mark or {@code null} for all */
+  private List<Fix> markedFixes;
+
   private float speedMin;
 
   private float speedMax;
@@ -31,7 +34,20 @@ public class SpeedCruise extends BasicCruise
   /**
    * Constructs a cruise object with the specified boat and track points.
    */
-  public SpeedCruise( Boat boat, List<TrackEvent> track)
+  public SpeedCruise( Boat boat, Track track)
+  {
+    super( boat, track);
+  }
+
+  /**
+   * Constructs a cruise object with the specified boat and track points. The
+   * values of the track events are copied to a new {@link ArrayTrack}.
+   *
+   * @deprecated Use {@link #SpeedCruise(Boat, Track)}.
+   */
+  @Deprecated
+  public SpeedCruise( Boat boat,
+    List<de.marw.fifteenknots.nmeareader.TrackEvent> track)
   {
     super( boat, track);
   }
@@ -44,6 +60,31 @@ public class SpeedCruise extends BasicCruise
     return polylines;
   }
 
+  /**
+   * Gets the track points that should be marked individually in the output.
+   *
+   * @return the track points set by {@link #setMarkedFixes(List)} or all
+   *         track points, if none were set.
+   */
+  public List<Fix> getMarkedFixes()
+  {
+    return markedFixes == null
+      ? getFixes() : markedFixes;
+  }
+
+  /**
+   * Sets the track points that should be marked individually in the output,
+   * e.g. after the polylines were simplified.
+   *
+   * @param markedFixes
+   *        the track points ordered ascending by time or {@code null} to mark
+   *        all track points.
+   */
+  public void setMarkedFixes( List<Fix> markedFixes)
+  {
+    this.markedFixes= markedFixes;
+  }
+
   /**
    * Gets the maximum speed that the boat reached on the cruise.
    */
@@ -0,0 +1,91 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+/**
+ * The track points recorded for a boat, ordered ascending by time. The values
+ * of a track point are accessed by its index, so implementations are free to
+ * store the track points column by column in arrays of primitive values
+ * instead of creating an object for each track point.
+ * <p>
+ * Speed and bearing are {@code Float.NaN} if a track point has no value for
+ * them. Latitude and longitude are stored as fixed-point numbers in units of
+ * 10<sup>-7</sup> degrees; the values in degrees are derived from them.
+ * </p>
+ *
+ * @author Martin Weber
+ * @see TrackEventList
+ */
+public interface Track
+{
+  /**
+   * Gets the number of track points.
+   */
+  public int size();
+
+  /**
+   * Gets the date of the specified track point in milliseconds since the
+   * epoch.
+   */
+  public long getDate( int index);
+
+  /**
+   * Gets the latitude of the specified track point in degrees, where positive
+   * values denote the northern hemisphere.
+   */
+  public double getLatitude( int index);
+
+  /**
+   * Gets the longitude of the specified track point in degrees, where positive
+   * values denote the eastern hemisphere.
+   */
+  public double getLongitude( int index);
+
+  /**
+   * Gets the latitude of the specified track point in 10<sup>-7</sup>
+   * degrees, where positive values denote the northern hemisphere.
+   */
+  public int getLatitudeE7( int index);
+
+  /**
+   * Gets the longitude of the specified track point in 10<sup>-7</sup>
+   * degrees, where positive values denote the eastern hemisphere.
+   */
+  public int getLongitudeE7( int index);
+
+  /**
+   * Gets the speed of the specified track point in knots.
+   *
+   * @return the speed or {@code Float.NaN}.
+   */
+  public float getSpeed( int index);
+
+  /**
+   * Sets the speed of the specified track point.
+   *
+   * @param speed
+   *        the speed in knots or {@code Float.NaN}.
+   */
+  public void setSpeed( int index, float speed);
+
+  /**
+   * Gets the bearing of the specified track point in degrees.
+   *
+   * @return the bearing or {@code Float.NaN}.
+   */
+  public float getBearing( int index);
+
+  /**
+   * Sets the bearing of the specified track point.
+   *
+   * @param bearing
+   *        the bearing in degrees or {@code Float.NaN}.
+   */
+  public void setBearing( int index, float bearing);
+
+  /**
+   * Creates a cursor that iterates over all track points of this track.
+   */
+  public TrackCursor cursor();
+}
@@ -0,0 +1,71 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+/**
+ * Iterates over the track points of a {@link Track} in their order. A cursor
+ * is positioned before the first track point initially; each invocation of
+ * {@link #next()} advances it to the following track point.
+ * <p>
+ * Iterating with a cursor is the cheapest way to visit all track points, since
+ * tracks that store their track points compressed can decode them
+ * sequentially.
+ * </p>
+ *
+ * @author Martin Weber
+ * @see Track#cursor()
+ */
+public interface TrackCursor
+{
+  /**
+   * Advances to the next track point.
+   *
+   * @return {@code false} if there are no more track points.
+   */
+  public boolean next();
+
+  /**
+   * Gets the index of the current track point in the track.
+   */
+  public int getIndex();
+
+  /**
+   * Gets the date of the current track point in milliseconds since the epoch.
+   */
+  public long getDate();
+
+  /**
+   * Gets the latitude of the current track point in degrees.
+   */
+  public double getLatitude();
+
+  /**
+   * Gets the longitude of the current track point in degrees.
+   */
+  public double getLongitude();
+
+  /**
+   * Gets the latitude of the current track point in 10<sup>-7</sup> degrees.
+   */
+  public int getLatitudeE7();
+
+  /**
+   * Gets the longitude of the current track point in 10<sup>-7</sup> degrees.
+   */
+  public int getLongitudeE7();
+
+  /**
+   * Gets the speed of the current track point in knots.
+   *
+   * @return the speed or {@code Float.NaN}.
+   */
+  public float getSpeed();
+
+  /**
+   * Gets the bearing of the current track point in degrees.
+   *
+   * @return the bearing or {@code Float.NaN}.
+   */
+  public float getBearing();
+}
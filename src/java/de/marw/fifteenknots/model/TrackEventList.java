@@ -0,0 +1,72 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+
+/**
+ * An unmodifiable view of a {@link Track} as a list of
+ * {@link de.marw.fifteenknots.nmeareader.TrackEvent}s.
+ * Used by code that navigates track points as objects, e.g. the templates of
+ * the renderers.
+ * <p>
+ * Each invocation of {@link #get(int)} creates a new event object that holds a
+ * copy of the values of the track point. Changing the event does not change
+ * the track.
+ * </p>
+ *
+ * @author Martin Weber
+ * @deprecated Use the {@link FixList}, whose elements are immutable.
+ */
+@Deprecated
+public class TrackEventList extends
+  AbstractList<de.marw.fifteenknots.nmeareader.TrackEvent> implements
+  RandomAccess
+{
+  private final Track track;
+
+  /**
+   * @param track
+   *        the track to view.
+   */
+  public TrackEventList( Track track)
+  {
+    if (track == null) {
+      throw new NullPointerException( "track");
+    }
+    this.track= track;
+  }
+
+  /**
+   * Gets the track this list is a view of.
+   */
+  public Track getTrack()
+  {
+    return this.track;
+  }
+
+  /*-
+   * @see java.util.AbstractList#get(int)
+   */
+  @Override
+  public de.marw.fifteenknots.nmeareader.TrackEvent get( int index)
+  {
+    return new de.marw.fifteenknots.nmeareader.TrackEvent( track,
+      track.getDate( index), track.getLatitude( index), track
+        .getLongitude( index), track.getSpeed( index), track
+        .getBearing( index));
+  }
+
+  /*-
+   * @see java.util.AbstractCollection#size()
+   */
+  @Override
+  public int size()
+  {
+    return track.size();
+  }
+
+}
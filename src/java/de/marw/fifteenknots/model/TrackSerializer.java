@@ -0,0 +1,321 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+
+/**
+ * Writes and reads tracks in a compact binary format, e.g. to archive the
+ * track of a {@link Cruise}, to move it to another process or to cache the
+ * track points parsed from an input file.
+ * <p>
+ * The format stores the track points in their order, each as a sequence of
+ * zigzag encoded variable length integers (7 bits per byte, least significant
+ * group first):
+ * </p>
+ * <ul>
+ * <li>the delta-of-delta of the date in milliseconds,</li>
+ * <li>the delta of latitude and longitude, both as fixed-point numbers in
+ * units of 10<sup>-7</sup> degrees,</li>
+ * <li>speed and bearing in units of 0.01 knots and 0.01 degrees, as deltas
+ * to the last such value plus two. Zero denotes a missing value, one a value
+ * that is not a multiple of 0.01 and follows as the four bytes of the
+ * {@code float}.</li>
+ * </ul>
+ * <p>
+ * For a track recorded each second, most track points take less than ten
+ * bytes. The format is lossless: positions are written exactly as the track
+ * stores them, and speed and bearing read back as the same {@code float}
+ * values.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class TrackSerializer
+{
+  /** identifies the format: "15KZ" */
+  private static final int MAGIC= 0x31354b5a;
+
+  private static final int VERSION= 2;
+
+  /** fixed-point units per knot or degree of speed and bearing */
+  private static final float VALUE_SCALE= 100f;
+
+  /** nothing to instanciate */
+  private TrackSerializer()
+  {
+  }
+
+  /**
+   * Writes the specified track to the specified stream. The stream is neither
+   * flushed nor closed.
+   *
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public static void write( Track track, OutputStream out) throws IOException
+  {
+    final Encoder enc= new Encoder( out);
+    enc.writeInt( MAGIC);
+    enc.writeVarLong( VERSION);
+    final int size= track.size();
+    enc.writeVarLong( size);
+    long lastDate= 0, lastDelta= 0;
+    long lastLat= 0, lastLon= 0;
+    long lastSpeed= 0, lastBearing= 0;
+    for (int i= 0; i < size; i++) {
+      final long date= track.getDate( i);
+      final long delta= date - lastDate;
+      enc.writeVarLong( zigzag( delta - lastDelta));
+      lastDate= date;
+      lastDelta= delta;
+
+      final long lat= track.getLatitudeE7( i);
+      final long lon= track.getLongitudeE7( i);
+      enc.writeVarLong( zigzag( lat - lastLat));
+      enc.writeVarLong( zigzag( lon - lastLon));
+      lastLat= lat;
+      lastLon= lon;
+
+      lastSpeed= writeValue( enc, track.getSpeed( i), lastSpeed);
+      lastBearing= writeValue( enc, track.getBearing( i), lastBearing);
+    }
+    enc.flush();
+  }
+
+  /**
+   * Writes a speed or bearing value.
+   *
+   * @param last
+   *        the last value written in units of 0.01.
+   * @return the new last value written in units of 0.01.
+   */
+  private static long writeValue( Encoder enc, float value, long last)
+    throws IOException
+  {
+    if (Float.isNaN( value)) {
+      enc.writeVarLong( 0);
+      return last;
+    }
+    final int q= Math.round( value * VALUE_SCALE);
+    if (Float.floatToIntBits( q / VALUE_SCALE) != Float.floatToIntBits( value)) {
+      // not a multiple of 0.01 or beyond the range of int, write as is
+      enc.writeVarLong( 1);
+      enc.writeInt( Float.floatToIntBits( value));
+      return last;
+    }
+    enc.writeVarLong( zigzag( q - last) + 2);
+    return q;
+  }
+
+  /**
+   * Reads a track from the specified stream and appends its track points to
+   * the specified track. Reads exactly the bytes written by
+   * {@link #write(Track, OutputStream)}, if the stream supports
+   * {@link InputStream#mark(int) mark and reset}. Otherwise more bytes may be
+   * consumed from the stream.
+   *
+   * @return the number of track points read.
+   * @throws StreamCorruptedException
+   *         if the stream does not contain a track in the expected format.
+   * @throws EOFException
+   *         if the stream ends in the middle of the track.
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public static int read( InputStream in, MutableTrack track)
+    throws IOException
+  {
+    final Decoder dec= new Decoder( in);
+    if (dec.readInt() != MAGIC)
+      throw new StreamCorruptedException( "not a track");
+    final long version= dec.readVarLong();
+    if (version != VERSION)
+      throw new StreamCorruptedException( "unsupported version " + version);
+    final long size= dec.readVarLong();
+    if (size < 0 || size > Integer.MAX_VALUE)
+      throw new StreamCorruptedException( "invalid size " + size);
+    long date= 0, delta= 0;
+    long lat= 0, lon= 0;
+    long speed= 0, bearing= 0;
+    for (int i= 0; i < size; i++) {
+      delta+= unzigzag( dec.readVarLong());
+      date+= delta;
+      lat+= unzigzag( dec.readVarLong());
+      lon+= unzigzag( dec.readVarLong());
+      float speedValue= Float.NaN;
+      long code= dec.readVarLong();
+      if (code == 1) {
+        speedValue= Float.intBitsToFloat( dec.readInt());
+      }
+      else if (code != 0) {
+        speed+= unzigzag( code - 2);
+        speedValue= speed / VALUE_SCALE;
+      }
+      float bearingValue= Float.NaN;
+      code= dec.readVarLong();
+      if (code == 1) {
+        bearingValue= Float.intBitsToFloat( dec.readInt());
+      }
+      else if (code != 0) {
+        bearing+= unzigzag( code - 2);
+        bearingValue= bearing / VALUE_SCALE;
+      }
+      track.addE7( date, (int) lat, (int) lon, speedValue, bearingValue);
+    }
+    dec.giveBack();
+    return (int) size;
+  }
+
+  /**
+   * Maps signed integers to unsigned integers, so that numbers with a small
+   * absolute value have a small encoding.
+   */
+  private static long zigzag( long n)
+  {
+    return (n << 1) ^ (n >> 63);
+  }
+
+  private static long unzigzag( long n)
+  {
+    return (n >>> 1) ^ -(n & 1);
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * Buffers the encoded bytes.
+   */
+  private static class Encoder
+  {
+    private final OutputStream out;
+
+    private final byte[] buf= new byte[64 * 1024];
+
+    private int pos;
+
+    Encoder( OutputStream out)
+    {
+      this.out= out;
+    }
+
+    void writeInt( int v) throws IOException
+    {
+      ensure( 4);
+      buf[pos++]= (byte) (v >>> 24);
+      buf[pos++]= (byte) (v >>> 16);
+      buf[pos++]= (byte) (v >>> 8);
+      buf[pos++]= (byte) v;
+    }
+
+    void writeVarLong( long v) throws IOException
+    {
+      ensure( 10);
+      while ((v & ~0x7FL) != 0) {
+        buf[pos++]= (byte) ((v & 0x7F) | 0x80);
+        v>>>= 7;
+      }
+      buf[pos++]= (byte) v;
+    }
+
+    private void ensure( int bytes) throws IOException
+    {
+      if (pos + bytes > buf.length) {
+        flush();
+      }
+    }
+
+    void flush() throws IOException
+    {
+      out.write( buf, 0, pos);
+      pos= 0;
+    }
+  } // Encoder
+
+  /**
+   * Reads the encoded bytes in large blocks.
+   */
+  private static class Decoder
+  {
+    private static final int BUFFER_SIZE= 64 * 1024;
+
+    private final InputStream in;
+
+    private final byte[] buf= new byte[BUFFER_SIZE];
+
+    /** whether the stream was marked before the current block was read */
+    private final boolean marked;
+
+    private int pos;
+
+    private int limit;
+
+    Decoder( InputStream in)
+    {
+      this.in= in;
+      this.marked= in.markSupported();
+    }
+
+    int readInt() throws IOException
+    {
+      int v= 0;
+      for (int i= 0; i < 4; i++) {
+        v= (v << 8) | (readByte() & 0xFF);
+      }
+      return v;
+    }
+
+    long readVarLong() throws IOException
+    {
+      long v= 0;
+      for (int shift= 0; shift < 64; shift+= 7) {
+        final int b= pos < limit
+          ? buf[pos++] : readByte();
+        v|= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0)
+          return v;
+      }
+      throw new StreamCorruptedException( "malformed varint");
+    }
+
+    private int readByte() throws IOException
+    {
+      if (pos == limit) {
+        if (marked) {
+          in.mark( BUFFER_SIZE);
+        }
+        limit= in.read( buf, 0, BUFFER_SIZE);
+        pos= 0;
+        if (limit <= 0) {
+          limit= 0;
+          throw new EOFException();
+        }
+      }
+      return buf[pos++];
+    }
+
+    /**
+     * Returns the bytes read ahead to the stream, if possible.
+     */
+    void giveBack() throws IOException
+    {
+      if (marked && pos < limit) {
+        in.reset();
+        long skip= pos;
+        while (skip > 0) {
+          final long n= in.skip( skip);
+          if (n <= 0)
+            break;
+          skip-= n;
+        }
+      }
+    }
+  } // Decoder
+}
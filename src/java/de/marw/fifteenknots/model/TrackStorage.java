@@ -0,0 +1,20 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+/**
+ * Decides where the track points of a cruise are stored.
+ *
+ * @author Martin Weber
+ */
+public interface TrackStorage
+{
+  /**
+   * Creates a new, empty track.
+   *
+   * @param initialCapacity
+   *        the estimated number of track points.
+   */
+  public MutableTrack createTrack( int initialCapacity);
+}
@@ -0,0 +1,155 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+import java.util.Formatter;
+
+
+/**
+ * An immutable track point: the position on earth and the time when that
+ * position was reached, optionally with speed and bearing.
+ * <p>
+ * Speed and bearing are held as primitive values, where {@code Float.NaN}
+ * denotes the absence of a value. Instances can be shared between threads
+ * without synchronization.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public final class Fix
+{
+  private final long date;
+
+  private final Position position;
+
+  /** the speed in knots or NaN */
+  private final float speed;
+
+  /** the bearing in degrees or NaN */
+  private final float bearing;
+
+  /**
+   * @param date
+   *        number of milliseconds since the standard base time known as
+   *        "the epoch", namely January 1, 1970, 00:00:00 GMT.
+   * @param position
+   *        the position.
+   * @param speed
+   *        the speed in knots or {@code Float.NaN}, if unknown.
+   * @param bearing
+   *        the bearing in degrees or {@code Float.NaN}, if unknown.
+   * @throws IllegalArgumentException
+   *         if date is less than zero.
+   */
+  public Fix( long date, Position position, float speed, float bearing)
+  {
+    if (position == null) {
+      throw new NullPointerException( "position");
+    }
+    if (date < 0) {
+      throw new IllegalArgumentException( "date less than zero");
+    }
+    this.date= date;
+    this.position= position;
+    this.speed= speed;
+    this.bearing= bearing;
+  }
+
+  /**
+   * @param date
+   *        number of milliseconds since the standard base time known as
+   *        "the epoch", namely January 1, 1970, 00:00:00 GMT.
+   * @param latitude
+   *        latitude in degrees, where positive values denote the northern
+   *        hemisphere.
+   * @param longitude
+   *        longitude in degrees, where positive values denote the eastern
+   *        hemisphere.
+   * @param speed
+   *        the speed in knots or {@code Float.NaN}, if unknown.
+   * @param bearing
+   *        the bearing in degrees or {@code Float.NaN}, if unknown.
+   * @throws IllegalArgumentException
+   *         if date is less than zero.
+   */
+  public Fix( long date, double latitude, double longitude, float speed,
+    float bearing)
+  {
+    this( date, new Position( latitude, longitude), speed, bearing);
+  }
+
+  /**
+   * @return The date.
+   */
+  public long getDate()
+  {
+    return this.date;
+  }
+
+  /**
+   * @return The position.
+   */
+  public Position getPosition()
+  {
+    return this.position;
+  }
+
+  /**
+   * @return The speed or <code>null</code>.
+   */
+  public Float getSpeed()
+  {
+    return Float.isNaN( this.speed)
+      ? null : Float.valueOf( this.speed);
+  }
+
+  /**
+   * Gets the speed without creating an object.
+   *
+   * @return The speed or {@code Float.NaN}.
+   */
+  public float getSpeedValue()
+  {
+    return this.speed;
+  }
+
+  /**
+   * @return The bearing or <code>null</code>.
+   */
+  public Float getBearing()
+  {
+    return Float.isNaN( this.bearing)
+      ? null : Float.valueOf( this.bearing);
+  }
+
+  /**
+   * Gets the bearing without creating an object.
+   *
+   * @return The bearing or {@code Float.NaN}.
+   */
+  public float getBearingValue()
+  {
+    return this.bearing;
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString()
+  {
+    StringBuilder sb= new StringBuilder();
+    Formatter formatter= new Formatter( sb);
+    formatter.format( "[%tF %<tT.%<tL, %s", date, position);
+    if ( !Float.isNaN( speed))
+      formatter.format( ", %fkts", speed);
+    if ( !Float.isNaN( bearing))
+      formatter.format( ", %f°", bearing);
+    sb.append( ']');
+    return sb.toString();
+  }
+
+}
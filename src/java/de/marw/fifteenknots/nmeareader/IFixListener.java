@@ -0,0 +1,30 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+import java.util.EventListener;
+
+/**
+ * Defines the requirements of an object that is interested in listening to
+ * track points. Listeners that have to process a huge number of track points
+ * should prefer {@link ITrackBlockListener}, which is notified without creating
+ * an object per track point.
+ * 
+ * @author Martin Weber
+ * @see Fix
+ */
+public interface IFixListener extends EventListener
+{
+
+  /**
+   * Notified when a new track point was recorded.
+   * 
+   * @param fix
+   *        the track point.
+   */
+  void trackPoint( Fix fix);
+
+}
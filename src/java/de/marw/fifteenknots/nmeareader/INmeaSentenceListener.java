@@ -19,7 +19,7 @@ import java.util.EventListener;
  * <li>{@link #timeChanged(Object, long)}</li>
  * <li>{@link #dateChanged(Object, long)}</li>
  * <li>{@link #fixChanged(Object, Boolean)}</li>
- * <li>{@link #positionChanged(Object, Position2D)},
+ * <li>{@link #positionChanged(Object, Position)},
  * {@link #speedChanged(Object, float)}, {@link #bearingChanged(Object, float)}
  * in no specific order</li>
  * </ol>
@@ -66,14 +66,36 @@ public interface INmeaSentenceListener extends EventListener
   void fixChanged( Object source, Boolean fix);
 
   /**
-   * Invoked when the position changed.
+   * Invoked when the position changed. Implementations written against
+   * earlier versions of this interface override this method, new
+   * implementations override {@link #positionChanged(Object, Position)}
+   * instead.
    * 
    * @param source
    *        the source of the event.
    * @param pos
    *        the new position.
+   * @deprecated {@code Position2D} is mutable. Override
+   *             {@link #positionChanged(Object, Position)}.
    */
-  void positionChanged( Object source, Position2D pos);
+  @Deprecated
+  default void positionChanged( Object source, Position2D pos)
+  {}
+
+  /**
+   * Invoked when the position changed. The default implementation forwards
+   * the position to {@link #positionChanged(Object, Position2D)}.
+   * 
+   * @param source
+   *        the source of the event.
+   * @param pos
+   *        the new position.
+   */
+  @SuppressWarnings("deprecation")
+  default void positionChanged( Object source, Position pos)
+  {
+    positionChanged( source, new Position2D( pos));
+  }
 
   /**
    * Invoked when the speed changed.
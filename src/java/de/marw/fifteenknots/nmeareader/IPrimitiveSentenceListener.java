@@ -0,0 +1,96 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+import java.util.EventListener;
+
+
+/**
+ * Defines the requirement for an object that gets notified when certain
+ * information is detected in a NMEA sentence, passing all values as primitive
+ * types. In contrast to {@link INmeaSentenceListener}, no objects need to be
+ * created to notify a listener of this type. The methods are invoked in the
+ * same order as those of {@link INmeaSentenceListener}. Consumers that need
+ * whole track points rather than single values should use a
+ * {@link ITrackBlockListener}, which is notified without allocation, too.
+ *
+ * @author Martin Weber
+ * @see SentenceListenerAdapter
+ */
+public interface IPrimitiveSentenceListener extends EventListener
+{
+
+  /**
+   * Invoked, when the GPS derived date changed.
+   *
+   * @param source
+   *        the source of the event.
+   * @param date
+   *        number of milliseconds since the standard base time known as
+   *        "the epoch", namely January 1, 1970, 00:00:00 GMT. The value will
+   *        always represent the first millisecond of the day, that is 00:00.0
+   *        GMT.
+   */
+  void dateChanged( Object source, long date);
+
+  /**
+   * Invoked when the GPS derived time of the day changed.
+   *
+   * @param source
+   *        the source of the event.
+   * @param timeOfDay
+   *        number of milliseconds since the first millisecond of the day, that
+   *        is 00:00.0 GMT.
+   */
+  void timeChanged( Object source, long timeOfDay);
+
+  /**
+   * Invoked when the GPS satellite fix changed.
+   *
+   * @param source
+   *        the source of the event.
+   * @param fix
+   *        {@code Boolean.TRUE} if a satellite fix was detected, {@code
+   *        Boolean.FALSE} if the satellite fix was lost.
+   */
+  void fixChanged( Object source, Boolean fix);
+
+  /**
+   * Invoked when the position changed.
+   *
+   * @param source
+   *        the source of the event.
+   * @param latitudeE7
+   *        latitude in 10<sup>-7</sup> degrees, where positive values denote
+   *        the northern hemisphere.
+   * @param longitudeE7
+   *        longitude in 10<sup>-7</sup> degrees, where positive values denote
+   *        the eastern hemisphere.
+   * @see Position#toDegrees(int)
+   */
+  void positionChanged( Object source, int latitudeE7, int longitudeE7);
+
+  /**
+   * Invoked when the speed changed.
+   *
+   * @param source
+   *        the source of the event.
+   * @param speed
+   *        the new speed in knots.
+   */
+  void speedChanged( Object source, float speed);
+
+  /**
+   * Invoked when the bearing changed.
+   *
+   * @param source
+   *        the source of the event.
+   * @param bearing
+   *        the new bearing in degrees.
+   */
+  void bearingChanged( Object source, float bearing);
+
+}
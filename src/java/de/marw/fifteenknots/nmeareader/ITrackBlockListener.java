@@ -0,0 +1,37 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+import java.util.EventListener;
+
+/**
+ * Defines the requirements of an object that is interested in listening to
+ * track points in batches. Compared to {@link IFixListener}, the costs of
+ * notification are shared by all track points of a block.
+ * <p>
+ * The block and its arrays are reused for all notifications of a parser, and
+ * its values are primitive, so that a listener of this type is notified
+ * without the parser allocating any object per track point. This replaces
+ * the reusable mutable {@link TrackEvent}, which the parser no longer sends.
+ * </p>
+ *
+ * @author Martin Weber
+ * @see TrackBlock
+ */
+public interface ITrackBlockListener extends EventListener
+{
+
+  /**
+   * Notified when a block of track points is complete or the input ended.
+   *
+   * @param block
+   *        the track points in the order they occurred. The block object is
+   *        reused for subsequent notifications, so the listener must copy any
+   *        values it wants to keep.
+   */
+  void trackPoints( TrackBlock block);
+
+}
@@ -13,7 +13,10 @@ import java.util.EventListener;
  * 
  * @author Martin Weber
  * @see TrackEvent
+ * @deprecated A {@code TrackEvent} is created for each track point. Use
+ *             {@link IFixListener} or {@link ITrackBlockListener} instead.
  */
+@Deprecated
 public interface ITrackListener extends EventListener
 {
 
@@ -0,0 +1,148 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+
+/**
+ * Reads the lines of a range of a file through a memory mapping. The file is
+ * mapped region by region, line ends are scanned directly in the mapped buffer
+ * and the bytes of each line are copied to a reused buffer. Lines are
+ * terminated by a line feed, a carriage return or both, just like
+ * {@link java.io.BufferedReader#readLine()} does. Empty lines are skipped.
+ * <p>
+ * Note that instances of this class are not thread-safe.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+final class MappedLineReader
+{
+  /**
+   * the maximum number of bytes of a file that are mapped into memory at once.
+   */
+  private static final long MAP_REGION_SIZE= 64L * 1024 * 1024;
+
+  private final FileChannel channel;
+
+  /** the end of the range to read, exclusive */
+  private final long end;
+
+  /** the file position of the currently mapped region */
+  private long regionStart;
+
+  private MappedByteBuffer region;
+
+  /** the position in the mapped region where the next line starts */
+  private int lineStart;
+
+  private byte[] line= new byte[128];
+
+  private int lineLength;
+
+  /**
+   * @param channel
+   *        the file to read.
+   * @param start
+   *        the file position where the first line starts.
+   * @param end
+   *        the file position where reading stops, exclusive. This should be
+   *        the end of the file or the position just after a line terminator.
+   */
+  public MappedLineReader( FileChannel channel, long start, long end)
+  {
+    if (channel == null)
+      throw new NullPointerException( "channel");
+    this.channel= channel;
+    this.regionStart= start;
+    this.end= end;
+  }
+
+  /**
+   * Advances to the next non-empty line.
+   *
+   * @return {@code true} if a line was read, {@code false} if the end of the
+   *         range was reached.
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public boolean nextLine() throws IOException
+  {
+    while (true) {
+      if (region == null) {
+        if (regionStart >= end)
+          return false;
+        final int regionSize=
+          (int) Math.min( MAP_REGION_SIZE, end - regionStart);
+        region= channel.map( MapMode.READ_ONLY, regionStart, regionSize);
+        lineStart= 0;
+      }
+      final int limit= region.limit();
+      for (int i= lineStart; i < limit; i++) {
+        final byte b= region.get( i);
+        if (b == '\n' || b == '\r') {
+          final int len= i - lineStart;
+          if (len > 0) {
+            copyLine( len);
+            lineStart= i + 1;
+            return true;
+          }
+          lineStart= i + 1;
+        }
+      }
+      // no more line terminators in this region
+      final int len= limit - lineStart;
+      if (lineStart == 0 || regionStart + limit == end) {
+        // last line of the range or a line that does not fit into a region
+        regionStart+= limit;
+        if (len > 0) {
+          copyLine( len);
+          region= null;
+          return true;
+        }
+      }
+      else {
+        // re-map the incomplete line at the end of this region
+        regionStart+= lineStart;
+      }
+      region= null;
+    }
+  }
+
+  /**
+   * Gets the buffer holding the current line, starting at offset zero.
+   */
+  public byte[] getLine()
+  {
+    return line;
+  }
+
+  /**
+   * Gets the number of bytes of the current line.
+   */
+  public int getLineLength()
+  {
+    return lineLength;
+  }
+
+  /**
+   * Copies the line at the current position of the mapped region to the line
+   * buffer.
+   */
+  private void copyLine( int len)
+  {
+    if (line.length < len) {
+      line= new byte[Math.max( len, 2 * line.length)];
+    }
+    region.position( lineStart);
+    region.get( line, 0, len);
+    lineLength= len;
+  }
+}
@@ -0,0 +1,139 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Validates the checksum of NMEA sentences held in a byte buffer. The checksum
+ * is the XOR of all characters between the leading <code>'$'</code> and the
+ * <code>'*'</code>, followed by the two hexadecimal digits after the
+ * <code>'*'</code>.
+ * <p>
+ * The sentence is processed eight bytes at a time: Each {@code long} word is
+ * searched for the <code>'*'</code> and XORed into an accumulator with SIMD
+ * within a register (SWAR) operations, the accumulator is folded to a single
+ * byte at the end. Only the bytes that do not fill up a whole word are
+ * processed one at a time.
+ * </p>
+ * <p>
+ * Note that instances of this class are not thread-safe.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+final class NmeaChecksum
+{
+  private static final long LOW_BITS= 0x7F7F7F7F7F7F7F7FL;
+
+  /** eight times <code>'*'</code> */
+  private static final long STARS= 0x2A2A2A2A2A2A2A2AL;
+
+  /** eight times <code>'$'</code> */
+  private static final long DOLLARS= 0x2424242424242424L;
+
+  /** values of hexadecimal digits, -1 for other characters */
+  private static final byte[] HEX_VALUES= new byte[256];
+  static {
+    for (int i= 0; i < HEX_VALUES.length; i++) {
+      HEX_VALUES[i]= (byte) Character.digit( (char) i, 16);
+    }
+  }
+
+  /** the buffer viewed as {@code long}s, recreated if the buffer changes */
+  private ByteBuffer words;
+
+  /**
+   * Returns whether a sentence's checksum matches the calculated checksum.
+   *
+   * @param buf
+   *        the buffer holding the ASCII characters of the sentence.
+   * @param off
+   *        the offset of the first character of the sentence in the buffer.
+   * @param len
+   *        the number of characters in the sentence.
+   */
+  public boolean isValid( byte[] buf, int off, int len)
+  {
+    final ByteBuffer words= getWords( buf);
+    final int end= off + len;
+    int i= off;
+    long acc= 0;
+    int dollars= 0;
+    int star= -1;
+    // whole words...
+    for (; i + 8 <= end; i+= 8) {
+      final long word= words.getLong( i);
+      final long stars= zeroBytes( word ^ STARS);
+      if (stars != 0) {
+        // little endian: the first byte is the least significant
+        star= i + (Long.numberOfTrailingZeros( stars) >>> 3);
+        break;
+      }
+      acc^= word;
+      dollars+= Long.bitCount( zeroBytes( word ^ DOLLARS));
+    }
+    // remaining bytes...
+    final int limit= star == -1
+      ? end : star;
+    for (; i < limit; i++) {
+      final byte b= buf[i];
+      if (b == '*') {
+        star= i;
+        break;
+      }
+      acc^= b & 0xFF;
+      if (b == '$')
+        dollars++;
+    }
+    if (star == -1 || star + 2 >= end)
+      return false; // no '*' or less than two hex digits
+
+    // fold the bytes of the accumulator, then skip the '$'s
+    acc^= acc >>> 32;
+    acc^= acc >>> 16;
+    acc^= acc >>> 8;
+    int checksum= (int) acc & 0xFF;
+    if ((dollars & 1) != 0) {
+      checksum^= '$';
+    }
+
+    // Compare the characters after the asterisk to the calculation
+    final int hi= HEX_VALUES[buf[star + 1] & 0xFF];
+    final int lo= HEX_VALUES[buf[star + 2] & 0xFF];
+    if (hi < 0 || lo < 0)
+      return false;
+    // a checksum above 0x7F never matched, since it was held in a signed byte
+    return ((hi << 4) | lo) == checksum && checksum < 0x80;
+  }
+
+  /**
+   * Gets a view of the specified buffer that reads {@code long}s in little
+   * endian byte order.
+   */
+  private ByteBuffer getWords( byte[] buf)
+  {
+    if (words == null || words.array() != buf) {
+      words= ByteBuffer.wrap( buf).order( ByteOrder.LITTLE_ENDIAN);
+    }
+    return words;
+  }
+
+  /**
+   * Gets the bytes of the specified word that are zero.
+   *
+   * @return a word with the most significant bit of each byte set, if the
+   *         corresponding byte in the specified word is zero. All other bits
+   *         are cleared.
+   */
+  private static long zeroBytes( long word)
+  {
+    final long t= (word & LOW_BITS) + LOW_BITS;
+    return ~(t | word | LOW_BITS);
+  }
+}
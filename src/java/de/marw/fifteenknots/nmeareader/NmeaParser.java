@@ -7,11 +7,13 @@ package de.marw.fifteenknots.nmeareader;
 
 import java.io.BufferedReader;
 import java.io.Closeable;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
 
 import javax.swing.event.EventListenerList;
 
@@ -19,6 +21,12 @@ import javax.swing.event.EventListenerList;
 /**
  * A parser for NMEA 0183 data that sends events when a new timestamp is
  * detected.
+ * <p>
+ * Listeners added with {@link #addTrackBlockListener(ITrackBlockListener)}
+ * receive the track points in a reused {@link TrackBlock}, so a streaming
+ * consumer can run the parser without any allocation per track point. A
+ * {@link IFixListener} receives a new {@link Fix} for each track point.
+ * </p>
  * 
  * @author Martin Weber
  * @see NmeaSentenceParser
@@ -29,6 +37,15 @@ public class NmeaParser
 
   private InputStream inputStream;
 
+  /** the file to parse, if the parser reads from a memory mapped file */
+  private FileChannel fileChannel;
+
+  /** the file position where parsing starts */
+  private long rangeStart;
+
+  /** the file position where parsing stops or -1 to parse up to the end */
+  private long rangeEnd= -1;
+
   private TrackEventMulticaster trackEventMulticaster;
 
   /**
@@ -45,6 +62,64 @@ public class NmeaParser
       throw new NullPointerException( "inputStream");
     this.inputStream= inputStream;
     nmeaSentenceParser= new NmeaSentenceParser( source);
+    // each track point gets the speed and bearing of its own sentences
+    nmeaSentenceParser.setReportUnchangedCourse( true);
+    this.trackEventMulticaster= new TrackEventMulticaster( source);
+    nmeaSentenceParser.addListener( trackEventMulticaster);
+  }
+
+  /**
+   * Constructs a parser that reads the specified file through a memory mapping.
+   * Since NMEA 0183 data is pure ASCII, the file contents are handed to the
+   * sentence parser without any character set decoding.
+   *
+   * @param file
+   *        the file to parse as NMEA data.
+   * @param source
+   *        the source used in the events to send.
+   * @throws FileNotFoundException
+   *         if the file cannot be opened for reading.
+   * @throws NullPointerException
+   *         if file or source is <code>null</code>.
+   */
+  public NmeaParser( File file, Object source) throws FileNotFoundException
+  {
+    if (file == null)
+      throw new NullPointerException( "file");
+    this.fileChannel= new FileInputStream( file).getChannel();
+    nmeaSentenceParser= new NmeaSentenceParser( source);
+    // each track point gets the speed and bearing of its own sentences
+    nmeaSentenceParser.setReportUnchangedCourse( true);
+    this.trackEventMulticaster= new TrackEventMulticaster( source);
+    nmeaSentenceParser.addListener( trackEventMulticaster);
+  }
+
+  /**
+   * Constructs a parser that reads a range of lines of the specified file
+   * through a memory mapping. Used to parse a file in chunks.
+   *
+   * @param channel
+   *        the file to parse as NMEA data. The channel is not closed by the
+   *        parser.
+   * @param start
+   *        the file position where the first line starts.
+   * @param end
+   *        the file position where parsing stops, exclusive. This should be the
+   *        end of the file or the position just after a line terminator.
+   * @param source
+   *        the source used in the events to send.
+   * @see #parseRange()
+   */
+  NmeaParser( FileChannel channel, long start, long end, Object source)
+  {
+    if (channel == null)
+      throw new NullPointerException( "channel");
+    this.fileChannel= channel;
+    this.rangeStart= start;
+    this.rangeEnd= end;
+    nmeaSentenceParser= new NmeaSentenceParser( source);
+    // each track point gets the speed and bearing of its own sentences
+    nmeaSentenceParser.setReportUnchangedCourse( true);
     this.trackEventMulticaster= new TrackEventMulticaster( source);
     nmeaSentenceParser.addListener( trackEventMulticaster);
   }
@@ -53,7 +128,9 @@ public class NmeaParser
    * Adds a track listener.
    * 
    * @param listener
+   * @deprecated Use {@link #addFixListener(IFixListener)}.
    */
+  @Deprecated
   public void addTrackListener( ITrackListener listener)
   {
     trackEventMulticaster.addTrackListener( listener);
@@ -63,22 +140,76 @@ public class NmeaParser
    * removes a track listener.
    * 
    * @param listener
+   * @deprecated Use {@link #removeFixListener(IFixListener)}.
    */
+  @Deprecated
   public void removeTrackListener( ITrackListener listener)
   {
     trackEventMulticaster.removeTrackListener( listener);
   }
 
   /**
-   * Parses the characters from the input stream and sends events when certain
-   * data are detected.
+   * Adds a listener that receives each track point as a {@link Fix}.
+   * 
+   * @param listener
+   */
+  public void addFixListener( IFixListener listener)
+  {
+    trackEventMulticaster.addFixListener( listener);
+  }
+
+  /**
+   * removes a listener that receives each track point as a {@link Fix}.
+   * 
+   * @param listener
+   */
+  public void removeFixListener( IFixListener listener)
+  {
+    trackEventMulticaster.removeFixListener( listener);
+  }
+
+  /**
+   * Adds a listener that receives the track points in blocks. A block is sent
+   * whenever it is full and when parsing is complete.
+   *
+   * @param listener
+   */
+  public void addTrackBlockListener( ITrackBlockListener listener)
+  {
+    trackEventMulticaster.addTrackBlockListener( listener);
+  }
+
+  /**
+   * removes a listener that receives the track points in blocks.
+   *
+   * @param listener
+   */
+  public void removeTrackBlockListener( ITrackBlockListener listener)
+  {
+    trackEventMulticaster.removeTrackBlockListener( listener);
+  }
+
+  /**
+   * Parses the characters from the input stream or file and sends events when
+   * certain data are detected.
    * 
    * @throws IOException
    *         If an I/O error occurs
    * @see NmeaSentenceParser#parse(String)
+   * @see NmeaSentenceParser#parse(byte[], int, int)
    */
   public void parse() throws IOException
   {
+    if (fileChannel != null) {
+      try {
+        parseRange();
+      }
+      finally {
+        trackEventMulticaster.close();
+        fileChannel.close();
+      }
+      return;
+    }
     BufferedReader reader= null;
     try {
       reader= new BufferedReader( new InputStreamReader( inputStream));
@@ -95,6 +226,81 @@ public class NmeaParser
     }
   }
 
+  /**
+   * Parses the range of lines of the file that was specified on construction.
+   * In contrast to {@link #parse()}, the data of the last track point is not
+   * sent and the file is not closed, so that parsing can be continued.
+   *
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  void parseRange() throws IOException
+  {
+    final long end= rangeEnd == -1
+      ? fileChannel.size() : rangeEnd;
+    final MappedLineReader reader=
+      new MappedLineReader( fileChannel, rangeStart, end);
+    while (reader.nextLine()) {
+      nmeaSentenceParser.parse( reader.getLine(), 0, reader.getLineLength());
+    }
+  }
+
+  /**
+   * Processes a single line of NMEA data.
+   *
+   * @param buf
+   *        the buffer holding the ASCII characters of the line, without any
+   *        line terminator.
+   * @param off
+   *        the offset of the first character of the line in the buffer.
+   * @param len
+   *        the number of characters in the line.
+   */
+  void parseLine( byte[] buf, int off, int len)
+  {
+    nmeaSentenceParser.parse( buf, off, len);
+  }
+
+  /**
+   * Sends the data of the last track point, if any.
+   */
+  void flush()
+  {
+    trackEventMulticaster.flush();
+  }
+
+  /**
+   * Sends the track points collected for the block listeners so far, if any.
+   * In contrast to {@link #flush()}, the data of the last track point is kept.
+   */
+  void sendBlock()
+  {
+    trackEventMulticaster.sendBlock();
+  }
+
+  /**
+   * Gets a snapshot of the data that this parser carries from one sentence to
+   * the next.
+   */
+  NmeaParserState getState()
+  {
+    final NmeaParserState state= new NmeaParserState();
+    nmeaSentenceParser.saveState( state);
+    trackEventMulticaster.saveState( state);
+    return state;
+  }
+
+  /**
+   * Sets the data that this parser carries from one sentence to the next, so
+   * that it continues as if it had parsed the input that led to the specified
+   * state.
+   */
+  void setState( NmeaParserState state)
+  {
+    nmeaSentenceParser.restoreState( state);
+    trackEventMulticaster.restoreState( state);
+  }
+
   /**
    * @param args
    */
@@ -105,13 +311,21 @@ public class NmeaParser
       System.exit( 1);
     }
     try {
-      FileInputStream stream= new FileInputStream( args[0]);
-      final NmeaParser parser= new NmeaParser( stream, new Object());
-      parser.addTrackListener( new ITrackListener() {
+      final NmeaParser parser= new NmeaParser( new File( args[0]), new Object());
+      parser.addTrackBlockListener( new ITrackBlockListener() {
+        private final StringBuilder line= new StringBuilder();
 
-        public void trackPoint( TrackEvent evt)
+        public void trackPoints( TrackBlock block)
         {
-          System.out.println( evt.toString());
+          for (int i= 0; i < block.size(); i++) {
+            line.setLength( 0);
+            line.append( block.getDate( i)).append( ' ');
+            line.append( block.getLatitude( i)).append( ' ');
+            line.append( block.getLongitude( i)).append( ' ');
+            line.append( block.getSpeed( i)).append( ' ');
+            line.append( block.getBearing( i));
+            System.out.println( line);
+          }
         }
       });
       parser.parse();
@@ -133,15 +347,18 @@ public class NmeaParser
   // //////////////////////////////////////////////////////////////////
 
   /**
-   * Condenses events from NMEA sentences to {@code TrackEvent}s and sends the
-   * to registered listeners. Listens for events from NMEA sentences.
+   * Condenses events from NMEA sentences to {@link Fix}es and sends them to
+   * registered listeners. Listens for events from NMEA sentences.
    * 
    * @author Martin Weber
    * @see NmeaSentenceParser
    */
-  private static class TrackEventMulticaster implements INmeaSentenceListener,
-    Closeable
+  private static class TrackEventMulticaster implements
+    IPrimitiveSentenceListener, Closeable
   {
+    /** the number of track points sent to block listeners at once */
+    private static final int BLOCK_SIZE= 4096;
+
     /**
      * the source used in the events to send.
      */
@@ -149,16 +366,40 @@ public class NmeaParser
 
     private EventListenerList listenerList= new EventListenerList();
 
+    /** whether there are any {@code IFixListener}s or {@code ITrackListener}s */
+    private boolean hasFixListeners;
+
+    /**
+     * the track points not yet sent to the block listeners or
+     * <code>null</code> if there are no block listeners
+     */
+    private TrackBlock block;
+
     /** data buffer fields */
     private long timeOfDay;
 
     private long date;
 
-    private Position2D pos;
+    /** whether a position is buffered */
+    private boolean hasPos;
+
+    /** the latitude in 10^-7 degrees */
+    private int latitude;
 
-    private Float speed;
+    /** the longitude in 10^-7 degrees */
+    private int longitude;
+
+    /**
+     * the speed or NaN, if none of the sentences of the track point contained
+     * a speed
+     */
+    private float speed= Float.NaN;
 
-    private Float bearing;
+    /**
+     * the bearing or NaN, if none of the sentences of the track point
+     * contained a bearing
+     */
+    private float bearing= Float.NaN;
 
     /**
      * Contruct a new instance that uses the specified object as the source of
@@ -180,26 +421,72 @@ public class NmeaParser
     public void close() throws IOException
     {
       flush();
+      sendBlock();
+    }
+
+    /**
+     * Sends the track points collected for the block listeners, if any.
+     */
+    void sendBlock()
+    {
+      if (block != null && block.size() > 0) {
+        fireBlock();
+      }
     }
 
     /**
      * Sends the latest event, if any.
      */
-    private void flush()
+    void flush()
     {
-      if (pos != null) {
-        TrackEvent evt=
-          new TrackEvent( eventSource, date + timeOfDay, pos, speed, bearing);
-        fireEvent( evt);
+      if (hasPos) {
+        if (hasFixListeners) {
+          fireEvent( new Fix( date + timeOfDay, Position.fromE7( latitude,
+            longitude), speed, bearing));
+        }
+        if (block != null) {
+          block.add( date + timeOfDay, latitude, longitude, speed, bearing);
+          if (block.isFull()) {
+            fireBlock();
+          }
+        }
         // clear buffered data
-        pos= null;
-        speed= null;
-        bearing= null;
+        hasPos= false;
+        speed= Float.NaN;
+        bearing= Float.NaN;
       }
     }
 
     /**
-     * @see de.marw.fifteenknots.nmeareader.INmeaSentenceListener#timeChanged(java.lang.Object,
+     * Stores the data buffered by this object in the specified state object.
+     */
+    void saveState( NmeaParserState state)
+    {
+      state.timeOfDay= timeOfDay;
+      state.date= date;
+      state.hasPos= hasPos;
+      state.latitude= latitude;
+      state.longitude= longitude;
+      state.speed= speed;
+      state.bearing= bearing;
+    }
+
+    /**
+     * Sets the data buffered by this object from the specified state object.
+     */
+    void restoreState( NmeaParserState state)
+    {
+      timeOfDay= state.timeOfDay;
+      date= state.date;
+      hasPos= state.hasPos;
+      latitude= state.latitude;
+      longitude= state.longitude;
+      speed= state.speed;
+      bearing= state.bearing;
+    }
+
+    /**
+     * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#timeChanged(java.lang.Object,
      *      long)
      */
     public void timeChanged( Object source, long timeOfDay)
@@ -210,7 +497,7 @@ public class NmeaParser
 
     /*
      * @see
-     * de.marw.fifteenknots.nmeareader.INmeaSentenceListener#dateChanged(java
+     * de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#dateChanged(java
      * .lang.Object, long)
      */
     public void dateChanged( Object source, long date)
@@ -219,37 +506,39 @@ public class NmeaParser
     }
 
     /**
-     * @see de.marw.fifteenknots.nmeareader.INmeaSentenceListener#fixChanged(java.lang.Object,
+     * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#fixChanged(java.lang.Object,
      *      java.lang.Boolean)
      */
     public void fixChanged( Object source, Boolean fix)
     {}
 
     /**
-     * @see de.marw.fifteenknots.nmeareader.INmeaSentenceListener#positionChanged(java.lang.Object,
-     *      de.marw.fifteenknots.nmeareader.Position2D)
+     * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#positionChanged(java.lang.Object,
+     *      int, int)
      */
-    public void positionChanged( Object source, Position2D pos)
+    public void positionChanged( Object source, int latitude, int longitude)
     {
-      this.pos= pos;
+      this.hasPos= true;
+      this.latitude= latitude;
+      this.longitude= longitude;
     }
 
     /**
-     * @see de.marw.fifteenknots.nmeareader.INmeaSentenceListener#speedChanged(java.lang.Object,
+     * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#speedChanged(java.lang.Object,
      *      float)
      */
     public void speedChanged( Object source, float speed)
     {
-      this.speed= Float.valueOf( speed);
+      this.speed= speed;
     }
 
     /**
-     * @see de.marw.fifteenknots.nmeareader.INmeaSentenceListener#bearingChanged(java.lang.Object,
+     * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#bearingChanged(java.lang.Object,
      *      float)
      */
     public void bearingChanged( Object source, float bearing)
     {
-      this.bearing= Float.valueOf( bearing);
+      this.bearing= bearing;
     }
 
     /**
@@ -257,9 +546,11 @@ public class NmeaParser
      * 
      * @param listener
      */
+    @SuppressWarnings("deprecation")
     public void addTrackListener( ITrackListener listener)
     {
       listenerList.add( ITrackListener.class, listener);
+      hasFixListeners= true;
     }
 
     /**
@@ -267,26 +558,109 @@ public class NmeaParser
      * 
      * @param listener
      */
+    @SuppressWarnings("deprecation")
     public void removeTrackListener( ITrackListener listener)
     {
       listenerList.remove( ITrackListener.class, listener);
+      updateHasFixListeners();
+    }
+
+    /**
+     * Adds a listener that receives each track point as a {@code Fix}.
+     * 
+     * @param listener
+     */
+    public void addFixListener( IFixListener listener)
+    {
+      listenerList.add( IFixListener.class, listener);
+      hasFixListeners= true;
+    }
+
+    /**
+     * removes a listener that receives each track point as a {@code Fix}.
+     * 
+     * @param listener
+     */
+    public void removeFixListener( IFixListener listener)
+    {
+      listenerList.remove( IFixListener.class, listener);
+      updateHasFixListeners();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void updateHasFixListeners()
+    {
+      hasFixListeners=
+        listenerList.getListenerCount( IFixListener.class) > 0
+          || listenerList.getListenerCount( ITrackListener.class) > 0;
+    }
+
+    /**
+     * Adds a listener that receives the track points in blocks.
+     *
+     * @param listener
+     */
+    public void addTrackBlockListener( ITrackBlockListener listener)
+    {
+      listenerList.add( ITrackBlockListener.class, listener);
+      if (block == null) {
+        block= new TrackBlock( eventSource, BLOCK_SIZE);
+      }
+    }
+
+    /**
+     * removes a listener that receives the track points in blocks.
+     *
+     * @param listener
+     */
+    public void removeTrackBlockListener( ITrackBlockListener listener)
+    {
+      listenerList.remove( ITrackBlockListener.class, listener);
+      if (listenerList.getListenerCount( ITrackBlockListener.class) == 0) {
+        block= null;
+      }
     }
 
     /**
      * Notifies all listeners that have registered interest for notification on
      * this event type.
      */
-    protected void fireEvent( TrackEvent evt)
+    @SuppressWarnings("deprecation")
+    protected void fireEvent( Fix fix)
     {
       // Guaranteed to return a non-null array
       Object[] listeners= listenerList.getListenerList();
+      // the event for the deprecated listeners, lazily created
+      TrackEvent evt= null;
       // Process the listeners last to first, notifying
       // those that are interested in this event
       for (int i= listeners.length - 2; i >= 0; i-= 2) {
-        if (listeners[i] == ITrackListener.class) {
+        if (listeners[i] == IFixListener.class) {
+          ((IFixListener) listeners[i + 1]).trackPoint( fix);
+        }
+        else if (listeners[i] == ITrackListener.class) {
+          if (evt == null) {
+            evt= new TrackEvent( eventSource, fix);
+          }
           ((ITrackListener) listeners[i + 1]).trackPoint( evt);
         }
       }
     }
+
+    /**
+     * Sends the buffered block of track points to all block listeners and
+     * empties the block.
+     */
+    private void fireBlock()
+    {
+      // Guaranteed to return a non-null array
+      Object[] listeners= listenerList.getListenerList();
+      for (int i= listeners.length - 2; i >= 0; i-= 2) {
+        if (listeners[i] == ITrackBlockListener.class) {
+          ((ITrackBlockListener) listeners[i + 1]).trackPoints( block);
+        }
+      }
+      block.clear();
+    }
   }
 }
@@ -0,0 +1,133 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+/**
+ * A snapshot of the data that a {@link NmeaParser} carries from one sentence
+ * to the next, that is the values last detected by its
+ * {@link NmeaSentenceParser} and the data of the track point not yet sent.
+ * Two parsers that agree in their state will send equal events for the same
+ * input.
+ *
+ * @author Martin Weber
+ */
+final class NmeaParserState
+{
+  // NmeaSentenceParser
+  long lastDate;
+
+  long lastTimeOfDay;
+
+  Boolean lastFix;
+
+  boolean positionDetected;
+
+  int lastLatitude;
+
+  int lastLongitude;
+
+  float lastSpeed;
+
+  float lastBearing;
+
+  // track event multicaster
+  long timeOfDay;
+
+  long date;
+
+  boolean hasPos;
+
+  /** the latitude in 10^-7 degrees */
+  int latitude;
+
+  /** the longitude in 10^-7 degrees */
+  int longitude;
+
+  /** the speed or NaN */
+  float speed;
+
+  /** the bearing or NaN */
+  float bearing;
+
+  /**
+   * Gets whether no date was detected by the parser so far.
+   */
+  boolean isDateUnknown()
+  {
+    return lastDate == -1 && date == 0;
+  }
+
+  /**
+   * Gets whether a parser in this state sends the same track points as a
+   * parser in the specified actual state, when both parse the remaining lines
+   * of a chunk. Values that are never detected in the chunk do not affect the
+   * track points and are not compared. If the chunk contains no date, the
+   * track points will differ in their dates, though.
+   *
+   * @param actual
+   *        the state of the other parser.
+   * @param chunkEnd
+   *        the state this parser will have at the end of the chunk.
+   */
+  boolean agrees( NmeaParserState actual, NmeaParserState chunkEnd)
+  {
+    // data of the track point not yet sent...
+    if (timeOfDay != actual.timeOfDay || hasPos != actual.hasPos
+      || hasPos
+      && (latitude != actual.latitude || longitude != actual.longitude)
+      || Float.compare( speed, actual.speed) != 0
+      || Float.compare( bearing, actual.bearing) != 0
+      || lastTimeOfDay != actual.lastTimeOfDay)
+      return false;
+    // values last detected...
+    if ( !chunkEnd.isDateUnknown()
+      && (lastDate != actual.lastDate || date != actual.date))
+      return false;
+    if (chunkEnd.lastFix != null && !equal( lastFix, actual.lastFix))
+      return false;
+    if (chunkEnd.positionDetected
+      && (positionDetected != actual.positionDetected
+        || lastLatitude != actual.lastLatitude
+        || lastLongitude != actual.lastLongitude))
+      return false;
+    if (chunkEnd.lastSpeed != Float.MAX_VALUE
+      && Float.compare( lastSpeed, actual.lastSpeed) != 0)
+      return false;
+    if (chunkEnd.lastBearing != Float.MAX_VALUE
+      && Float.compare( lastBearing, actual.lastBearing) != 0)
+      return false;
+    return true;
+  }
+
+  /**
+   * Copies those values from the specified state that were never detected by
+   * the parser in this state.
+   */
+  void inheritUndetected( NmeaParserState actual)
+  {
+    if (isDateUnknown()) {
+      lastDate= actual.lastDate;
+      date= actual.date;
+    }
+    if (lastFix == null)
+      lastFix= actual.lastFix;
+    if ( !positionDetected) {
+      positionDetected= actual.positionDetected;
+      lastLatitude= actual.lastLatitude;
+      lastLongitude= actual.lastLongitude;
+    }
+    if (lastSpeed == Float.MAX_VALUE)
+      lastSpeed= actual.lastSpeed;
+    if (lastBearing == Float.MAX_VALUE)
+      lastBearing= actual.lastBearing;
+  }
+
+  private static boolean equal( Object o1, Object o2)
+  {
+    return o1 == null
+      ? o2 == null : o1.equals( o2);
+  }
+}
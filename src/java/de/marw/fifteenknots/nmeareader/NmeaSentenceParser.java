@@ -5,11 +5,6 @@
 
 package de.marw.fifteenknots.nmeareader;
 
-import java.util.Calendar;
-import java.util.GregorianCalendar;
-import java.util.TimeZone;
-import java.util.regex.Pattern;
-
 import javax.swing.event.EventListenerList;
 
 /**
@@ -26,8 +21,6 @@ public class NmeaSentenceParser {
    */
   private Object eventSource;
 
-  private static final TimeZone UTC_TIME_ZONE = TimeZone.getTimeZone("UTC");
-
   /**
    * last date in milliseconds detected
    */
@@ -43,7 +36,14 @@ public class NmeaSentenceParser {
 
   private Boolean lastFix;
 
-  private Position2D lastPosition;
+  /** whether a position was detected yet */
+  private boolean positionDetected;
+
+  /** last latitude in 10^-7 degrees detected */
+  private int lastLatitude;
+
+  /** last longitude in 10^-7 degrees detected */
+  private int lastLongitude;
 
   /**
    * last speed in knots detected. Float.MAX_VALUE is used to indicate 'no value
@@ -53,7 +53,31 @@ public class NmeaSentenceParser {
 
   private float lastBearing = Float.MAX_VALUE;
 
-  private final Calendar cal = new GregorianCalendar(UTC_TIME_ZONE);
+  /**
+   * whether speed and bearing are reported with each sentence that contains
+   * them, even if they did not change
+   */
+  private boolean reportUnchangedCourse;
+
+  private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  /**
+   * the day, month and year of the date last parsed, used to skip the
+   * calculation if the date did not change
+   */
+  private int cachedDateKey;
+
+  /** the date last parsed in milliseconds or Long.MIN_VALUE if none */
+  private long cachedDate = Long.MIN_VALUE;
+
+  /** splits sentences into words */
+  private final SentenceTokenizer tokenizer = new SentenceTokenizer();
+
+  /** validates the checksum of sentences */
+  private final NmeaChecksum checksum = new NmeaChecksum();
+
+  /** buffer for sentences passed in as a String */
+  private byte[] line = new byte[128];
 
   // private PositionReceivedListener PositionReceived;
   //
@@ -83,34 +107,70 @@ public class NmeaSentenceParser {
     this.eventSource = source;
   }
 
+  /**
+   * Sets whether speed and bearing are reported to the listeners with each
+   * sentence that contains them, even if they did not change. By default,
+   * like all other values, they are reported only when they changed. Used by
+   * parsers that assign the values to the track point of the sentence.
+   */
+  void setReportUnchangedCourse(boolean report) {
+    reportUnchangedCourse = report;
+  }
+
   /**
    * Processes information from the GPS receiver
    *
    * @param sentence
    * @return <code>true</code> if the sentence was recognized, otherwise
    *         <code>false</code>.
+   * @see #parse(byte[], int, int)
    */
   public boolean parse(String sentence) {
+    final int len = sentence.length();
+    if (line.length < len) {
+      line = new byte[Math.max(len, 2 * line.length)];
+    }
+    for (int i = 0; i < len; i++) {
+      line[i] = (byte) sentence.charAt(i);
+    }
+    return parse(line, 0, len);
+  }
+
+  /**
+   * Processes information from the GPS receiver. The sentence is read directly
+   * from the specified buffer, without creating objects for its fields.
+   *
+   * @param buf
+   *        the buffer holding the ASCII characters of the sentence, without any
+   *        line terminator.
+   * @param off
+   *        the offset of the first character of the sentence in the buffer.
+   * @param len
+   *        the number of characters in the sentence.
+   * @return <code>true</code> if the sentence was recognized, otherwise
+   *         <code>false</code>.
+   */
+  public boolean parse(byte[] buf, int off, int len) {
     // Discard the sentence if its checksum does not match our
     // calculated checksum
-    if (!isValid(sentence))
+    if (!checksum.isValid(buf, off, len))
       return false;
     // Look at the first word to decide where to go next
-    final String[] words = sentence.split(",|\\*");
-    final String type = words[0];
+    final SentenceTokenizer words = tokenizer;
+    words.reset(buf, off, len);
 
-    if ("$GPGGA".equals(type)) {
+    if (words.equals(0, "$GPGGA")) {
       // A "essential fix data" sentence was received
       return parseGPGGA(words);
-    } else if ("$GPRMC".equals(type)) {
+    } else if (words.equals(0, "$GPRMC")) {
       // A "Recommended Minimum" sentence was found
       return parseGPRMC(words);
     }
-    // else if ("$GPGSV".equals( type)) {
+    // else if (words.equals(0, "$GPGSV")) {
     // // A "Satellites in View" sentence was received
     // return parseGPGSV( words);
     // }
-    else if ("$GPGSA".equals(type)) {
+    else if (words.equals(0, "$GPGSA")) {
       // "Overall Satellite data"
       return parseGPGSA(words);
     } else {
@@ -122,40 +182,33 @@ public class NmeaSentenceParser {
   /**
    * Interprets a $GPRMC message
    *
-   * @param sentence
+   * @param words
    *        the NMEA line divided into words
    * @return <code>true</code> if the sentence was recognized, otherwise
    *         <code>false</code>.
    */
-  private boolean parseGPRMC(String[] sentence) {
-    final String[] words = sentence;
+  private boolean parseGPRMC(SentenceTokenizer words) {
+    final int wordCount = words.getFieldCount();
     // time of day
-    if (words.length >= 1 && words[1].length() >= 6) {
-      long time = parseTimeOfDay(words[1]);
+    if (wordCount > 1 && words.getLength(1) >= 6) {
+      long time = parseTimeOfDay(words, 1);
       // notify listener
       fireTimeChanged(time);
     }
     // Do we have enough values to parse satellite-derived date?
-    if (words.length >= 9 && words[9].length() >= 6) {
-      int day = Integer.valueOf(words[9].substring(0, 2));
-      int month = Integer.valueOf(words[9].substring(2, 4));
-      int year = Integer.valueOf(words[9].substring(4, 6));
-      cal.clear();
-      cal.set(Calendar.DAY_OF_MONTH, day);
-      cal.set(Calendar.MONTH, month - 1);
-      cal.set(Calendar.YEAR, year + 2000);
-      long date = cal.getTime().getTime();
+    if (wordCount > 9 && words.getLength(9) >= 6) {
+      long date = parseDate(words, 9);
       // notify listener
       fireDateChanged(date);
     }
 
     // Does the device currently have a satellite fix?
-    if (words.length >= 2 && words[2].length() > 0) {
+    if (wordCount > 2 && words.getLength(2) > 0) {
       Boolean fix = null;
-      if ("A".equals(words[2])) {
+      if (words.equals(2, "A")) {
 	// got fix
 	fix = Boolean.TRUE;
-      } else if ("V".equals(words[2])) {
+      } else if (words.equals(2, "V")) {
 	fix = Boolean.FALSE;
       } else {
 	// garbled value, should we complain here??
@@ -164,26 +217,25 @@ public class NmeaSentenceParser {
       fireFixChanged(fix);
     }
 
-    if (words.length >= 6 && words[3].length() > 0 && words[4].length() > 0
-	&& words[5].length() > 0 && words[6].length() > 0) {
+    if (wordCount > 6 && words.getLength(3) > 0 && words.getLength(4) > 0
+	&& words.getLength(5) > 0 && words.getLength(6) > 0) {
       // Extract latitude and longitude
-      double latitude = parseLatitude(words[3], words[4]);
-      double longitude = parseLongitude(words[5], words[6]);
-      Position2D pos = new Position2D(longitude, latitude);
+      int latitude = parseLatitude(words, 3);
+      int longitude = parseLongitude(words, 5);
       // notify listener
-      firePositionChanged(pos);
+      firePositionChanged(latitude, longitude);
     }
     // Do we have enough information to extract the current speed?
-    if (words.length >= 7 && words[7].length() > 0) {
+    if (wordCount > 7 && words.getLength(7) > 0) {
       // Yes. Parse the speed (knots)
-      float speed = Float.valueOf(words[7]);
+      float speed = words.parseFloat(7);
       // notify listener
       fireSpeedChanged(speed);
     }
     // Do we have enough information to extract bearing?
-    if (words.length >= 8 && words[8].length() > 0) {
+    if (wordCount > 8 && words.getLength(8) > 0) {
       // Indicate that the sentence was recognized
-      float bearing = Float.valueOf(words[8]);
+      float bearing = words.parseFloat(8);
       // notify listener
       fireBearingChanged(bearing);
     }
@@ -192,21 +244,21 @@ public class NmeaSentenceParser {
   }
 
   // Interprets a "essential fix data" NMEA sentence
-  private boolean parseGPGGA(String[] sentence) {
-    final String[] words = sentence;
+  private boolean parseGPGGA(SentenceTokenizer words) {
+    final int wordCount = words.getFieldCount();
     // Do we have enough values to parse satellite-derived time?
-    if (words.length >= 1 && words[1].length() >= 6) {
-      long time = parseTimeOfDay(words[1]);
+    if (wordCount > 1 && words.getLength(1) >= 6) {
+      long time = parseTimeOfDay(words, 1);
       // notify listener
       fireTimeChanged(time);
     }
     // Does the device currently have a satellite fix?
-    if (words.length >= 7 && words[6].length() > 0) {
+    if (wordCount > 6 && words.getLength(6) > 0) {
       Boolean fix = null;
-      if ("1".equals(words[6])) {
+      if (words.equals(6, "1")) {
 	// got fix
 	fix = Boolean.TRUE;
-      } else if ("2".equals(words[6])) {
+      } else if (words.equals(6, "2")) {
 	// got fix
 	fix = Boolean.TRUE;
       } else {
@@ -215,41 +267,42 @@ public class NmeaSentenceParser {
       fireFixChanged(fix);
     }
 
-    if (words.length >= 6 && words[2].length() > 0 && words[3].length() > 0
-	&& words[4].length() > 0 && words[5].length() > 0) {
+    if (wordCount > 5 && words.getLength(2) > 0 && words.getLength(3) > 0
+	&& words.getLength(4) > 0 && words.getLength(5) > 0) {
       // Extract latitude and longitude
-      double latitude = parseLatitude(words[2], words[3]);
-      double longitude = parseLongitude(words[4], words[5]);
-      Position2D pos = new Position2D(longitude, latitude);
+      int latitude = parseLatitude(words, 2);
+      int longitude = parseLongitude(words, 4);
       // notify listener
-      firePositionChanged(pos);
+      firePositionChanged(latitude, longitude);
     }
 
     return true;
   }
 
   // Interprets a "Satellites in View" NMEA sentence
-  private boolean parseGPGSV(String[] sentence) {
-    final String[] words = sentence;
+  private boolean parseGPGSV(SentenceTokenizer words) {
+    final int wordCount = words.getFieldCount();
     // Each sentence contains four blocks of satellite information.
     // Read each block and report each satellite's information
     for (int sat = 0; sat < 4; sat++) {
       // Does the sentence have enough words to analyze?
       final int offset = 4 + sat * 4;
-      if (words.length > offset + 3) {
+      if (wordCount > offset + 3) {
 	// Yes. Proceed with analyzing the block.
 	// Does it contain any information?
-	if (words[offset].length() > 0 && words[offset + 1].length() > 0
-	    && words[offset + 2].length() > 0 && words[offset + 3].length() > 0) {
+	if (words.getLength(offset) > 0 && words.getLength(offset + 1) > 0
+	    && words.getLength(offset + 2) > 0
+	    && words.getLength(offset + 3) > 0) {
 	  // Yes. Extract satellite information and report it
 	  int pseudoRandomCode = 0;
 	  int azimuth = 0;
 	  int elevation = 0;
 	  int signalToNoiseRatio = 0;
-	  pseudoRandomCode = Integer.valueOf(words[offset]);
-	  elevation = Integer.valueOf(words[offset + 1]);
-	  azimuth = Integer.valueOf(words[offset + 2]);
-	  signalToNoiseRatio = Integer.valueOf(words[offset + 3]);
+	  pseudoRandomCode = words.parseInt(offset, 0, words.getLength(offset));
+	  elevation = words.parseInt(offset + 1, 0, words.getLength(offset + 1));
+	  azimuth = words.parseInt(offset + 2, 0, words.getLength(offset + 2));
+	  signalToNoiseRatio = words.parseInt(offset + 3, 0,
+	      words.getLength(offset + 3));
 	  // Notify of this satellite's information
 	  // if (SatelliteReceived != null)
 	  // SatelliteReceived( pseudoRandomCode, azimuth, elevation,
@@ -262,18 +315,18 @@ public class NmeaSentenceParser {
   }
 
   // Interprets a "Fixed Satellites and DOP" NMEA sentence
-  private boolean parseGPGSA(String[] sentence) {
-    final String[] words = sentence;
+  private boolean parseGPGSA(SentenceTokenizer words) {
+    final int wordCount = words.getFieldCount();
     // Update the DOP values
-    if (words.length >= 15 && words[15].length() > 0) {
+    if (wordCount > 15 && words.getLength(15) > 0) {
       // if (PDOPReceived != null)
       // PDOPReceived( Double.valueOf( words[15]));
     }
-    if (words.length >= 16 && words[16].length() > 0) {
+    if (wordCount > 16 && words.getLength(16) > 0) {
       // if (HDOPReceived != null)
       // HDOPReceived( Double.valueOf( words[16]));
     }
-    if (words.length >= 17 && words[17].length() > 0) {
+    if (wordCount > 17 && words.getLength(17) > 0) {
       // if (VDOPReceived != null)
       // VDOPReceived( Double.valueOf( words[17]));
     }
@@ -281,73 +334,124 @@ public class NmeaSentenceParser {
   }
 
   /**
-   * Decodes an NMEA value for latitude or longitude to degrees. Missing
+   * Decodes an NMEA value for latitude or longitude to 10^-7 degrees. Missing
    * trailing zeroes in the NMEA input are supported.
+   *
+   * @param words
+   *        the NMEA line divided into words
+   * @param field
+   *        the index of the word that holds the value
    */
-  private double decodeNMEAPos(final String nmeaPos) {
-    int degrees = 0;
-    double minutes;
-    // handle missing trailing zeroes...
-    int dotIdx = nmeaPos.indexOf('.') - 2;
-    if (dotIdx >= 1) {
-      degrees = Integer.valueOf(nmeaPos.substring(0, dotIdx));
-      minutes = Double.valueOf(nmeaPos.substring(dotIdx));
-    } else {
-      minutes = Double.valueOf(nmeaPos);
-    }
-
-    return degrees + minutes / 60.0;
+  private int decodeNMEAPos(final SentenceTokenizer words, final int field) {
+    return words.parsePositionE7(field);
   }
 
   /**
-   * @param nmeaPos
-   * @param hemisphere
+   * @param words
+   *        the NMEA line divided into words
+   * @param field
+   *        the index of the word that holds the value, the hemisphere is
+   *        expected in the following word
    * @return
    */
-  private double parseLongitude(final String nmeaPos, final String hemisphere) {
-    double longitude = decodeNMEAPos(nmeaPos);
+  private int parseLongitude(final SentenceTokenizer words, final int field) {
+    int longitude = decodeNMEAPos(words, field);
     // hemisphere
-    if ("W".equals(hemisphere)) {
-      longitude *= -1.0;
+    if (words.equals(field + 1, "W")) {
+      longitude = -longitude;
     }
     return longitude;
   }
 
   /**
-   * @param nmeaPos
-   * @param hemisphere
+   * @param words
+   *        the NMEA line divided into words
+   * @param field
+   *        the index of the word that holds the value, the hemisphere is
+   *        expected in the following word
    * @return
    */
-  private double parseLatitude(final String nmeaPos, final String hemisphere) {
-    double latitude = decodeNMEAPos(nmeaPos);
+  private int parseLatitude(final SentenceTokenizer words, final int field) {
+    int latitude = decodeNMEAPos(words, field);
     // hemisphere
-    if ("S".equals(hemisphere)) {
-      latitude *= -1.0;
+    if (words.equals(field + 1, "S")) {
+      latitude = -latitude;
     }
     return latitude;
   }
 
   /**
-   * @param word
+   * @param words
+   *        the NMEA line divided into words
+   * @param field
+   *        the index of the word that holds the value
    * @return
    */
-  private long parseTimeOfDay(final String word) {
+  private long parseTimeOfDay(final SentenceTokenizer words, final int field) {
     // Extract hours, minutes, seconds and milliseconds
-    int hours = Integer.valueOf(word.substring(0, 2));
-    int minutes = Integer.valueOf(word.substring(2, 4));
-    int seconds = Integer.valueOf(word.substring(4, 6));
+    int hours = words.parseInt(field, 0, 2);
+    int minutes = words.parseInt(field, 2, 4);
+    int seconds = words.parseInt(field, 4, 6);
     // Extract milliseconds if it is available
     int milliseconds = 0;
-    if (word.length() > 7) {
-      milliseconds = (int) (Float.valueOf(word.substring(6)) * 1000F);
+    final int len = words.getLength(field);
+    if (len > 7) {
+      milliseconds = (int) (words.parseFloat(field, 6, len) * 1000F);
+    }
+    return ((hours * 60L + minutes) * 60L + seconds) * 1000L + milliseconds;
+  }
+
+  /**
+   * Parses a date in ddmmyy format. Values out of range are rolled over into
+   * the adjacent months and years, just like a lenient {@code Calendar} does.
+   *
+   * @param words
+   *        the NMEA line divided into words
+   * @param field
+   *        the index of the word that holds the value
+   * @return the date in milliseconds since the epoch, UTC
+   */
+  private long parseDate(final SentenceTokenizer words, final int field) {
+    int day = words.parseInt(field, 0, 2);
+    int month = words.parseInt(field, 2, 4);
+    int year = words.parseInt(field, 4, 6);
+    // two characters each yield -9..99, that fits into a byte
+    final int key = (day & 0xFF) << 16 | (month & 0xFF) << 8 | (year & 0xFF);
+    if (key != cachedDateKey || cachedDate == Long.MIN_VALUE) {
+      // normalize month, then count days
+      year += 2000 + Math.floorDiv(month - 1, 12);
+      month = Math.floorMod(month - 1, 12) + 1;
+      final long days = daysFromCivil(year, month, 1) + day - 1;
+      cachedDate = days * MILLIS_PER_DAY;
+      cachedDateKey = key;
     }
-    cal.clear();
-    cal.set(Calendar.HOUR_OF_DAY, hours);
-    cal.set(Calendar.MINUTE, minutes);
-    cal.set(Calendar.SECOND, seconds);
-    cal.set(Calendar.MILLISECOND, milliseconds);
-    long time = cal.getTime().getTime();
-    return time;
+    return cachedDate;
+  }
+
+  /**
+   * Gets the number of days since 1970-01-01 of the specified date in the
+   * proleptic Gregorian calendar.
+   *
+   * @param year
+   *        the year
+   * @param month
+   *        the month, 1 to 12
+   * @param day
+   *        the day of the month, 1 to 31
+   * @see <a href="http://howardhinnant.github.io/date_algorithms.html">chrono-
+   *      Compatible Low-Level Date Algorithms</a>
+   */
+  private static long daysFromCivil(int year, int month, int day) {
+    if (month <= 2) {
+      year--;
+    }
+    final int era = Math.floorDiv(year, 400);
+    final int yearOfEra = year - era * 400; // [0, 399]
+    final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5
+	+ day - 1; // [0, 365]
+    final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+	+ dayOfYear; // [0, 146096]
+    return era * 146097L + dayOfEra - 719468;
   }
 
   // Returns True if a sentence's checksum matches the
@@ -390,12 +494,69 @@ public class NmeaSentenceParser {
     return checksum;
   }
 
+  /**
+   * Adds a listener. Its positions are passed as {@link Position} objects
+   * created for each notification.
+   *
+   * @see SentenceListenerAdapter
+   */
   public synchronized void addListener(INmeaSentenceListener listener) {
-    listenerList.add(INmeaSentenceListener.class, listener);
+    addListener(new SentenceListenerAdapter(listener));
   }
 
   public synchronized void removeListener(INmeaSentenceListener listener) {
-    listenerList.remove(INmeaSentenceListener.class, listener);
+    // find the adapter
+    Object[] listeners = listenerList.getListenerList();
+    for (int i = listeners.length - 2; i >= 0; i -= 2) {
+      final Object adapter = listeners[i + 1];
+      if (adapter instanceof SentenceListenerAdapter
+	  && ((SentenceListenerAdapter) adapter).getListener() == listener) {
+	removeListener((IPrimitiveSentenceListener) adapter);
+	return;
+      }
+    }
+  }
+
+  /**
+   * Adds a listener that is notified without creating objects for the values
+   * detected.
+   */
+  public synchronized void addListener(IPrimitiveSentenceListener listener) {
+    listenerList.add(IPrimitiveSentenceListener.class, listener);
+  }
+
+  public synchronized void removeListener(IPrimitiveSentenceListener listener) {
+    listenerList.remove(IPrimitiveSentenceListener.class, listener);
+  }
+
+  /**
+   * Stores the values last detected by this parser in the specified state
+   * object.
+   */
+  void saveState(NmeaParserState state) {
+    state.lastDate = lastDate;
+    state.lastTimeOfDay = lastTimeOfDay;
+    state.lastFix = lastFix;
+    state.positionDetected = positionDetected;
+    state.lastLatitude = lastLatitude;
+    state.lastLongitude = lastLongitude;
+    state.lastSpeed = lastSpeed;
+    state.lastBearing = lastBearing;
+  }
+
+  /**
+   * Sets the values last detected by this parser from the specified state
+   * object.
+   */
+  void restoreState(NmeaParserState state) {
+    lastDate = state.lastDate;
+    lastTimeOfDay = state.lastTimeOfDay;
+    lastFix = state.lastFix;
+    positionDetected = state.positionDetected;
+    lastLatitude = state.lastLatitude;
+    lastLongitude = state.lastLongitude;
+    lastSpeed = state.lastSpeed;
+    lastBearing = state.lastBearing;
   }
 
   /**
@@ -405,15 +566,15 @@ public class NmeaSentenceParser {
    * @param bearing
    */
   private void fireBearingChanged(float bearing) {
-    if (Float.compare(lastBearing, bearing) != 0) {
+    if (reportUnchangedCourse || Float.compare(lastBearing, bearing) != 0) {
       lastBearing = bearing;
       // Guaranteed to return a non-null array
       Object[] listeners = listenerList.getListenerList();
       // Process the listeners last to first, notifying
       // those that are interested in this event
       for (int i = listeners.length - 2; i >= 0; i -= 2) {
-	if (listeners[i] == INmeaSentenceListener.class) {
-	  ((INmeaSentenceListener) listeners[i + 1]).bearingChanged(
+	if (listeners[i] == IPrimitiveSentenceListener.class) {
+	  ((IPrimitiveSentenceListener) listeners[i + 1]).bearingChanged(
 	      eventSource, bearing);
 	}
       }
@@ -427,15 +588,15 @@ public class NmeaSentenceParser {
    * @param speed
    */
   private void fireSpeedChanged(float speed) {
-    if (Float.compare(lastSpeed, speed) != 0) {
+    if (reportUnchangedCourse || Float.compare(lastSpeed, speed) != 0) {
       lastSpeed = speed;
       // Guaranteed to return a non-null array
       Object[] listeners = listenerList.getListenerList();
       // Process the listeners last to first, notifying
       // those that are interested in this event
       for (int i = listeners.length - 2; i >= 0; i -= 2) {
-	if (listeners[i] == INmeaSentenceListener.class) {
-	  ((INmeaSentenceListener) listeners[i + 1]).speedChanged(eventSource,
+	if (listeners[i] == IPrimitiveSentenceListener.class) {
+	  ((IPrimitiveSentenceListener) listeners[i + 1]).speedChanged(eventSource,
 	      speed);
 	}
       }
@@ -446,19 +607,23 @@ public class NmeaSentenceParser {
    * Notifies all listeners that have registered interest for notification on
    * this event type.
    *
-   * @param pos
+   * @param latitude
+   * @param longitude
    */
-  private void firePositionChanged(Position2D pos) {
-    if (!pos.equals(lastPosition)) {
-      lastPosition = pos;
+  private void firePositionChanged(int latitude, int longitude) {
+    if (!positionDetected || latitude != lastLatitude
+	|| longitude != lastLongitude) {
+      positionDetected = true;
+      lastLatitude = latitude;
+      lastLongitude = longitude;
       // Guaranteed to return a non-null array
       Object[] listeners = listenerList.getListenerList();
       // Process the listeners last to first, notifying
       // those that are interested in this event
       for (int i = listeners.length - 2; i >= 0; i -= 2) {
-	if (listeners[i] == INmeaSentenceListener.class) {
-	  ((INmeaSentenceListener) listeners[i + 1]).positionChanged(
-	      eventSource, pos);
+	if (listeners[i] == IPrimitiveSentenceListener.class) {
+	  ((IPrimitiveSentenceListener) listeners[i + 1]).positionChanged(
+	      eventSource, latitude, longitude);
 	}
       }
     }
@@ -479,8 +644,8 @@ public class NmeaSentenceParser {
       // Process the listeners last to first, notifying
       // those that are interested in this event
       for (int i = listeners.length - 2; i >= 0; i -= 2) {
-	if (listeners[i] == INmeaSentenceListener.class) {
-	  ((INmeaSentenceListener) listeners[i + 1]).fixChanged(eventSource,
+	if (listeners[i] == IPrimitiveSentenceListener.class) {
+	  ((IPrimitiveSentenceListener) listeners[i + 1]).fixChanged(eventSource,
 	      fix);
 	}
       }
@@ -502,8 +667,8 @@ public class NmeaSentenceParser {
       // Process the listeners last to first, notifying
       // those that are interested in this event
       for (int i = listeners.length - 2; i >= 0; i -= 2) {
-	if (listeners[i] == INmeaSentenceListener.class) {
-	  ((INmeaSentenceListener) listeners[i + 1]).timeChanged(eventSource,
+	if (listeners[i] == IPrimitiveSentenceListener.class) {
+	  ((IPrimitiveSentenceListener) listeners[i + 1]).timeChanged(eventSource,
 	      time);
 	}
       }
@@ -525,8 +690,8 @@ public class NmeaSentenceParser {
       // Process the listeners last to first, notifying
       // those that are interested in this event
       for (int i = listeners.length - 2; i >= 0; i -= 2) {
-	if (listeners[i] == INmeaSentenceListener.class) {
-	  ((INmeaSentenceListener) listeners[i + 1]).dateChanged(eventSource,
+	if (listeners[i] == IPrimitiveSentenceListener.class) {
+	  ((IPrimitiveSentenceListener) listeners[i + 1]).dateChanged(eventSource,
 	      date);
 	}
       }
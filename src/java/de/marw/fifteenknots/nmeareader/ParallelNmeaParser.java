@@ -0,0 +1,491 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.swing.event.EventListenerList;
+
+
+/**
+ * A parser for a single large file of NMEA 0183 data that splits the file at
+ * line boundaries into chunks and parses the chunks concurrently.
+ * <p>
+ * Since the state a {@link NmeaParser} carries from one sentence to the next
+ * (date, time of day, the values last detected and the data of the track point
+ * not yet sent) is unknown at the beginning of a chunk, each chunk is first
+ * parsed as if it was the beginning of a file. Afterwards, the chunks are
+ * stitched together in order: The first lines of a chunk are parsed again,
+ * starting with the actual state at the end of the preceding chunk, until that
+ * state agrees with the state of the chunk's own parser. From there on, the
+ * track points of the chunk are used unchanged. Values that are never detected
+ * in a chunk are taken from the preceding chunk, a chunk that contains no date
+ * at all gets the dates of its track points resolved. Thus, the resulting
+ * track points equal those produced by parsing the file sequentially.
+ * </p>
+ * <p>
+ * The track points are sent to {@link ITrackBlockListener}s in blocks, just
+ * like {@link NmeaParser} does. A chunk holds its track points in blocks of
+ * primitive values until it is stitched; the chunks are stitched as soon as
+ * they and their predecessors are parsed.
+ * </p>
+ *
+ * @author Martin Weber
+ * @see NmeaParser
+ */
+public class ParallelNmeaParser
+{
+  /** the minimum number of bytes in a chunk */
+  private static final long MIN_CHUNK_SIZE= 8L * 1024 * 1024;
+
+  /** the number of track points sent to block listeners at once */
+  private static final int BLOCK_SIZE= 4096;
+
+  private final File file;
+
+  private final Object source;
+
+  private final ExecutorService executor;
+
+  /** the number of chunks to split the file into */
+  private final int chunkCount;
+
+  private final EventListenerList listenerList= new EventListenerList();
+
+  /** the track points not yet sent to the block listeners */
+  private TrackBlock block;
+
+  /**
+   * @param file
+   *        the file to parse as NMEA data.
+   * @param source
+   *        the source used in the events to send.
+   * @param executor
+   *        the executor that runs the parsers of the chunks.
+   * @throws NullPointerException
+   *         if any argument is <code>null</code>.
+   */
+  public ParallelNmeaParser( File file, Object source, ExecutorService executor)
+  {
+    this( file, source, executor, getChunkCount( file.length()));
+  }
+
+  /**
+   * Constructs a parser that splits the file into the specified number of
+   * chunks, regardless of its size.
+   *
+   * @param file
+   *        the file to parse as NMEA data.
+   * @param source
+   *        the source used in the events to send.
+   * @param executor
+   *        the executor that runs the parsers of the chunks.
+   * @param chunkCount
+   *        the number of chunks. Fewer chunks are used if the file has fewer
+   *        lines.
+   * @throws NullPointerException
+   *         if any argument is <code>null</code>.
+   * @throws IllegalArgumentException
+   *         if chunkCount is less than one.
+   */
+  ParallelNmeaParser( File file, Object source, ExecutorService executor,
+    int chunkCount)
+  {
+    if (file == null)
+      throw new NullPointerException( "file");
+    if (source == null)
+      throw new NullPointerException( "source");
+    if (executor == null)
+      throw new NullPointerException( "executor");
+    if (chunkCount < 1)
+      throw new IllegalArgumentException( "chunkCount");
+    this.file= file;
+    this.source= source;
+    this.executor= executor;
+    this.chunkCount= chunkCount;
+  }
+
+  /**
+   * Gets whether the specified file is large enough to be split into chunks
+   * that are parsed concurrently.
+   */
+  public static boolean isWorthwhile( File file)
+  {
+    return getChunkCount( file.length()) > 1;
+  }
+
+  /**
+   * Gets the number of chunks to split a file of the specified size into.
+   */
+  private static int getChunkCount( long fileSize)
+  {
+    final long chunks=
+      Math.min( Runtime.getRuntime().availableProcessors(), fileSize
+        / MIN_CHUNK_SIZE);
+    return (int) Math.max( 1, chunks);
+  }
+
+  /**
+   * Adds a listener that receives the track points in blocks. A block is sent
+   * whenever it is full and when parsing is complete.
+   *
+   * @param listener
+   */
+  public void addTrackBlockListener( ITrackBlockListener listener)
+  {
+    listenerList.add( ITrackBlockListener.class, listener);
+  }
+
+  /**
+   * removes a listener that receives the track points in blocks.
+   *
+   * @param listener
+   */
+  public void removeTrackBlockListener( ITrackBlockListener listener)
+  {
+    listenerList.remove( ITrackBlockListener.class, listener);
+  }
+
+  /**
+   * Parses the file and sends the track points to the block listeners, in
+   * the same order as they are sent by a {@link NmeaParser} when parsing the
+   * file.
+   *
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public void parse() throws IOException
+  {
+    final FileChannel channel= new FileInputStream( file).getChannel();
+    try {
+      final long size= channel.size();
+      final List<ChunkWorker> chunks= createChunks( channel, size);
+      block= new TrackBlock( source, BLOCK_SIZE);
+
+      // start workers...
+      final List<Future<Object>> workerResults=
+        new ArrayList<Future<Object>>( chunks.size());
+      try {
+        for (ChunkWorker chunk : chunks) {
+          workerResults.add( executor.submit( chunk));
+        }
+        // stitch chunks as they are parsed...
+        NmeaParserState state= null;
+        for (int i= 0; i < chunks.size(); i++) {
+          await( workerResults.get( i));
+          final ChunkWorker chunk= chunks.get( i);
+          if (i == 0) {
+            append( chunk.points, 0, 0);
+            state= chunk.endState;
+          }
+          else {
+            state= stitch( channel, chunk, state);
+          }
+          chunk.points= null;
+        }
+        // send the last track point
+        final NmeaParser tail= new NmeaParser( channel, size, size, source);
+        tail.setState( state);
+        tail.addTrackBlockListener( new BlockAppender());
+        tail.flush();
+        tail.sendBlock();
+        sendBlock();
+      }
+      finally {
+        // stop the workers that are still running after a failure
+        for (Future<Object> workerResult : workerResults) {
+          workerResult.cancel( true);
+        }
+      }
+    }
+    finally {
+      block= null;
+      channel.close();
+    }
+  }
+
+  /**
+   * Waits for a chunk worker to finish.
+   *
+   * @throws IOException
+   *         If an I/O error occured in the worker
+   */
+  private void await( Future<Object> workerResult) throws IOException
+  {
+    try {
+      // throws the exception if one occurred during the invocation
+      workerResult.get();
+    }
+    catch (ExecutionException ex) {
+      // raise exception that occured in worker
+      final Throwable cause= ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+    }
+    catch (CancellationException ex) {
+      throw new InterruptedIOException( file.getPath());
+    }
+    catch (InterruptedException ex) {
+      throw new InterruptedIOException( file.getPath());
+    }
+  }
+
+  /**
+   * Splits the file into chunks that end just after a line terminator.
+   */
+  private List<ChunkWorker> createChunks( FileChannel channel, long size)
+    throws IOException
+  {
+    final List<ChunkWorker> chunks= new ArrayList<ChunkWorker>( chunkCount);
+    final ByteBuffer buf= ByteBuffer.allocate( 4096);
+    long start= 0;
+    for (int i= 1; i < chunkCount && start < size; i++) {
+      // find the end of the line at the approximate chunk end...
+      long end= Math.max( start, size * i / chunkCount);
+      search: while (end < size) {
+        buf.clear();
+        final int read= channel.read( buf, end);
+        if (read <= 0) {
+          end= size;
+          break;
+        }
+        for (int j= 0; j < read; j++) {
+          final byte b= buf.get( j);
+          if (b == '\n' || b == '\r') {
+            end+= j + 1;
+            break search;
+          }
+        }
+        end+= read;
+      }
+      if (end >= size)
+        break;
+      chunks.add( new ChunkWorker( channel, start, end));
+      start= end;
+    }
+    chunks.add( new ChunkWorker( channel, start, size));
+    return chunks;
+  }
+
+  /**
+   * Sends the track points of the specified chunk that follow the actual
+   * track points at the beginning of the chunk.
+   *
+   * @param channel
+   *        the file to parse.
+   * @param chunk
+   *        the parsed chunk.
+   * @param state
+   *        the actual state of the parser at the beginning of the chunk.
+   * @return the actual state of the parser at the end of the chunk.
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  private NmeaParserState stitch( FileChannel channel, ChunkWorker chunk,
+    NmeaParserState state) throws IOException
+  {
+    // the parser that continues from the actual state...
+    final NmeaParser actual=
+      new NmeaParser( channel, chunk.start, chunk.end, source);
+    actual.setState( state);
+    actual.addTrackBlockListener( new BlockAppender());
+    // the parser that repeats what the chunk worker did...
+    final NmeaParser speculative=
+      new NmeaParser( channel, chunk.start, chunk.end, source);
+    final PointCounter repeated= new PointCounter();
+    speculative.addTrackBlockListener( repeated);
+
+    final MappedLineReader reader=
+      new MappedLineReader( channel, chunk.start, chunk.end);
+    while (reader.nextLine()) {
+      actual.parseLine( reader.getLine(), 0, reader.getLineLength());
+      speculative.parseLine( reader.getLine(), 0, reader.getLineLength());
+      final NmeaParserState actualState= actual.getState();
+      final NmeaParserState speculativeState= speculative.getState();
+      if (speculativeState.agrees( actualState, chunk.endState)) {
+        // from here on, the track points of the chunk are valid...
+        actual.sendBlock();
+        speculative.sendBlock();
+        final NmeaParserState endState= chunk.endState;
+        // but if the chunk contains no date, resolve the dates
+        append( chunk.points, repeated.count, endState.isDateUnknown()
+          ? actualState.date : 0);
+        endState.inheritUndetected( actualState);
+        return endState;
+      }
+    }
+    // the states never agreed, the whole chunk has been parsed again
+    actual.sendBlock();
+    return actual.getState();
+  }
+
+  /**
+   * Appends track points of a chunk to the block to send.
+   *
+   * @param points
+   *        the track points of the chunk.
+   * @param skip
+   *        the number of track points at the beginning to leave out.
+   * @param date
+   *        the date to add to the time stamps.
+   */
+  private void append( List<TrackBlock> points, int skip, long date)
+  {
+    for (TrackBlock b : points) {
+      final int size= b.size();
+      for (int i= Math.min( skip, size); i < size; i++) {
+        add( b.getDate( i) + date, b.getLatitudeE7( i), b.getLongitudeE7( i),
+          b.getSpeed( i), b.getBearing( i));
+      }
+      skip-= Math.min( skip, size);
+    }
+  }
+
+  /**
+   * Appends a track point to the block to send and sends the block if it is
+   * full.
+   */
+  private void add( long date, int latitude, int longitude, float speed,
+    float bearing)
+  {
+    block.add( date, latitude, longitude, speed, bearing);
+    if (block.isFull()) {
+      sendBlock();
+    }
+  }
+
+  /**
+   * Sends the block of track points to all block listeners, if it is not
+   * empty, and empties the block.
+   */
+  private void sendBlock()
+  {
+    if (block.size() == 0)
+      return;
+    // Guaranteed to return a non-null array
+    Object[] listeners= listenerList.getListenerList();
+    for (int i= listeners.length - 2; i >= 0; i-= 2) {
+      if (listeners[i] == ITrackBlockListener.class) {
+        ((ITrackBlockListener) listeners[i + 1]).trackPoints( block);
+      }
+    }
+    block.clear();
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * Parses a chunk of the file as if it was the beginning of a file.
+   *
+   * @author Martin Weber
+   */
+  private class ChunkWorker implements Callable<Object>, ITrackBlockListener
+  {
+    private final FileChannel channel;
+
+    /** the file position where the chunk starts */
+    final long start;
+
+    /** the file position where the chunk ends, exclusive */
+    final long end;
+
+    /** the track points sent while parsing the chunk */
+    List<TrackBlock> points= new ArrayList<TrackBlock>();
+
+    /** the state of the parser at the end of the chunk */
+    NmeaParserState endState;
+
+    public ChunkWorker( FileChannel channel, long start, long end)
+    {
+      this.channel= channel;
+      this.start= start;
+      this.end= end;
+    }
+
+    /**
+     * Parses the chunk.
+     *
+     * @return always {@code null}
+     * @throws IOException
+     *         If an I/O error occurs
+     */
+    public Object call() throws IOException
+    {
+      final NmeaParser parser= new NmeaParser( channel, start, end, source);
+      parser.addTrackBlockListener( this);
+      parser.parseRange();
+      parser.sendBlock();
+      endState= parser.getState();
+      return null;
+    }
+
+    /*-
+     * @see de.marw.fifteenknots.nmeareader.ITrackBlockListener#trackPoints(de.marw.fifteenknots.nmeareader.TrackBlock)
+     */
+    public void trackPoints( TrackBlock block)
+    {
+      points.add( block.copy());
+    }
+  }// ChunkWorker
+
+  /**
+   * Appends the track points it receives to the block to send.
+   *
+   * @author Martin Weber
+   */
+  private class BlockAppender implements ITrackBlockListener
+  {
+    /*-
+     * @see de.marw.fifteenknots.nmeareader.ITrackBlockListener#trackPoints(de.marw.fifteenknots.nmeareader.TrackBlock)
+     */
+    public void trackPoints( TrackBlock b)
+    {
+      final int size= b.size();
+      for (int i= 0; i < size; i++) {
+        add( b.getDate( i), b.getLatitudeE7( i), b.getLongitudeE7( i), b
+          .getSpeed( i), b.getBearing( i));
+      }
+    }
+  }// BlockAppender
+
+  /**
+   * Counts the track points it receives.
+   *
+   * @author Martin Weber
+   */
+  private static class PointCounter implements ITrackBlockListener
+  {
+    int count;
+
+    /*-
+     * @see de.marw.fifteenknots.nmeareader.ITrackBlockListener#trackPoints(de.marw.fifteenknots.nmeareader.TrackBlock)
+     */
+    public void trackPoints( TrackBlock block)
+    {
+      count+= block.size();
+    }
+  }// PointCounter
+}
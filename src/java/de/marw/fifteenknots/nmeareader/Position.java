@@ -0,0 +1,158 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+/**
+ * An immutable two dimensional position on earth, contains no altitude.
+ * <p>
+ * Instances are values: they can be shared between threads without
+ * synchronization and are compared by their coordinates.
+ * </p>
+ * <p>
+ * Track points store their coordinates as fixed-point numbers in units of 10
+ * <sup>-7</sup> degrees (about one centimeter), which is more than the
+ * resolution of the NMEA sentences. The static methods of this class convert
+ * between fixed-point numbers and degrees. A fixed-point number converted to
+ * degrees converts back to the same fixed-point number.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public final class Position
+{
+  /** fixed-point units per degree */
+  public static final int E7_PER_DEGREE= 10000000;
+
+  /**
+   * latitude in degrees, where positive values denote the northern hemisphere.
+   */
+  private final double latitude;
+
+  /**
+   * longitude in degrees, where positive values denote the eastern hemisphere.
+   */
+  private final double longitude;
+
+  /**
+   * @param latitude
+   *        latitude in degrees, where positive values denote the northern
+   *        hemisphere.
+   * @param longitude
+   *        longitude in degrees, where positive values denote the eastern
+   *        hemisphere.
+   */
+  public Position( double latitude, double longitude)
+  {
+    this.latitude= latitude;
+    this.longitude= longitude;
+  }
+
+  /**
+   * Creates a position from fixed-point coordinates.
+   *
+   * @param latitudeE7
+   *        latitude in 10<sup>-7</sup> degrees.
+   * @param longitudeE7
+   *        longitude in 10<sup>-7</sup> degrees.
+   */
+  public static Position fromE7( int latitudeE7, int longitudeE7)
+  {
+    return new Position( toDegrees( latitudeE7), toDegrees( longitudeE7));
+  }
+
+  /**
+   * Converts degrees to a fixed-point number in units of 10<sup>-7</sup>
+   * degrees, rounded to the nearest unit.
+   */
+  public static int toE7( double degrees)
+  {
+    return (int) Math.round( degrees * E7_PER_DEGREE);
+  }
+
+  /**
+   * Converts a fixed-point number in units of 10<sup>-7</sup> degrees to
+   * degrees.
+   */
+  public static double toDegrees( int e7)
+  {
+    return e7 / (double) E7_PER_DEGREE;
+  }
+
+  /**
+   * @return The latitude.
+   */
+  public double getLatitude()
+  {
+    return this.latitude;
+  }
+
+  /**
+   * @return The longitude.
+   */
+  public double getLongitude()
+  {
+    return this.longitude;
+  }
+
+  /**
+   * @return The latitude in 10<sup>-7</sup> degrees.
+   */
+  public int getLatitudeE7()
+  {
+    return toE7( this.latitude);
+  }
+
+  /**
+   * @return The longitude in 10<sup>-7</sup> degrees.
+   */
+  public int getLongitudeE7()
+  {
+    return toE7( this.longitude);
+  }
+
+  /**
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode()
+  {
+    final int prime= 31;
+    int result= 1;
+    long temp;
+    temp= Double.doubleToLongBits( this.latitude);
+    result= prime * result + (int) (temp ^ (temp >>> 32));
+    temp= Double.doubleToLongBits( this.longitude);
+    result= prime * result + (int) (temp ^ (temp >>> 32));
+    return result;
+  }
+
+  /**
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals( Object obj)
+  {
+    if (this == obj)
+      return true;
+    if ( !(obj instanceof Position))
+      return false;
+    Position other= (Position) obj;
+    return Double.doubleToLongBits( this.latitude) == Double
+      .doubleToLongBits( other.latitude)
+      && Double.doubleToLongBits( this.longitude) == Double
+        .doubleToLongBits( other.longitude);
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString()
+  {
+    return "" + latitude + "°, " + longitude + "°";
+  }
+
+}
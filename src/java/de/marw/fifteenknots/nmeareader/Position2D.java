@@ -9,7 +9,11 @@ package de.marw.fifteenknots.nmeareader;
  * A two dimensional position on earth, contains no altitude.
  *
  * @author Martin Weber
+ * @deprecated This class is mutable. Use the immutable {@link Position}
+ *             instead; {@link #Position2D(Position)} and {@link #toPosition()}
+ *             convert between both.
  */
+@Deprecated
 public class Position2D
 {
 
@@ -38,6 +42,22 @@ public class Position2D
     this.longitude= longitude;
   }
 
+  /**
+   * Creates a mutable copy of the specified position.
+   */
+  public Position2D( Position position)
+  {
+    this( position.getLongitude(), position.getLatitude());
+  }
+
+  /**
+   * Gets the current coordinates of this position as an immutable value.
+   */
+  public Position toPosition()
+  {
+    return new Position( latitude, longitude);
+  }
+
   /**
    * @return The latitude.
    */
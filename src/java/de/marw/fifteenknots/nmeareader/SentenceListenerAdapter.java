@@ -0,0 +1,90 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+/**
+ * Forwards the notifications of a {@link IPrimitiveSentenceListener} to a
+ * {@link INmeaSentenceListener}, creating a {@link Position} object for each
+ * position. Listeners that only implement the deprecated
+ * {@link INmeaSentenceListener#positionChanged(Object, Position2D)} receive a
+ * {@link Position2D} copy of it.
+ *
+ * @author Martin Weber
+ */
+public class SentenceListenerAdapter implements IPrimitiveSentenceListener
+{
+  private final INmeaSentenceListener listener;
+
+  /**
+   * @param listener
+   *        the listener to forward the notifications to.
+   * @throws NullPointerException
+   *         if listener is <code>null</code>.
+   */
+  public SentenceListenerAdapter( INmeaSentenceListener listener)
+  {
+    if (listener == null)
+      throw new NullPointerException( "listener");
+    this.listener= listener;
+  }
+
+  /**
+   * Gets the listener the notifications are forwarded to.
+   */
+  public INmeaSentenceListener getListener()
+  {
+    return this.listener;
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#dateChanged(java.lang.Object, long)
+   */
+  public void dateChanged( Object source, long date)
+  {
+    listener.dateChanged( source, date);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#timeChanged(java.lang.Object, long)
+   */
+  public void timeChanged( Object source, long timeOfDay)
+  {
+    listener.timeChanged( source, timeOfDay);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#fixChanged(java.lang.Object, java.lang.Boolean)
+   */
+  public void fixChanged( Object source, Boolean fix)
+  {
+    listener.fixChanged( source, fix);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#positionChanged(java.lang.Object, int, int)
+   */
+  public void positionChanged( Object source, int latitudeE7, int longitudeE7)
+  {
+    listener.positionChanged( source, Position.fromE7( latitudeE7,
+      longitudeE7));
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#speedChanged(java.lang.Object, float)
+   */
+  public void speedChanged( Object source, float speed)
+  {
+    listener.speedChanged( source, speed);
+  }
+
+  /*-
+   * @see de.marw.fifteenknots.nmeareader.IPrimitiveSentenceListener#bearingChanged(java.lang.Object, float)
+   */
+  public void bearingChanged( Object source, float bearing)
+  {
+    listener.bearingChanged( source, bearing);
+  }
+}
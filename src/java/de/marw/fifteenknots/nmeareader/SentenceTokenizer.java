@@ -0,0 +1,433 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+/**
+ * A reusable cursor over the fields of a NMEA sentence that is held in a byte
+ * buffer. Fields are separated by <code>','</code> and <code>'*'</code>, just
+ * like {@code sentence.split(",|\\*")} would do, but neither Strings nor arrays
+ * are created for the fields. Numbers are decoded in place.
+ * <p>
+ * Note that instances of this class are not thread-safe.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+final class SentenceTokenizer
+{
+  /** powers of ten that are exactly representable as a {@code float} */
+  private static final float[] FLOAT_POW10= { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f,
+    1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+  /** powers of ten that are exactly representable as a {@code double} */
+  private static final double[] DOUBLE_POW10= { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+    1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+    1e19, 1e20, 1e21, 1e22 };
+
+  /** powers of ten up to the maximum number of digits of a position */
+  private static final long[] LONG_POW10= { 1L, 10L, 100L, 1000L, 10000L,
+    100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L,
+    100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+    1000000000000000L, 10000000000000000L };
+
+  /** the maximum number of digits of a position decoded in place */
+  private static final int MAX_POSITION_DIGITS= 16;
+
+  /** the maximum magnitude of a position in 10^-7 degrees */
+  private static final int MAX_POSITION_E7= 1800000000;
+
+  /** mask for the mantissa returned by {@link #scanDecimal(int, int, long)} */
+  private static final long MANTISSA_MASK= (1L << 56) - 1;
+
+  private byte[] buf;
+
+  /**
+   * start offsets of the fields. The field at index <code>i</code> ends at
+   * <code>starts[i+1] - 1</code>.
+   */
+  private int[] starts= new int[32];
+
+  /** number of fields */
+  private int count;
+
+  /**
+   * Splits the specified sentence into fields. Any previous state of this
+   * object is discarded.
+   *
+   * @param buf
+   *        the buffer holding the sentence. The contents of the buffer must not
+   *        be modified as long as this object is used to read the fields.
+   * @param off
+   *        the offset of the first character of the sentence in the buffer.
+   * @param len
+   *        the number of characters in the sentence.
+   */
+  public void reset( byte[] buf, int off, int len)
+  {
+    this.buf= buf;
+    int n= 0;
+    starts[n++]= off;
+    final int end= off + len;
+    for (int i= off; i < end; i++) {
+      final byte b= buf[i];
+      if (b == ',' || b == '*') {
+        if (n == starts.length - 1) {
+          // grow
+          final int[] tmp= new int[starts.length * 2];
+          System.arraycopy( starts, 0, tmp, 0, n);
+          starts= tmp;
+        }
+        starts[n++]= i + 1;
+      }
+    }
+    // sentinel: the end of the last field
+    starts[n]= end + 1;
+    count= n;
+  }
+
+  /**
+   * Gets the number of fields in the current sentence.
+   */
+  public int getFieldCount()
+  {
+    return count;
+  }
+
+  /**
+   * Gets the number of characters of the specified field.
+   */
+  public int getLength( int field)
+  {
+    return starts[field + 1] - 1 - starts[field];
+  }
+
+  /**
+   * Gets the character at the specified position of a field.
+   */
+  public char charAt( int field, int index)
+  {
+    return (char) (buf[starts[field] + index] & 0xFF);
+  }
+
+  /**
+   * Gets the position of the first occurrence of the specified character in a
+   * field.
+   *
+   * @return the index of the character in the field or {@code -1}, if the
+   *         field does not contain the character.
+   */
+  public int indexOf( int field, char c)
+  {
+    final int start= starts[field];
+    final int end= starts[field + 1] - 1;
+    for (int i= start; i < end; i++) {
+      if (buf[i] == c)
+        return i - start;
+    }
+    return -1;
+  }
+
+  /**
+   * Gets whether the specified field consists of exactly the characters of
+   * the specified ASCII string.
+   */
+  public boolean equals( int field, String ascii)
+  {
+    final int len= ascii.length();
+    if (getLength( field) != len)
+      return false;
+    final int start= starts[field];
+    for (int i= 0; i < len; i++) {
+      if (buf[start + i] != ascii.charAt( i))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Decodes a part of a field as a decimal integer.
+   *
+   * @param field
+   *        the field index
+   * @param from
+   *        the beginning index (inclusive) in the field
+   * @param to
+   *        the ending index (exclusive) in the field
+   * @throws NumberFormatException
+   *         if the characters do not form a decimal integer.
+   */
+  public int parseInt( int field, int from, int to)
+  {
+    final int start= starts[field];
+    int i= start + from;
+    final int end= start + to;
+    boolean negative= false;
+    if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+      negative= buf[i] == '-';
+      i++;
+    }
+    if (i >= end || end - i > 9) {
+      // empty or possibly too large
+      return Integer.parseInt( toString( start + from, end));
+    }
+    int value= 0;
+    for (; i < end; i++) {
+      final int digit= buf[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException( toString( start + from, end));
+      }
+      value= value * 10 + digit;
+    }
+    return negative
+      ? -value : value;
+  }
+
+  /**
+   * Decodes a whole field as a floating point number, yielding the same result
+   * as {@link Float#valueOf(String)}.
+   *
+   * @throws NumberFormatException
+   *         if the field is not a parsable number.
+   */
+  public float parseFloat( int field)
+  {
+    return parseFloat( field, 0, getLength( field));
+  }
+
+  /**
+   * Decodes a part of a field as a floating point number, yielding the same
+   * result as {@link Float#valueOf(String)}.
+   *
+   * @param field
+   *        the field index
+   * @param from
+   *        the beginning index (inclusive) in the field
+   * @param to
+   *        the ending index (exclusive) in the field
+   * @throws NumberFormatException
+   *         if the characters are not a parsable number.
+   */
+  public float parseFloat( int field, int from, int to)
+  {
+    final int start= starts[field];
+    final long packed= scanDecimal( start + from, start + to, 1L << 24);
+    if (packed >= 0) {
+      final int scale= (int) (packed >>> 56);
+      if (scale < FLOAT_POW10.length) {
+        // mantissa and power of ten are exact, so is the division
+        float value= (packed & MANTISSA_MASK) / FLOAT_POW10[scale];
+        return buf[start + from] == '-'
+          ? -value : value;
+      }
+    }
+    return Float.parseFloat( toString( start + from, start + to));
+  }
+
+  /**
+   * Decodes a part of a field as a floating point number, yielding the same
+   * result as {@link Double#valueOf(String)}.
+   *
+   * @param field
+   *        the field index
+   * @param from
+   *        the beginning index (inclusive) in the field
+   * @param to
+   *        the ending index (exclusive) in the field
+   * @throws NumberFormatException
+   *         if the characters are not a parsable number.
+   */
+  public double parseDouble( int field, int from, int to)
+  {
+    final int start= starts[field];
+    final long packed= scanDecimal( start + from, start + to, 1L << 53);
+    if (packed >= 0) {
+      final int scale= (int) (packed >>> 56);
+      if (scale < DOUBLE_POW10.length) {
+        // mantissa and power of ten are exact, so is the division
+        double value= (packed & MANTISSA_MASK) / DOUBLE_POW10[scale];
+        return buf[start + from] == '-'
+          ? -value : value;
+      }
+    }
+    return Double.parseDouble( toString( start + from, start + to));
+  }
+
+  /**
+   * Decodes a field holding a position in NMEA format, that is degrees and
+   * minutes as <code>ddmm.mmmm</code> or <code>dddmm.mmmm</code>. The digits
+   * are scanned once into a single mantissa that is then split into degrees
+   * and minutes. The result is the same as decoding the degrees with
+   * {@link Integer#valueOf(String)} and the minutes with
+   * {@link Double#valueOf(String)}, which is done for fields in any other
+   * format.
+   *
+   * @param field
+   *        the field index
+   * @return the position in degrees
+   * @throws NumberFormatException
+   *         if the field does not hold a parsable number.
+   */
+  public double parsePosition( int field)
+  {
+    final long packed= scanPosition( field);
+    if (packed >= 0) {
+      final int scale= (int) (packed >>> 56);
+      final long mantissa= packed & MANTISSA_MASK;
+      final long minutesPerDegree= LONG_POW10[scale + 2];
+      final long minutes= mantissa % minutesPerDegree;
+      if (minutes < 1L << 53) {
+        // mantissa and power of ten are exact, so is the division
+        final int degrees= (int) (mantissa / minutesPerDegree);
+        return degrees + minutes / DOUBLE_POW10[scale] / 60.0;
+      }
+    }
+    // handle missing trailing zeroes...
+    int degrees= 0;
+    double minutes;
+    final int len= getLength( field);
+    final int dotIdx= indexOf( field, '.') - 2;
+    if (dotIdx >= 1) {
+      degrees= parseInt( field, 0, dotIdx);
+      minutes= parseDouble( field, dotIdx, len);
+    }
+    else {
+      minutes= parseDouble( field, 0, len);
+    }
+    return degrees + minutes / 60.0;
+  }
+
+  /**
+   * Decodes a field holding a position in NMEA format like
+   * {@link #parsePosition(int)}, but yields the position in units of 10
+   * <sup>-7</sup> degrees, rounded half up. Positions in
+   * <code>ddmm.mmmm</code> or <code>dddmm.mmmm</code> format are converted
+   * with integer arithmetic only.
+   *
+   * @param field
+   *        the field index
+   * @return the position in 10<sup>-7</sup> degrees
+   * @throws NumberFormatException
+   *         if the field does not hold a parsable number or the position
+   *         exceeds 180 degrees.
+   */
+  public int parsePositionE7( int field)
+  {
+    final long packed= scanPosition( field);
+    if (packed >= 0) {
+      final int scale= (int) (packed >>> 56);
+      if (scale <= 9) {
+        final long mantissa= packed & MANTISSA_MASK;
+        final long minutesPerDegree= LONG_POW10[scale + 2];
+        final long degrees= mantissa / minutesPerDegree;
+        if (degrees <= 180) {
+          // minutes * 10^7 / (60 * 10^scale), fits into a long
+          final long minutes= (mantissa % minutesPerDegree) * 10000000L;
+          final long divisor= 60 * LONG_POW10[scale];
+          final long value= degrees * 10000000L + (minutes + divisor / 2)
+            / divisor;
+          if (value > MAX_POSITION_E7) {
+            throw new NumberFormatException( toString( starts[field],
+              starts[field + 1] - 1));
+          }
+          return (int) value;
+        }
+      }
+    }
+    final double value= parsePosition( field) * 1e7;
+    if ( !(Math.abs( value) <= MAX_POSITION_E7)) {
+      // out of range, infinite or NaN, would wrap around when cast
+      throw new NumberFormatException( toString( starts[field],
+        starts[field + 1] - 1));
+    }
+    return (int) Math.round( value);
+  }
+
+  /**
+   * Scans a position of the form <code>dddmm.mmmm</code> with one to three
+   * digits for the degrees.
+   *
+   * @return the number of fraction digits in the upper 8 bits and all digits as
+   *         mantissa in the lower 56 bits or {@code -1}, if the position is not
+   *         of that form.
+   */
+  private long scanPosition( int field)
+  {
+    final int from= starts[field];
+    final int to= starts[field + 1] - 1;
+    long mantissa= 0;
+    int digits= 0;
+    int dot= -1;
+    for (int i= from; i < to; i++) {
+      final byte b= buf[i];
+      if (b == '.' && dot == -1) {
+        dot= digits;
+        continue;
+      }
+      final int digit= b - '0';
+      if (digit < 0 || digit > 9 || ++digits > MAX_POSITION_DIGITS) {
+        return -1;
+      }
+      mantissa= mantissa * 10 + digit;
+    }
+    if (dot < 3 || dot > 5) {
+      // no degrees or too many digits for degrees
+      return -1;
+    }
+    return ((long) (digits - dot) << 56) | mantissa;
+  }
+
+  /**
+   * Scans a plain decimal number of the form <code>[+-]ddd[.ddd]</code>.
+   *
+   * @param maxMantissa
+   *        the exclusive upper limit of the mantissa
+   * @return the number of fraction digits in the upper 8 bits and the
+   *         mantissa in the lower 56 bits or {@code -1}, if the number is not
+   *         a plain decimal number or its mantissa exceeds the limit.
+   */
+  private long scanDecimal( int from, final int to, long maxMantissa)
+  {
+    int i= from;
+    if (i < to && (buf[i] == '-' || buf[i] == '+')) {
+      i++;
+    }
+    long mantissa= 0;
+    int digits= 0;
+    int scale= 0;
+    boolean dot= false;
+    for (; i < to; i++) {
+      final byte b= buf[i];
+      if (b == '.' && !dot) {
+        dot= true;
+        continue;
+      }
+      final int digit= b - '0';
+      if (digit < 0 || digit > 9 || ++digits > 18) {
+        return -1;
+      }
+      mantissa= mantissa * 10 + digit;
+      if (dot)
+        scale++;
+    }
+    if (digits == 0 || mantissa >= maxMantissa) {
+      return -1;
+    }
+    return ((long) scale << 56) | mantissa;
+  }
+
+  /**
+   * Creates a String from the buffer, used in the rare cases where decoding
+   * is delegated to the JRE.
+   */
+  private String toString( int from, int to)
+  {
+    final char[] chars= new char[to - from];
+    for (int i= 0; i < chars.length; i++) {
+      chars[i]= (char) (buf[from + i] & 0xFF);
+    }
+    return new String( chars);
+  }
+}
@@ -9,7 +9,9 @@ package de.marw.fifteenknots.nmeareader;
  * A position on earth with the time when that position was reached.
  * 
  * @author weber
+ * @deprecated Use {@link Fix}, which is immutable.
  */
+@Deprecated
 public class TimedPosition extends Position2D
 {
   /**
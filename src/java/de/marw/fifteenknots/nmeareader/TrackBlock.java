@@ -0,0 +1,216 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+/**
+ * A block of consecutive track points, stored column by column in arrays of
+ * primitive values. Used to send track points to a
+ * {@link ITrackBlockListener} in batches.
+ * <p>
+ * Speed and bearing are {@code Float.NaN} if the track point has no value for
+ * them.
+ * </p>
+ *
+ * @author Martin Weber
+ * @see Fix
+ */
+public class TrackBlock
+{
+  private final Object source;
+
+  private final long[] dates;
+
+  /** latitudes in 10^-7 degrees */
+  private final int[] latitudes;
+
+  /** longitudes in 10^-7 degrees */
+  private final int[] longitudes;
+
+  private final float[] speeds;
+
+  private final float[] bearings;
+
+  /** number of track points in the block */
+  private int size;
+
+  /**
+   * @param source
+   *        The object on which the track points initially occurred.
+   * @param capacity
+   *        the maximum number of track points the block can hold.
+   * @throws IllegalArgumentException
+   *         if capacity is less than one.
+   */
+  public TrackBlock( Object source, int capacity)
+  {
+    if (capacity < 1)
+      throw new IllegalArgumentException( "capacity");
+    this.source= source;
+    dates= new long[capacity];
+    latitudes= new int[capacity];
+    longitudes= new int[capacity];
+    speeds= new float[capacity];
+    bearings= new float[capacity];
+  }
+
+  /**
+   * Gets the object on which the track points initially occurred.
+   */
+  public Object getSource()
+  {
+    return this.source;
+  }
+
+  /**
+   * Gets the number of track points in this block.
+   */
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * Gets whether this block cannot take any more track points.
+   */
+  public boolean isFull()
+  {
+    return size == dates.length;
+  }
+
+  /**
+   * Gets the date of the specified track point in milliseconds since the
+   * epoch.
+   */
+  public long getDate( int index)
+  {
+    rangeCheck( index);
+    return dates[index];
+  }
+
+  /**
+   * Gets the latitude of the specified track point in degrees.
+   */
+  public double getLatitude( int index)
+  {
+    return Position.toDegrees( getLatitudeE7( index));
+  }
+
+  /**
+   * Gets the longitude of the specified track point in degrees.
+   */
+  public double getLongitude( int index)
+  {
+    return Position.toDegrees( getLongitudeE7( index));
+  }
+
+  /**
+   * Gets the latitude of the specified track point in 10<sup>-7</sup>
+   * degrees.
+   */
+  public int getLatitudeE7( int index)
+  {
+    rangeCheck( index);
+    return latitudes[index];
+  }
+
+  /**
+   * Gets the longitude of the specified track point in 10<sup>-7</sup>
+   * degrees.
+   */
+  public int getLongitudeE7( int index)
+  {
+    rangeCheck( index);
+    return longitudes[index];
+  }
+
+  /**
+   * Gets the speed of the specified track point in knots.
+   *
+   * @return the speed or {@code Float.NaN}.
+   */
+  public float getSpeed( int index)
+  {
+    rangeCheck( index);
+    return speeds[index];
+  }
+
+  /**
+   * Gets the bearing of the specified track point in degrees.
+   *
+   * @return the bearing or {@code Float.NaN}.
+   */
+  public float getBearing( int index)
+  {
+    rangeCheck( index);
+    return bearings[index];
+  }
+
+  /**
+   * Creates a {@code Fix} from the specified track point.
+   */
+  public Fix createFix( int index)
+  {
+    rangeCheck( index);
+    return new Fix( dates[index], Position.fromE7( latitudes[index],
+      longitudes[index]), speeds[index], bearings[index]);
+  }
+
+  /**
+   * Appends a track point.
+   *
+   * @param latitude
+   *        latitude in 10<sup>-7</sup> degrees.
+   * @param longitude
+   *        longitude in 10<sup>-7</sup> degrees.
+   * @throws IndexOutOfBoundsException
+   *         if the block is full.
+   */
+  void add( long date, int latitude, int longitude, float speed,
+    float bearing)
+  {
+    final int i= size;
+    dates[i]= date;
+    latitudes[i]= latitude;
+    longitudes[i]= longitude;
+    speeds[i]= speed;
+    bearings[i]= bearing;
+    size= i + 1;
+  }
+
+  /**
+   * Creates a block that holds a copy of the track points of this block and
+   * has no room for more.
+   *
+   * @throws IllegalArgumentException
+   *         if this block is empty.
+   */
+  TrackBlock copy()
+  {
+    final TrackBlock copy= new TrackBlock( source, size);
+    System.arraycopy( dates, 0, copy.dates, 0, size);
+    System.arraycopy( latitudes, 0, copy.latitudes, 0, size);
+    System.arraycopy( longitudes, 0, copy.longitudes, 0, size);
+    System.arraycopy( speeds, 0, copy.speeds, 0, size);
+    System.arraycopy( bearings, 0, copy.bearings, 0, size);
+    copy.size= size;
+    return copy;
+  }
+
+  /**
+   * Removes all track points.
+   */
+  void clear()
+  {
+    size= 0;
+  }
+
+  private void rangeCheck( int index)
+  {
+    if (index >= size)
+      throw new IndexOutOfBoundsException( "Index: " + index + ", Size: "
+        + size);
+  }
+}
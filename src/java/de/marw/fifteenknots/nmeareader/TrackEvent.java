@@ -13,9 +13,18 @@ import java.util.Formatter;
  * <code>TrackEvent</code> is used to notify interested parties that the
  * position has changed in the event source. At the minimum, instances will
  * contain the position on earth and the time when that position was reached.
+ * <p>
+ * Speed and bearing are held as primitive values, where {@code Float.NaN}
+ * denotes the absence of a value.
+ * </p>
  *
  * @author Martin Weber
+ * @deprecated This class is mutable and synchronizes each access. Use the
+ *             immutable {@link Fix} to pass track points around;
+ *             {@link #TrackEvent(Object, Fix)} and {@link #toFix()} convert
+ *             between both.
  */
+@Deprecated
 public class TrackEvent extends EventObject
 {
   private static final long serialVersionUID= -395784838463065170L;
@@ -24,9 +33,11 @@ public class TrackEvent extends EventObject
 
   private Position2D position;
 
-  private Float speed;
+  /** the speed in knots or NaN */
+  private float speed;
 
-  private Float bearing;
+  /** the bearing in degrees or NaN */
+  private float bearing;
 
   /**
    * @param source
@@ -48,10 +59,54 @@ public class TrackEvent extends EventObject
       throw new IllegalArgumentException( "position");
     setDate( date);
     this.position= position;
+    setSpeed( speed);
+    setBearing( bearing);
+  }
+
+  /**
+   * @param source
+   *        The object on which the Event initially occurred.
+   * @param date
+   *        number of milliseconds since the standard base time known as
+   *        "the epoch", namely January 1, 1970, 00:00:00 GMT.
+   * @param latitude
+   *        latitude in degrees, where positive values denote the northern
+   *        hemisphere.
+   * @param longitude
+   *        longitude in degrees, where positive values denote the eastern
+   *        hemisphere.
+   * @param speed
+   *        the speed in knots or {@code Float.NaN}, if unknown.
+   * @param bearing
+   *        the bearing in degrees or {@code Float.NaN}, if unknown.
+   * @throws IllegalArgumentException
+   *         if source is null.
+   */
+  public TrackEvent( Object source, long date, double latitude,
+    double longitude, float speed, float bearing)
+  {
+    super( source);
+    setDate( date);
+    this.position= new Position2D( longitude, latitude);
     this.speed= speed;
     this.bearing= bearing;
   }
 
+  /**
+   * @param source
+   *        The object on which the Event initially occurred.
+   * @param fix
+   *        the track point to notify of.
+   * @throws IllegalArgumentException
+   *         if source is null.
+   */
+  public TrackEvent( Object source, Fix fix)
+  {
+    this( source, fix.getDate(), fix.getPosition().getLatitude(), fix
+      .getPosition().getLongitude(), fix.getSpeedValue(), fix
+      .getBearingValue());
+  }
+
   /**
    * @return The date.
    */
@@ -84,6 +139,17 @@ public class TrackEvent extends EventObject
    * @return The speed or <code>null</code>.
    */
   public synchronized Float getSpeed()
+  {
+    return Float.isNaN( this.speed)
+      ? null : Float.valueOf( this.speed);
+  }
+
+  /**
+   * Gets the speed without creating an object.
+   *
+   * @return The speed or {@code Float.NaN}.
+   */
+  public synchronized float getSpeedValue()
   {
     return this.speed;
   }
@@ -94,13 +160,25 @@ public class TrackEvent extends EventObject
    */
   public synchronized void setSpeed( Float speed)
   {
-    this.speed= speed;
+    this.speed= speed == null
+      ? Float.NaN : speed.floatValue();
   }
 
   /**
    * @return The bearing or <code>null</code>.
    */
   public synchronized Float getBearing()
+  {
+    return Float.isNaN( this.bearing)
+      ? null : Float.valueOf( this.bearing);
+  }
+
+  /**
+   * Gets the bearing without creating an object.
+   *
+   * @return The bearing or {@code Float.NaN}.
+   */
+  public synchronized float getBearingValue()
   {
     return this.bearing;
   }
@@ -111,7 +189,17 @@ public class TrackEvent extends EventObject
    */
   public synchronized void setBearing( Float bearing)
   {
-    this.bearing= bearing;
+    this.bearing= bearing == null
+      ? Float.NaN : bearing.floatValue();
+  }
+
+  /**
+   * Gets the current values of this event as an immutable track point.
+   */
+  public synchronized Fix toFix()
+  {
+    return new Fix( date, position.getLatitude(), position.getLongitude(),
+      speed, bearing);
   }
 
   /**
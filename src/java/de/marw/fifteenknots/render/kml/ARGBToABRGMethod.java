@@ -27,8 +27,16 @@ public class ARGBToABRGMethod implements TemplateMethodModelEx {
     if (!(arg instanceof SimpleNumber)) {
       throw new TemplateModelException("Parameter to must be a integer.");
     }
-    final int value = ((SimpleNumber) arg).getAsNumber().intValue();
+    return format(((SimpleNumber) arg).getAsNumber().intValue());
+  }
 
+  /**
+   * Converts the specified color value.
+   *
+   * @param value
+   *        the ARGB value
+   */
+  public static String format(int value) {
     int abgr = (((value >> 24) & 0xFF) << 24) | (((value >> 16) & 0xFF) << 0)
 	| (((value >> 8) & 0xFF) << 8) | ((value & 0xFF) << 16);
     return Integer.toHexString(abgr);
@@ -0,0 +1,64 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.render.kml;
+
+import java.util.List;
+
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNumberModel;
+
+/**
+ * Formats a coordinate in 10<sup>-7</sup> degrees as a decimal number of
+ * degrees for use by Freemarker. The digits are taken from the fixed-point
+ * number directly, no floating-point conversion is involved. Trailing zeros of
+ * the fraction are omitted.
+ *
+ * @author Martin Weber
+ */
+public class E7ToDecimalMethod implements TemplateMethodModelEx {
+
+  /*-
+   * @see freemarker.template.TemplateMethodModel#exec(java.util.List)
+   */
+  public String exec(@SuppressWarnings("rawtypes") List arguments)
+      throws TemplateModelException {
+    final Object arg = arguments.get(0);
+    if (!(arg instanceof TemplateNumberModel)) {
+      throw new TemplateModelException("Parameter must be an integer.");
+    }
+    return format(((TemplateNumberModel) arg).getAsNumber().intValue());
+  }
+
+  /**
+   * Formats the specified fixed-point number.
+   *
+   * @param e7
+   *        the coordinate in 10<sup>-7</sup> degrees
+   */
+  public static String format(int e7) {
+    final StringBuilder sb = new StringBuilder(12);
+    long value = e7;
+    if (value < 0) {
+      sb.append('-');
+      value = -value;
+    }
+    sb.append(value / 10000000);
+    int fraction = (int) (value % 10000000);
+    if (fraction != 0) {
+      int digits = 7;
+      while (fraction % 10 == 0) {
+	fraction /= 10;
+	digits--;
+      }
+      sb.append('.');
+      final String s = Integer.toString(fraction);
+      for (int i = s.length(); i < digits; i++) {
+	sb.append('0');
+      }
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+}
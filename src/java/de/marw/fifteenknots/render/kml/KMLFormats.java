@@ -0,0 +1,63 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.render.kml;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * The text formats shared by the KML writers that do without the template
+ * engine.
+ *
+ * @author Martin Weber
+ */
+final class KMLFormats {
+
+  private KMLFormats() {
+  }
+
+  /**
+   * Creates the format of the limits of the speed ranges in the legend, like
+   * <code>?string("0.##")</code> in a template.
+   */
+  static DecimalFormat createLegendFormat(Locale locale) {
+    return new DecimalFormat("0.##", new DecimalFormatSymbols(locale));
+  }
+
+  /**
+   * Creates the format of the outline, like <code>?c</code> in a template,
+   * that is without grouping and with a point as the decimal separator.
+   */
+  static DecimalFormat createComputerFormat() {
+    final DecimalFormat format = new DecimalFormat("0.################",
+	new DecimalFormatSymbols(Locale.US));
+    format.setGroupingUsed(false);
+    return format;
+  }
+
+  /**
+   * Escapes the characters that are special in XML.
+   */
+  static String escape(String s) {
+    final StringBuilder sb = new StringBuilder(s.length() + 16);
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      switch (c) {
+      case '&':
+	sb.append("&amp;");
+	break;
+      case '<':
+	sb.append("&lt;");
+	break;
+      case '>':
+	sb.append("&gt;");
+	break;
+      default:
+	sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+}
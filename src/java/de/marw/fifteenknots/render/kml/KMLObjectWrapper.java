@@ -0,0 +1,483 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.render.kml;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import de.marw.fifteenknots.model.Cruise;
+import de.marw.fifteenknots.model.FixList;
+import de.marw.fifteenknots.model.PolyLine;
+import de.marw.fifteenknots.model.SpeedCruise;
+import de.marw.fifteenknots.model.Track;
+import de.marw.fifteenknots.nmeareader.Fix;
+import de.marw.fifteenknots.nmeareader.Position;
+import freemarker.template.AdapterTemplateModel;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.SimpleNumber;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * An object wrapper for templates that navigate the track points of large
+ * races. The default wrapper introspects each track point and copies each
+ * list before a template may iterate it. This wrapper exposes cruises, track
+ * points, positions and polylines through template models of their own,
+ * which look up properties through a precomputed table.
+ * <p>
+ * Lists are not copied but read element by element while the template
+ * iterates them. Track points of a {@link FixList} are read from the
+ * underlying track directly, without creating a {@link Fix} object.
+ * Properties not covered by these models, as well as all other objects, are
+ * handled like the {@link DefaultObjectWrapper} does, so templates written for
+ * the default wrapper work unchanged.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class KMLObjectWrapper extends DefaultObjectWrapper {
+
+  /** the number of small integers with a cached model */
+  private static final int CACHED_NUMBERS = 1024;
+
+  private static final SimpleNumber[] NUMBERS =
+      new SimpleNumber[CACHED_NUMBERS];
+
+  static {
+    for (int i = 0; i < CACHED_NUMBERS; i++) {
+      NUMBERS[i] = new SimpleNumber(i);
+    }
+  }
+
+  private static final int DATE = 0;
+
+  private static final int POSITION = 1;
+
+  private static final int SPEED = 2;
+
+  private static final int BEARING = 3;
+
+  private static final int LATITUDE = 4;
+
+  private static final int LONGITUDE = 5;
+
+  private static final int LATITUDE_E7 = 6;
+
+  private static final int LONGITUDE_E7 = 7;
+
+  private static final int COLOR_INDEX = 8;
+
+  private static final int SEGMENTS = 9;
+
+  private static final int FIXES = 10;
+
+  private static final int MARKED_FIXES = 11;
+
+  private static final int POLY_LINES = 12;
+
+  /** the properties of a track point */
+  private static final Map<String, Integer> FIX_KEYS =
+      new HashMap<String, Integer>();
+
+  /** the properties of a position */
+  private static final Map<String, Integer> POSITION_KEYS =
+      new HashMap<String, Integer>();
+
+  /** the properties of a polyline */
+  private static final Map<String, Integer> POLY_LINE_KEYS =
+      new HashMap<String, Integer>();
+
+  /** the properties of a cruise */
+  private static final Map<String, Integer> CRUISE_KEYS =
+      new HashMap<String, Integer>();
+
+  static {
+    FIX_KEYS.put("date", DATE);
+    FIX_KEYS.put("position", POSITION);
+    FIX_KEYS.put("speed", SPEED);
+    FIX_KEYS.put("bearing", BEARING);
+    POSITION_KEYS.put("latitude", LATITUDE);
+    POSITION_KEYS.put("longitude", LONGITUDE);
+    POSITION_KEYS.put("latitudeE7", LATITUDE_E7);
+    POSITION_KEYS.put("longitudeE7", LONGITUDE_E7);
+    POLY_LINE_KEYS.put("colorIndex", COLOR_INDEX);
+    POLY_LINE_KEYS.put("segments", SEGMENTS);
+    CRUISE_KEYS.put("fixes", FIXES);
+    CRUISE_KEYS.put("markedFixes", MARKED_FIXES);
+    CRUISE_KEYS.put("polyLines", POLY_LINES);
+  }
+
+  /*-
+   * @see freemarker.template.DefaultObjectWrapper#wrap(java.lang.Object)
+   */
+  @Override
+  public TemplateModel wrap(Object obj) throws TemplateModelException {
+    if (obj instanceof Fix) {
+      return new FixModel((Fix) obj);
+    } else if (obj instanceof Position) {
+      final Position position = (Position) obj;
+      return new PositionModel(position.getLatitudeE7(), position
+	  .getLongitudeE7(), position);
+    } else if (obj instanceof PolyLine) {
+      return new PolyLineModel((PolyLine) obj);
+    } else if (obj instanceof Cruise) {
+      return new CruiseModel((Cruise) obj);
+    } else if (obj instanceof FixList) {
+      return new FixListModel((FixList) obj);
+    } else if (obj instanceof List<?> && obj instanceof RandomAccess) {
+      return new ListModel((List<?>) obj);
+    }
+    return super.wrap(obj);
+  }
+
+  /**
+   * Gets a model of the specified integer.
+   */
+  private static SimpleNumber number(int value) {
+    return value >= 0 && value < CACHED_NUMBERS ? NUMBERS[value]
+	: new SimpleNumber(value);
+  }
+
+  /**
+   * Gets a property of an object the way the default wrapper does.
+   */
+  private TemplateModel getProperty(Object obj, String key)
+      throws TemplateModelException {
+    return ((TemplateHashModel) super.wrap(obj)).get(key);
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * A track point, read from a track or a {@link Fix} object.
+   */
+  private class FixModel implements TemplateHashModel, TemplateScalarModel,
+      AdapterTemplateModel {
+
+    private final long date;
+
+    private final int latitudeE7;
+
+    private final int longitudeE7;
+
+    private final float speed;
+
+    private final float bearing;
+
+    /** the wrapped object or {@code null}, if not yet needed */
+    private Fix fix;
+
+    FixModel(Fix fix) {
+      this.fix = fix;
+      date = fix.getDate();
+      latitudeE7 = fix.getPosition().getLatitudeE7();
+      longitudeE7 = fix.getPosition().getLongitudeE7();
+      speed = fix.getSpeedValue();
+      bearing = fix.getBearingValue();
+    }
+
+    FixModel(Track track, int index) {
+      date = track.getDate(index);
+      latitudeE7 = track.getLatitudeE7(index);
+      longitudeE7 = track.getLongitudeE7(index);
+      speed = track.getSpeed(index);
+      bearing = track.getBearing(index);
+    }
+
+    /*-
+     * @see freemarker.template.TemplateHashModel#get(java.lang.String)
+     */
+    public TemplateModel get(String key) throws TemplateModelException {
+      final Integer property = FIX_KEYS.get(key);
+      if (property == null) {
+	return getProperty(getAdaptedObject(null), key);
+      }
+      switch (property.intValue()) {
+      case DATE:
+	return new SimpleNumber(date);
+      case POSITION:
+	return new PositionModel(latitudeE7, longitudeE7, null);
+      case SPEED:
+	return Float.isNaN(speed) ? null : new SimpleNumber(speed);
+      default:
+	return Float.isNaN(bearing) ? null : new SimpleNumber(bearing);
+      }
+    }
+
+    /*-
+     * @see freemarker.template.TemplateHashModel#isEmpty()
+     */
+    public boolean isEmpty() {
+      return false;
+    }
+
+    /*-
+     * @see freemarker.template.TemplateScalarModel#getAsString()
+     */
+    public String getAsString() {
+      return getAdaptedObject(null).toString();
+    }
+
+    /*-
+     * @see freemarker.template.AdapterTemplateModel#getAdaptedObject(java.lang.Class)
+     */
+    public Object getAdaptedObject(@SuppressWarnings("rawtypes") Class hint) {
+      if (fix == null) {
+	fix = new Fix(date, Position.fromE7(latitudeE7, longitudeE7), speed,
+	    bearing);
+      }
+      return fix;
+    }
+  } // FixModel
+
+  /**
+   * A position of a track point.
+   */
+  private class PositionModel implements TemplateHashModel,
+      TemplateScalarModel, AdapterTemplateModel {
+
+    private final int latitudeE7;
+
+    private final int longitudeE7;
+
+    /** the wrapped object or {@code null}, if not yet needed */
+    private Position position;
+
+    PositionModel(int latitudeE7, int longitudeE7, Position position) {
+      this.latitudeE7 = latitudeE7;
+      this.longitudeE7 = longitudeE7;
+      this.position = position;
+    }
+
+    /*-
+     * @see freemarker.template.TemplateHashModel#get(java.lang.String)
+     */
+    public TemplateModel get(String key) throws TemplateModelException {
+      final Integer property = POSITION_KEYS.get(key);
+      if (property == null) {
+	return getProperty(getAdaptedObject(null), key);
+      }
+      switch (property.intValue()) {
+      case LATITUDE:
+	return new SimpleNumber(((Position) getAdaptedObject(null))
+	    .getLatitude());
+      case LONGITUDE:
+	return new SimpleNumber(((Position) getAdaptedObject(null))
+	    .getLongitude());
+      case LATITUDE_E7:
+	return new SimpleNumber(latitudeE7);
+      default:
+	return new SimpleNumber(longitudeE7);
+      }
+    }
+
+    /*-
+     * @see freemarker.template.TemplateHashModel#isEmpty()
+     */
+    public boolean isEmpty() {
+      return false;
+    }
+
+    /*-
+     * @see freemarker.template.TemplateScalarModel#getAsString()
+     */
+    public String getAsString() {
+      return getAdaptedObject(null).toString();
+    }
+
+    /*-
+     * @see freemarker.template.AdapterTemplateModel#getAdaptedObject(java.lang.Class)
+     */
+    public Object getAdaptedObject(@SuppressWarnings("rawtypes") Class hint) {
+      if (position == null) {
+	position = Position.fromE7(latitudeE7, longitudeE7);
+      }
+      return position;
+    }
+  } // PositionModel
+
+  /**
+   * A polyline of a cruise.
+   */
+  private class PolyLineModel implements TemplateHashModel,
+      TemplateScalarModel, AdapterTemplateModel {
+
+    private final PolyLine line;
+
+    PolyLineModel(PolyLine line) {
+      this.line = line;
+    }
+
+    /*-
+     * @see freemarker.template.TemplateHashModel#get(java.lang.String)
+     */
+    public TemplateModel get(String key) throws TemplateModelException {
+      final Integer property = POLY_LINE_KEYS.get(key);
+      if (property == null) {
+	return getProperty(line, key);
+      }
+      if (property.intValue() == COLOR_INDEX) {
+	return number(line.getColorIndex());
+      }
+      return wrap(line.getSegments());
+    }
+
+    /*-
+     * @see freemarker.template.TemplateHashModel#isEmpty()
+     */
+    public boolean isEmpty() {
+      return false;
+    }
+
+    /*-
+     * @see freemarker.template.TemplateScalarModel#getAsString()
+     */
+    public String getAsString() {
+      return getAdaptedObject(null).toString();
+    }
+
+    /*-
+     * @see freemarker.template.AdapterTemplateModel#getAdaptedObject(java.lang.Class)
+     */
+    public Object getAdaptedObject(@SuppressWarnings("rawtypes") Class hint) {
+      return line;
+    }
+  } // PolyLineModel
+
+  /**
+   * A cruise. Only the lists of track points and polylines are exposed by
+   * this model itself.
+   */
+  private class CruiseModel implements TemplateHashModel, TemplateScalarModel,
+      AdapterTemplateModel {
+
+    private final Cruise cruise;
+
+    CruiseModel(Cruise cruise) {
+      this.cruise = cruise;
+    }
+
+    /*-
+     * @see freemarker.template.TemplateHashModel#get(java.lang.String)
+     */
+    public TemplateModel get(String key) throws TemplateModelException {
+      final Integer property = CRUISE_KEYS.get(key);
+      if (property == null || property.intValue() != FIXES
+	  && !(cruise instanceof SpeedCruise)) {
+	return getProperty(cruise, key);
+      }
+      switch (property.intValue()) {
+      case FIXES:
+	return wrap(cruise.getFixes());
+      case MARKED_FIXES:
+	return wrap(((SpeedCruise) cruise).getMarkedFixes());
+      default:
+	return wrap(((SpeedCruise) cruise).getPolyLines());
+      }
+    }
+
+    /*-
+     * @see freemarker.template.TemplateHashModel#isEmpty()
+     */
+    public boolean isEmpty() {
+      return false;
+    }
+
+    /*-
+     * @see freemarker.template.TemplateScalarModel#getAsString()
+     */
+    public String getAsString() {
+      return getAdaptedObject(null).toString();
+    }
+
+    /*-
+     * @see freemarker.template.AdapterTemplateModel#getAdaptedObject(java.lang.Class)
+     */
+    public Object getAdaptedObject(@SuppressWarnings("rawtypes") Class hint) {
+      return cruise;
+    }
+  } // CruiseModel
+
+  /**
+   * The track points of a {@link FixList}, read from the track when the
+   * template accesses them.
+   */
+  private class FixListModel implements TemplateSequenceModel,
+      AdapterTemplateModel {
+
+    private final FixList list;
+
+    FixListModel(FixList list) {
+      this.list = list;
+    }
+
+    /*-
+     * @see freemarker.template.TemplateSequenceModel#get(int)
+     */
+    public TemplateModel get(int index) {
+      if (index < 0 || index >= list.size()) {
+	return null;
+      }
+      return new FixModel(list.getTrack(), list.getTrackIndex(index));
+    }
+
+    /*-
+     * @see freemarker.template.TemplateSequenceModel#size()
+     */
+    public int size() {
+      return list.size();
+    }
+
+    /*-
+     * @see freemarker.template.AdapterTemplateModel#getAdaptedObject(java.lang.Class)
+     */
+    public Object getAdaptedObject(@SuppressWarnings("rawtypes") Class hint) {
+      return list;
+    }
+  } // FixListModel
+
+  /**
+   * A list with fast random access, whose elements are wrapped when the
+   * template accesses them.
+   */
+  private class ListModel implements TemplateSequenceModel,
+      AdapterTemplateModel {
+
+    private final List<?> list;
+
+    ListModel(List<?> list) {
+      this.list = list;
+    }
+
+    /*-
+     * @see freemarker.template.TemplateSequenceModel#get(int)
+     */
+    public TemplateModel get(int index) throws TemplateModelException {
+      if (index < 0 || index >= list.size()) {
+	return null;
+      }
+      return wrap(list.get(index));
+    }
+
+    /*-
+     * @see freemarker.template.TemplateSequenceModel#size()
+     */
+    public int size() {
+      return list.size();
+    }
+
+    /*-
+     * @see freemarker.template.AdapterTemplateModel#getAdaptedObject(java.lang.Class)
+     */
+    public Object getAdaptedObject(@SuppressWarnings("rawtypes") Class hint) {
+      return list;
+    }
+  } // ListModel
+}
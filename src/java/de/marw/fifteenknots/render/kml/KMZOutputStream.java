@@ -0,0 +1,436 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.render.kml;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that writes a KMZ file, that is a zip archive holding a
+ * single KML document. The document is compressed while it is written.
+ * <p>
+ * The data is split into blocks of 128 KiB that are compressed concurrently
+ * by the workers of an executor, each block by a deflater of its own. Like
+ * {@code pigz} does, each block is primed with the last 32 KiB of the block
+ * before and ends on a byte boundary, so the compressed blocks form a single
+ * deflate stream when they are written in order. The compression ratio is
+ * nearly the same as with a single deflater.
+ * </p>
+ * <p>
+ * The zip container is written by this class, since
+ * {@link java.util.zip.ZipOutputStream} cannot take compressed data. The
+ * sizes and the checksum of the entry follow its data in a data descriptor,
+ * so the archive is written in a single pass without seeking. Archives of
+ * 4 GiB and more are not supported.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class KMZOutputStream extends OutputStream {
+
+  /** the number of bytes compressed by a worker at a time */
+  static final int BLOCK_SIZE = 128 * 1024;
+
+  /** the size of the window of the deflate format */
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+
+  /** the largest size that fits into a field of the zip format */
+  private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+  /** general purpose flag: sizes and CRC follow the data */
+  private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+
+  private static final int METHOD_DEFLATED = 8;
+
+  /** version 2.0 of the zip format, the first with deflate */
+  private static final int VERSION = 20;
+
+  private final OutputStream out;
+
+  private final ExecutorService executor;
+
+  /** the name of the entry, encoded */
+  private final byte[] name;
+
+  /** the modification time of the entry in MS-DOS format */
+  private final int dosTime;
+
+  /** the number of blocks compressed at a time */
+  private final int window;
+
+  /** the compressed blocks, in order */
+  private final LinkedList<Future<byte[]>> pending =
+      new LinkedList<Future<byte[]>>();
+
+  private final CRC32 crc = new CRC32();
+
+  /** the block being filled */
+  private byte[] block = new byte[BLOCK_SIZE];
+
+  private int blockLength;
+
+  /** the last full block or {@code null} */
+  private byte[] previous;
+
+  /** the number of uncompressed bytes */
+  private long size;
+
+  /** the number of compressed bytes written */
+  private long compressedSize;
+
+  /** the number of bytes of the archive written */
+  private long written;
+
+  private boolean finished;
+
+  /**
+   * Creates a KMZ file holding a document named {@code doc.kml} and writes the
+   * header of the document's entry.
+   *
+   * @param out
+   *        the stream to write the archive to
+   * @param executor
+   *        the executor to compress the blocks
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public KMZOutputStream(OutputStream out, ExecutorService executor)
+      throws IOException {
+    this(out, executor, "doc.kml");
+  }
+
+  /**
+   * Creates a KMZ file and writes the header of the document's entry.
+   *
+   * @param out
+   *        the stream to write the archive to
+   * @param executor
+   *        the executor to compress the blocks
+   * @param name
+   *        the name of the document in the archive
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public KMZOutputStream(OutputStream out, ExecutorService executor,
+      String name) throws IOException {
+    if (out == null) {
+      throw new NullPointerException("out");
+    }
+    if (executor == null) {
+      throw new NullPointerException("executor");
+    }
+    this.out = out;
+    this.executor = executor;
+    this.name = name.getBytes(Charset.forName("US-ASCII"));
+    this.dosTime = toDosTime(System.currentTimeMillis());
+    this.window = 2 * Runtime.getRuntime().availableProcessors();
+
+    // local file header, sizes and CRC follow in the data descriptor
+    writeInt(0x04034b50);
+    writeShort(VERSION);
+    writeShort(FLAG_DATA_DESCRIPTOR);
+    writeShort(METHOD_DEFLATED);
+    writeInt(dosTime);
+    writeInt(0);
+    writeInt(0);
+    writeInt(0);
+    writeShort(this.name.length);
+    writeShort(0);
+    writeBytes(this.name);
+  }
+
+  /*-
+   * @see java.io.OutputStream#write(int)
+   */
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    block[blockLength++] = (byte) b;
+    crc.update(b);
+    size++;
+    if (blockLength == BLOCK_SIZE) {
+      submit(false);
+    }
+  }
+
+  /*-
+   * @see java.io.OutputStream#write(byte[], int, int)
+   */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    crc.update(b, off, len);
+    size += len;
+    while (len > 0) {
+      final int n = Math.min(len, BLOCK_SIZE - blockLength);
+      System.arraycopy(b, off, block, blockLength, n);
+      blockLength += n;
+      off += n;
+      len -= n;
+      if (blockLength == BLOCK_SIZE) {
+	submit(false);
+      }
+    }
+  }
+
+  /**
+   * Flushes the underlying stream. The data of a block not yet full is kept
+   * until the block is full or the stream is finished, since compressing
+   * small blocks would spoil the compression ratio.
+   */
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /**
+   * Compresses the remaining data and writes the end of the archive, without
+   * closing the underlying stream.
+   *
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    submit(true);
+    while (!pending.isEmpty()) {
+      writeCompressed();
+    }
+    if (size > MAX_SIZE || compressedSize > MAX_SIZE) {
+      throw new IOException("document too large for the zip format");
+    }
+    final long crcValue = crc.getValue();
+
+    // data descriptor
+    writeInt(0x08074b50);
+    writeInt(crcValue);
+    writeInt(compressedSize);
+    writeInt(size);
+
+    // central directory
+    final long directoryOffset = written;
+    writeInt(0x02014b50);
+    writeShort(VERSION);
+    writeShort(VERSION);
+    writeShort(FLAG_DATA_DESCRIPTOR);
+    writeShort(METHOD_DEFLATED);
+    writeInt(dosTime);
+    writeInt(crcValue);
+    writeInt(compressedSize);
+    writeInt(size);
+    writeShort(name.length);
+    writeShort(0); // extra field length
+    writeShort(0); // comment length
+    writeShort(0); // disk number
+    writeShort(0); // internal attributes
+    writeInt(0); // external attributes
+    writeInt(0); // offset of the local header
+    writeBytes(name);
+    final long directorySize = written - directoryOffset;
+    if (directoryOffset > MAX_SIZE) {
+      throw new IOException("document too large for the zip format");
+    }
+
+    // end of central directory record
+    writeInt(0x06054b50);
+    writeShort(0);
+    writeShort(0);
+    writeShort(1);
+    writeShort(1);
+    writeInt(directorySize);
+    writeInt(directoryOffset);
+    writeShort(0);
+    out.flush();
+    finished = true;
+  }
+
+  /**
+   * Finishes the archive and closes the underlying stream.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      finish();
+    } finally {
+      out.close();
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (finished) {
+      throw new IOException("write beyond end of archive");
+    }
+  }
+
+  /**
+   * Hands the current block to a worker and writes compressed blocks, if too
+   * many are pending.
+   *
+   * @param last
+   *        whether this is the last block of the document
+   */
+  private void submit(boolean last) throws IOException {
+    pending.add(executor.submit(new BlockCompressor(block, blockLength,
+	previous, last)));
+    if (!last) {
+      previous = block;
+      block = new byte[BLOCK_SIZE];
+    }
+    blockLength = 0;
+    while (pending.size() > window) {
+      writeCompressed();
+    }
+  }
+
+  /**
+   * Waits for the first pending block and writes it.
+   */
+  private void writeCompressed() throws IOException {
+    final Future<byte[]> result = pending.removeFirst();
+    final byte[] data;
+    try {
+      data = result.get();
+    } catch (ExecutionException ex) {
+      // raise exception that occured in worker
+      final Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+	throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+	throw (Error) cause;
+      }
+      throw new IOException(cause);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    writeBytes(data);
+    compressedSize += data.length;
+  }
+
+  private void writeBytes(byte[] b) throws IOException {
+    out.write(b);
+    written += b.length;
+  }
+
+  /** writes a 16 bit value, least significant byte first */
+  private void writeShort(int v) throws IOException {
+    out.write(v & 0xff);
+    out.write((v >>> 8) & 0xff);
+    written += 2;
+  }
+
+  /** writes a 32 bit value, least significant byte first */
+  private void writeInt(long v) throws IOException {
+    writeShort((int) (v & 0xffff));
+    writeShort((int) ((v >>> 16) & 0xffff));
+  }
+
+  /**
+   * Converts a time to the MS-DOS date and time format of the zip format.
+   */
+  private static int toDosTime(long millis) {
+    final Calendar cal = Calendar.getInstance();
+    cal.setTimeInMillis(millis);
+    final int year = cal.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25 | (cal.get(Calendar.MONTH) + 1) << 21
+	| cal.get(Calendar.DAY_OF_MONTH) << 16
+	| cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5
+	| cal.get(Calendar.SECOND) >> 1;
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * Compresses a block to a piece of a raw deflate stream.
+   */
+  private static class BlockCompressor implements Callable<byte[]> {
+
+    private final byte[] data;
+
+    private final int length;
+
+    /** the block before or {@code null} */
+    private final byte[] dictionary;
+
+    private final boolean last;
+
+    BlockCompressor(byte[] data, int length, byte[] dictionary, boolean last) {
+      this.data = data;
+      this.length = length;
+      this.dictionary = dictionary;
+      this.last = last;
+    }
+
+    /*-
+     * @see java.util.concurrent.Callable#call()
+     */
+    public byte[] call() {
+      final Deflater deflater =
+	  new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      try {
+	if (dictionary != null) {
+	  deflater.setDictionary(dictionary, dictionary.length
+	      - DICTIONARY_SIZE, DICTIONARY_SIZE);
+	}
+	deflater.setInput(data, 0, length);
+	byte[] buf = new byte[length / 4 + 64];
+	int pos = 0;
+	if (last) {
+	  // end with the final block of the stream
+	  deflater.finish();
+	  while (!deflater.finished()) {
+	    if (pos == buf.length) {
+	      buf = grow(buf);
+	    }
+	    pos += deflater.deflate(buf, pos, buf.length - pos);
+	  }
+	} else {
+	  // end on a byte boundary without marking the end of the stream
+	  while (true) {
+	    final int n = deflater.deflate(buf, pos, buf.length - pos,
+		Deflater.SYNC_FLUSH);
+	    pos += n;
+	    if (pos < buf.length) {
+	      break;
+	    }
+	    buf = grow(buf);
+	  }
+	}
+	final byte[] result = new byte[pos];
+	System.arraycopy(buf, 0, result, 0, pos);
+	return result;
+      } finally {
+	deflater.end();
+      }
+    }
+
+    private static byte[] grow(byte[] buf) {
+      final byte[] larger = new byte[buf.length * 2];
+      System.arraycopy(buf, 0, larger, 0, buf.length);
+      return larger;
+    }
+  } // BlockCompressor
+}
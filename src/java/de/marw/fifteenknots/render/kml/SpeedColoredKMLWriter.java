@@ -0,0 +1,715 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.render.kml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import de.marw.fifteenknots.model.Cruise;
+import de.marw.fifteenknots.model.EncodedSpeedRaceModel;
+import de.marw.fifteenknots.model.PolyLine;
+import de.marw.fifteenknots.model.SpeedCruise;
+import de.marw.fifteenknots.model.SpeedRange;
+import de.marw.fifteenknots.nmeareader.Fix;
+import de.marw.fifteenknots.nmeareader.Position;
+
+/**
+ * Writes a race in KML format with the boat speed encoded as the track's
+ * color, without the template engine. The document is the same as the one
+ * rendered from the {@code speed-colored.kml.ftl} template, except for the
+ * comment naming its producer and that boat names are escaped.
+ * <p>
+ * The text is encoded as UTF-8 into a buffer of the writer's own, numbers and
+ * dates are formatted directly into that buffer. Like FreeMarker, numbers and
+ * dates are formatted for the default locale and time zone, except for the
+ * values of a {@code gx:Track}, which are formatted for machines and in UTC.
+ * Locales that this writer cannot format itself are handed to the
+ * {@code java.text} formats.
+ * </p>
+ * <p>
+ * The document may also be written in pieces: the
+ * {@link #writeHeader(EncodedSpeedRaceModel) header}, the
+ * {@link #writeCruise(SpeedCruise) folder of each cruise} and the
+ * {@link #writeFooter(EncodedSpeedRaceModel, Position[]) footer}. Each piece
+ * depends on its arguments only, so the folders of the cruises may be written
+ * by writers of their own, e.g. concurrently, and concatenated afterwards.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class SpeedColoredKMLWriter {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+  /**
+   * the range of days formatted without {@code SimpleDateFormat}, which uses
+   * the Julian calendar before 1582
+   */
+  private static final long FIRST_DAY = LocalDate.of(1583, 1, 1).toEpochDay();
+
+  private static final long LAST_DAY = LocalDate.of(9999, 12, 31).toEpochDay();
+
+  private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<kml xmlns=\"http://www.opengis.net/kml/2.2\"";
+
+  private static final String GX_NAMESPACE = " xmlns:gx=\"http://www.google.com/kml/ext/2.2\"";
+
+  private static final String HEADER = ">\n"
+      + "<Document>\n"
+      + "    <!-- " + SpeedColoredKMLWriter.class.getSimpleName() + " -->\n"
+      + "    <name>GPS device</name>\n"
+      + "    <open>1</open>\n"
+      + "    <Style id=\"track_h\">\n"
+      + "      <IconStyle>\n"
+      + "        <color>ffffaaaa</color>\n"
+      + "        <scale>1.2</scale>\n"
+      + "        <Icon>\n"
+      + "          <href>http://maps.google.com/mapfiles/kml/shapes/open-diamond.png</href>\n"
+      + "        </Icon>\n"
+      + "      </IconStyle>\n"
+      + "    </Style>\n"
+      + "    <Style id=\"track_n\">\n"
+      + "      <IconStyle>\n"
+      + "        <color>ffffaaaa</color>\n"
+      + "        <Icon>\n"
+      + "          <href>http://maps.google.com/mapfiles/kml/shapes/open-diamond.png</href>\n"
+      + "        </Icon>\n"
+      + "      </IconStyle>\n"
+      + "    </Style>\n"
+      + "    <StyleMap id=\"track\">\n"
+      + "      <Pair>\n"
+      + "        <key>normal</key>\n"
+      + "        <styleUrl>#track_n</styleUrl>\n"
+      + "      </Pair>\n"
+      + "      <Pair>\n"
+      + "        <key>highlight</key>\n"
+      + "        <styleUrl>#track_h</styleUrl>\n"
+      + "      </Pair>\n"
+      + "    </StyleMap>\n";
+
+  private static final String TRACK_SCHEMA = "    <Schema id=\"trackpoint\">\n"
+      + "      <gx:SimpleArrayField name=\"speed\" type=\"float\">\n"
+      + "        <displayName>Speed [kts]</displayName>\n"
+      + "      </gx:SimpleArrayField>\n"
+      + "    </Schema>\n";
+
+  private static final String LINE_STYLE = "    \n"
+      + "    <Style id=\"lineStyle1\">\n"
+      + "      <LineStyle>\n"
+      + "        <color>ffffffff</color>\n"
+      + "      </LineStyle>\n"
+      + "    </Style>\n"
+      + "\n"
+      + "    <Folder>\n"
+      + "    <name>Speed in knots</name>\n";
+
+  private final OutputStream out;
+
+  /** whether the track points are written as a gx:Track */
+  private final boolean gxTrack;
+
+  private final byte[] buf = new byte[64 * 1024];
+
+  private int pos;
+
+  /** formats numbers like <code>${number}</code> in a template */
+  private final NumberFormat numberFormat;
+
+  /** formats the limits of the speed ranges */
+  private final DecimalFormat legendFormat;
+
+  /** formats the speed values of a gx:Track */
+  private final DecimalFormat speedFormat;
+
+  /** formats the outline like <code>?c</code> in a template */
+  private final DecimalFormat computerFormat;
+
+  /** formats the time stamps */
+  private final SimpleDateFormat dateFormat;
+
+  /** formats the time stamps of a gx:Track, in UTC */
+  private final SimpleDateFormat isoDateFormat;
+
+  private final TimeZone timeZone;
+
+  /** whether numbers and dates are formatted by this writer */
+  private final boolean fastFormat;
+
+  /** the number of digits between grouping separators or 0 */
+  private final int groupingSize;
+
+  private final byte[] groupingSeparator;
+
+  private final byte[] decimalSeparator;
+
+  /** the last day a time stamp was written for */
+  private long cachedDay = Long.MIN_VALUE;
+
+  /** the formatted date of {@link #cachedDay} */
+  private final byte[] cachedDayText = new byte[11];
+
+  /** scratch space for digits */
+  private final byte[] digits = new byte[20];
+
+  /**
+   * @param out
+   *        the stream to write the document to. The stream is flushed but
+   *        not closed after the document was written.
+   */
+  public SpeedColoredKMLWriter(OutputStream out) {
+    this(out, false);
+  }
+
+  /**
+   * @param out
+   *        the stream to write the document to. The stream is flushed but
+   *        not closed after the document was written.
+   * @param gxTrack
+   *        whether to write the track points of each cruise as a single
+   *        {@code gx:Track} instead of a placemark for each point, like the
+   *        template does if its {@code gxTrack} variable is {@code true}.
+   */
+  public SpeedColoredKMLWriter(OutputStream out, boolean gxTrack) {
+    if (out == null) {
+      throw new NullPointerException("out");
+    }
+    this.out = out;
+    this.gxTrack = gxTrack;
+
+    final Locale locale = Locale.getDefault();
+    numberFormat = NumberFormat.getNumberInstance(locale);
+    legendFormat = KMLFormats.createLegendFormat(locale);
+    computerFormat = KMLFormats.createComputerFormat();
+    speedFormat = new DecimalFormat("0.###", new DecimalFormatSymbols(
+	Locale.US));
+    timeZone = TimeZone.getDefault();
+    dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", locale);
+    dateFormat.setTimeZone(timeZone);
+    isoDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+    isoDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+    boolean fast = false;
+    int grouping = 0;
+    DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+    if (numberFormat instanceof DecimalFormat) {
+      final DecimalFormat df = (DecimalFormat) numberFormat;
+      symbols = df.getDecimalFormatSymbols();
+      fast = symbols.getZeroDigit() == '0'
+	  && df.getMaximumFractionDigits() == 3
+	  && df.getMinimumFractionDigits() == 0
+	  && df.getPositivePrefix().length() == 0
+	  && df.getPositiveSuffix().length() == 0
+	  && dateFormat.getCalendar().getClass() == GregorianCalendar.class;
+      grouping = df.isGroupingUsed() ? df.getGroupingSize() : 0;
+    }
+    fastFormat = fast;
+    groupingSize = grouping;
+    groupingSeparator = String.valueOf(symbols.getGroupingSeparator())
+	.getBytes(UTF_8);
+    decimalSeparator = String.valueOf(symbols.getDecimalSeparator())
+	.getBytes(UTF_8);
+  }
+
+  /**
+   * Writes the whole document.
+   *
+   * @param race
+   *        the race to write
+   * @param outline
+   *        the outline of the race area or {@code null}
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public void write(EncodedSpeedRaceModel race, Position[] outline)
+      throws IOException {
+    writeHeader(race);
+    for (Cruise cruise : race.getCruises()) {
+      writeCruise((SpeedCruise) cruise);
+    }
+    writeFooter(race, outline);
+    flush();
+  }
+
+  /**
+   * Writes the start of the document up to the folders of the cruises, that
+   * is the styles and the legend.
+   *
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public void writeHeader(EncodedSpeedRaceModel race) throws IOException {
+    ascii(XML_DECLARATION);
+    if (gxTrack) {
+      ascii(GX_NAMESPACE);
+    }
+    ascii(HEADER);
+    if (gxTrack) {
+      ascii(TRACK_SCHEMA);
+    }
+    final List<SpeedRange> ranges = race.getSpeedEncoding().getRanges();
+    for (int i = 0; i < ranges.size(); i++) {
+      ascii("    <Style id=\"speed_");
+      integer(i);
+      ascii("\">\n      <LineStyle>\n        <color>");
+      ascii(ARGBToABRGMethod.format(ranges.get(i).getColor().getRGB()));
+      ascii("</color>\n      </LineStyle>\n    </Style>\n");
+    }
+    ascii(LINE_STYLE);
+    for (int i = 0; i < ranges.size(); i++) {
+      final SpeedRange range = ranges.get(i);
+      ascii("    <ScreenOverlay>\n      <name>");
+      text(legendFormat.format(range.getLowerLimit()));
+      ascii(" .. ");
+      text(legendFormat.format(range.getUpperLimit()));
+      ascii("</name>\n\t<color>");
+      ascii(ARGBToABRGMethod.format(range.getColor().getRGB()));
+      ascii("</color>\n"
+	  + "\t<overlayXY x=\"0\" y=\"0\" xunits=\"pixels\" yunits=\"pixels\"/>\n"
+	  + "  \t<screenXY y=\"10\" x=\"");
+      number(10 + i * 5);
+      ascii("\" yunits=\"pixels\" xunits=\"pixels\"/>\n"
+	  + "  \t<size y=\"25\" x=\"4\" xunits=\"pixels\" yunits=\"pixels\"/>\n"
+	  + "    </ScreenOverlay>\n");
+    }
+    ascii("    </Folder>\n\n");
+    if (race.getCruises().size() > 1) {
+      ascii("    <Folder>\n      <name>Boats</name>\n");
+    }
+  }
+
+  /**
+   * Writes the folder of a cruise with its track points and polylines.
+   *
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public void writeCruise(SpeedCruise cruise) throws IOException {
+    ascii("      <Folder>\n        <name>");
+    if (cruise.getBoat().getName() != null) {
+      text(cruise.getBoat().getName());
+    } else {
+      ascii("Boat #");
+      number(cruise.getBoat().getIndex());
+    }
+    ascii("</name>\n        <Folder>\n          <name>Trackpoints</name>\n");
+
+    final List<Fix> fixes = cruise.getMarkedFixes();
+    if (gxTrack) {
+      writeTrack(fixes);
+    } else {
+      writePlacemarks(fixes);
+      ascii(" \n");
+    }
+    ascii("        </Folder>\n        <Folder>\n          <name>Cruise</name>\n");
+
+    final List<PolyLine> lines = cruise.getPolyLines();
+    for (int i = 0, n = lines.size(); i < n; i++) {
+      final PolyLine line = lines.get(i);
+      ascii("          <Placemark>\n            <name>");
+      number(i);
+      ascii(" (Sp ");
+      number(line.getColorIndex());
+      ascii(")</name>\n            <styleUrl>#speed_");
+      integer(line.getColorIndex());
+      ascii("</styleUrl>\n            <LineString>\n"
+	  + "              <tessellate>1</tessellate>\n"
+	  + "              <coordinates>\n");
+      for (Fix segment : line.getSegments()) {
+	e7(segment.getPosition().getLongitudeE7());
+	ascii(",");
+	e7(segment.getPosition().getLatitudeE7());
+	ascii("\n");
+      }
+      ascii(" \n              </coordinates>\n            </LineString>\n"
+	  + "          </Placemark>\n          ");
+    }
+    ascii(" \n        </Folder>\n      </Folder>\n      ");
+  }
+
+  /**
+   * Writes a placemark for each track point.
+   */
+  private void writePlacemarks(List<Fix> fixes) throws IOException {
+    for (int i = 0, n = fixes.size(); i < n; i++) {
+      final Fix fix = fixes.get(i);
+      final int lon = fix.getPosition().getLongitudeE7();
+      final int lat = fix.getPosition().getLatitudeE7();
+      ascii("          <Placemark>\n            <name>");
+      number(i);
+      final float speed = fix.getSpeedValue();
+      if (!Float.isNaN(speed)) {
+	ascii(" [");
+	decimal(speed);
+	ascii(" kts]");
+      }
+      ascii("</name>\n            <styleUrl>#track</styleUrl>\n"
+	  + "         <Point><coordinates>");
+      e7(lon);
+      ascii(",");
+      e7(lat);
+      ascii("</coordinates></Point>\n"
+	  + "            <LookAt>\n              <longitude>");
+      e7(lon);
+      ascii("</longitude>\n              <latitude>");
+      e7(lat);
+      ascii("</latitude>\n              <range>100</range>\n"
+	  + "            </LookAt>\n            <TimeStamp>\n              <when>");
+      date(fix.getDate());
+      ascii("</when>\n            </TimeStamp>\n          </Placemark>\n"
+	  + "          ");
+    }
+  }
+
+  /**
+   * Writes the track points as a single {@code gx:Track}, with the speed as
+   * extended data. Values are formatted for machines, independent of the
+   * locale.
+   */
+  private void writeTrack(List<Fix> fixes) throws IOException {
+    final int n = fixes.size();
+    ascii("          <Placemark>\n            <name>Track</name>\n"
+	+ "            <styleUrl>#track</styleUrl>\n            <gx:Track>\n");
+    for (int i = 0; i < n; i++) {
+      ascii("              <when>");
+      isoDate(fixes.get(i).getDate());
+      ascii("</when>\n");
+    }
+    for (int i = 0; i < n; i++) {
+      final Position position = fixes.get(i).getPosition();
+      ascii("              <gx:coord>");
+      e7(position.getLongitudeE7());
+      ascii(" ");
+      e7(position.getLatitudeE7());
+      ascii(" 0</gx:coord>\n");
+    }
+    ascii("              <ExtendedData>\n"
+	+ "                <SchemaData schemaUrl=\"#trackpoint\">\n"
+	+ "                  <gx:SimpleArrayData name=\"speed\">\n");
+    for (int i = 0; i < n; i++) {
+      ascii("                    <gx:value>");
+      final float speed = fixes.get(i).getSpeedValue();
+      if (!Float.isNaN(speed)) {
+	computerDecimal(speed);
+      }
+      ascii("</gx:value>\n");
+    }
+    ascii("                  </gx:SimpleArrayData>\n"
+	+ "                </SchemaData>\n              </ExtendedData>\n"
+	+ "            </gx:Track>\n          </Placemark>\n");
+  }
+
+  /**
+   * Writes the end of the document after the folders of the cruises, that is
+   * the outline of the race area.
+   *
+   * @param outline
+   *        the outline of the race area or {@code null}
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public void writeFooter(EncodedSpeedRaceModel race, Position[] outline)
+      throws IOException {
+    ascii(" \n");
+    if (race.getCruises().size() > 1) {
+      ascii("    </Folder>\n");
+    }
+    if (outline != null) {
+      ascii("      <Placemark>\n      <name>Outline</name>\n"
+	  + "      <styleUrl>lineStyle1</styleUrl>\n      <LineString>\n"
+	  + "        <tessellate>1</tessellate>\n        <coordinates>\n        ");
+      for (Position point : outline) {
+	ascii(computerFormat.format(point.getLongitude()));
+	ascii(",");
+	ascii(computerFormat.format(point.getLatitude()));
+	ascii("\n");
+      }
+      ascii("        </coordinates>\n      </LineString>\n      </Placemark>\n");
+    }
+    ascii("  </Document>\n</kml>\n");
+  }
+
+  /**
+   * Writes the buffered bytes to the stream and flushes the stream.
+   *
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public void flush() throws IOException {
+    drain();
+    out.flush();
+  }
+
+  /**
+   * Writes the buffered bytes to the stream.
+   */
+  private void drain() throws IOException {
+    out.write(buf, 0, pos);
+    pos = 0;
+  }
+
+  /**
+   * Writes a string that contains US-ASCII characters only.
+   */
+  private void ascii(String s) throws IOException {
+    for (int i = 0, len = s.length(); i < len; i++) {
+      if (pos == buf.length) {
+	drain();
+      }
+      buf[pos++] = (byte) s.charAt(i);
+    }
+  }
+
+  /**
+   * Writes arbitrary text, escaping the characters that are special in XML.
+   */
+  private void text(String s) throws IOException {
+    bytes(KMLFormats.escape(s).getBytes(UTF_8));
+  }
+
+  private void bytes(byte[] b) throws IOException {
+    if (pos + b.length > buf.length) {
+      drain();
+      if (b.length > buf.length) {
+	out.write(b);
+	return;
+      }
+    }
+    System.arraycopy(b, 0, buf, pos, b.length);
+    pos += b.length;
+  }
+
+  /**
+   * Writes a non-negative integer without grouping separators, like
+   * <code>?c</code> in a template.
+   */
+  private void integer(long value) throws IOException {
+    if (pos + digits.length > buf.length) {
+      drain();
+    }
+    int n = 0;
+    do {
+      digits[n++] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value != 0);
+    while (n > 0) {
+      buf[pos++] = digits[--n];
+    }
+  }
+
+  /**
+   * Writes an integer like <code>${number}</code> in a template.
+   */
+  private void number(long value) throws IOException {
+    if (!fastFormat || value < 0) {
+      text(numberFormat.format(value));
+      return;
+    }
+    int n = 0;
+    do {
+      digits[n++] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value != 0);
+    if (pos + 2 * digits.length > buf.length) {
+      drain();
+    }
+    while (n > 0) {
+      buf[pos++] = digits[--n];
+      if (groupingSize > 0 && n > 0 && n % groupingSize == 0) {
+	for (byte b : groupingSeparator) {
+	  buf[pos++] = b;
+	}
+      }
+    }
+  }
+
+  /**
+   * Writes a speed like <code>${number}</code> in a template, that is rounded
+   * half-even to three fraction digits.
+   */
+  private void decimal(float value) throws IOException {
+    decimal(value, false);
+  }
+
+  /**
+   * Writes a speed rounded half-even to three fraction digits, without
+   * grouping and with a point as the decimal separator.
+   */
+  private void computerDecimal(float value) throws IOException {
+    decimal(value, true);
+  }
+
+  /**
+   * Writes a speed rounded half-even to three fraction digits. The rounding is
+   * computed exactly from the binary representation of the value.
+   *
+   * @param computer
+   *        whether to format the value independent of the locale
+   */
+  private void decimal(float value, boolean computer) throws IOException {
+    final int bits = Float.floatToRawIntBits(value);
+    final int exponent = (bits >>> 23) & 0xFF;
+    // negative, too large, infinite or NaN
+    if (!computer && !fastFormat || bits < 0 || exponent > 170) {
+      text((computer ? speedFormat : numberFormat).format(value));
+      return;
+    }
+    // value == mantissa * 2^-shift
+    long mantissa = bits & 0x7FFFFF;
+    final int shift;
+    if (exponent == 0) {
+      shift = 149;
+    } else {
+      mantissa |= 0x800000;
+      shift = 150 - exponent;
+    }
+    final long scaled = mantissa * 1000;
+    long thousandths;
+    if (shift <= 0) {
+      thousandths = scaled << -shift;
+    } else if (shift >= 63) {
+      thousandths = 0;
+    } else {
+      thousandths = scaled >> shift;
+      final long rest = scaled & ((1L << shift) - 1);
+      final long half = 1L << (shift - 1);
+      if (rest > half || rest == half && (thousandths & 1) != 0) {
+	thousandths++;
+      }
+    }
+    if (computer) {
+      integer(thousandths / 1000);
+    } else {
+      number(thousandths / 1000);
+    }
+    final int fraction = (int) (thousandths % 1000);
+    if (fraction != 0) {
+      if (computer) {
+	ascii(".");
+      } else {
+	bytes(decimalSeparator);
+      }
+      if (pos + 3 > buf.length) {
+	drain();
+      }
+      buf[pos++] = (byte) ('0' + fraction / 100);
+      if (fraction % 100 != 0) {
+	buf[pos++] = (byte) ('0' + fraction / 10 % 10);
+	if (fraction % 10 != 0) {
+	  buf[pos++] = (byte) ('0' + fraction % 10);
+	}
+      }
+    }
+  }
+
+  /**
+   * Writes a coordinate in 10<sup>-7</sup> degrees like
+   * {@link E7ToDecimalMethod#format(int)}.
+   */
+  private void e7(int e7) throws IOException {
+    long value = e7;
+    if (value < 0) {
+      ascii("-");
+      value = -value;
+    }
+    integer(value / 10000000);
+    int fraction = (int) (value % 10000000);
+    if (fraction != 0) {
+      int n = 7;
+      while (fraction % 10 == 0) {
+	fraction /= 10;
+	n--;
+      }
+      if (pos + 8 > buf.length) {
+	drain();
+      }
+      buf[pos++] = '.';
+      for (int i = n - 1; i >= 0; i--) {
+	buf[pos + i] = (byte) ('0' + fraction % 10);
+	fraction /= 10;
+      }
+      pos += n;
+    }
+  }
+
+  /**
+   * Writes a time stamp formatted as {@code yyyy-MM-dd'T'HH:mm:ss'Z'} in the
+   * default time zone, like the template does.
+   */
+  private void date(long millis) throws IOException {
+    date(millis, false);
+  }
+
+  /**
+   * Writes a time stamp formatted as {@code yyyy-MM-dd'T'HH:mm:ss'Z'} in UTC,
+   * always with the Gregorian calendar.
+   */
+  private void isoDate(long millis) throws IOException {
+    date(millis, true);
+  }
+
+  /**
+   * Writes a time stamp formatted as {@code yyyy-MM-dd'T'HH:mm:ss'Z'}.
+   *
+   * @param iso
+   *        whether to format the time stamp in UTC and independent of the
+   *        locale, instead of in the default time zone
+   */
+  private void date(long millis, boolean iso) throws IOException {
+    final long local = iso ? millis : millis + timeZone.getOffset(millis);
+    final long day = Math.floorDiv(local, MILLIS_PER_DAY);
+    if (!iso && !fastFormat || day < FIRST_DAY || day > LAST_DAY) {
+      text((iso ? isoDateFormat : dateFormat).format(new Date(millis)));
+      return;
+    }
+    if (day != cachedDay) {
+      final LocalDate date = LocalDate.ofEpochDay(day);
+      final byte[] t = cachedDayText;
+      final int year = date.getYear();
+      t[0] = (byte) ('0' + year / 1000);
+      t[1] = (byte) ('0' + year / 100 % 10);
+      t[2] = (byte) ('0' + year / 10 % 10);
+      t[3] = (byte) ('0' + year % 10);
+      t[4] = '-';
+      t[5] = (byte) ('0' + date.getMonthValue() / 10);
+      t[6] = (byte) ('0' + date.getMonthValue() % 10);
+      t[7] = '-';
+      t[8] = (byte) ('0' + date.getDayOfMonth() / 10);
+      t[9] = (byte) ('0' + date.getDayOfMonth() % 10);
+      t[10] = 'T';
+      cachedDay = day;
+    }
+    bytes(cachedDayText);
+    if (pos + 9 > buf.length) {
+      drain();
+    }
+    final int seconds = (int) ((local - day * MILLIS_PER_DAY) / 1000);
+    twoDigits(seconds / 3600);
+    buf[pos++] = ':';
+    twoDigits(seconds / 60 % 60);
+    buf[pos++] = ':';
+    twoDigits(seconds % 60);
+    buf[pos++] = 'Z';
+  }
+
+  private void twoDigits(int value) {
+    buf[pos++] = (byte) ('0' + value / 10);
+    buf[pos++] = (byte) ('0' + value % 10);
+  }
+}
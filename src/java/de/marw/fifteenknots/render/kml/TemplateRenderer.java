@@ -9,7 +9,6 @@ import java.io.IOException;
 import java.io.Writer;
 
 import freemarker.template.Configuration;
-import freemarker.template.DefaultObjectWrapper;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 
@@ -45,7 +44,7 @@ public class TemplateRenderer
     cfg.setClassForTemplateLoading( getClass(), "templates");
     // cfg.setDirectoryForTemplateLoading(
     // new File("/where/you/store/templates"));
-    cfg.setObjectWrapper( new DefaultObjectWrapper());
+    cfg.setObjectWrapper( new KMLObjectWrapper());
 
     /* ------------------------------------------------------------------- */
     /* You usually do these for many times in the application life-cycle: */
@@ -61,6 +60,23 @@ public class TemplateRenderer
    */
   public void process( Object dataModel)
     throws IOException, TemplateException
+  {
+    process( dataModel, output);
+  }
+
+  /**
+   * Renders the template to the specified writer instead of the renderer's
+   * output. The template is parsed once and shared, so several threads may
+   * render it at the same time, each to a writer of its own.
+   *
+   * @param dataModel
+   * @param output
+   *        the writer to render to. The writer is flushed but not closed.
+   * @throws IOException
+   * @throws TemplateException
+   */
+  public void process( Object dataModel, Writer output)
+    throws IOException, TemplateException
   {
     Template temp= cfg.getTemplate( templateName);
     temp.process( dataModel, output);
@@ -0,0 +1,835 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.render.kml;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import de.marw.fifteenknots.engine.PolylineSimplifier;
+import de.marw.fifteenknots.model.Boat;
+import de.marw.fifteenknots.model.Cruise;
+import de.marw.fifteenknots.model.EncodedSpeedRaceModel;
+import de.marw.fifteenknots.model.PolyLine;
+import de.marw.fifteenknots.model.SpeedCruise;
+import de.marw.fifteenknots.model.SpeedRange;
+import de.marw.fifteenknots.nmeareader.Fix;
+import de.marw.fifteenknots.nmeareader.Position;
+
+/**
+ * Writes a race in KML format with the boat speed encoded as the track's
+ * color, split into tiles that Google Earth loads on demand. This keeps huge
+ * races viewable, since only the tiles in view are loaded, each with no more
+ * detail than the screen can show.
+ * <p>
+ * The race area is divided by a quadtree: the tile of level 0 covers the
+ * whole area, each tile of the next level a quarter of its parent. Each tile
+ * is a KML file of its own holding the parts of the polylines inside the
+ * tile, simplified to a tolerance of about half a pixel at the largest size
+ * the tile is shown. The tiles of the deepest level hold the polylines with
+ * all points. A tile is linked to its children by {@code NetworkLink}s, whose
+ * {@code Region}s make Google Earth load a child when it gets large enough on
+ * the screen, and hide the polylines of the parent at the same time. Tiles
+ * without polylines are not written.
+ * </p>
+ * <p>
+ * The files are written to a directory: the document {@code doc.kml} with
+ * the legend and the outline of the race area, and the tiles below
+ * {@code tiles}, each named by its quadtree key. The lines are cut into the
+ * tiles of each level concurrently, and the tiles are written concurrently in
+ * batches of a few tiles.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ *
+ * @author Martin Weber
+ */
+public class TiledKMLWriter {
+
+  /** the name of the sub-directory holding the tiles */
+  private static final String TILES_DIR = "tiles";
+
+  /** the size of a tile on the screen when it gets loaded, in pixels */
+  private static final int MIN_LOD_PIXELS = 128;
+
+  /**
+   * the size of a tile on the screen when its children are large enough to
+   * replace it, in pixels
+   */
+  private static final int MAX_LOD_PIXELS = 2 * MIN_LOD_PIXELS;
+
+  /** the number of tiles written by a single task */
+  private static final int TILES_PER_TASK = 16;
+
+  /** metres per 10^-7 degrees of latitude */
+  private static final double METRES_PER_E7 = 1852.0 * 60
+      / Position.E7_PER_DEGREE;
+
+  private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n"
+      + "<Document>\n";
+
+  private static final String FOOTER = "</Document>\n</kml>\n";
+
+  private final File directory;
+
+  private final int levels;
+
+  private final ExecutorService executor;
+
+  /** the lines of all cruises */
+  private final List<Line> lines = new ArrayList<Line>();
+
+  /** the colors of the speed ranges, in KML notation */
+  private String[] colors;
+
+  /** the bounds of the area divided into tiles, in 10^-7 degrees */
+  private int south, north, west, east;
+
+  /**
+   * @param directory
+   *        the directory to write the files to. The directory is created, if
+   *        it does not exist.
+   * @param levels
+   *        the number of levels of the quadtree, at least 1.
+   * @param executor
+   *        the executor to compute and write the tiles
+   * @throws IllegalArgumentException
+   *         if levels is less than 1 or greater than 16.
+   */
+  public TiledKMLWriter(File directory, int levels, ExecutorService executor) {
+    if (directory == null) {
+      throw new NullPointerException("directory");
+    }
+    if (executor == null) {
+      throw new NullPointerException("executor");
+    }
+    if (levels < 1 || levels > 16) {
+      throw new IllegalArgumentException("levels");
+    }
+    this.directory = directory;
+    this.levels = levels;
+    this.executor = executor;
+  }
+
+  /**
+   * Writes the document and its tiles.
+   *
+   * @param race
+   *        the race to write
+   * @param outline
+   *        the outline of the race area or {@code null}. The quadtree covers
+   *        the bounding box of the outline, or that of the tracks, if the
+   *        outline is {@code null}.
+   * @throws IOException
+   *         If an I/O error occurs
+   */
+  public void write(EncodedSpeedRaceModel race, Position[] outline)
+      throws IOException {
+    final List<SpeedRange> ranges = race.getSpeedEncoding().getRanges();
+    colors = new String[ranges.size()];
+    for (int i = 0; i < colors.length; i++) {
+      colors[i] = ARGBToABRGMethod.format(ranges.get(i).getColor().getRGB());
+    }
+    collectLines(race);
+    computeArea(outline);
+
+    final File tilesDir = new File(directory, TILES_DIR);
+    if (!tilesDir.isDirectory() && !tilesDir.mkdirs()) {
+      throw new IOException("cannot create directory " + tilesDir);
+    }
+
+    // cut the lines into the tiles of each level...
+    final List<Future<Map<Long, Tile>>> cut = new ArrayList<Future<Map<Long, Tile>>>(
+	levels);
+    for (int level = 0; level < levels; level++) {
+      cut.add(executor.submit(new TileCutter(level)));
+    }
+    final List<Map<Long, Tile>> tiles = new ArrayList<Map<Long, Tile>>(levels);
+    for (Future<Map<Long, Tile>> future : cut) {
+      tiles.add(getResult(future));
+    }
+
+    // write the tiles in batches, levels differ much in their number of tiles
+    final List<Future<Object>> written = new ArrayList<Future<Object>>();
+    for (int level = 0; level < levels; level++) {
+      final Set<Long> children = level + 1 < levels ? tiles.get(level + 1)
+	  .keySet() : null;
+      final List<Tile> levelTiles = new ArrayList<Tile>(tiles.get(level)
+	  .values());
+      for (int i = 0; i < levelTiles.size(); i += TILES_PER_TASK) {
+	final List<Tile> batch = levelTiles.subList(i, Math.min(levelTiles
+	    .size(), i + TILES_PER_TASK));
+	written.add(executor.submit(new TileWriter(tilesDir, level, batch,
+	    children)));
+      }
+    }
+    for (Future<Object> future : written) {
+      getResult(future);
+    }
+
+    writeDocument(race, outline, !tiles.get(0).isEmpty());
+  }
+
+  /**
+   * Joins the polylines of each cruise to lines with a color per segment.
+   */
+  private void collectLines(EncodedSpeedRaceModel race) {
+    for (Cruise c : race.getCruises()) {
+      final SpeedCruise cruise = (SpeedCruise) c;
+      final Boat boat = cruise.getBoat();
+      final String name = boat.getName() != null ? KMLFormats.escape(boat.getName())
+	  : "Boat #" + boat.getIndex();
+      LineBuilder builder = null;
+      // a polyline may be listed more than once
+      final Map<PolyLine, Boolean> done = new IdentityHashMap<PolyLine, Boolean>();
+      for (PolyLine polyline : cruise.getPolyLines()) {
+	if (done.put(polyline, Boolean.TRUE) != null) {
+	  continue;
+	}
+	final List<Fix> segments = polyline.getSegments();
+	final int n = segments.size();
+	if (n < 2) {
+	  continue;
+	}
+	final Position start = segments.get(0).getPosition();
+	if (builder != null && !builder.continues(start)) {
+	  // a gap between the polylines
+	  builder.addTo(lines);
+	  builder = null;
+	}
+	if (builder == null) {
+	  builder = new LineBuilder(name);
+	  builder.add(start);
+	}
+	for (int i = 1; i < n; i++) {
+	  builder.add(polyline.getColorIndex(), segments.get(i).getPosition());
+	}
+      }
+      if (builder != null) {
+	builder.addTo(lines);
+      }
+    }
+  }
+
+  /**
+   * Computes the bounds of the area to divide into tiles.
+   */
+  private void computeArea(Position[] outline) {
+    south = west = Integer.MAX_VALUE;
+    north = east = Integer.MIN_VALUE;
+    if (outline != null && outline.length > 0) {
+      for (Position point : outline) {
+	extendArea(point.getLatitudeE7(), point.getLongitudeE7());
+      }
+    } else {
+      for (Line line : lines) {
+	for (int i = 0; i < line.lats.length; i++) {
+	  extendArea(line.lats[i], line.lons[i]);
+	}
+      }
+    }
+    if (south > north) {
+      // nothing to show
+      south = north = west = east = 0;
+    }
+    // avoid an empty area
+    if (north == south) {
+      north++;
+    }
+    if (east == west) {
+      east++;
+    }
+  }
+
+  private void extendArea(int lat, int lon) {
+    south = Math.min(south, lat);
+    north = Math.max(north, lat);
+    west = Math.min(west, lon);
+    east = Math.max(east, lon);
+  }
+
+  /**
+   * Writes the document that links to the tile of level 0.
+   *
+   * @param linkTiles
+   *        whether there are tiles to link to
+   */
+  private void writeDocument(EncodedSpeedRaceModel race, Position[] outline,
+      boolean linkTiles) throws IOException {
+    final DecimalFormat legendFormat = KMLFormats.createLegendFormat(Locale
+	.getDefault());
+    final DecimalFormat computerFormat = KMLFormats.createComputerFormat();
+
+    final Writer w = createWriter(new File(directory, "doc.kml"));
+    try {
+      w.write(HEADER);
+      w.write("  <name>GPS device</name>\n  <open>1</open>\n"
+	  + "  <Style id=\"lineStyle1\">\n    <LineStyle>\n"
+	  + "      <color>ffffffff</color>\n    </LineStyle>\n  </Style>\n"
+	  + "  <Folder>\n    <name>Speed in knots</name>\n");
+      final List<SpeedRange> ranges = race.getSpeedEncoding().getRanges();
+      for (int i = 0; i < ranges.size(); i++) {
+	final SpeedRange range = ranges.get(i);
+	w.write("    <ScreenOverlay>\n      <name>");
+	w.write(KMLFormats.escape(legendFormat.format(range
+	    .getLowerLimit())));
+	w.write(" .. ");
+	w.write(KMLFormats.escape(legendFormat.format(range
+	    .getUpperLimit())));
+	w.write("</name>\n      <color>");
+	w.write(colors[i]);
+	w.write("</color>\n"
+	    + "      <overlayXY x=\"0\" y=\"0\" xunits=\"pixels\" yunits=\"pixels\"/>\n"
+	    + "      <screenXY x=\"");
+	w.write(Integer.toString(10 + i * 5));
+	w.write("\" y=\"10\" xunits=\"pixels\" yunits=\"pixels\"/>\n"
+	    + "      <size x=\"4\" y=\"25\" xunits=\"pixels\" yunits=\"pixels\"/>\n"
+	    + "    </ScreenOverlay>\n");
+      }
+      w.write("  </Folder>\n");
+      if (linkTiles) {
+	w.write("  <NetworkLink>\n    <name>Boats</name>\n    <Link>\n"
+	    + "      <href>" + TILES_DIR + "/" + tileName(0, 0, 0)
+	    + ".kml</href>\n    </Link>\n  </NetworkLink>\n");
+      }
+      if (outline != null) {
+	w.write("  <Placemark>\n    <name>Outline</name>\n"
+	    + "    <styleUrl>#lineStyle1</styleUrl>\n    <LineString>\n"
+	    + "      <tessellate>1</tessellate>\n      <coordinates>\n");
+	for (Position point : outline) {
+	  w.write(computerFormat.format(point.getLongitude()));
+	  w.write(",");
+	  w.write(computerFormat.format(point.getLatitude()));
+	  w.write("\n");
+	}
+	w.write("      </coordinates>\n    </LineString>\n  </Placemark>\n");
+      }
+      w.write(FOOTER);
+    } finally {
+      w.close();
+    }
+  }
+
+  /**
+   * Gets the bound of the tiles of a level.
+   *
+   * @param min
+   *        the lower bound of the area
+   * @param max
+   *        the upper bound of the area
+   * @param index
+   *        the index of the tile, or the number of tiles to get the upper
+   *        bound of the last tile
+   * @return the lower bound of the tile with the specified index in
+   *         10<sup>-7</sup> degrees
+   */
+  private static int bound(int min, int max, int level, int index) {
+    return (int) (min + (((long) max - min) * index >> level));
+  }
+
+  /**
+   * Gets the index of the tile of a level that contains a coordinate.
+   */
+  private static int tileIndex(int min, int max, int level, int value) {
+    final long index = (((long) value - min) << level) / ((long) max - min);
+    return (int) Math.max(0, Math.min((1 << level) - 1, index));
+  }
+
+  /**
+   * Gets the name of a tile, that is the key of the tile in the quadtree. Each digit of the key selects the quarter of the parent tile:
+   * 0 south-west, 1 south-east, 2 north-west and 3 north-east.
+   */
+  private static String tileName(int level, int x, int y) {
+    final StringBuilder sb = new StringBuilder(level + 1);
+    sb.append('r');
+    for (int bit = level - 1; bit >= 0; bit--) {
+      sb.append((char) ('0' + (((y >> bit) & 1) << 1 | (x >> bit) & 1)));
+    }
+    return sb.toString();
+  }
+
+  private static long tileKey(int x, int y) {
+    return (long) x << 32 | y;
+  }
+
+  private static Writer createWriter(File file) throws IOException {
+    return new OutputStreamWriter(new BufferedOutputStream(
+	new FileOutputStream(file)), "UTF-8");
+  }
+
+  /**
+   * Waits for the result of a worker.
+   */
+  private static <T> T getResult(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (ExecutionException ex) {
+      // raise exception that occured in worker
+      final Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+	throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+	throw (RuntimeException) cause;
+      }
+      throw (Error) cause;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * A line of a cruise, made of successive polylines.
+   */
+  private static class Line {
+
+    /** the name of the boat, escaped */
+    final String name;
+
+    final int[] lats;
+
+    final int[] lons;
+
+    /** the color index of the segment that ends at each point */
+    final int[] colors;
+
+    Line(String name, int[] lats, int[] lons, int[] colors) {
+      this.name = name;
+      this.lats = lats;
+      this.lons = lons;
+      this.colors = colors;
+    }
+  } // Line
+
+  /**
+   * Collects the points of a line.
+   */
+  private static class LineBuilder {
+
+    private final String name;
+
+    private int[] lats = new int[256];
+
+    private int[] lons = new int[256];
+
+    private int[] colors = new int[256];
+
+    private int count;
+
+    LineBuilder(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Adds the first point.
+     */
+    void add(Position point) {
+      add(0, point);
+    }
+
+    /**
+     * Adds a point and the segment to it.
+     */
+    void add(int colorIndex, Position point) {
+      if (count == lats.length) {
+	lats = Arrays.copyOf(lats, 2 * count);
+	lons = Arrays.copyOf(lons, 2 * count);
+	colors = Arrays.copyOf(colors, 2 * count);
+      }
+      lats[count] = point.getLatitudeE7();
+      lons[count] = point.getLongitudeE7();
+      colors[count] = colorIndex;
+      count++;
+    }
+
+    /**
+     * Gets whether a polyline starting at the specified point continues the
+     * line.
+     */
+    boolean continues(Position point) {
+      return lats[count - 1] == point.getLatitudeE7()
+	  && lons[count - 1] == point.getLongitudeE7();
+    }
+
+    void addTo(List<Line> lines) {
+      lines.add(new Line(name, Arrays.copyOf(lats, count), Arrays.copyOf(
+	  lons, count), Arrays.copyOf(colors, count)));
+    }
+  } // LineBuilder
+
+  /**
+   * The part of a line inside a tile.
+   */
+  private static class Piece {
+
+    final Line line;
+
+    final int colorIndex;
+
+    /** the indices of the points of the line */
+    final int[] points;
+
+    Piece(Line line, int colorIndex, int[] points) {
+      this.line = line;
+      this.colorIndex = colorIndex;
+      this.points = points;
+    }
+  } // Piece
+
+  /**
+   * A tile of the quadtree.
+   */
+  private static class Tile {
+
+    final int x;
+
+    final int y;
+
+    final List<Piece> pieces = new ArrayList<Piece>();
+
+    Tile(int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+  } // Tile
+
+  /**
+   * Simplifies the lines for a level and cuts them into the tiles of the
+   * level. Each segment of a simplified line gets the color that most of the
+   * segments it replaces have. A piece of a line includes the points just
+   * outside of the tile, so the pieces of adjacent tiles join. A segment that
+   * crosses tiles without having a point in them is added to each of these
+   * tiles as a piece of its own.
+   */
+  private class TileCutter implements Callable<Map<Long, Tile>> {
+
+    private final int level;
+
+    TileCutter(int level) {
+      this.level = level;
+    }
+
+    /*-
+     * @see java.util.concurrent.Callable#call()
+     */
+    public Map<Long, Tile> call() {
+      final boolean leaf = level + 1 == levels;
+      final double tolerance = tolerance();
+      final Map<Long, Tile> tiles = new HashMap<Long, Tile>();
+      final int[] votes = new int[colors.length];
+      for (Line line : lines) {
+	final int n = line.lats.length;
+	final int[] kept = new int[n];
+	int count = 0;
+	if (leaf) {
+	  // all points
+	  for (int i = 0; i < n; i++) {
+	    kept[count++] = i;
+	  }
+	} else {
+	  final boolean[] keep = PolylineSimplifier.simplify(line.lats,
+	      line.lons, n, tolerance);
+	  for (int i = 0; i < n; i++) {
+	    if (keep[i]) {
+	      kept[count++] = i;
+	    }
+	  }
+	}
+
+	// the color of the segment that ends at each kept point...
+	final int[] segmentColors = new int[count];
+	for (int i = 1; i < count; i++) {
+	  final int from = kept[i - 1] + 1;
+	  final int to = kept[i];
+	  int color = line.colors[to];
+	  if (to > from) {
+	    for (int j = from; j <= to; j++) {
+	      final int c = line.colors[j];
+	      if (++votes[c] > votes[color]) {
+		color = c;
+	      }
+	    }
+	    for (int j = from; j <= to; j++) {
+	      votes[line.colors[j]] = 0;
+	    }
+	  }
+	  segmentColors[i] = color;
+	}
+
+	// cut at the borders of the tiles and where the color changes...
+	int first = 0;
+	int x = tileIndex(west, east, level, line.lons[kept[0]]);
+	int y = tileIndex(south, north, level, line.lats[kept[0]]);
+	for (int i = 1; i < count; i++) {
+	  final int nx = tileIndex(west, east, level, line.lons[kept[i]]);
+	  final int ny = tileIndex(south, north, level, line.lats[kept[i]]);
+	  if (nx != x || ny != y) {
+	    // the segment leaves the tile
+	    addPiece(tiles, x, y, line, segmentColors[i], kept, first, i);
+	    addCrossedTiles(tiles, x, y, nx, ny, line, segmentColors[i], kept,
+		i);
+	    first = i - 1;
+	    x = nx;
+	    y = ny;
+	  }
+	  if (i + 1 < count && segmentColors[i + 1] != segmentColors[i]) {
+	    addPiece(tiles, x, y, line, segmentColors[i], kept, first, i);
+	    first = i;
+	  }
+	}
+	if (first + 1 < count) {
+	  addPiece(tiles, x, y, line, segmentColors[count - 1], kept, first,
+	      count - 1);
+	}
+      }
+      return tiles;
+    }
+
+    /**
+     * Gets the tolerance to simplify the lines to, that is half the size of a
+     * pixel when the tile is shown at its largest.
+     */
+    private double tolerance() {
+      final double midLat = Math.toRadians(Position
+	  .toDegrees((int) (((long) south + north) / 2)));
+      final double height = ((long) north - south) * METRES_PER_E7;
+      final double width = ((long) east - west) * METRES_PER_E7
+	  * Math.cos(midLat);
+      return Math.max(height, width) / (1 << level) / (2 * MAX_LOD_PIXELS);
+    }
+
+    /**
+     * Adds a segment to the tiles it crosses between the tiles of its end
+     * points. The tiles are visited in the order the segment crosses their
+     * borders.
+     *
+     * @param x
+     *        the horizontal index of the tile of the start point
+     * @param y
+     *        the vertical index of the tile of the start point
+     * @param toX
+     *        the horizontal index of the tile of the end point
+     * @param toY
+     *        the vertical index of the tile of the end point
+     * @param end
+     *        the index in {@code kept} of the end point of the segment
+     */
+    private void addCrossedTiles(Map<Long, Tile> tiles, int x, int y,
+	int toX, int toY, Line line, int colorIndex, int[] kept, int end) {
+      if (Math.abs(toX - x) + Math.abs(toY - y) < 2) {
+	// adjacent tiles, nothing in between
+	return;
+      }
+      final int stepX = Integer.signum(toX - x);
+      final int stepY = Integer.signum(toY - y);
+      final double lon = line.lons[kept[end - 1]];
+      final double lat = line.lats[kept[end - 1]];
+      final double dLon = line.lons[kept[end]] - lon;
+      final double dLat = line.lats[kept[end]] - lat;
+      while (true) {
+	// the fraction of the segment up to the next border in each direction
+	final double tx = x == toX ? Double.POSITIVE_INFINITY
+	    : (bound(west, east, level, stepX > 0 ? x + 1 : x) - lon) / dLon;
+	final double ty = y == toY ? Double.POSITIVE_INFINITY
+	    : (bound(south, north, level, stepY > 0 ? y + 1 : y) - lat) / dLat;
+	// through a corner, both at once
+	if (tx <= ty) {
+	  x += stepX;
+	}
+	if (ty <= tx) {
+	  y += stepY;
+	}
+	if (x == toX && y == toY) {
+	  return;
+	}
+	addPiece(tiles, x, y, line, colorIndex, kept, end - 1, end);
+      }
+    }
+
+    private void addPiece(Map<Long, Tile> tiles, int x, int y, Line line,
+	int colorIndex, int[] kept, int from, int to) {
+      final Long key = Long.valueOf(tileKey(x, y));
+      Tile tile = tiles.get(key);
+      if (tile == null) {
+	tile = new Tile(x, y);
+	tiles.put(key, tile);
+      }
+      tile.pieces.add(new Piece(line, colorIndex, Arrays.copyOfRange(kept,
+	  from, to + 1)));
+    }
+  } // TileCutter
+
+  /**
+   * Writes the files of some tiles of a level.
+   */
+  private class TileWriter implements Callable<Object> {
+
+    private final File tilesDir;
+
+    private final int level;
+
+    private final List<Tile> tiles;
+
+    /** the keys of the tiles of the next level or {@code null} */
+    private final Set<Long> children;
+
+    TileWriter(File tilesDir, int level, List<Tile> tiles, Set<Long> children) {
+      this.tilesDir = tilesDir;
+      this.level = level;
+      this.tiles = tiles;
+      this.children = children;
+    }
+
+    /*-
+     * @see java.util.concurrent.Callable#call()
+     */
+    public Object call() throws IOException {
+      for (Tile tile : tiles) {
+	writeTile(tile);
+      }
+      return null;
+    }
+
+    private void writeTile(Tile tile) throws IOException {
+      final String name = tileName(level, tile.x, tile.y);
+      final Writer w = createWriter(new File(tilesDir, name + ".kml"));
+      try {
+	w.write(HEADER);
+	w.write("  <name>");
+	w.write(name);
+	w.write("</name>\n");
+	if (level > 0) {
+	  writeRegion(w, "  ", level, tile.x, tile.y, MIN_LOD_PIXELS, -1);
+	}
+
+	// styles of the lines in this tile...
+	final boolean[] used = new boolean[colors.length];
+	for (Piece piece : tile.pieces) {
+	  used[piece.colorIndex] = true;
+	}
+	for (int i = 0; i < used.length; i++) {
+	  if (used[i]) {
+	    w.write("  <Style id=\"speed_");
+	    w.write(Integer.toString(i));
+	    w.write("\">\n    <LineStyle>\n      <color>");
+	    w.write(colors[i]);
+	    w.write("</color>\n    </LineStyle>\n  </Style>\n");
+	  }
+	}
+
+	// links to the children...
+	if (children != null) {
+	  for (int i = 0; i < 4; i++) {
+	    final int cx = 2 * tile.x + (i & 1);
+	    final int cy = 2 * tile.y + (i >> 1);
+	    if (!children.contains(Long.valueOf(tileKey(cx, cy)))) {
+	      continue;
+	    }
+	    final String childName = tileName(level + 1, cx, cy);
+	    w.write("  <NetworkLink>\n    <name>");
+	    w.write(childName);
+	    w.write("</name>\n");
+	    writeRegion(w, "    ", level + 1, cx, cy, MIN_LOD_PIXELS, -1);
+	    w.write("    <Link>\n      <href>");
+	    w.write(childName);
+	    w.write(".kml</href>\n      <viewRefreshMode>onRegion</viewRefreshMode>\n"
+		+ "    </Link>\n  </NetworkLink>\n");
+	  }
+	}
+
+	// the lines, hidden when the children take over...
+	w.write("  <Folder>\n    <name>Cruise</name>\n");
+	writeRegion(w, "    ", level, tile.x, tile.y, level > 0 ? MIN_LOD_PIXELS
+	    : 0, children != null ? MAX_LOD_PIXELS : -1);
+	for (Piece piece : tile.pieces) {
+	  final Line line = piece.line;
+	  w.write("    <Placemark>\n      <name>");
+	  w.write(line.name);
+	  w.write("</name>\n      <styleUrl>#speed_");
+	  w.write(Integer.toString(piece.colorIndex));
+	  w.write("</styleUrl>\n      <LineString>\n"
+	      + "        <tessellate>1</tessellate>\n"
+	      + "        <coordinates>\n");
+	  for (int point : piece.points) {
+	    w.write(E7ToDecimalMethod.format(line.lons[point]));
+	    w.write(",");
+	    w.write(E7ToDecimalMethod.format(line.lats[point]));
+	    w.write("\n");
+	  }
+	  w.write("        </coordinates>\n      </LineString>\n"
+	      + "    </Placemark>\n");
+	}
+	w.write("  </Folder>\n");
+	w.write(FOOTER);
+      } finally {
+	w.close();
+      }
+    }
+
+    /**
+     * Writes the region of a tile.
+     */
+    private void writeRegion(Writer w, String indent, int tileLevel, int x,
+	int y, int minLodPixels, int maxLodPixels) throws IOException {
+      w.write(indent);
+      w.write("<Region>\n");
+      w.write(indent);
+      w.write("  <LatLonAltBox>\n");
+      writeElement(w, indent, "north", bound(south, north, tileLevel, y + 1));
+      writeElement(w, indent, "south", bound(south, north, tileLevel, y));
+      writeElement(w, indent, "east", bound(west, east, tileLevel, x + 1));
+      writeElement(w, indent, "west", bound(west, east, tileLevel, x));
+      w.write(indent);
+      w.write("  </LatLonAltBox>\n");
+      w.write(indent);
+      w.write("  <Lod>\n");
+      w.write(indent);
+      w.write("    <minLodPixels>");
+      w.write(Integer.toString(minLodPixels));
+      w.write("</minLodPixels>\n");
+      w.write(indent);
+      w.write("    <maxLodPixels>");
+      w.write(Integer.toString(maxLodPixels));
+      w.write("</maxLodPixels>\n");
+      w.write(indent);
+      w.write("  </Lod>\n");
+      w.write(indent);
+      w.write("</Region>\n");
+    }
+
+    private void writeElement(Writer w, String indent, String element, int e7)
+	throws IOException {
+      w.write(indent);
+      w.write("    <");
+      w.write(element);
+      w.write(">");
+      w.write(E7ToDecimalMethod.format(e7));
+      w.write("</");
+      w.write(element);
+      w.write(">\n");
+    }
+  } // TileWriter
+}
@@ -1,5 +1,21 @@
+<#-- The document is made of fragments. Setting "fragment" to "header",
+     "cruise" or "footer" renders just that one, the cruise fragment is the
+     folder of the cruise set as "cruise". Concatenated, the fragments are the
+     same as the whole document. -->
+<#if !fragment??>
+<@header/>
+<#list race.cruises as cruise><@cruiseFolder cruise/></#list>
+<@footer/>
+<#elseif fragment == "header">
+<@header/>
+<#elseif fragment == "cruise">
+<@cruiseFolder cruise/>
+<#else>
+<@footer/>
+</#if>
+<#macro header>
 <?xml version="1.0" encoding="UTF-8"?>
-<kml xmlns="http://www.opengis.net/kml/2.2">
+<kml xmlns="http://www.opengis.net/kml/2.2"<#if gxTrack> xmlns:gx="http://www.google.com/kml/ext/2.2"</#if>>
 <Document>
 <#--  <Document xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
     xsi:schemaLocation="http://earth.google.com/kml/2.1   http://code.google.com/apis/kml/schema/kml21.xsd">
@@ -47,6 +63,13 @@
         <styleUrl>#track_h</styleUrl>
       </Pair>
     </StyleMap>
+<#if gxTrack>
+    <Schema id="trackpoint">
+      <gx:SimpleArrayField name="speed" type="float">
+        <displayName>Speed [kts]</displayName>
+      </gx:SimpleArrayField>
+    </Schema>
+</#if>
     <#-- styles for speed to color encoding -->
     <#list race.speedEncoding.ranges as range>
     <Style id="speed_${range_index?c}">
@@ -86,28 +109,60 @@
     <Folder>
       <name>Boats</name>
 </#if>
-      <#list race.cruises as cruise>
+</#macro>
+<#macro cruiseFolder cruise>
       <Folder>
         <name><#if cruise.boat.name??>${cruise.boat.name}<#else>Boat #${cruise.boat.index}</#if></name>
         <Folder>
           <name>Trackpoints</name>
-          <#list cruise.trackpoints as point>
+<#if gxTrack>
+<#-- a single track, values are formatted for machines -->
+<#assign savedLocale = .locale>
+<#setting locale="en_US">
+<#-- the time stamps are in UTC, as the Z says. The time zone is not restored,
+     no other dates follow in a document with tracks. -->
+<#setting time_zone="UTC">
+          <Placemark>
+            <name>Track</name>
+            <styleUrl>#track</styleUrl>
+            <gx:Track>
+<#list cruise.markedFixes as point>
+              <when>${millisToDate(point.date)?datetime?string("yyyy-MM-dd'T'HH:mm:ss'Z'")}</when>
+</#list>
+<#list cruise.markedFixes as point>
+              <gx:coord>${e7ToDecimal(point.position.longitudeE7)} ${e7ToDecimal(point.position.latitudeE7)} 0</gx:coord>
+</#list>
+              <ExtendedData>
+                <SchemaData schemaUrl="#trackpoint">
+                  <gx:SimpleArrayData name="speed">
+<#list cruise.markedFixes as point>
+                    <gx:value><#if point.speed??>${point.speed?string("0.###")}</#if></gx:value>
+</#list>
+                  </gx:SimpleArrayData>
+                </SchemaData>
+              </ExtendedData>
+            </gx:Track>
+          </Placemark>
+<#setting locale=savedLocale>
+<#else>
+          <#list cruise.markedFixes as point>
           <Placemark>
             <name>${point_index}<#if point.speed??> [${point.speed} kts]</#if></name>
             <styleUrl>#track</styleUrl>
 <#--        <Snippet maxLines="2"></Snippet>
             <description></description>
--->         <Point><coordinates>${point.position.longitude?c},${point.position.latitude?c}</coordinates></Point>
+-->         <Point><coordinates>${e7ToDecimal(point.position.longitudeE7)},${e7ToDecimal(point.position.latitudeE7)}</coordinates></Point>
             <LookAt>
-              <longitude>${point.position.longitude?c}</longitude>
-              <latitude>${point.position.latitude?c}</latitude>
+              <longitude>${e7ToDecimal(point.position.longitudeE7)}</longitude>
+              <latitude>${e7ToDecimal(point.position.latitudeE7)}</latitude>
               <range>100</range>
             </LookAt>
             <TimeStamp>
               <when>${millisToDate(point.date)?datetime?string("yyyy-MM-dd'T'HH:mm:ss'Z'")}</when>
             </TimeStamp>
           </Placemark>
-          </#list> <#-- trackpoints -->
+          </#list> <#-- fixes -->
+</#if>
         </Folder>
         <Folder>
           <name>Cruise</name>
@@ -118,18 +173,19 @@
             <LineString>
               <tessellate>1</tessellate>
               <coordinates>
-<#list line.segments as segment>${segment.position.longitude?c},${segment.position.latitude?c}
+<#list line.segments as segment>${e7ToDecimal(segment.position.longitudeE7)},${e7ToDecimal(segment.position.latitudeE7)}
 </#list> <#-- segment -->
               </coordinates>
             </LineString>
           </Placemark>
           </#list> <#-- polylines -->
         </Folder>
-      </#list> <#-- cruises -->
-<#if (race.cruises?size> 1)>
       </Folder>
-</#if>
+<#-- the indentation of the next folder ends this one -->
+      <#nt></#macro><#macro footer> <#-- cruises -->
+<#if (race.cruises?size> 1)>
     </Folder>
+</#if>
 <#if outline??>    
       <Placemark>
       <name>Outline</name>
@@ -145,3 +201,4 @@
 </#if>
   </Document>
 </kml>
+</#macro>
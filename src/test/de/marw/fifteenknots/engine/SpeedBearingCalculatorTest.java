@@ -0,0 +1,186 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.marw.fifteenknots.model.ArrayTrack;
+import de.marw.fifteenknots.model.BasicCruise;
+import de.marw.fifteenknots.model.Boat;
+import de.marw.fifteenknots.nmeareader.ITrackBlockListener;
+import de.marw.fifteenknots.nmeareader.NmeaParser;
+import de.marw.fifteenknots.nmeareader.TrackBlock;
+
+
+/**
+ * Checks that {@link SpeedBearingCalculator} derives speed and bearing for
+ * track points parsed from sentences without these values, and only for
+ * those.
+ *
+ * @author Martin Weber
+ */
+public class SpeedBearingCalculatorTest
+{
+  /** 10^-7 degrees of latitude per second at 6 knots */
+  private static final int NORTH_E7_PER_SECOND= 10000000 / 60 / 600;
+
+  /**
+   * A logger that writes GGA sentences only, sailing north at 6 knots.
+   */
+  @Test
+  public void ggaOnlyInputGetsDerivedValues() throws IOException
+  {
+    final StringBuilder nmea= new StringBuilder();
+    for (int i= 0; i < 60; i++) {
+      appendGGA( nmea, i, 540000000 + i * NORTH_E7_PER_SECOND, 100000000);
+    }
+    final ArrayTrack track= parse( nmea);
+    assertEquals( 60, track.size());
+    for (int i= 0; i < track.size(); i++) {
+      assertTrue( Float.isNaN( track.getSpeed( i)));
+      assertTrue( Float.isNaN( track.getBearing( i)));
+    }
+
+    new SpeedBearingCalculator( new BasicCruise( new Boat( 0), track)).call();
+    for (int i= 0; i < track.size(); i++) {
+      assertEquals( 6f, track.getSpeed( i), 0.05f);
+      assertBearing( 0f, track.getBearing( i));
+    }
+  }
+
+  /**
+   * A logger that writes RMC sentences with the same speed and bearing over
+   * and over, while the positions would give other values.
+   */
+  @Test
+  public void repeatedRmcValuesAreKept() throws IOException
+  {
+    final StringBuilder nmea= new StringBuilder();
+    for (int i= 0; i < 60; i++) {
+      appendRMC( nmea, i, 540000000 + i * NORTH_E7_PER_SECOND, 100000000,
+        "4.5", "10.0");
+      appendGGA( nmea, i, 540000000 + i * NORTH_E7_PER_SECOND, 100000000);
+    }
+    final ArrayTrack track= parse( nmea);
+    assertEquals( 60, track.size());
+    new SpeedBearingCalculator( new BasicCruise( new Boat( 0), track)).call();
+    for (int i= 0; i < track.size(); i++) {
+      assertEquals( 4.5f, track.getSpeed( i), 0f);
+      assertEquals( 10f, track.getBearing( i), 0f);
+    }
+  }
+
+  /**
+   * A logger that writes a RMC sentence every fifth second and GGA sentences
+   * in between. Only the track points of the GGA sentences get derived values.
+   */
+  @Test
+  public void onlyTrackPointsWithoutRmcGetDerivedValues() throws IOException
+  {
+    final StringBuilder nmea= new StringBuilder();
+    for (int i= 0; i < 60; i++) {
+      final int latitude= 540000000 + i * NORTH_E7_PER_SECOND;
+      if (i % 5 == 0) {
+        // an empty bearing field, too
+        appendRMC( nmea, i, latitude, 100000000, "4.5", i % 10 == 0
+          ? "10.0" : "");
+      }
+      else {
+        appendGGA( nmea, i, latitude, 100000000);
+      }
+    }
+    final ArrayTrack track= parse( nmea);
+    assertEquals( 60, track.size());
+    new SpeedBearingCalculator( new BasicCruise( new Boat( 0), track)).call();
+    for (int i= 0; i < track.size(); i++) {
+      assertEquals( i % 5 == 0
+        ? 4.5f : 6f, track.getSpeed( i), 0.05f);
+      assertBearing( i % 10 == 0
+        ? 10f : 0f, track.getBearing( i));
+    }
+  }
+
+  /**
+   * Asserts that a bearing is close to the expected one, on either side of
+   * north.
+   */
+  private static void assertBearing( float expected, float actual)
+  {
+    final float difference= Math.abs( expected - actual) % 360f;
+    assertEquals( 0f, Math.min( difference, 360f - difference), 0.1f);
+  }
+
+  private static ArrayTrack parse( CharSequence nmea) throws IOException
+  {
+    final ArrayTrack track= new ArrayTrack();
+    final NmeaParser parser=
+      new NmeaParser( new ByteArrayInputStream( nmea.toString().getBytes(
+        "US-ASCII")), "test");
+    parser.addTrackBlockListener( new ITrackBlockListener() {
+
+      public void trackPoints( TrackBlock block)
+      {
+        for (int i= 0; i < block.size(); i++) {
+          track.addE7( block.getDate( i), block.getLatitudeE7( i), block
+            .getLongitudeE7( i), block.getSpeed( i), block.getBearing( i));
+        }
+      }
+    });
+    parser.parse();
+    return track;
+  }
+
+  /**
+   * Appends a RMC sentence of 1 December 2008, 12:00 plus the specified
+   * seconds.
+   */
+  private static void appendRMC( StringBuilder nmea, int seconds,
+    int latitudeE7, int longitudeE7, String speed, String bearing)
+  {
+    appendSentence( nmea, "GPRMC," + formatTime( seconds) + ",A,"
+      + formatAngle( latitudeE7, 2) + ",N," + formatAngle( longitudeE7, 3)
+      + ",E," + speed + "," + bearing + ",011208,,");
+  }
+
+  /**
+   * Appends a GGA sentence of 12:00 plus the specified seconds.
+   */
+  private static void appendGGA( StringBuilder nmea, int seconds,
+    int latitudeE7, int longitudeE7)
+  {
+    appendSentence( nmea, "GPGGA," + formatTime( seconds) + ","
+      + formatAngle( latitudeE7, 2) + ",N," + formatAngle( longitudeE7, 3)
+      + ",E,1,08,0.9,545.4,M,46.9,M,,");
+  }
+
+  private static void appendSentence( StringBuilder nmea, String sentence)
+  {
+    int checksum= 0;
+    for (int i= 0; i < sentence.length(); i++) {
+      checksum^= sentence.charAt( i);
+    }
+    nmea.append( String.format( "$%s*%02X\r\n", sentence, checksum));
+  }
+
+  private static String formatTime( int seconds)
+  {
+    return String.format( "12%02d%02d", seconds / 60, seconds % 60);
+  }
+
+  /**
+   * Formats a positive angle as degrees and minutes with five decimals.
+   */
+  private static String formatAngle( int e7, int degreeDigits)
+  {
+    final long minutesE5= Math.round( (e7 % 10000000) * 60 / 100.0);
+    return String.format( "%0" + degreeDigits + "d%02d.%05d", e7 / 10000000,
+      minutesE5 / 100000, minutesE5 % 100000);
+  }
+}
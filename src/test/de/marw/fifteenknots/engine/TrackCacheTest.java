@@ -0,0 +1,168 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.marw.fifteenknots.model.ArrayTrack;
+
+
+/**
+ * Checks that {@link TrackCache} returns cached tracks unchanged and only
+ * while the input file is unchanged.
+ *
+ * @author Martin Weber
+ */
+public class TrackCacheTest
+{
+  private File dir;
+
+  private File input;
+
+  private TrackCache cache;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    dir= File.createTempFile( "trackcache", "");
+    dir.delete();
+    dir.mkdir();
+    input= new File( dir, "input.nmea");
+    write( input, 200 * 1024, (byte) 'a');
+    cache= new TrackCache( new File( dir, "cache"));
+  }
+
+  @After
+  public void tearDown()
+  {
+    delete( dir);
+  }
+
+  @Test
+  public void loadsStoredTrack() throws IOException
+  {
+    final ArrayTrack track= createTrack();
+    final TrackCache.Fingerprint fingerprint= cache.fingerprint( input);
+    assertFalse( cache.load( fingerprint, new ArrayTrack( 0)));
+    cache.store( fingerprint, track);
+
+    final ArrayTrack loaded= new ArrayTrack( 0);
+    assertTrue( cache.load( cache.fingerprint( input), loaded));
+    assertEquals( track.size(), loaded.size());
+    for (int i= 0; i < track.size(); i++) {
+      assertEquals( track.getDate( i), loaded.getDate( i));
+      assertEquals( track.getLatitudeE7( i), loaded.getLatitudeE7( i));
+      assertEquals( track.getLongitudeE7( i), loaded.getLongitudeE7( i));
+      assertEquals( Float.floatToIntBits( track.getSpeed( i)), Float
+        .floatToIntBits( loaded.getSpeed( i)));
+      assertEquals( Float.floatToIntBits( track.getBearing( i)), Float
+        .floatToIntBits( loaded.getBearing( i)));
+    }
+  }
+
+  @Test
+  public void staleAfterTailChanged() throws IOException
+  {
+    final TrackCache.Fingerprint fingerprint= cache.fingerprint( input);
+    cache.store( fingerprint, createTrack());
+    // same size, same modification time, different tail
+    final long lastModified= input.lastModified();
+    final RandomAccessFile raf= new RandomAccessFile( input, "rw");
+    try {
+      raf.seek( raf.length() - 1);
+      raf.write( 'b');
+    }
+    finally {
+      raf.close();
+    }
+    input.setLastModified( lastModified);
+    final ArrayTrack loaded= new ArrayTrack( 0);
+    assertFalse( cache.load( cache.fingerprint( input), loaded));
+    // rejected by the header, the track is unchanged
+    assertEquals( 0, loaded.size());
+  }
+
+  @Test
+  public void notStoredIfChangedWhileParsed() throws IOException
+  {
+    final TrackCache.Fingerprint fingerprint= cache.fingerprint( input);
+    write( input, 300 * 1024, (byte) 'c');
+    cache.store( fingerprint, createTrack());
+    assertFalse( cache.load( fingerprint, new ArrayTrack( 0)));
+    assertFalse( cache.load( cache.fingerprint( input), new ArrayTrack( 0)));
+  }
+
+  /**
+   * The track points before the end of a truncated cache file are read into
+   * the track, the track is to be discarded by the caller.
+   */
+  @Test
+  public void truncatedCacheFileIsStale() throws IOException
+  {
+    final TrackCache.Fingerprint fingerprint= cache.fingerprint( input);
+    final ArrayTrack track= createTrack();
+    cache.store( fingerprint, track);
+    final File[] files= cache.getDirectory().listFiles();
+    assertEquals( 1, files.length);
+    final RandomAccessFile raf= new RandomAccessFile( files[0], "rw");
+    try {
+      raf.setLength( raf.length() - 3);
+    }
+    finally {
+      raf.close();
+    }
+    final ArrayTrack loaded= new ArrayTrack( 0);
+    assertFalse( cache.load( fingerprint, loaded));
+    assertTrue( loaded.size() < track.size());
+  }
+
+  private static ArrayTrack createTrack()
+  {
+    final ArrayTrack track= new ArrayTrack();
+    for (int i= 0; i < 5000; i++) {
+      track.addE7( 1228176000000L + i * 1000L, 401000000 + i * 7,
+        102000000 - i * 3, i % 200 / 10f, i % 10 == 0
+          ? Float.NaN : i % 3600 / 10f);
+    }
+    return track;
+  }
+
+  private static void write( File file, int size, byte b) throws IOException
+  {
+    final byte[] content= new byte[size];
+    for (int i= 0; i < size; i++) {
+      content[i]= i % 80 == 79
+        ? (byte) '\n' : b;
+    }
+    final FileOutputStream out= new FileOutputStream( file);
+    try {
+      out.write( content);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static void delete( File file)
+  {
+    final File[] children= file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete( child);
+      }
+    }
+    file.delete();
+  }
+}
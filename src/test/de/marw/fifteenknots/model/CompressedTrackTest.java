@@ -0,0 +1,117 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Checks that a {@link CompressedTrack} holds the same track points as an
+ * {@link ArrayTrack}.
+ *
+ * @author Martin Weber
+ */
+public class CompressedTrackTest
+{
+  @Test
+  public void addAfterTrimmingEmptyTrack()
+  {
+    final CompressedTrack track= new CompressedTrack();
+    track.trimToSize();
+    final ArrayTrack expected= new ArrayTrack();
+    addRandom( new Random( 15), 3 * CompressedTrack.BLOCK_SIZE + 7, expected,
+      track);
+    assertSameTrack( expected, track);
+  }
+
+  @Test
+  public void addAfterTrimming()
+  {
+    final Random random= new Random( 15);
+    final CompressedTrack track= new CompressedTrack();
+    final ArrayTrack expected= new ArrayTrack();
+    for (int i= 0; i < 40; i++) {
+      addRandom( random, random.nextInt( 2 * CompressedTrack.BLOCK_SIZE),
+        expected, track);
+      track.trimToSize();
+    }
+    assertSameTrack( expected, track);
+  }
+
+  @Test
+  public void setSpeedAndBearing()
+  {
+    final Random random= new Random( 15);
+    final CompressedTrack track= new CompressedTrack();
+    final ArrayTrack expected= new ArrayTrack();
+    addRandom( random, 5 * CompressedTrack.BLOCK_SIZE, expected, track);
+    for (int i= 0; i < 2000; i++) {
+      final int index= random.nextInt( expected.size());
+      final float speed= random.nextFloat() * 20;
+      final float bearing= random.nextFloat() * 360;
+      expected.setSpeed( index, speed);
+      expected.setBearing( index, bearing);
+      track.setSpeed( index, speed);
+      track.setBearing( index, bearing);
+    }
+    assertSameTrack( expected, track);
+  }
+
+  private static void addRandom( Random random, int count,
+    ArrayTrack expected, CompressedTrack track)
+  {
+    long date= expected.size() == 0
+      ? 1228176000000L : expected.getDate( expected.size() - 1);
+    int lat= 401000000, lon= 102000000;
+    for (int i= 0; i < count; i++) {
+      date+= random.nextInt( 10) == 0
+        ? random.nextInt( 100000) - 50000 : 1000;
+      lat+= random.nextInt( 2001) - 1000;
+      lon+= random.nextInt( 2001) - 1000;
+      final float speed= random.nextInt( 10) == 0
+        ? Float.NaN : random.nextInt( 200) / 10f;
+      final float bearing= random.nextInt( 3600) / 10f;
+      expected.addE7( date, lat, lon, speed, bearing);
+      track.addE7( date, lat, lon, speed, bearing);
+    }
+  }
+
+  private static void assertSameTrack( Track expected, CompressedTrack actual)
+  {
+    assertEquals( expected.size(), actual.size());
+    // by index
+    for (int i= 0; i < expected.size(); i++) {
+      assertSamePoint( expected, i, actual.getDate( i), actual
+        .getLatitudeE7( i), actual.getLongitudeE7( i), actual.getSpeed( i),
+        actual.getBearing( i));
+    }
+    // by cursor
+    int i= 0;
+    for (TrackCursor c= actual.cursor(); c.next(); i++) {
+      assertEquals( i, c.getIndex());
+      assertSamePoint( expected, i, c.getDate(), c.getLatitudeE7(), c
+        .getLongitudeE7(), c.getSpeed(), c.getBearing());
+    }
+    assertEquals( expected.size(), i);
+    assertFalse( actual.cursor().next() && expected.size() == 0);
+  }
+
+  private static void assertSamePoint( Track expected, int i, long date,
+    int latitude, int longitude, float speed, float bearing)
+  {
+    final String msg= "track point " + i;
+    assertEquals( msg, expected.getDate( i), date);
+    assertEquals( msg, expected.getLatitudeE7( i), latitude);
+    assertEquals( msg, expected.getLongitudeE7( i), longitude);
+    assertEquals( msg, Float.floatToIntBits( expected.getSpeed( i)), Float
+      .floatToIntBits( speed));
+    assertEquals( msg, Float.floatToIntBits( expected.getBearing( i)), Float
+      .floatToIntBits( bearing));
+  }
+}
@@ -0,0 +1,180 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Checks that tracks read back by {@link TrackSerializer} equal the tracks
+ * written.
+ *
+ * @author Martin Weber
+ */
+public class TrackSerializerTest
+{
+  @Test
+  public void roundTripEmptyTrack() throws IOException
+  {
+    assertRoundTrip( new ArrayTrack( 0));
+  }
+
+  @Test
+  public void roundTripNegativeDeltasAndLargeGaps() throws IOException
+  {
+    final ArrayTrack track= new ArrayTrack();
+    final long start= 1228176000000L;
+    // regular, then backwards in time, then gaps of days and decades
+    track.addE7( start, 401000000, 102000000, 5.0f, 45.0f);
+    track.addE7( start + 1000, 401000123, 101999877, 5.1f, 44.9f);
+    track.addE7( start + 2000, 400999000, 102001000, 4.9f, 359.9f);
+    track.addE7( start + 500, 400998000, 102002000, 0.0f, 0.1f);
+    track.addE7( start - 86400000L * 3, -401000000, -102000000, 12.3f, 180f);
+    track.addE7( start + 86400000L * 365 * 38, 899999999, 1799999999, 0.5f,
+      90f);
+    track.addE7( 0, -900000000, -1800000000, 0.01f, 359.99f);
+    track.addE7( -1, 0, 0, Float.NaN, Float.NaN);
+    track.addE7( Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, 99.99f,
+      Float.NaN);
+    track.addE7( Long.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE,
+      Float.NaN, 0f);
+    track.addE7( start, 1, -1, 7.2f, 12.3f);
+    assertRoundTrip( track);
+  }
+
+  @Test
+  public void roundTripValuesOffTheGrid() throws IOException
+  {
+    final ArrayTrack track= new ArrayTrack();
+    final float[] values= { 5.123f, -0.0f, -3.5f, 1e-7f, 1e30f,
+      Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.MIN_VALUE,
+      Float.MAX_VALUE, 2.5e7f, (float) Math.PI, 0.01f, 5.3f };
+    for (int i= 0; i < values.length; i++) {
+      track.addE7( i * 1000L, i, -i, values[i], values[values.length - 1 - i]);
+    }
+    assertRoundTrip( track);
+  }
+
+  @Test
+  public void roundTripRandomized() throws IOException
+  {
+    final Random random= new Random( 15);
+    final ArrayTrack track= new ArrayTrack();
+    long date= 1228176000000L;
+    int lat= 401000000, lon= 102000000;
+    for (int i= 0; i < 100000; i++) {
+      // mostly one second, sometimes backwards or huge gaps
+      final int kind= random.nextInt( 100);
+      date+= kind == 0
+        ? -random.nextInt( 3600000) : kind == 1
+          ? (long) random.nextInt( Integer.MAX_VALUE) * 1000 : 1000;
+      lat+= random.nextInt( 2001) - 1000;
+      lon+= kind == 2
+        ? random.nextInt() : random.nextInt( 2001) - 1000;
+      final float speed= random.nextInt( 10) == 0
+        ? Float.NaN : random.nextInt( 2000) / 10f;
+      final float bearing= random.nextInt( 10) == 0
+        ? random.nextFloat() * 360 : random.nextInt( 3600) / 10f;
+      track.addE7( date, lat, lon, speed, bearing);
+    }
+    assertRoundTrip( track);
+  }
+
+  @Test
+  public void readsExactlyOneTrack() throws IOException
+  {
+    final ArrayTrack first= new ArrayTrack();
+    final ArrayTrack second= new ArrayTrack();
+    for (int i= 0; i < 20000; i++) {
+      first.addE7( i * 1000L, i, -i, i / 10f, Float.NaN);
+      second.addE7( -i * 500L, -i, i, Float.NaN, i % 3600 / 10f);
+    }
+    final ByteArrayOutputStream out= new ByteArrayOutputStream();
+    TrackSerializer.write( first, out);
+    TrackSerializer.write( second, out);
+    final InputStream in=
+      new BufferedInputStream( new ByteArrayInputStream( out.toByteArray()));
+    final ArrayTrack firstRead= new ArrayTrack( 0);
+    final ArrayTrack secondRead= new ArrayTrack( 0);
+    assertEquals( first.size(), TrackSerializer.read( in, firstRead));
+    assertEquals( second.size(), TrackSerializer.read( in, secondRead));
+    assertEquals( -1, in.read());
+    assertSameTrack( first, firstRead);
+    assertSameTrack( second, secondRead);
+  }
+
+  @Test
+  public void truncatedStream() throws IOException
+  {
+    final ArrayTrack track= new ArrayTrack();
+    for (int i= 0; i < 100; i++) {
+      track.addE7( i * 1000L, i, i, 1f, 2f);
+    }
+    final byte[] bytes= write( track);
+    try {
+      TrackSerializer.read( new ByteArrayInputStream( Arrays.copyOf( bytes,
+        bytes.length - 1)), new ArrayTrack( 0));
+      fail( "truncated stream read");
+    }
+    catch (EOFException expected) {
+    }
+  }
+
+  @Test
+  public void notATrack() throws IOException
+  {
+    try {
+      TrackSerializer.read( new ByteArrayInputStream( new byte[16]),
+        new ArrayTrack( 0));
+      fail( "garbage read");
+    }
+    catch (StreamCorruptedException expected) {
+    }
+  }
+
+  private static byte[] write( Track track) throws IOException
+  {
+    final ByteArrayOutputStream out= new ByteArrayOutputStream();
+    TrackSerializer.write( track, out);
+    return out.toByteArray();
+  }
+
+  private static void assertRoundTrip( Track track) throws IOException
+  {
+    final ArrayTrack read= new ArrayTrack( 0);
+    final int count=
+      TrackSerializer.read( new ByteArrayInputStream( write( track)), read);
+    assertEquals( track.size(), count);
+    assertSameTrack( track, read);
+  }
+
+  private static void assertSameTrack( Track expected, Track actual)
+  {
+    assertEquals( expected.size(), actual.size());
+    for (int i= 0; i < expected.size(); i++) {
+      final String msg= "track point " + i;
+      assertEquals( msg, expected.getDate( i), actual.getDate( i));
+      assertEquals( msg, expected.getLatitudeE7( i), actual.getLatitudeE7( i));
+      assertEquals( msg, expected.getLongitudeE7( i), actual
+        .getLongitudeE7( i));
+      assertEquals( msg, Float.floatToIntBits( expected.getSpeed( i)), Float
+        .floatToIntBits( actual.getSpeed( i)));
+      assertEquals( msg, Float.floatToIntBits( expected.getBearing( i)), Float
+        .floatToIntBits( actual.getBearing( i)));
+    }
+  }
+}
@@ -0,0 +1,269 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that {@link ParallelNmeaParser} sends the same track points as a
+ * {@link NmeaParser} that parses the file sequentially, for many ways to split
+ * the file into chunks.
+ *
+ * @author Martin Weber
+ */
+public class ParallelNmeaParserTest
+{
+  private static final int[] CHUNK_COUNTS= { 1, 2, 3, 5, 7, 16, 61, 250, 1000 };
+
+  private File file;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    file= File.createTempFile( "parallel", ".nmea");
+    executor= Executors.newFixedThreadPool( 4);
+  }
+
+  @After
+  public void tearDown()
+  {
+    executor.shutdownNow();
+    file.delete();
+  }
+
+  /**
+   * A log that starts without a date, has long stretches without any date,
+   * repeats speed and bearing values, crosses midnight and contains garbage.
+   */
+  @Test
+  public void sameAsSequential() throws IOException
+  {
+    writeLog( new Random( 15));
+    assertSameAsSequential();
+  }
+
+  /**
+   * A log that has a date only in its very first sentence, so that all other
+   * chunks contain no date and get their dates resolved.
+   */
+  @Test
+  public void sameAsSequentialWithSingleDate() throws IOException
+  {
+    final Writer out=
+      new OutputStreamWriter( new FileOutputStream( file), "US-ASCII");
+    try {
+      final Random random= new Random( 4711);
+      long time= 12 * 3600000L;
+      writeRMC( out, time, 150000000, 80000000, 5f, 90f, 1);
+      for (int i= 0; i < 3000; i++) {
+        time+= 1000;
+        writeGGA( out, time, 150000000 + random.nextInt( 100000),
+          80000000 + i * 100);
+      }
+    }
+    finally {
+      out.close();
+    }
+    assertSameAsSequential();
+  }
+
+  /**
+   * A log whose speed and bearing never change, so that they are detected in
+   * the first chunk only.
+   */
+  @Test
+  public void sameAsSequentialWithConstantSpeed() throws IOException
+  {
+    final Writer out=
+      new OutputStreamWriter( new FileOutputStream( file), "US-ASCII");
+    try {
+      long time= 8 * 3600000L;
+      for (int i= 0; i < 3000; i++) {
+        time+= 500;
+        writeRMC( out, time, -330000000 - i * 10, 1510000000 + i * 20, 6.5f,
+          270f, 2);
+        if (i % 3 == 0) {
+          writeGGA( out, time, -330000000 - i * 10, 1510000000 + i * 20);
+        }
+      }
+    }
+    finally {
+      out.close();
+    }
+    assertSameAsSequential();
+  }
+
+  private void assertSameAsSequential() throws IOException
+  {
+    final NmeaParser parser= new NmeaParser( file, "test");
+    final PointCollector expected= new PointCollector();
+    parser.addTrackBlockListener( expected);
+    parser.parse();
+    assertTrue( expected.points.size() > 1000);
+
+    for (int chunkCount : CHUNK_COUNTS) {
+      final ParallelNmeaParser parallelParser=
+        new ParallelNmeaParser( file, "test", executor, chunkCount);
+      final PointCollector actual= new PointCollector();
+      parallelParser.addTrackBlockListener( actual);
+      parallelParser.parse();
+      assertEquals( "chunks: " + chunkCount, expected.points, actual.points);
+    }
+  }
+
+  /**
+   * Writes a log of RMC and GGA sentences.
+   */
+  private void writeLog( Random random) throws IOException
+  {
+    final Writer out=
+      new OutputStreamWriter( new FileOutputStream( file), "US-ASCII");
+    try {
+      long time= 23 * 3600000L + 40 * 60000L;
+      int day= 1;
+      int latitude= 545000000, longitude= -30000000;
+      float speed= 4.5f, bearing= 45f;
+      for (int i= 0; i < 8000; i++) {
+        time+= 250 * (1 + random.nextInt( 8));
+        if (time >= 24 * 3600000L) {
+          time-= 24 * 3600000L;
+          day++;
+        }
+        latitude+= random.nextInt( 2001) - 1000;
+        longitude+= random.nextInt( 2001) - 1000;
+        // speed and bearing change rarely...
+        if (random.nextInt( 10) == 0)
+          speed= random.nextInt( 20) / 2f;
+        if (random.nextInt( 12) == 0)
+          bearing= random.nextInt( 8) * 45f;
+        // no date at the beginning and in the middle of the log
+        final boolean ggaOnly= i < 400 || i >= 3000 && i < 3700;
+        if ( !ggaOnly) {
+          writeRMC( out, time, latitude, longitude, random.nextInt( 40) == 0
+            ? Float.NaN : speed, random.nextInt( 40) == 0
+            ? Float.NaN : bearing, day);
+        }
+        if (ggaOnly || random.nextBoolean()) {
+          writeGGA( out, time, latitude, longitude);
+        }
+        if (random.nextInt( 200) == 0) {
+          out.write( "$GPRMC,garbage*00\r\n");
+        }
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes a RMC sentence.
+   *
+   * @param speed
+   *        the speed or NaN to leave the field empty.
+   * @param bearing
+   *        the bearing or NaN to leave the field empty.
+   * @param day
+   *        the day in December 2008.
+   */
+  private static void writeRMC( Writer out, long time, int latitude,
+    int longitude, float speed, float bearing, int day) throws IOException
+  {
+    writeSentence( out, String.format( "GPRMC,%s,A,%s,%s,%s,%s,%02d1208,,",
+      formatTime( time), formatLatitude( latitude),
+      formatLongitude( longitude), Float.isNaN( speed)
+        ? "" : String.valueOf( speed), Float.isNaN( bearing)
+        ? "" : String.valueOf( bearing), day));
+  }
+
+  /**
+   * Writes a GGA sentence.
+   */
+  private static void writeGGA( Writer out, long time, int latitude,
+    int longitude) throws IOException
+  {
+    writeSentence( out, String.format(
+      "GPGGA,%s,%s,%s,1,08,0.9,545.4,M,46.9,M,,", formatTime( time),
+      formatLatitude( latitude), formatLongitude( longitude)));
+  }
+
+  private static void writeSentence( Writer out, String sentence)
+    throws IOException
+  {
+    int checksum= 0;
+    for (int i= 0; i < sentence.length(); i++) {
+      checksum^= sentence.charAt( i);
+    }
+    out.write( String.format( "$%s*%02X\r\n", sentence, checksum));
+  }
+
+  private static String formatTime( long time)
+  {
+    return String.format( "%02d%02d%02d.%03d", time / 3600000,
+      time / 60000 % 60, time / 1000 % 60, time % 1000);
+  }
+
+  private static String formatLatitude( int latitudeE7)
+  {
+    return formatAngle( Math.abs( latitudeE7), 2) + (latitudeE7 < 0
+      ? ",S" : ",N");
+  }
+
+  private static String formatLongitude( int longitudeE7)
+  {
+    return formatAngle( Math.abs( longitudeE7), 3) + (longitudeE7 < 0
+      ? ",W" : ",E");
+  }
+
+  /**
+   * Formats an angle as degrees and minutes with four decimals.
+   */
+  private static String formatAngle( int e7, int degreeDigits)
+  {
+    final int degrees= e7 / 10000000;
+    final long minutesE4= Math.round( (e7 % 10000000) * 60 / 1000.0);
+    return String.format( "%0" + degreeDigits + "d%02d.%04d", degrees,
+      minutesE4 / 10000, minutesE4 % 10000);
+  }
+
+  // //////////////////////////////////////////////////////////////////
+  // inner classes
+  // //////////////////////////////////////////////////////////////////
+  /**
+   * Collects the values of the track points it receives as strings.
+   */
+  private static class PointCollector implements ITrackBlockListener
+  {
+    final List<String> points= new ArrayList<String>();
+
+    public void trackPoints( TrackBlock block)
+    {
+      for (int i= 0; i < block.size(); i++) {
+        points.add( block.getDate( i) + " " + block.getLatitudeE7( i) + " "
+          + block.getLongitudeE7( i) + " " + block.getSpeed( i) + " "
+          + block.getBearing( i));
+      }
+    }
+  }// PointCollector
+}
@@ -0,0 +1,228 @@
+// $Id$
+/*
+ * Copyright 2008 by Martin Weber
+ */
+
+package de.marw.fifteenknots.nmeareader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the position decoders of {@link SentenceTokenizer} against the
+ * previous implementation, which decoded the degrees with
+ * {@link Integer#valueOf(String)} and the minutes with
+ * {@link Double#valueOf(String)} after splitting the field with
+ * {@link String#substring(int)}.
+ *
+ * @author Martin Weber
+ */
+public class SentenceTokenizerTest
+{
+  /** fields in NMEA format and in odd formats handled by the fallback */
+  private static final String[] EDGE_CASES= { "4807.038", "01131.000",
+    "0000.0000", "00000.0000", "9000.0000", "18000.0000", "17959.9999999999",
+    "4807.", "4807", "4807.0", "4807.03800000000000000", "0.5", ".5", "7.5",
+    "07.5", "4807.0380000000001",
+    "00000.00000000001", "-4807.038", "+4807.038", "5959.9999995",
+    "5959.99999949999", "NaN", "1e3" };
+
+  /** fields that are not numbers at all */
+  private static final String[] GARBAGE= { "", ".", "48a7.038", "4807..038",
+    "4807.038-", "--4807", "1234567890123456.7" };
+
+  /** fields that are parsable, but not within 180 degrees */
+  private static final String[] OUT_OF_RANGE= { "18000.0001", "18100.0000",
+    "99999.9999", "21475.0", "99999999.0", "12345678.123456789012",
+    "-21500.0", "-18100.0", "1e400", "-1e400", "Infinity" };
+
+  private final SentenceTokenizer tokenizer= new SentenceTokenizer();
+
+  @Test
+  public void parsePositionMatchesPreviousDecoder()
+  {
+    for (String field : EDGE_CASES) {
+      assertSameDouble( field, decodePrevious( field), parsePosition( field));
+    }
+    for (String field : OUT_OF_RANGE) {
+      assertSameDouble( field, decodePrevious( field), parsePosition( field));
+    }
+  }
+
+  @Test
+  public void parsePositionMatchesPreviousDecoderRandomized()
+  {
+    final Random random= new Random( 15);
+    for (int i= 0; i < 200000; i++) {
+      final String field= randomPosition( random);
+      assertSameDouble( field, decodePrevious( field), parsePosition( field));
+    }
+  }
+
+  @Test
+  public void parsePositionRejectsGarbage()
+  {
+    for (String field : GARBAGE) {
+      try {
+        decodePrevious( field);
+        fail( "previous decoder accepted '" + field + "'");
+      }
+      catch (NumberFormatException expected) {
+      }
+      try {
+        parsePosition( field);
+        fail( "accepted '" + field + "'");
+      }
+      catch (NumberFormatException expected) {
+      }
+    }
+  }
+
+  @Test
+  public void parsePositionE7RoundsHalfUp()
+  {
+    for (String field : EDGE_CASES) {
+      if ( !isPlainNumber( field))
+        continue;
+      assertEquals( field, roundedE7( field), parsePositionE7( field));
+    }
+    final Random random= new Random( 15);
+    for (int i= 0; i < 200000; i++) {
+      final String field= randomPosition( random);
+      assertEquals( field, roundedE7( field), parsePositionE7( field));
+    }
+  }
+
+  @Test
+  public void parsePositionE7Bounds()
+  {
+    assertEquals( 1800000000, parsePositionE7( "18000.0000"));
+    assertEquals( 0, parsePositionE7( "00000.0000"));
+    assertEquals( -1800000000, parsePositionE7( "-18000.0"));
+  }
+
+  @Test
+  public void parsePositionE7RejectsOutOfRange()
+  {
+    for (String field : OUT_OF_RANGE) {
+      try {
+        final int e7= parsePositionE7( field);
+        fail( "'" + field + "' decoded as " + e7);
+      }
+      catch (NumberFormatException expected) {
+      }
+    }
+    try {
+      parsePositionE7( "NaN");
+      fail( "accepted NaN");
+    }
+    catch (NumberFormatException expected) {
+    }
+  }
+
+  private double parsePosition( String field)
+  {
+    tokenizer.reset( field.getBytes(), 0, field.length());
+    return tokenizer.parsePosition( 0);
+  }
+
+  private int parsePositionE7( String field)
+  {
+    tokenizer.reset( field.getBytes(), 0, field.length());
+    return tokenizer.parsePositionE7( 0);
+  }
+
+  /**
+   * The previous implementation of the position decoder.
+   */
+  private static double decodePrevious( String nmeaPos)
+  {
+    int degrees= 0;
+    double minutes;
+    // handle missing trailing zeroes...
+    int dotIdx= nmeaPos.indexOf( '.') - 2;
+    if (dotIdx >= 1) {
+      degrees= Integer.valueOf( nmeaPos.substring( 0, dotIdx));
+      minutes= Double.valueOf( nmeaPos.substring( dotIdx));
+    }
+    else {
+      minutes= Double.valueOf( nmeaPos);
+    }
+
+    return degrees + minutes / 60.0;
+  }
+
+  /**
+   * Gets the exact position of a field in 10<sup>-7</sup> degrees, rounded
+   * half up.
+   */
+  private static int roundedE7( String field)
+  {
+    final int dotIdx= field.indexOf( '.') - 2;
+    final BigDecimal degrees;
+    final BigDecimal minutes;
+    if (dotIdx >= 1) {
+      degrees= new BigDecimal( field.substring( 0, dotIdx));
+      minutes= new BigDecimal( field.substring( dotIdx));
+    }
+    else {
+      degrees= BigDecimal.ZERO;
+      minutes= new BigDecimal( field.endsWith( ".")
+        ? field + "0" : field);
+    }
+    final BigDecimal value=
+      degrees.multiply( BigDecimal.valueOf( 60)).add( minutes).divide(
+        BigDecimal.valueOf( 60), 7, RoundingMode.HALF_UP);
+    return value.movePointRight( 7).intValueExact();
+  }
+
+  /**
+   * Creates a position in NMEA format with a random number of fraction
+   * digits, that is with missing or extra trailing zeroes.
+   */
+  private static String randomPosition( Random random)
+  {
+    final int degrees= random.nextInt( 180);
+    final StringBuilder field= new StringBuilder();
+    if (random.nextBoolean()) {
+      // longitude
+      if (degrees < 100)
+        field.append( '0');
+    }
+    else if (degrees >= 100) {
+      field.append( degrees / 100);
+    }
+    field.append( degrees % 100 / 10).append( degrees % 10);
+    final int minutes= random.nextInt( 60);
+    field.append( minutes / 10).append( minutes % 10);
+    field.append( '.');
+    final int fractionDigits= random.nextInt( 12);
+    for (int i= 0; i < fractionDigits; i++) {
+      field.append( (char) ('0' + random.nextInt( 10)));
+    }
+    return field.toString();
+  }
+
+  private static boolean isPlainNumber( String field)
+  {
+    for (int i= 0; i < field.length(); i++) {
+      final char c= field.charAt( i);
+      if ((c < '0' || c > '9') && c != '.')
+        return false;
+    }
+    return field.length() > 0;
+  }
+
+  private static void assertSameDouble( String field, double expected,
+    double actual)
+  {
+    assertEquals( field, Double.doubleToLongBits( expected),
+      Double.doubleToLongBits( actual));
+  }
+}
@@ -0,0 +1,202 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.render.kml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes archives with {@link KMZOutputStream} and reads them back with the
+ * zip classes of the JDK.
+ *
+ * @author Martin Weber
+ */
+public class KMZOutputStreamTest {
+
+  private static final int BLOCK_SIZE = KMZOutputStream.BLOCK_SIZE;
+
+  private File file;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("kmz", ".kmz");
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    file.delete();
+  }
+
+  @Test
+  public void emptyDocument() throws IOException {
+    assertRoundTrip(new byte[0], BLOCK_SIZE);
+  }
+
+  @Test
+  public void documentOfOneBlock() throws IOException {
+    assertRoundTrip(createKml(BLOCK_SIZE), BLOCK_SIZE);
+  }
+
+  @Test
+  public void documentOfOneByte() throws IOException {
+    assertRoundTrip(new byte[] { '<' }, 1);
+  }
+
+  /**
+   * More blocks than are compressed at a time, ending within a block and
+   * written in pieces that do not match the blocks.
+   */
+  @Test
+  public void documentOfManyBlocks() throws IOException {
+    final int size = 3 * BLOCK_SIZE * Runtime.getRuntime()
+	.availableProcessors() + 12345;
+    assertRoundTrip(createKml(size), 1000);
+    assertRoundTrip(createKml(size), BLOCK_SIZE + 1);
+    assertRoundTrip(createKml(4 * BLOCK_SIZE), BLOCK_SIZE - 1);
+  }
+
+  /**
+   * Data that does not compress, so that the compressed blocks are larger
+   * than the uncompressed ones.
+   */
+  @Test
+  public void incompressibleDocument() throws IOException {
+    final byte[] data = new byte[5 * BLOCK_SIZE];
+    new Random(15).nextBytes(data);
+    assertRoundTrip(data, BLOCK_SIZE);
+  }
+
+  /**
+   * Single bytes and empty arrays written in between.
+   */
+  @Test
+  public void documentWrittenByteByByte() throws IOException {
+    final byte[] data = createKml(2 * BLOCK_SIZE + 7);
+    final KMZOutputStream out = new KMZOutputStream(new FileOutputStream(
+	file), executor);
+    try {
+      for (int i = 0; i < data.length; i++) {
+	out.write(data[i]);
+	if (i % BLOCK_SIZE == 0) {
+	  out.write(data, i, 0);
+	}
+      }
+    } finally {
+      out.close();
+    }
+    assertArchive(data);
+  }
+
+  /**
+   * Writes the data in pieces of the specified length and reads it back.
+   */
+  private void assertRoundTrip(byte[] data, int piece) throws IOException {
+    final KMZOutputStream out = new KMZOutputStream(new FileOutputStream(
+	file), executor);
+    try {
+      for (int off = 0; off < data.length; off += piece) {
+	out.write(data, off, Math.min(piece, data.length - off));
+      }
+      out.write(data, 0, 0);
+    } finally {
+      out.close();
+    }
+    assertArchive(data);
+  }
+
+  /**
+   * Asserts that the archive holds a single entry {@code doc.kml} with the
+   * specified content, read both as a stream and through the central
+   * directory.
+   */
+  private void assertArchive(byte[] data) throws IOException {
+    final CRC32 crc = new CRC32();
+    crc.update(data);
+
+    final ZipInputStream in = new ZipInputStream(new FileInputStream(file));
+    try {
+      final ZipEntry entry = in.getNextEntry();
+      assertNotNull(entry);
+      assertEquals("doc.kml", entry.getName());
+      assertArrayEquals(data, readFully(in));
+      // sizes and CRC are known after the data was read
+      assertEquals(data.length, entry.getSize());
+      assertEquals(crc.getValue(), entry.getCrc());
+      assertNull(in.getNextEntry());
+    } finally {
+      in.close();
+    }
+
+    final ZipFile zip = new ZipFile(file);
+    try {
+      assertEquals(1, zip.size());
+      final ZipEntry entry = zip.getEntry("doc.kml");
+      assertNotNull(entry);
+      assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+      assertEquals(data.length, entry.getSize());
+      assertEquals(crc.getValue(), entry.getCrc());
+      final InputStream entryIn = zip.getInputStream(entry);
+      try {
+	assertArrayEquals(data, readFully(entryIn));
+      } finally {
+	entryIn.close();
+      }
+    } finally {
+      zip.close();
+    }
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] buf = new byte[8192];
+    int n;
+    while ((n = in.read(buf)) != -1) {
+      bytes.write(buf, 0, n);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Creates KML-like text of the specified length.
+   */
+  private static byte[] createKml(int length) {
+    final Random random = new Random(length);
+    final StringBuilder sb = new StringBuilder(length + 64);
+    while (sb.length() < length) {
+      sb.append("<coordinates>").append(random.nextInt(3600000) / 1e4)
+	  .append(',').append(random.nextInt(1800000) / 1e4)
+	  .append(",0</coordinates>\n");
+    }
+    sb.setLength(length);
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) sb.charAt(i);
+    }
+    return data;
+  }
+}
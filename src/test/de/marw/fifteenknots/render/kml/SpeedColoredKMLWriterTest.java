@@ -0,0 +1,306 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.render.kml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.marw.fifteenknots.model.ArrayTrack;
+import de.marw.fifteenknots.model.Boat;
+import de.marw.fifteenknots.model.EncodedSpeedRaceModel;
+import de.marw.fifteenknots.model.FixList;
+import de.marw.fifteenknots.model.PolyLine;
+import de.marw.fifteenknots.model.SpeedCruise;
+import de.marw.fifteenknots.model.SpeedEncoding;
+import de.marw.fifteenknots.model.SpeedRange;
+import de.marw.fifteenknots.nmeareader.Fix;
+import de.marw.fifteenknots.nmeareader.Position;
+import freemarker.template.TemplateException;
+
+/**
+ * Checks that {@link SpeedColoredKMLWriter} writes the same document as the
+ * {@code speed-colored.kml.ftl} template, and that its own number and date
+ * formatting matches the {@code java.text} formats, in several locales and
+ * time zones. Also checks that the fragments of the template make up the
+ * whole document.
+ *
+ * @author Martin Weber
+ */
+public class SpeedColoredKMLWriterTest {
+
+  /**
+   * locales with different grouping and decimal separators, with digits other
+   * than ASCII and with calendars other than the Gregorian one
+   */
+  private static final Locale[] LOCALES = { Locale.US, Locale.GERMANY,
+      Locale.FRANCE, new Locale("de", "CH"), new Locale("hi", "IN"),
+      new Locale("ar", "EG"), new Locale("th", "TH", "TH"),
+      new Locale("ja", "JP", "JP") };
+
+  private static final String[] TIME_ZONES = { "UTC", "Europe/Berlin",
+      "America/St_Johns", "Pacific/Kiritimati", "America/Los_Angeles" };
+
+  private static final Pattern PLACEMARK_NAME = Pattern
+      .compile("<Placemark>\n            <name>(.*?)</name>\n"
+          + "            <styleUrl>#track</styleUrl>");
+
+  private static final Pattern WHEN = Pattern.compile("<when>(.*?)</when>");
+
+  private static final Pattern VALUE = Pattern
+      .compile("<gx:value>(.*?)</gx:value>");
+
+  private Locale savedLocale;
+
+  private TimeZone savedTimeZone;
+
+  private EncodedSpeedRaceModel race;
+
+  private Position[] outline;
+
+  @Before
+  public void setUp() {
+    savedLocale = Locale.getDefault();
+    savedTimeZone = TimeZone.getDefault();
+    final Random random = new Random(15);
+    race = new EncodedSpeedRaceModel();
+    race.setSpeedEncoding(createSpeedEncoding(12));
+    final Boat named = new Boat(0);
+    named.setName("Blue Bird");
+    race.setCruises(Arrays.asList(createCruise(random, named, 1200),
+        createCruise(random, new Boat(1234), 300)));
+    outline = new Position[] { Position.fromE7(401000000, 102000000),
+        Position.fromE7(-401234567, -102000001),
+        Position.fromE7(1, 1799999999) };
+  }
+
+  @After
+  public void tearDown() {
+    Locale.setDefault(savedLocale);
+    TimeZone.setDefault(savedTimeZone);
+  }
+
+  @Test
+  public void sameAsTemplate() throws Exception {
+    for (Locale locale : LOCALES) {
+      for (String timeZone : TIME_ZONES) {
+        Locale.setDefault(locale);
+        TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+        for (boolean gxTrack : new boolean[] { false, true }) {
+          final String msg = locale + " " + timeZone + " gxTrack=" + gxTrack;
+          assertEquals(msg, renderTemplate(gxTrack), write(gxTrack));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void templateFragmentsMakeDocument() throws Exception {
+    for (boolean gxTrack : new boolean[] { false, true }) {
+      final StringBuilder fragments = new StringBuilder();
+      fragments.append(renderTemplate(gxTrack, "header", null));
+      for (Object cruise : race.getCruises()) {
+        fragments.append(renderTemplate(gxTrack, "cruise", cruise));
+      }
+      fragments.append(renderTemplate(gxTrack, "footer", null));
+      assertEquals("gxTrack=" + gxTrack, renderTemplate(gxTrack), fragments
+          .toString());
+    }
+  }
+
+  @Test
+  public void placemarksFormattedLikeJavaText() throws IOException {
+    for (Locale locale : LOCALES) {
+      for (String timeZone : TIME_ZONES) {
+        Locale.setDefault(locale);
+        TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+        final String msg = locale + " " + timeZone;
+        final NumberFormat numberFormat = NumberFormat.getNumberInstance();
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(
+            "yyyy-MM-dd'T'HH:mm:ss'Z'");
+        final List<String> names = new ArrayList<String>();
+        final List<String> dates = new ArrayList<String>();
+        for (Object cruise : race.getCruises()) {
+          final List<Fix> fixes = ((SpeedCruise) cruise).getMarkedFixes();
+          for (int i = 0; i < fixes.size(); i++) {
+            final Fix fix = fixes.get(i);
+            String name = numberFormat.format(i);
+            if (fix.getSpeed() != null) {
+              name += " [" + numberFormat.format(fix.getSpeed()) + " kts]";
+            }
+            names.add(name);
+            dates.add(dateFormat.format(new Date(fix.getDate())));
+          }
+        }
+        final String kml = write(false);
+        assertEquals(msg, names, findAll(PLACEMARK_NAME, kml));
+        assertEquals(msg, dates, findAll(WHEN, kml));
+      }
+    }
+  }
+
+  @Test
+  public void trackFormattedLikeJavaText() throws IOException {
+    final DecimalFormat speedFormat = new DecimalFormat("0.###",
+        new DecimalFormatSymbols(Locale.US));
+    for (Locale locale : LOCALES) {
+      for (String timeZone : TIME_ZONES) {
+        Locale.setDefault(locale);
+        TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+        final String msg = locale + " " + timeZone;
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(
+            "yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final List<String> speeds = new ArrayList<String>();
+        final List<String> dates = new ArrayList<String>();
+        for (Object cruise : race.getCruises()) {
+          for (Fix fix : ((SpeedCruise) cruise).getMarkedFixes()) {
+            speeds.add(fix.getSpeed() == null ? "" : speedFormat.format(fix
+                .getSpeed()));
+            dates.add(dateFormat.format(new Date(fix.getDate())));
+          }
+        }
+        final String kml = write(true);
+        assertEquals(msg, speeds, findAll(VALUE, kml));
+        assertEquals(msg, dates, findAll(WHEN, kml));
+      }
+    }
+  }
+
+  private String write(boolean gxTrack) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SpeedColoredKMLWriter(out, gxTrack).write(race, outline);
+    return out.toString("UTF-8");
+  }
+
+  /**
+   * Renders the template like the KML processor does, with the comment
+   * naming the template replaced by the one the writer writes.
+   */
+  private String renderTemplate(boolean gxTrack) throws IOException,
+      TemplateException {
+    return renderTemplate(gxTrack, null, null);
+  }
+
+  /**
+   * Renders a fragment of the template, or the whole document if
+   * {@code fragment} is {@code null}.
+   */
+  private String renderTemplate(boolean gxTrack, String fragment,
+      Object cruise) throws IOException, TemplateException {
+    final Map<String, Object> model = new HashMap<String, Object>();
+    model.put("race", race);
+    model.put("outline", outline);
+    model.put("gxTrack", Boolean.valueOf(gxTrack));
+    if (fragment != null) {
+      model.put("fragment", fragment);
+    }
+    if (cruise != null) {
+      model.put("cruise", cruise);
+    }
+    model.put("millisToDate", new MillisToDateMethod());
+    model.put("toABGRhex", new ARGBToABRGMethod());
+    model.put("e7ToDecimal", new E7ToDecimalMethod());
+    final StringWriter out = new StringWriter();
+    new TemplateRenderer(out, "speed-colored.kml.ftl").process(model);
+    return out.toString().replace("<!-- speed-colored.kml.ftl -->",
+        "<!-- " + SpeedColoredKMLWriter.class.getSimpleName() + " -->");
+  }
+
+  private static List<String> findAll(Pattern pattern, String text) {
+    final List<String> found = new ArrayList<String>();
+    final Matcher m = pattern.matcher(text);
+    while (m.find()) {
+      found.add(m.group(1));
+    }
+    return found;
+  }
+
+  private static SpeedEncoding createSpeedEncoding(int count) {
+    final List<SpeedRange> ranges = new ArrayList<SpeedRange>();
+    for (int i = 0; i < count; i++) {
+      ranges.add(new SpeedRange(i * 1.37f, (i + 1) * 1.37f, new Color(
+          Color.HSBtoRGB(i / (float) count, 1f, 1f))));
+    }
+    return new SpeedEncoding() {
+      public List<SpeedRange> getRanges() {
+        return ranges;
+      }
+    };
+  }
+
+  /**
+   * Creates a cruise with speeds and dates that exercise the grouping,
+   * rounding and calendar edge cases of the formats.
+   */
+  private static SpeedCruise createCruise(Random random, Boat boat, int size) {
+    final float[] speeds = { Float.NaN, 0f, 0.0625f, 0.0005f, 2.5005f,
+        999.9995f, 1234.5678f, 1e6f, 123456789f, Float.MIN_VALUE, 1e-3f,
+        -1.5f, 7.1234f };
+    // the epoch, the end of year 9999, a leap second and a change of DST
+    final long[] dates = { 0L, 999L, 253402300799999L, 253402300800000L,
+        253402387199999L, 1230767999000L, 1230768000000L, 1224982799000L,
+        1224982800000L };
+    final ArrayTrack track = new ArrayTrack(size);
+    long date = 1228176000000L;
+    int lat = 401000000, lon = 102000000;
+    for (int i = 0; i < size; i++) {
+      date += random.nextInt(20) == 0 ? random.nextInt(86400000) : 1000;
+      lat += random.nextInt(2001) - 1000;
+      lon += random.nextInt(2001) - 1000;
+      final float speed = i < speeds.length ? speeds[i] : random
+          .nextInt(200) / 10f + random.nextInt(1000) / 1e6f;
+      final long d = i < dates.length ? dates[i] : date;
+      track.addE7(d, lat, lon, speed, random.nextInt(3600) / 10f);
+    }
+    final SpeedCruise cruise = new SpeedCruise(boat, track);
+    int start = 0;
+    for (int colorIndex = 0; start < size - 1; colorIndex = (colorIndex + 5) % 12) {
+      final int end = Math.min(size - 1, start + 1 + random.nextInt(40));
+      final int[] indices = new int[end - start + 1];
+      for (int i = 0; i < indices.length; i++) {
+        indices[i] = start + i;
+      }
+      cruise.getPolyLines().add(
+          createPolyLine(colorIndex, new FixList(track, indices)));
+      start = end;
+    }
+    return cruise;
+  }
+
+  private static PolyLine createPolyLine(final int colorIndex,
+      final List<Fix> segments) {
+    return new PolyLine() {
+      public int getColorIndex() {
+        return colorIndex;
+      }
+
+      public List<Fix> getSegments() {
+        return segments;
+      }
+    };
+  }
+}
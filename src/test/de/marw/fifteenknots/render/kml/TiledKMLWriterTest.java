@@ -0,0 +1,121 @@
+// $Id$
+// Copyright © 2008 Martin Weber
+
+package de.marw.fifteenknots.render.kml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.marw.fifteenknots.model.ArrayTrack;
+import de.marw.fifteenknots.model.Boat;
+import de.marw.fifteenknots.model.EncodedSpeedRaceModel;
+import de.marw.fifteenknots.model.FixList;
+import de.marw.fifteenknots.model.PolyLine;
+import de.marw.fifteenknots.model.SpeedCruise;
+import de.marw.fifteenknots.model.SpeedEncoding;
+import de.marw.fifteenknots.model.SpeedRange;
+import de.marw.fifteenknots.nmeareader.Fix;
+import de.marw.fifteenknots.nmeareader.Position;
+
+/**
+ * Checks which tiles {@link TiledKMLWriter} writes for a line.
+ *
+ * @author Martin Weber
+ */
+public class TiledKMLWriterTest {
+
+  private File dir;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("tiles", "");
+    dir.delete();
+    dir.mkdir();
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    delete(dir);
+  }
+
+  /**
+   * A segment crossing tiles without a point in them is drawn in these tiles,
+   * too.
+   */
+  @Test
+  public void segmentInCrossedTiles() throws IOException {
+    // an area of 4 x 4 tiles on level 2, each 0.25 degrees wide
+    final Position[] outline = { Position.fromE7(0, 0),
+	Position.fromE7(10000000, 10000000) };
+    final EncodedSpeedRaceModel race = createRace(Position.fromE7(500000,
+	500000), Position.fromE7(3000000, 9500000));
+    new TiledKMLWriter(dir, 3, executor).write(race, outline);
+
+    final Set<String> level2 = new TreeSet<String>();
+    for (String name : new File(dir, "tiles").list()) {
+      if (name.length() == "r00.kml".length()) {
+	level2.add(name);
+      }
+    }
+    // from tile (0, 0) east through (1, 0), (2, 0) and (3, 0) to (3, 1)
+    assertEquals(new TreeSet<String>(Arrays.asList("r00.kml", "r01.kml",
+	"r10.kml", "r11.kml", "r13.kml")), level2);
+  }
+
+  private static EncodedSpeedRaceModel createRace(Position from, Position to) {
+    final ArrayTrack track = new ArrayTrack();
+    track.addE7(1228176000000L, from.getLatitudeE7(), from.getLongitudeE7(),
+	5f, 45f);
+    track.addE7(1228176001000L, to.getLatitudeE7(), to.getLongitudeE7(), 5f,
+	45f);
+    final SpeedCruise cruise = new SpeedCruise(new Boat(0), track);
+    final List<Fix> segments = new FixList(track);
+    cruise.getPolyLines().add(new PolyLine() {
+      public int getColorIndex() {
+	return 0;
+      }
+
+      public List<Fix> getSegments() {
+	return segments;
+      }
+    });
+    final List<SpeedRange> ranges = Collections.singletonList(new SpeedRange(
+	0f, 10f, Color.RED));
+    final EncodedSpeedRaceModel race = new EncodedSpeedRaceModel();
+    race.setSpeedEncoding(new SpeedEncoding() {
+      public List<SpeedRange> getRanges() {
+	return ranges;
+      }
+    });
+    race.setCruises(Collections.singletonList(cruise));
+    return race;
+  }
+
+  private static void delete(File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+	delete(child);
+      }
+    }
+    file.delete();
+  }
+}